@@ -0,0 +1,227 @@
+package com.example.lms.benchmark;
+
+import com.example.lms.LmsApplication;
+import com.example.lms.dto.GradeImportPreviewDTO;
+import com.example.lms.dto.ImportResultDTO;
+import com.example.lms.dto.ImportRowDTO;
+import com.example.lms.model.Grade;
+import com.example.lms.model.TeacherAssignment;
+import com.example.lms.repository.TeacherAssignmentRepository;
+import com.example.lms.service.ExcelService;
+import com.example.lms.service.GradeService;
+import com.example.lms.service.excel.ImportCheckpoint;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the Excel import paths against the in-memory H2 database, per file size.
+ * Scores are files per second (multiply by rows for rows per second); run with -prof gc for
+ * the allocation rate, the sql* counters give the SQL each call sends from the benchmark thread.
+ * Each trial starts the application with the sample data, then imports the benchmark's
+ * students ("B" ids) into the first group of teacher1's assignment.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ImportBenchmarks {
+
+    private static final String TEACHER = "teacher1";
+    private static final String STUDENT_PREFIX = "B";
+
+    @Param({"1000", "10000", "50000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private ExcelService excelService;
+    private GradeService gradeService;
+    private TeacherAssignment assignment;
+
+    private MockMultipartFile studentFile;
+    // Marks alternate between the two files, so every commit changes every row
+    private MockMultipartFile[] gradeFiles;
+    private int gradeRun;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        SpringApplication application = new SpringApplication(LmsApplication.class);
+        application.setAdditionalProfiles("benchmark");
+        context = application.run();
+        excelService = context.getBean(ExcelService.class);
+        gradeService = context.getBean(GradeService.class);
+        assignment = context.getBean(TeacherAssignmentRepository.class).findAll().stream()
+                .filter(a -> a.getGroup() != null && TEACHER.equals(a.getTeacher().getUser().getUsername()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Sample data has no group assignment for " + TEACHER));
+
+        String departmentCode = assignment.getStudentClass().getDepartment().getCode();
+        String className = assignment.getStudentClass().getName();
+        String groupName = assignment.getGroup().getName();
+        studentFile = xlsx("students.xlsx",
+                SyntheticWorkbooks.students(STUDENT_PREFIX, rows, departmentCode, className, groupName));
+        gradeFiles = new MockMultipartFile[]{
+                xlsx("grades-a.xlsx", SyntheticWorkbooks.grades(STUDENT_PREFIX, rows, 10.0)),
+                xlsx("grades-b.xlsx", SyntheticWorkbooks.grades(STUDENT_PREFIX, rows, 12.0))
+        };
+
+        // The students every benchmark reads: validated as existing, listed by the template, graded
+        List<ImportRowDTO> students = SyntheticWorkbooks.studentRows(STUDENT_PREFIX, rows,
+                assignment.getStudentClass().getDepartment().getId(), assignment.getStudentClass().getId(),
+                assignment.getGroup().getId());
+        excelService.importStudents(students, new NoCheckpoint("benchmark-setup"));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public ImportResultDTO validateStudentExcel(SqlCounters sql) throws IOException {
+        long[] start = sql.start();
+        ImportResultDTO result = excelService.validateStudentExcel(studentFile);
+        sql.stop(start);
+        return result;
+    }
+
+    @Benchmark
+    public int importStudents(NewStudents students, SqlCounters sql) {
+        long[] start = sql.start();
+        int imported = excelService.importStudents(students.rows, new NoCheckpoint("benchmark-" + students.run));
+        sql.stop(start);
+        return imported;
+    }
+
+    @Benchmark
+    public void writeStudentTemplate(SqlCounters sql, Blackhole blackhole) throws IOException {
+        long[] start = sql.start();
+        CountingOutputStream out = new CountingOutputStream();
+        excelService.writeStudentTemplate(out);
+        sql.stop(start);
+        blackhole.consume(out.count);
+    }
+
+    /**
+     * Preview then commit, the two calls that replaced importGradesFromExcel
+     */
+    @Benchmark
+    public ImportResultDTO importGrades(SqlCounters sql) throws IOException {
+        MockMultipartFile file = gradeFiles[gradeRun++ % gradeFiles.length];
+        long[] start = sql.start();
+        GradeImportPreviewDTO preview = excelService.previewGradeImport(file, assignment.getId(),
+                assignment.getGroup().getId(), "EXAM", TEACHER);
+        ImportResultDTO result = excelService.commitGradeImport(preview.getToken(), TEACHER);
+        sql.stop(start);
+        return result;
+    }
+
+    /**
+     * The grade page's read; its statement count should not grow with the group
+     */
+    @Benchmark
+    public List<Grade> getGradesByAssignment(SqlCounters sql) {
+        long[] start = sql.start();
+        List<Grade> grades = gradeService.getGradesByAssignment(assignment.getId(), assignment.getGroup().getId());
+        sql.stop(start);
+        return grades;
+    }
+
+    private static MockMultipartFile xlsx(String name, byte[] content) {
+        return new MockMultipartFile("file", name,
+                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", content);
+    }
+
+    /**
+     * New students for each importStudents call, so every call inserts; built outside the measurement
+     */
+    @State(Scope.Thread)
+    public static class NewStudents {
+        List<ImportRowDTO> rows;
+        int run;
+
+        @Setup(Level.Invocation)
+        public void next(ImportBenchmarks benchmark) {
+            run++;
+            rows = SyntheticWorkbooks.studentRows("N" + run + "-", benchmark.rows,
+                    benchmark.assignment.getStudentClass().getDepartment().getId(),
+                    benchmark.assignment.getStudentClass().getId(), benchmark.assignment.getGroup().getId());
+        }
+    }
+
+    /**
+     * SQL sent per benchmark call, reported next to the score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SqlCounters {
+        private long calls;
+        private long statements;
+        private long roundTrips;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            calls = 0;
+            statements = 0;
+            roundTrips = 0;
+        }
+
+        long[] start() {
+            return new long[]{SqlStatementCounter.statements(), SqlStatementCounter.roundTrips()};
+        }
+
+        void stop(long[] start) {
+            calls++;
+            statements += SqlStatementCounter.statements() - start[0];
+            roundTrips += SqlStatementCounter.roundTrips() - start[1];
+        }
+
+        public double sqlStatementsPerCall() {
+            return calls > 0 ? (double) statements / calls : 0;
+        }
+
+        public double sqlRoundTripsPerCall() {
+            return calls > 0 ? (double) roundTrips / calls : 0;
+        }
+    }
+
+    private record NoCheckpoint(String id) implements ImportCheckpoint {
+        @Override
+        public int nextRow() {
+            return 0;
+        }
+
+        @Override
+        public void committed(int nextRow, Map<Integer, String> rowErrors) {
+            if (!rowErrors.isEmpty()) {
+                throw new IllegalStateException(rowErrors.size() + " rows rejected, first: "
+                        + rowErrors.values().iterator().next());
+            }
+        }
+    }
+
+    // The template is streamed to nowhere; only its size is kept
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.lms.benchmark;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Counts the SQL each thread sends through the application's DataSource, JPA and JdbcTemplate alike.
+ * statements: every statement executed, each row of a JDBC batch counted once;
+ * round trips: every execute call, a whole batch counted once.
+ * Work handed to background threads (audit log writer, notification flush) is not counted.
+ */
+@Component
+@Profile("benchmark")
+public class SqlStatementCounter implements BeanPostProcessor {
+
+    private static final int STATEMENTS = 0;
+    private static final int ROUND_TRIPS = 1;
+    private static final ThreadLocal<long[]> COUNTS = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Statements executed so far by the current thread
+     */
+    public static long statements() {
+        return COUNTS.get()[STATEMENTS];
+    }
+
+    /**
+     * Round trips made so far by the current thread
+     */
+    public static long roundTrips() {
+        return COUNTS.get()[ROUND_TRIPS];
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            return wrap(DataSource.class, dataSource);
+        }
+        return bean;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T wrap(Class<T> type, T target) {
+        return (T) Proxy.newProxyInstance(SqlStatementCounter.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+            String name = method.getName();
+            if (target instanceof Statement) {
+                long[] counts = COUNTS.get();
+                if (name.equals("addBatch")) {
+                    counts[STATEMENTS]++;
+                } else if (name.equals("executeBatch") || name.equals("executeLargeBatch")) {
+                    counts[ROUND_TRIPS]++;
+                } else if (name.startsWith("execute")) {
+                    counts[STATEMENTS]++;
+                    counts[ROUND_TRIPS]++;
+                }
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // Connections and the statements they create are wrapped as well
+            if (result instanceof Connection connection && method.getReturnType() == Connection.class) {
+                return wrap(Connection.class, connection);
+            }
+            if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                return wrap((Class<Object>) method.getReturnType(), result);
+            }
+            return result;
+        });
+    }
+}
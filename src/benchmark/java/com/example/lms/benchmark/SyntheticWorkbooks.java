@@ -0,0 +1,120 @@
+package com.example.lms.benchmark;
+
+import com.example.lms.dto.ImportRowDTO;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated upload files laid out like the application's own templates
+ */
+final class SyntheticWorkbooks {
+
+    private static final String[] STUDENT_HEADER = {
+        "Student ID*", "First Name*", "Last Name*", "Email*", "Date of Birth (YYYY-MM-DD)", "Department Code*",
+        "Class Code*", "Group Name", "Phone", "Username*", "Password*", "Status*"
+    };
+
+    private SyntheticWorkbooks() {
+    }
+
+    static String studentId(String prefix, int index) {
+        return prefix + String.format("%06d", index);
+    }
+
+    /**
+     * "Students" sheet of the student template with rows students, all in the given class and group
+     */
+    static byte[] students(String prefix, int rows, String departmentCode, String className, String groupName)
+            throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(200);
+        try {
+            Sheet sheet = workbook.createSheet("Students");
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < STUDENT_HEADER.length; i++) {
+                header.createCell(i).setCellValue(STUDENT_HEADER[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                String id = studentId(prefix, i);
+                Row row = sheet.createRow(i + 1);
+                row.createCell(0).setCellValue(id);
+                row.createCell(1).setCellValue("First" + i);
+                row.createCell(2).setCellValue("Last" + i);
+                row.createCell(3).setCellValue(id.toLowerCase() + "@bench.local");
+                row.createCell(4).setCellValue("2004-0" + (1 + i % 9) + "-1" + (i % 10));
+                row.createCell(5).setCellValue(departmentCode);
+                row.createCell(6).setCellValue(className);
+                row.createCell(7).setCellValue(groupName);
+                row.createCell(8).setCellValue("0555" + String.format("%06d", i));
+                row.createCell(9).setCellValue(id.toLowerCase());
+                row.createCell(11).setCellValue("ACTIVE");
+            }
+            return toBytes(workbook);
+        } finally {
+            workbook.close();
+            workbook.dispose();
+        }
+    }
+
+    /**
+     * Validated import rows (as validateStudentExcel returns them) for rows new students
+     */
+    static List<ImportRowDTO> studentRows(String prefix, int rows, Long departmentId, Long classId, Long groupId) {
+        List<ImportRowDTO> result = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String id = studentId(prefix, i);
+            ImportRowDTO dto = new ImportRowDTO();
+            dto.setStudentId(id);
+            dto.setFirstName("First" + i);
+            dto.setLastName("Last" + i);
+            dto.setEmail(id.toLowerCase() + "@bench.local");
+            dto.setDateOfBirth("2004-0" + (1 + i % 9) + "-1" + (i % 10));
+            dto.setDepartmentId(departmentId);
+            dto.setClassId(classId);
+            dto.setGroupId(groupId);
+            dto.setUsername(id.toLowerCase());
+            dto.setStatus("ACTIVE");
+            result.add(dto);
+        }
+        return result;
+    }
+
+    /**
+     * Grade sheet as downloaded from the grade template: two header rows, then Matricule and Note
+     * (fourth column) for every student
+     */
+    static byte[] grades(String prefix, int rows, double mark) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(200);
+        try {
+            Sheet sheet = workbook.createSheet("Notes");
+            sheet.createRow(0).createCell(0).setCellValue("Benchmark");
+            Row header = sheet.createRow(1);
+            String[] columns = {"Matricule", "Nom", "Prénom", "Note"};
+            for (int i = 0; i < columns.length; i++) {
+                header.createCell(i).setCellValue(columns[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                Row row = sheet.createRow(i + 2);
+                row.createCell(0).setCellValue(studentId(prefix, i));
+                row.createCell(1).setCellValue("Last" + i);
+                row.createCell(2).setCellValue("First" + i);
+                row.createCell(3).setCellValue(mark + (i % 4) * 0.5);
+            }
+            return toBytes(workbook);
+        } finally {
+            workbook.close();
+            workbook.dispose();
+        }
+    }
+
+    private static byte[] toBytes(SXSSFWorkbook workbook) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        return out.toByteArray();
+    }
+}
@@ -2,7 +2,9 @@ package com.example.lms;
 
 import com.example.lms.model.*;
 import com.example.lms.repository.*;
+import com.example.lms.service.FinalGradeService;
 import com.example.lms.service.GradeService;
+import com.example.lms.service.StudentAverageService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,7 +28,9 @@ public class DataInitializer {
             TeacherAssignmentRepository teacherAssignmentRepository,
             GradeRepository gradeRepository,
             PasswordEncoder passwordEncoder,
-            GradeService gradeService) {
+            GradeService gradeService,
+            StudentAverageService studentAverageService,
+            FinalGradeService finalGradeService) {
         
         return args -> {
             // Check if data already exists
@@ -364,6 +368,11 @@ public class DataInitializer {
                 e.printStackTrace();
             }
 
+            // Sample grades are written straight to the repository, so compute final grades
+            // and sync the averages table once
+            finalGradeService.recomputeClass(l1Class.getId());
+            studentAverageService.rebuildAll();
+
             System.out.println("✅ Database initialized successfully!");
             System.out.println("📝 Login credentials:");
             System.out.println("   Admin: admin / admin123");
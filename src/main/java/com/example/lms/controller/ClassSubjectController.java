@@ -2,6 +2,7 @@ package com.example.lms.controller;
 
 import com.example.lms.model.ClassSubject;
 import com.example.lms.service.ClassSubjectService;
+import com.example.lms.service.grading.GradingFormulaRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/class-subjects")
@@ -16,10 +18,12 @@ import java.util.Map;
 public class ClassSubjectController {
 
     private final ClassSubjectService classSubjectService;
+    private final GradingFormulaRegistry gradingFormulaRegistry;
 
     @Autowired
-    public ClassSubjectController(ClassSubjectService classSubjectService) {
+    public ClassSubjectController(ClassSubjectService classSubjectService, GradingFormulaRegistry gradingFormulaRegistry) {
         this.classSubjectService = classSubjectService;
+        this.gradingFormulaRegistry = gradingFormulaRegistry;
     }
 
     @GetMapping
@@ -51,7 +55,25 @@ public class ClassSubjectController {
         Integer semester = Integer.parseInt(payload.get("semester").toString());
         Double coefficient = payload.containsKey("coefficient") ? 
             Double.parseDouble(payload.get("coefficient").toString()) : 1.0;
-        return classSubjectService.createClassSubject(classId, subjectId, semester, coefficient);
+        String gradingFormula = payload.get("gradingFormula") != null ? payload.get("gradingFormula").toString() : null;
+        return classSubjectService.createClassSubject(classId, subjectId, semester, coefficient, gradingFormula);
+    }
+
+    // Codes accepted for gradingFormula (class subjects and departments)
+    @GetMapping("/grading-formulas")
+    public Set<String> getGradingFormulas() {
+        return gradingFormulaRegistry.getCodes();
+    }
+
+    // Set or clear (null/blank) the grading formula of a class subject.
+    // Existing final grades change only after POST /api/grades/class/{classId}/recompute
+    @PutMapping("/{id}/grading-formula")
+    public ResponseEntity<?> updateGradingFormula(@PathVariable Long id, @RequestBody Map<String, String> payload) {
+        try {
+            return ResponseEntity.ok(classSubjectService.updateGradingFormula(id, payload.get("gradingFormula")));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
     }
 
     @PostMapping("/class/{classId}/bulk")
@@ -67,7 +89,8 @@ public class ClassSubjectController {
                 Integer semester = Integer.parseInt(assignment.get("semester").toString());
                 Double coefficient = assignment.containsKey("coefficient") ? 
                     Double.parseDouble(assignment.get("coefficient").toString()) : 1.0;
-                classSubjectService.createClassSubject(classId, subjectId, semester, coefficient);
+                String gradingFormula = assignment.get("gradingFormula") != null ? assignment.get("gradingFormula").toString() : null;
+                classSubjectService.createClassSubject(classId, subjectId, semester, coefficient, gradingFormula);
             }
             
             return ResponseEntity.ok("Class subjects updated successfully");
@@ -0,0 +1,154 @@
+package com.example.lms.controller;
+
+import com.example.lms.dto.GradeImportPreviewDTO;
+import com.example.lms.dto.ImportResultDTO;
+import com.example.lms.service.ExcelService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * CSV counterpart of the Excel endpoints, for machine-to-machine syncs (registrar system).
+ * Validation results are queued with /api/excel/students/import and /api/excel/teachers/import,
+ * grade previews are committed with /api/excel/grades/import/commit, exactly as for Excel files.
+ */
+@RestController
+@RequestMapping("/api/csv")
+@CrossOrigin(origins = "*")
+public class CsvController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv; charset=UTF-8");
+
+    @Autowired
+    private ExcelService excelService;
+
+    /**
+     * Download all students as CSV
+     */
+    @GetMapping("/students")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<StreamingResponseBody> exportStudents() {
+        return csv("students_", excelService::writeStudentCsv);
+    }
+
+    /**
+     * Download all teachers as CSV
+     */
+    @GetMapping("/teachers")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<StreamingResponseBody> exportTeachers() {
+        return csv("teachers_", excelService::writeTeacherCsv);
+    }
+
+    /**
+     * Validate a student CSV file and return preview
+     */
+    @PostMapping("/students/validate")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<ImportResultDTO> validateStudents(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return badRequest("File is empty");
+        }
+        try {
+            return ResponseEntity.ok(excelService.validateStudentCsv(file));
+        } catch (IOException e) {
+            return badRequest("Error reading file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validate a teacher CSV file and return preview
+     */
+    @PostMapping("/teachers/validate")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<ImportResultDTO> validateTeachers(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return badRequest("File is empty");
+        }
+        try {
+            return ResponseEntity.ok(excelService.validateTeacherCsv(file));
+        } catch (IOException e) {
+            return badRequest("Error reading file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Download the grade sheet of an assignment as CSV
+     */
+    @GetMapping("/grades")
+    @PreAuthorize("hasRole('TEACHER')")
+    public ResponseEntity<StreamingResponseBody> exportGrades(
+            @RequestParam Long assignmentId,
+            @RequestParam(required = false) Long groupId,
+            @RequestParam(required = false) String gradeType,
+            Authentication authentication) {
+        String username = authentication.getName();
+        // The body runs after the status and headers are sent, so refuse before returning it
+        try {
+            excelService.checkGradeExport(assignmentId, groupId, username);
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+        return csv("grades_", out -> excelService.writeGradeCsv(assignmentId, groupId, gradeType, username, out));
+    }
+
+    /**
+     * Preview a grade import from CSV; commit it with /api/excel/grades/import/commit
+     */
+    @PostMapping("/grades/import/preview")
+    @PreAuthorize("hasRole('TEACHER')")
+    public ResponseEntity<GradeImportPreviewDTO> previewGradeImport(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam Long assignmentId,
+            @RequestParam(required = false) Long groupId,
+            @RequestParam String gradeType,
+            Authentication authentication) {
+        GradeImportPreviewDTO preview = new GradeImportPreviewDTO();
+        try {
+            if (file.isEmpty()) {
+                preview.getErrors().add("File is empty");
+                return ResponseEntity.badRequest().body(preview);
+            }
+            return ResponseEntity.ok(excelService.previewGradeImportCsv(file, assignmentId, groupId, gradeType,
+                    authentication.getName()));
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (IOException e) {
+            preview.getErrors().add("Error reading file: " + e.getMessage());
+            return ResponseEntity.badRequest().body(preview);
+        } catch (RuntimeException e) {
+            preview.getErrors().add(e.getMessage());
+            return ResponseEntity.badRequest().body(preview);
+        }
+    }
+
+    // Rows are written straight to the response as they are read
+    private ResponseEntity<StreamingResponseBody> csv(String prefix, StreamingResponseBody body) {
+        String filename = prefix + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".csv";
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    private ResponseEntity<ImportResultDTO> badRequest(String error) {
+        ImportResultDTO result = new ImportResultDTO();
+        result.addError(error);
+        result.setSuccess(false);
+        return ResponseEntity.badRequest().body(result);
+    }
+}
@@ -63,6 +63,7 @@ public class DepartmentController {
         dto.setName(dept.getName());
         dto.setCode(dept.getCode());
         dto.setDescription(dept.getDescription());
+        dto.setGradingFormula(dept.getGradingFormula());
         if (dept.getHeadOfDepartment() != null) {
             dto.setHeadOfDepartmentId(dept.getHeadOfDepartment().getId());
             if (dept.getHeadOfDepartment().getUser() != null) {
@@ -1,19 +1,28 @@
 package com.example.lms.controller;
 
+import com.example.lms.dto.GradeImportPreviewDTO;
+import com.example.lms.dto.ImportJobDTO;
 import com.example.lms.dto.ImportResultDTO;
+import com.example.lms.model.ImportJob;
 import com.example.lms.service.ExcelService;
+import com.example.lms.service.ImportJobService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/excel")
@@ -23,25 +32,23 @@ public class ExcelController {
     @Autowired
     private ExcelService excelService;
 
+    @Autowired
+    private ImportJobService importJobService;
+
     /**
      * Download student template Excel file with current data
      */
     @GetMapping("/students/template")
     @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
-    public ResponseEntity<Resource> downloadStudentTemplate() {
-        try {
-            Resource resource = excelService.generateStudentTemplate();
-            
-            String filename = "students_template_" + 
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
-            
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<StreamingResponseBody> downloadStudentTemplate() {
+        String filename = "students_template_" + 
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
+        
+        // Rows are written straight to the response as they are read
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(excelService::writeStudentTemplate);
     }
 
     /**
@@ -49,20 +56,15 @@ public class ExcelController {
      */
     @GetMapping("/teachers/template")
     @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
-    public ResponseEntity<Resource> downloadTeacherTemplate() {
-        try {
-            Resource resource = excelService.generateTeacherTemplate();
-            
-            String filename = "teachers_template_" + 
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
-            
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<StreamingResponseBody> downloadTeacherTemplate() {
+        String filename = "teachers_template_" + 
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
+        
+        // Rows are written straight to the response as they are read
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(excelService::writeTeacherTemplate);
     }
 
     /**
@@ -128,38 +130,69 @@ public class ExcelController {
     }
 
     /**
-     * Import validated students to database
+     * Queue validated students for import; poll /api/excel/jobs/{id} for progress
      */
     @PostMapping("/students/import")
     @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
-    public ResponseEntity<String> importStudents(@RequestBody ImportResultDTO validationResult) {
+    public ResponseEntity<?> importStudents(@RequestBody ImportResultDTO validationResult, Authentication authentication) {
+        return submitImport(ImportJob.Type.STUDENTS, validationResult, authentication);
+    }
+
+    /**
+     * Queue validated teachers for import; poll /api/excel/jobs/{id} for progress
+     */
+    @PostMapping("/teachers/import")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<?> importTeachers(@RequestBody ImportResultDTO validationResult, Authentication authentication) {
+        return submitImport(ImportJob.Type.TEACHERS, validationResult, authentication);
+    }
+
+    private ResponseEntity<?> submitImport(ImportJob.Type type, ImportResultDTO validationResult,
+                                           Authentication authentication) {
         try {
             if (!validationResult.isSuccess() || validationResult.getValidRows() == 0) {
                 return ResponseEntity.badRequest().body("No valid data to import");
             }
             
-            int imported = excelService.importStudents(validationResult);
-            return ResponseEntity.ok(imported + " students imported successfully");
+            ImportJobDTO job = importJobService.submit(type, validationResult.getValidData(), authentication.getName());
+            return ResponseEntity.accepted().body(job);
         } catch (Exception e) {
-            return ResponseEntity.internalServerError().body("Error importing students: " + e.getMessage());
+            return ResponseEntity.internalServerError().body("Error starting import: " + e.getMessage());
         }
     }
 
     /**
-     * Import validated teachers to database
+     * Recent import jobs, newest first
      */
-    @PostMapping("/teachers/import")
+    @GetMapping("/jobs")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<List<ImportJobDTO>> getImportJobs() {
+        return ResponseEntity.ok(importJobService.getRecentJobs());
+    }
+
+    /**
+     * Rows processed, errors and throughput of one import job
+     */
+    @GetMapping("/jobs/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
-    public ResponseEntity<String> importTeachers(@RequestBody ImportResultDTO validationResult) {
+    public ResponseEntity<ImportJobDTO> getImportJob(@PathVariable Long id) {
         try {
-            if (!validationResult.isSuccess() || validationResult.getValidRows() == 0) {
-                return ResponseEntity.badRequest().body("No valid data to import");
-            }
-            
-            int imported = excelService.importTeachers(validationResult);
-            return ResponseEntity.ok(imported + " teachers imported successfully");
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().body("Error importing teachers: " + e.getMessage());
+            return ResponseEntity.ok(importJobService.getJob(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Continue a failed import job after its last committed chunk
+     */
+    @PostMapping("/jobs/{id}/resume")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<?> resumeImportJob(@PathVariable Long id) {
+        try {
+            return ResponseEntity.accepted().body(importJobService.resume(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
     
@@ -171,10 +204,11 @@ public class ExcelController {
     public ResponseEntity<Resource> downloadGradeTemplate(
             @RequestParam Long assignmentId,
             @RequestParam(required = false) Long groupId,
-            @RequestParam String gradeType) {
+            @RequestParam String gradeType,
+            Authentication authentication) {
         try {
             System.out.println("🔍 Downloading grade template - AssignmentId: " + assignmentId + ", GroupId: " + groupId + ", Type: " + gradeType);
-            Resource resource = excelService.generateGradeTemplate(assignmentId, groupId, gradeType);
+            Resource resource = excelService.generateGradeTemplate(assignmentId, groupId, gradeType, authentication.getName());
             
             String filename = "grades_template_" + 
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
@@ -183,6 +217,8 @@ public class ExcelController {
                     .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
                     .body(resource);
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (Exception e) {
             System.err.println("❌ Error generating grade template: " + e.getMessage());
             e.printStackTrace();
@@ -191,37 +227,59 @@ public class ExcelController {
     }
     
     /**
-     * Import grades from Excel file
+     * Preview a grade import: returns the marks that would change and a token to commit them
      */
-    @PostMapping("/grades/import")
+    @PostMapping("/grades/import/preview")
     @PreAuthorize("hasRole('TEACHER')")
-    public ResponseEntity<ImportResultDTO> importGrades(
+    public ResponseEntity<GradeImportPreviewDTO> previewGradeImport(
             @RequestParam("file") MultipartFile file,
             @RequestParam Long assignmentId,
             @RequestParam(required = false) Long groupId,
-            @RequestParam String gradeType) {
+            @RequestParam String gradeType,
+            Authentication authentication) {
+        GradeImportPreviewDTO preview = new GradeImportPreviewDTO();
         try {
             if (file.isEmpty()) {
-                ImportResultDTO result = new ImportResultDTO();
-                result.addError("File is empty");
-                result.setSuccess(false);
-                return ResponseEntity.badRequest().body(result);
+                preview.getErrors().add("File is empty");
+                return ResponseEntity.badRequest().body(preview);
             }
             
             if (!file.getOriginalFilename().endsWith(".xlsx")) {
-                ImportResultDTO result = new ImportResultDTO();
-                result.addError("Only .xlsx files are supported");
-                result.setSuccess(false);
-                return ResponseEntity.badRequest().body(result);
+                preview.getErrors().add("Only .xlsx files are supported");
+                return ResponseEntity.badRequest().body(preview);
             }
             
-            ImportResultDTO result = excelService.importGradesFromExcel(file, assignmentId, groupId, gradeType);
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(excelService.previewGradeImport(file, assignmentId, groupId, gradeType,
+                    authentication.getName()));
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (IOException e) {
+            preview.getErrors().add("Error reading file: " + e.getMessage());
+            return ResponseEntity.badRequest().body(preview);
+        } catch (RuntimeException e) {
+            preview.getErrors().add(e.getMessage());
+            return ResponseEntity.badRequest().body(preview);
+        }
+    }
+    
+    /**
+     * Save the grades of a preview
+     */
+    @PostMapping("/grades/import/commit")
+    @PreAuthorize("hasRole('TEACHER')")
+    public ResponseEntity<ImportResultDTO> commitGradeImport(@RequestParam String token,
+                                                             Authentication authentication) {
+        try {
+            ImportResultDTO result = excelService.commitGradeImport(token, authentication.getName());
+            return result.isSuccess() ? ResponseEntity.ok(result) : ResponseEntity.badRequest().body(result);
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Error saving imported grades: " + e.getMessage());
             ImportResultDTO result = new ImportResultDTO();
-            result.addError("Error reading file: " + e.getMessage());
+            result.addError(e.getMessage());
             result.setSuccess(false);
-            return ResponseEntity.internalServerError().body(result);
+            return ResponseEntity.badRequest().body(result);
         }
     }
 }
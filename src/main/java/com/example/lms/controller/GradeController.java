@@ -1,23 +1,36 @@
 package com.example.lms.controller;
 
+import com.example.lms.dto.AutoCreateResultDTO;
+import com.example.lms.dto.AverageMismatchDTO;
+import com.example.lms.dto.ClassStatisticsDTO;
 import com.example.lms.dto.GradeDTO;
+import com.example.lms.dto.GradeEventDTO;
+import com.example.lms.dto.GradeRestoreResultDTO;
+import com.example.lms.dto.GradeStateDTO;
 import com.example.lms.model.Grade;
-import com.example.lms.dto.GradeDTO;
 import com.example.lms.model.Student;
 import com.example.lms.model.Teacher;
 import com.example.lms.model.User;
+import com.example.lms.service.FinalGradeService;
+import com.example.lms.service.GradeHistoryService;
 import com.example.lms.service.GradeService;
+import com.example.lms.service.GradeStatisticsService;
+import com.example.lms.service.StudentAverageService;
 import com.example.lms.service.StudentService;
-import com.example.lms.service.TeacherService;
+import com.example.lms.repository.TeacherRepository;
 import com.example.lms.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/grades")
@@ -26,15 +39,28 @@ public class GradeController {
 
     private final GradeService gradeService;
     private final StudentService studentService;
-    private final TeacherService teacherService;
     private final UserRepository userRepository;
+    private final TeacherRepository teacherRepository;
+    private final StudentAverageService studentAverageService;
+    private final GradeStatisticsService gradeStatisticsService;
+    private final FinalGradeService finalGradeService;
+    private final GradeHistoryService gradeHistoryService;
 
     @Autowired
-    public GradeController(GradeService gradeService, StudentService studentService, TeacherService teacherService, UserRepository userRepository) {
+    public GradeController(GradeService gradeService, StudentService studentService,
+                           UserRepository userRepository, TeacherRepository teacherRepository,
+                           StudentAverageService studentAverageService,
+                           GradeStatisticsService gradeStatisticsService,
+                           FinalGradeService finalGradeService,
+                           GradeHistoryService gradeHistoryService) {
         this.gradeService = gradeService;
         this.studentService = studentService;
-        this.teacherService = teacherService;
         this.userRepository = userRepository;
+        this.teacherRepository = teacherRepository;
+        this.studentAverageService = studentAverageService;
+        this.gradeStatisticsService = gradeStatisticsService;
+        this.finalGradeService = finalGradeService;
+        this.gradeHistoryService = gradeHistoryService;
     }
 
     @GetMapping
@@ -77,9 +103,14 @@ public class GradeController {
     }
 
     @PostMapping
-    public GradeDTO createGrade(@RequestBody GradeDTO gradeDTO) {
-        Grade created = gradeService.createGrade(gradeDTO);
-        return toDto(created);
+    public ResponseEntity<GradeDTO> createGrade(@RequestBody GradeDTO gradeDTO) {
+        try {
+            Grade created = gradeService.createGrade(gradeDTO);
+            return ResponseEntity.ok(toDto(created));
+        } catch (IllegalArgumentException e) {
+            System.out.println("   ❌ Invalid grade: " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @PutMapping("/{id}")
@@ -101,14 +132,12 @@ public class GradeController {
             
             if (currentUser.getRole().toString().equals("TEACHER") || currentUser.getRole().toString().equals("HEAD_OF_DEPARTMENT")) {
                 // Find teacher record for this user
-                Teacher teacher = teacherService.getAllTeachers().stream()
-                    .filter(t -> t.getUser().getId().equals(currentUser.getId()))
-                    .findFirst()
+                Teacher teacher = teacherRepository.findByUserId(currentUser.getId())
                     .orElseThrow(() -> new RuntimeException("Teacher not found"));
                 
-                // Check if teacher/HoD can grade this student for this subject
+                // Check if teacher/HoD can grade this student for this subject (in-memory grant index)
                 // Even HoD must teach the group to enter grades
-                if (!gradeService.canTeacherGradeStudent(teacher.getId(), existingGrade.getStudent().getId(), existingGrade.getSubject().getId())) {
+                if (!gradeService.canTeacherGrade(teacher.getId(), existingGrade)) {
                     return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
                 }
             }
@@ -116,12 +145,125 @@ public class GradeController {
             Grade updated = gradeService.updateGrade(id, gradeDTO);
             System.out.println("   ✅ Grade updated successfully!");
             return ResponseEntity.ok(toDto(updated));
+        } catch (IllegalArgumentException e) {
+            System.out.println("   ❌ Invalid grade: " + e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (RuntimeException e) {
             System.out.println("   ❌ Error updating grade: " + e.getMessage());
             return ResponseEntity.notFound().build();
         }
     }
 
+    // Bulk save used by "Save All Grades": one round trip for a whole group
+    @PostMapping("/batch")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT', 'TEACHER')")
+    public ResponseEntity<List<GradeDTO>> upsertGrades(@RequestBody List<GradeDTO> gradeDTOs, Authentication authentication) {
+        User currentUser = userRepository.findByUsername(authentication.getName()).orElseThrow();
+        
+        // Teachers and HoDs may only grade the groups they teach; admins are not restricted
+        Long teacherId = null;
+        if (currentUser.getRole().toString().equals("TEACHER") || currentUser.getRole().toString().equals("HEAD_OF_DEPARTMENT")) {
+            Teacher teacher = teacherRepository.findByUserId(currentUser.getId()).orElse(null);
+            if (teacher == null) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            teacherId = teacher.getId();
+        }
+        
+        try {
+            List<Grade> saved = gradeService.upsertGrades(gradeDTOs, teacherId);
+            return ResponseEntity.ok(saved.stream().map(this::toDto).toList());
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (RuntimeException e) {
+            System.out.println("   ❌ Error saving grades: " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Recompute student_semester_average from grades (parallel chunks)
+    @PostMapping("/averages/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Map<String, Object> rebuildAverages() {
+        long start = System.currentTimeMillis();
+        int rows = studentAverageService.rebuildAll();
+        return Map.of("rows", rows, "elapsedMs", System.currentTimeMillis() - start);
+    }
+
+    // Compare student_semester_average with a live computation over grades
+    @GetMapping("/averages/consistency")
+    @PreAuthorize("hasRole('ADMIN')")
+    public List<AverageMismatchDTO> checkAverages() {
+        return studentAverageService.checkConsistency();
+    }
+
+    // Deliberation view: rankings, pass rate and per-subject mean/median/std-dev of a class
+    @GetMapping("/class/{classId}/statistics")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT', 'TEACHER')")
+    public ResponseEntity<ClassStatisticsDTO> getClassStatistics(
+            @PathVariable Long classId,
+            @RequestParam Integer semester,
+            @RequestParam(required = false) String academicYear) {
+        try {
+            return ResponseEntity.ok(gradeStatisticsService.getClassStatistics(classId, semester, academicYear));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Recompute every final grade of a class, e.g. after changing its grading formula
+    @PostMapping("/class/{classId}/recompute")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<Map<String, Object>> recomputeClassGrades(@PathVariable Long classId) {
+        try {
+            long start = System.currentTimeMillis();
+            int updated = finalGradeService.recomputeClass(classId);
+            return ResponseEntity.ok(Map.of("updated", updated, "elapsedMs", System.currentTimeMillis() - start));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Audit trail of one grade: who changed which mark, when, from what to what
+    @GetMapping("/{id}/history")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT', 'TEACHER')")
+    public ResponseEntity<List<GradeEventDTO>> getGradeHistory(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(gradeHistoryService.getHistory(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Every grade as it was at a point in time, replayed from the audit log
+    @GetMapping("/history/as-of")
+    @PreAuthorize("hasRole('ADMIN')")
+    public List<GradeStateDTO> getGradesAsOf(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime timestamp) {
+        return gradeHistoryService.getStateAsOf(timestamp);
+    }
+
+    // Undo grade edits made after a point in time (grades created or deleted since are only reported)
+    @PostMapping("/history/restore")
+    @PreAuthorize("hasRole('ADMIN')")
+    public GradeRestoreResultDTO restoreGradesAsOf(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime timestamp) {
+        return gradeHistoryService.restoreAsOf(timestamp);
+    }
+
+    // Create the missing empty grade rows of every student in a class (e.g. after enrolling a cohort)
+    @PostMapping("/class/{classId}/auto-create")
+    @PreAuthorize("hasAnyRole('ADMIN', 'HEAD_OF_DEPARTMENT')")
+    public ResponseEntity<AutoCreateResultDTO> autoCreateClassGrades(
+            @PathVariable Long classId,
+            @RequestParam(required = false) String academicYear) {
+        try {
+            return ResponseEntity.ok(gradeService.autoCreateGradesForClass(classId, academicYear));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteGrade(@PathVariable Long id) {
         gradeService.deleteGrade(id);
@@ -1,16 +1,19 @@
 package com.example.lms.controller;
 
-import com.example.lms.model.Notification;
+import com.example.lms.dto.NotificationDTO;
 import com.example.lms.model.NotificationType;
 import com.example.lms.model.User;
 import com.example.lms.repository.UserRepository;
 import com.example.lms.service.NotificationService;
+import com.example.lms.service.notification.NotificationStreams;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Map;
 
@@ -29,12 +32,15 @@ public class NotificationController {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private NotificationStreams notificationStreams;
+    
     /**
      * Get paginated notifications for the current user
      * Example: GET /api/notifications?page=0&size=20
      */
     @GetMapping
-    public Page<Notification> getNotifications(
+    public Page<NotificationDTO> getNotifications(
             Authentication authentication,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
@@ -66,6 +72,18 @@ public class NotificationController {
         return notificationService.getUnreadCountsByType(user);
     }
     
+    /**
+     * Live badge counts (Server-Sent Events), replaces polling counts-by-type
+     * Events: "counts" on connect ({"Grades": 3, "Feed": 1}), then "delta" on every change ({"Grades": -3});
+     * event ids are sequence numbers, a delta with an id not above the counts' id is already in the counts
+     * Example: GET /api/notifications/stream
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCounts(Authentication authentication) {
+        User user = getUserFromAuthentication(authentication);
+        return notificationStreams.open(user.getId());
+    }
+    
     /**
      * Mark a specific notification as read
      * Example: PUT /api/notifications/123/read
@@ -1,16 +1,21 @@
 package com.example.lms.controller;
 
 import com.example.lms.dto.StudentDTO;
+import com.example.lms.dto.TranscriptDTO;
 import com.example.lms.model.Student;
 import com.example.lms.model.User;
 import com.example.lms.service.StudentService;
+import com.example.lms.service.TranscriptService;
+import com.example.lms.repository.StudentRepository;
 import com.example.lms.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -21,11 +26,16 @@ public class StudentController {
 
     private final StudentService studentService;
     private final UserRepository userRepository;
+    private final StudentRepository studentRepository;
+    private final TranscriptService transcriptService;
 
     @Autowired
-    public StudentController(StudentService studentService, UserRepository userRepository) {
+    public StudentController(StudentService studentService, UserRepository userRepository,
+                             StudentRepository studentRepository, TranscriptService transcriptService) {
         this.studentService = studentService;
         this.userRepository = userRepository;
+        this.studentRepository = studentRepository;
+        this.transcriptService = transcriptService;
     }
 
     @GetMapping
@@ -51,6 +61,24 @@ public class StudentController {
         return ResponseEntity.ok(currentStudent);
     }
 
+    // Full transcript of the logged-in student; answers 304 until one of their grades changes
+    @GetMapping("/me/transcript")
+    public ResponseEntity<TranscriptDTO> getMyTranscript(Authentication authentication, WebRequest request) {
+        Long studentId = studentRepository.findIdByUsername(authentication.getName()).orElse(null);
+        if (studentId == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        
+        String etag = transcriptService.getETag(studentId);
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(transcriptService.getTranscript(studentId));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Student> getStudentById(@PathVariable Long id, Authentication authentication) {
         // Check authorization: students can only access their own data
@@ -1,16 +1,22 @@
 package com.example.lms.controller;
 
-import com.example.lms.dto.GradeRowDTO;
 import com.example.lms.dto.PostDTO;
+import com.example.lms.dto.TranscriptDTO;
 import com.example.lms.model.*;
 import com.example.lms.repository.*;
 import com.example.lms.service.PostService;
+import com.example.lms.service.TranscriptService;
+import com.example.lms.service.reference.ReferenceDataCache;
+import com.example.lms.service.reference.ReferenceDataSnapshot;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
 import java.util.*;
@@ -29,13 +35,7 @@ public class WebController {
     private TeacherRepository teacherRepository;
 
     @Autowired
-    private DepartmentRepository departmentRepository;
-
-    @Autowired
-    private StudentClassRepository classRepository;
-
-    @Autowired
-    private GroupRepository groupRepository;
+    private ReferenceDataCache referenceDataCache;
 
     @Autowired
     private PostService postService;
@@ -43,17 +43,14 @@ public class WebController {
     @Autowired
     private PostRepository postRepository;
     
-    @Autowired
-    private GradeRepository gradeRepository;
-    
     @Autowired
     private SubjectRepository subjectRepository;
     
     @Autowired
-    private ClassSubjectRepository classSubjectRepository;
+    private TeacherAssignmentRepository teacherAssignmentRepository;
     
     @Autowired
-    private TeacherAssignmentRepository teacherAssignmentRepository;
+    private TranscriptService transcriptService;
 
     // ========== PUBLIC ROUTES ==========
 
@@ -103,85 +100,44 @@ public class WebController {
     }
 
     @GetMapping("/student/grades")
-    public String studentGrades(Authentication authentication, Model model) {
+    public String studentGrades(Authentication authentication, Model model, WebRequest request,
+                                HttpServletResponse response) {
         User currentUser = userRepository.findByUsername(authentication.getName())
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        Student student = studentRepository.findAll().stream()
-                .filter(s -> s.getUser().getId().equals(currentUser.getId()))
-                .findFirst()
+        Student student = studentRepository.findByUserId(currentUser.getId())
                 .orElseThrow(() -> new RuntimeException("Student profile not found"));
 
-        System.out.println("📚 Loading grades for student: " + student.getUser().getUsername() + " (ID: " + student.getId() + ")");
-
         // Get current academic year (e.g., "2024-2025")
         String currentAcademicYear = getCurrentAcademicYear();
-        System.out.println("📅 Current academic year: " + currentAcademicYear);
         
-        // Get all class subjects for this student's class
-        List<ClassSubject> classSubjects = classSubjectRepository.findByStudentClassId(student.getStudentClass().getId());
-        System.out.println("📖 Found " + classSubjects.size() + " class subjects");
-        
-        // Get all grades for this student (using direct query instead of findAll to avoid cache)
-        List<Grade> studentGrades = gradeRepository.findByStudentId(student.getId());
-        System.out.println("📊 Found " + studentGrades.size() + " total grade records for student");
-        
-        // Debug: print each grade
-        for (Grade g : studentGrades) {
-            System.out.println("   - " + g.getSubject().getName() + " (Sem " + g.getSemester() + ", " + g.getAcademicYear() + "): Exam=" + g.getExamen() + ", TD=" + g.getTd() + ", TP=" + g.getTp() + ", Final=" + g.getFinalGrade());
-        }
-        
-        Map<String, Grade> gradeMap = studentGrades.stream()
-            .collect(Collectors.toMap(
-                g -> g.getSubject().getId() + "-" + g.getSemester() + "-" + g.getAcademicYear(),
-                g -> g,
-                (g1, g2) -> g1 // In case of duplicates, keep first
-            ));
-        
-        // Build GradeRowDTOs for all subjects
-        List<GradeRowDTO> gradeRows = new ArrayList<>();
-        
-        for (ClassSubject cs : classSubjects) {
-            GradeRowDTO row = new GradeRowDTO();
-            row.setSubjectId(cs.getSubject().getId());
-            row.setSubjectName(cs.getSubject().getName());
-            row.setCoefficient(cs.getSubject().getCoefficient());
-            row.setSemester(cs.getSemester());
-            row.setAcademicYear(currentAcademicYear);
-            
-            // Check if grade exists for current year
-            String key = cs.getSubject().getId() + "-" + cs.getSemester() + "-" + currentAcademicYear;
-            Grade grade = gradeMap.get(key);
-            
-            if (grade != null) {
-                row.setExamen(grade.getExamen());
-                row.setTd(grade.getTd());
-                row.setTp(grade.getTp());
-                row.setFinalGrade(grade.getFinalGrade());
-            }
-            // If grade is null, all values remain null (will display as "-")
-            
-            gradeRows.add(row);
+        // The page only changes with the student's grades (or when the academic year rolls over)
+        String etag = "\"page-" + transcriptService.getETag(student.getId()).replace("\"", "")
+                + "-" + currentAcademicYear + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
         }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
         
-        // Get all unique academic years from existing grades
-        List<String> years = gradeMap.values().stream()
-            .map(Grade::getAcademicYear)
-            .filter(y -> y != null && !y.isBlank())
-            .distinct()
-            .sorted(Comparator.reverseOrder())
-            .collect(Collectors.toList());
+        // All grade records of the student (every year), one cached projection query
+        TranscriptDTO transcript = transcriptService.getTranscript(student.getId());
         
-        // Add current year if not present
+        // Years with grades, most recent first, plus the current year
+        List<String> years = new ArrayList<>(transcript.getAcademicYears());
         if (!years.contains(currentAcademicYear)) {
             years.add(0, currentAcademicYear);
         }
+        // Open on the current year, or on the latest year that has grades
+        String selectedYear = transcript.getAcademicYears().contains(currentAcademicYear)
+                || transcript.getAcademicYears().isEmpty()
+                ? currentAcademicYear
+                : transcript.getAcademicYears().get(0);
 
         model.addAttribute("user", currentUser);
         model.addAttribute("student", student);
-        model.addAttribute("gradeRows", gradeRows);
+        model.addAttribute("gradeRows", transcript.getRows());
         model.addAttribute("years", years);
-        model.addAttribute("selectedYear", currentAcademicYear);
+        model.addAttribute("selectedYear", selectedYear);
         model.addAttribute("selectedSemester", 0); // 0 = All
 
         return "student/grades";
@@ -281,7 +237,8 @@ public class WebController {
 
         model.addAttribute("user", currentUser);
         model.addAttribute("teacher", teacher);
-        model.addAttribute("departments", departmentRepository.findAll());
+        ReferenceDataSnapshot reference = referenceDataCache.snapshot();
+        model.addAttribute("departments", reference.departments());
         
         // Get classes the teacher teaches (from their assignments)
         List<TeacherAssignment> teacherAssignments = teacherAssignmentRepository.findByTeacherId(teacher.getId());
@@ -292,7 +249,7 @@ public class WebController {
                 .collect(Collectors.toSet());
         
         // Filter classes to only those the teacher teaches
-        List<StudentClass> teacherClasses = classRepository.findAll().stream()
+        List<StudentClass> teacherClasses = reference.classes().stream()
                 .filter(c -> classIds.contains(c.getId()))
                 .toList();
         model.addAttribute("classes", teacherClasses);
@@ -309,7 +266,7 @@ public class WebController {
                 .map(ta -> ta.getStudentClass().getId())
                 .collect(Collectors.toSet());
         
-        List<Group> teacherGroups = groupRepository.findAll().stream()
+        List<Group> teacherGroups = reference.groups().stream()
                 .filter(g -> g.getStudentClass() != null && 
                             (groupIds.contains(g.getId()) || 
                              classIdsWithoutGroupFilter.contains(g.getStudentClass().getId())))
@@ -347,13 +304,11 @@ public class WebController {
 
         // Expand assignments with group=null into separate assignments for each group
         List<TeacherAssignment> expandedAssignments = new ArrayList<>();
+        ReferenceDataSnapshot reference = referenceDataCache.snapshot();
         for (TeacherAssignment assignment : rawAssignments) {
             if (assignment.getGroup() == null) {
                 // Get all groups for this class
-                List<Group> classGroups = groupRepository.findAll().stream()
-                        .filter(g -> g.getStudentClass() != null && 
-                                   g.getStudentClass().getId().equals(assignment.getStudentClass().getId()))
-                        .collect(Collectors.toList());
+                List<Group> classGroups = reference.groupsOfClass(assignment.getStudentClass().getId());
                 
                 // Create a virtual assignment for each group
                 for (Group group : classGroups) {
@@ -392,9 +347,10 @@ public class WebController {
         model.addAttribute("user", currentUser);
         model.addAttribute("students", studentRepository.findAll());
         model.addAttribute("teachers", teacherRepository.findAll());
-        model.addAttribute("departments", departmentRepository.findAll());
-        model.addAttribute("classes", classRepository.findAll());
-        model.addAttribute("groups", groupRepository.findAll());
+        ReferenceDataSnapshot reference = referenceDataCache.snapshot();
+        model.addAttribute("departments", reference.departments());
+        model.addAttribute("classes", reference.classes());
+        model.addAttribute("groups", reference.groups());
         model.addAttribute("users", userRepository.findAll());
         model.addAttribute("allPosts", postRepository.findAll());
 
@@ -404,9 +360,10 @@ public class WebController {
     @GetMapping("/admin/students")
     public String manageStudents(Model model) {
         model.addAttribute("students", studentRepository.findAll());
-        model.addAttribute("departments", departmentRepository.findAll());
-        model.addAttribute("classes", classRepository.findAll());
-        model.addAttribute("groups", groupRepository.findAll());
+        ReferenceDataSnapshot reference = referenceDataCache.snapshot();
+        model.addAttribute("departments", reference.departments());
+        model.addAttribute("classes", reference.classes());
+        model.addAttribute("groups", reference.groups());
 
         return "admin/students";
     }
@@ -414,7 +371,7 @@ public class WebController {
     @GetMapping("/admin/teachers")
     public String manageTeachers(Model model) {
         model.addAttribute("teachers", teacherRepository.findAll());
-        model.addAttribute("departments", departmentRepository.findAll());
+        model.addAttribute("departments", referenceDataCache.snapshot().departments());
 
         return "admin/teachers";
     }
@@ -442,11 +399,7 @@ public class WebController {
                 .orElseThrow(() -> new RuntimeException("Teacher profile not found"));
         
         // Find the department where this teacher is HOD
-        Department department = departmentRepository.findAll().stream()
-                .filter(d -> d.getHeadOfDepartment() != null && 
-                            d.getHeadOfDepartment().getId().equals(teacher.getId()))
-                .findFirst()
-                .orElse(null);
+        Department department = referenceDataCache.snapshot().departmentHeadedBy(teacher.getId());
         
         if (department == null) {
             // If not actually HOD, redirect to teacher dashboard
@@ -465,13 +418,9 @@ public class WebController {
         long teacherCount = teacherRepository.findAll().stream()
                 .filter(t -> t.getDepartment() != null && t.getDepartment().getId().equals(department.getId()))
                 .count();
-        long classCount = classRepository.findAll().stream()
-                .filter(c -> c.getDepartment() != null && c.getDepartment().getId().equals(department.getId()))
-                .count();
-        long groupCount = groupRepository.findAll().stream()
-                .filter(g -> g.getStudentClass() != null && g.getStudentClass().getDepartment() != null && 
-                            g.getStudentClass().getDepartment().getId().equals(department.getId()))
-                .count();
+        ReferenceDataSnapshot reference = referenceDataCache.snapshot();
+        long classCount = reference.classesOfDepartment(department.getId()).size();
+        long groupCount = reference.groupsOfDepartment(department.getId()).size();
         
         model.addAttribute("studentCount", studentCount);
         model.addAttribute("teacherCount", teacherCount);
@@ -492,11 +441,7 @@ public class WebController {
                 .orElseThrow(() -> new RuntimeException("Teacher profile not found"));
         
         // Find the department where this teacher is HOD
-        Department department = departmentRepository.findAll().stream()
-                .filter(d -> d.getHeadOfDepartment() != null && 
-                            d.getHeadOfDepartment().getId().equals(teacher.getId()))
-                .findFirst()
-                .orElse(null);
+        Department department = referenceDataCache.snapshot().departmentHeadedBy(teacher.getId());
         
         if (department == null) {
             // If not actually HOD, redirect to teacher dashboard
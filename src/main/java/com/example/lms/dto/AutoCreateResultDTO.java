@@ -0,0 +1,16 @@
+package com.example.lms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AutoCreateResultDTO {
+    private String academicYear;
+    // Students looked at and empty grade rows inserted for them
+    private Integer students;
+    private Integer created;
+    private Long elapsedMs;
+}
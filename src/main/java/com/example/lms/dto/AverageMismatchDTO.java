@@ -0,0 +1,17 @@
+package com.example.lms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AverageMismatchDTO {
+    private Long studentId;
+    private String academicYear;
+    private Integer semester;
+    // null when the row is missing on that side
+    private Double storedAverage;
+    private Double liveAverage;
+}
@@ -0,0 +1,23 @@
+package com.example.lms.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class ClassStatisticsDTO {
+    private Long classId;
+    private String className;
+    private Integer semester;
+    private String academicYear;
+    // Students enrolled in the class; only those with at least one final grade are ranked
+    private Integer studentCount;
+    private Integer rankedCount;
+    private Integer passCount;
+    private Double passRate;
+    private Double classAverage;
+    private List<StudentRankingDTO> rankings;
+    private List<SubjectStatisticsDTO> subjects;
+    private LocalDateTime computedAt;
+}
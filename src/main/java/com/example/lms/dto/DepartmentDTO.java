@@ -10,4 +10,6 @@ public class DepartmentDTO {
     private String description;
     private Long headOfDepartmentId;
     private String headOfDepartmentName;
+    // Grading formula code; null keeps the current one, blank resets to the default
+    private String gradingFormula;
 }
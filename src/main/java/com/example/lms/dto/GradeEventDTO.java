@@ -0,0 +1,29 @@
+package com.example.lms.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class GradeEventDTO {
+    private Long id;
+    private Long gradeId;
+    // CREATE, UPDATE, DELETE, RECOMPUTE or RESTORE
+    private String type;
+    // null for changes made by the system (seeding, bulk recompute)
+    private Long actorId;
+    private String actorName;
+    private LocalDateTime occurredAt;
+    private Double oldExamen;
+    private Double newExamen;
+    private Double oldTd;
+    private Double newTd;
+    private Double oldTp;
+    private Double newTp;
+    private Double oldContinuousEvaluation;
+    private Double newContinuousEvaluation;
+    private Double oldFinalGrade;
+    private Double newFinalGrade;
+}
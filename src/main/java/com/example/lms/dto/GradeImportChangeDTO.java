@@ -0,0 +1,19 @@
+package com.example.lms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GradeImportChangeDTO {
+    // Excel row number (1-based)
+    private Integer row;
+    private String studentId;
+    private String studentName;
+    // Null when the student has no grade row yet (created on commit)
+    private Long gradeId;
+    private Double previousValue;
+    private Double newValue;
+}
@@ -0,0 +1,24 @@
+package com.example.lms.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class GradeImportPreviewDTO {
+    // Pass back to commit the previewed values; null when nothing can be applied
+    private String token;
+    private LocalDateTime expiresAt;
+    private Long assignmentId;
+    private String gradeType;
+    // Non-empty student rows read from the sheet
+    private Integer totalRows;
+    // Rows whose value equals the stored one
+    private Integer unchangedRows;
+    private List<GradeImportChangeDTO> changes = new ArrayList<>();
+    private List<String> errors = new ArrayList<>();
+}
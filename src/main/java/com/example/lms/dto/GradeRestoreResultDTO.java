@@ -0,0 +1,22 @@
+package com.example.lms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GradeRestoreResultDTO {
+    private LocalDateTime asOf;
+    // Grades whose marks were set back to their value at asOf
+    private Integer restored;
+    // Grades created or deleted since asOf: reported only, never recreated or removed
+    private List<Long> createdSince;
+    private List<Long> deletedSince;
+    // Grades edited while the restore ran: left as they are, restore again to include them
+    private List<Long> changedDuringRestore;
+}
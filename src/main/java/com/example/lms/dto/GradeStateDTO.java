@@ -0,0 +1,22 @@
+package com.example.lms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GradeStateDTO {
+    private Long gradeId;
+    private Long studentId;
+    private Long subjectId;
+    private Long classId;
+    private Integer semester;
+    private String academicYear;
+    private Double examen;
+    private Double td;
+    private Double tp;
+    private Double continuousEvaluation;
+    private Double finalGrade;
+}
@@ -0,0 +1,30 @@
+package com.example.lms.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class ImportJobDTO {
+    private Long id;
+    private String type;
+    private String status;
+    private Integer totalRows;
+    // Rows committed so far (the resume checkpoint)
+    private Integer processedRows;
+    private Integer errorCount;
+    private List<String> errors;
+    private String failureReason;
+    // Rows committed per second by the current (or last) run
+    private Double rowsPerSecond;
+    // Live stage of a running job: HASHING or PERSISTING
+    private String phase;
+    private Integer passwordsHashed;
+    private Integer passwordsToHash;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
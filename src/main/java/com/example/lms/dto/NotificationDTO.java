@@ -0,0 +1,22 @@
+package com.example.lms.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class NotificationDTO {
+    private Long id;
+    // GRADE_PUBLISHED, URGENT_POST or SCHEDULE_CHANGE
+    private String type;
+    private String title;
+    private String message;
+    private String relatedEntityType;
+    private Long relatedEntityId;
+    private String relatedEntityUrl;
+    private boolean read;
+    private LocalDateTime createdAt;
+    private LocalDateTime readAt;
+}
@@ -0,0 +1,19 @@
+package com.example.lms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentRankingDTO {
+    // Equal averages share a rank (1, 2, 2, 4)
+    private Integer rank;
+    private Long studentId;
+    private String studentName;
+    private String studentIdNumber;
+    private Double average;
+    private Integer gradedSubjects;
+    private Boolean passed;
+}
@@ -0,0 +1,19 @@
+package com.example.lms.dto;
+
+import lombok.Data;
+
+@Data
+public class SubjectStatisticsDTO {
+    private Long subjectId;
+    private String subjectName;
+    private String subjectCode;
+    private Double coefficient;
+    private Integer gradedCount;
+    // null when nobody has a final grade in the subject yet
+    private Double mean;
+    private Double median;
+    private Double standardDeviation;
+    private Double min;
+    private Double max;
+    private Double passRate;
+}
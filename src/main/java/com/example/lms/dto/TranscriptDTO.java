@@ -0,0 +1,19 @@
+package com.example.lms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TranscriptDTO {
+    private Long studentId;
+    // Grade version the rows were built from (bumped on every grade change of the student)
+    private Long version;
+    // Years that have grade records, most recent first
+    private List<String> academicYears;
+    private List<GradeRowDTO> rows;
+}
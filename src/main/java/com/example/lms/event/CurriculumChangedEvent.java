@@ -0,0 +1,18 @@
+package com.example.lms.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Published after class subjects were added, removed or edited, or a subject's coefficient changed.
+ * An empty classIds means every class may be affected; subjectIds lists subjects whose coefficient
+ * changed, which invalidates the stored averages of every student graded in them.
+ */
+@Getter
+@AllArgsConstructor
+public class CurriculumChangedEvent {
+    private final Set<Long> classIds;
+    private final Set<Long> subjectIds;
+}
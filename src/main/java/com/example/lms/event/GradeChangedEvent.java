@@ -0,0 +1,17 @@
+package com.example.lms.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Published after grades of one or more classes were created, updated or deleted.
+ * Listeners that cache per-class or per-student data use it to drop stale entries.
+ */
+@Getter
+@AllArgsConstructor
+public class GradeChangedEvent {
+    private final Set<Long> classIds;
+    private final Set<Long> studentIds;
+}
@@ -0,0 +1,20 @@
+package com.example.lms.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Published by the unread count cache once a committed NotificationCountsChangedEvent has been applied,
+ * once per user. The sequence number orders it against the cache's count snapshots: a snapshot
+ * with a sequence at or above it already includes these deltas.
+ */
+@Getter
+@AllArgsConstructor
+public class NotificationCountsAppliedEvent {
+    private final Long userId;
+    // category (Grades, Feed, Schedule) -> delta
+    private final Map<String, Integer> deltas;
+    private final long sequence;
+}
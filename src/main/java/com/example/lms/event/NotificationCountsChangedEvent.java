@@ -0,0 +1,16 @@
+package com.example.lms.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Published when notifications were created or marked as read.
+ * Carries the change of each user's unread badge counts: userId -> category (Grades, Feed, Schedule) -> delta.
+ */
+@Getter
+@AllArgsConstructor
+public class NotificationCountsChangedEvent {
+    private final Map<Long, Map<String, Integer>> deltas;
+}
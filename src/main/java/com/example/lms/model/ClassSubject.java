@@ -34,4 +34,8 @@ public class ClassSubject {
 
     @Column(name = "is_active")
     private Boolean isActive = true;
+
+    // Grading formula code (see GradingFormulaRegistry); null falls back to the department's
+    @Column(name = "grading_formula", length = 50)
+    private String gradingFormula;
 }
@@ -28,4 +28,8 @@ public class Department {
     @ManyToOne
     @JoinColumn(name = "head_of_department_id")
     private Teacher headOfDepartment;
+
+    // Default grading formula of the department's class subjects; null means the Algerian formula
+    @Column(name = "grading_formula", length = 50)
+    private String gradingFormula;
 }
@@ -60,34 +60,7 @@ public class Grade {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt = LocalDateTime.now();
 
-    // Calculate final grade automatically (Algerian system)
-    // Formula: ((exam * 2) + ((TD + TP) / 2)) / 3
-    // If no TP: ((exam * 2) + TD) / 3
-    public void calculateFinalGrade() {
-        if (examen == null) {
-            this.finalGrade = null;
-            return;
-        }
-        
-        if (tp != null && td != null) {
-            // Both TD and TP exist: ((exam * 2) + ((TD + TP) / 2)) / 3
-            this.finalGrade = ((examen * 2) + ((td + tp) / 2)) / 3;
-        } else if (td != null) {
-            // Only TD exists: ((exam * 2) + TD) / 3
-            this.finalGrade = ((examen * 2) + td) / 3;
-        } else if (continuousEvaluation != null) {
-            // Fallback to continuous evaluation
-            this.finalGrade = ((examen * 2) + continuousEvaluation) / 3;
-        } else {
-            // Only exam grade
-            this.finalGrade = examen;
-        }
-        
-        // Round to 2 decimal places
-        if (this.finalGrade != null) {
-            this.finalGrade = Math.round(this.finalGrade * 100.0) / 100.0;
-        }
-    }
+    // finalGrade is set by FinalGradeService with the class subject's GradingFormula
 
     // Auto-update timestamps
     @PrePersist
@@ -99,6 +72,5 @@ public class Grade {
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
-        calculateFinalGrade();
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.example.lms.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Append-only audit record of one grade mutation (grade_events)
+ * Rows are fixed width: marks are stored as SMALLINT centi-points (12.75 -> 1275,
+ * -1 = no mark) and the timestamp as epoch milliseconds. Key columns (student,
+ * subject, ...) are only filled for CREATE/DELETE, which is enough to replay history.
+ * Written in batches by GradeEventRecorder, never updated.
+ */
+@Entity
+@Table(name = "grade_events", indexes = {
+    @Index(name = "idx_grade_events_grade", columnList = "grade_id, occurred_at"),
+    @Index(name = "idx_grade_events_time", columnList = "occurred_at")
+})
+@Data
+@NoArgsConstructor
+public class GradeEvent {
+
+    public enum Type { CREATE, UPDATE, DELETE, RECOMPUTE, RESTORE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "grade_id", nullable = false)
+    private long gradeId;
+
+    // Type ordinal
+    @Column(name = "event_type", nullable = false)
+    private short eventType;
+
+    // User id of whoever made the change, null for system changes
+    @Column(name = "actor_id")
+    private Long actorId;
+
+    @Column(name = "occurred_at", nullable = false)
+    private long occurredAt;
+
+    @Column(name = "student_id")
+    private Long studentId;
+
+    @Column(name = "subject_id")
+    private Long subjectId;
+
+    @Column(name = "class_id")
+    private Long classId;
+
+    private Short semester;
+
+    @Column(name = "academic_year", length = 20)
+    private String academicYear;
+
+    @Column(name = "old_examen", nullable = false)
+    private short oldExamen;
+
+    @Column(name = "new_examen", nullable = false)
+    private short newExamen;
+
+    @Column(name = "old_td", nullable = false)
+    private short oldTd;
+
+    @Column(name = "new_td", nullable = false)
+    private short newTd;
+
+    @Column(name = "old_tp", nullable = false)
+    private short oldTp;
+
+    @Column(name = "new_tp", nullable = false)
+    private short newTp;
+
+    @Column(name = "old_continuous", nullable = false)
+    private short oldContinuous;
+
+    @Column(name = "new_continuous", nullable = false)
+    private short newContinuous;
+
+    @Column(name = "old_final", nullable = false)
+    private short oldFinal;
+
+    @Column(name = "new_final", nullable = false)
+    private short newFinal;
+
+    public Type getType() {
+        return Type.values()[eventType];
+    }
+}
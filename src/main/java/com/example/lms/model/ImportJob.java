@@ -0,0 +1,83 @@
+package com.example.lms.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Background student/teacher import (import_jobs)
+ * processedRows is the checkpoint: it is written in the same transaction as each chunk of rows,
+ * so an interrupted job resumes exactly after the last committed chunk.
+ * The payload holds the validated rows (JSON) until the job completes, or for a retention period
+ * after it fails. A running job is leased to one node, which renews heartbeatAt while it works.
+ */
+@Entity
+@Table(name = "import_jobs", indexes = {
+    @Index(name = "idx_import_jobs_status", columnList = "status")
+})
+@Data
+@NoArgsConstructor
+public class ImportJob {
+
+    public enum Type { STUDENTS, TEACHERS }
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Type type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    @Column(name = "total_rows", nullable = false)
+    private int totalRows;
+
+    // Rows committed so far: the next run starts here
+    @Column(name = "processed_rows", nullable = false)
+    private int processedRows;
+
+    // Checkpoint the current run started from (throughput is measured from there)
+    @Column(name = "resumed_from_row", nullable = false)
+    private int resumedFromRow;
+
+    @Column(name = "error_count", nullable = false)
+    private int errorCount;
+
+    // Row errors, one per line (first ImportJobServiceImpl.MAX_STORED_ERRORS only)
+    @Column(columnDefinition = "TEXT")
+    private String errors;
+
+    // Why the last run stopped, when it failed as a whole
+    @Column(name = "failure_reason", length = 1000)
+    private String failureReason;
+
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_by")
+    private Long createdBy;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    // Set by each claim; heartbeats, checkpoints and the final status only apply with the current one
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+}
@@ -8,78 +8,44 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 /**
- * Notification entity to store user notifications
- * Each notification is linked to a user and can be of different types (grades, posts, schedule)
+ * Notification received by a user: a thin recipient row pointing to the shared content
+ * (NotificationPayload), with this user's read state
+ * Ids grow with creation time, so a user's notifications are paged newest first by id
  */
 @Entity
-@Table(name = "notifications", indexes = {
+@Table(name = "notification_recipient", indexes = {
     @Index(name = "idx_user_read", columnList = "user_id, is_read"),
-    @Index(name = "idx_user_created", columnList = "user_id, created_at")
+    @Index(name = "idx_user_id", columnList = "user_id, id")
 })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Notification {
-    
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
-    
+
     /**
      * The user who receives this notification
      */
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
-    
-    /**
-     * Type of notification (GRADE_PUBLISHED, URGENT_POST, SCHEDULE_CHANGE)
-     */
-    @Enumerated(EnumType.STRING)
-    @Column(nullable = false)
-    private NotificationType type;
-    
-    /**
-     * Short title for the notification
-     */
-    @Column(nullable = false, length = 200)
-    private String title;
-    
-    /**
-     * Detailed message
-     */
-    @Column(columnDefinition = "TEXT")
-    private String message;
-    
-    /**
-     * Link to the related entity (e.g., "Post", "Grade")
-     */
-    @Column(length = 50)
-    private String relatedEntityType;
-    
-    /**
-     * ID of the related entity
-     */
-    private Long relatedEntityId;
-    
+
     /**
-     * URL to navigate to when clicking the notification
+     * Title, message, type and link, shared by every recipient
      */
-    @Column(length = 500)
-    private String relatedEntityUrl;
-    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "payload_id", nullable = false)
+    private NotificationPayload payload;
+
     /**
      * Whether the notification has been read
      */
     @Column(name = "is_read", nullable = false)
     private boolean read = false;
-    
-    /**
-     * When the notification was created
-     */
-    @Column(name = "created_at", nullable = false)
-    private LocalDateTime createdAt = LocalDateTime.now();
-    
+
     /**
      * When the notification was read (null if not read yet)
      */
@@ -0,0 +1,100 @@
+package com.example.lms.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Notification fan-out waiting to be delivered (notification_outbox)
+ * Written in the transaction of the change that triggers it, then drained by NotificationOutboxWorker:
+ * an AUDIENCE intent notifies every student of a group, class or department (lastUserId is the
+ * resume point), a GRADE intent notifies one student of a grade change; its message is written at
+ * delivery, from the grade as it is then. Rows are deleted once delivered and kept as FAILED after
+ * the last retry. Written and claimed with plain SQL (NotificationOutbox, NotificationOutboxWorker).
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+    @Index(name = "idx_notification_outbox_due", columnList = "status, available_at"),
+    @Index(name = "idx_notification_outbox_claim", columnList = "claim_token")
+})
+@Data
+@NoArgsConstructor
+public class NotificationIntent {
+
+    public enum Kind { AUDIENCE, GRADE }
+
+    public enum Status { PENDING, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Kind kind;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    // AUDIENCE: NotificationWriter.Audience name and the group/class/department id
+    @Column(length = 20)
+    private String audience;
+
+    @Column(name = "audience_id")
+    private Long audienceId;
+
+    // GRADE: the student's user id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private NotificationType type;
+
+    @Column(length = 200)
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    @Column(name = "related_entity_type", length = 50)
+    private String relatedEntityType;
+
+    @Column(name = "related_entity_id")
+    private Long relatedEntityId;
+
+    @Column(name = "related_entity_url", length = 500)
+    private String relatedEntityUrl;
+
+    // GRADE: the grade was created rather than edited ("Grade Published")
+    @Column(name = "grade_created", nullable = false)
+    private boolean gradeCreated;
+
+    // AUDIENCE: students up to this user id have been notified
+    @Column(name = "last_user_id")
+    private Long lastUserId;
+
+    // AUDIENCE: content shared by the recipients, created with the first chunk
+    @Column(name = "payload_id")
+    private Long payloadId;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    // Set by the worker that holds the row; the lease ends at availableAt
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Not claimed before this time (grade coalescing window, retry backoff, lease)
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt;
+}
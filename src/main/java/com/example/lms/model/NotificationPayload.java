@@ -0,0 +1,66 @@
+package com.example.lms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Content of a notification, stored once however many users receive it
+ * (a department post is one payload and one thin Notification row per student)
+ */
+@Entity
+@Table(name = "notification_payload")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPayload {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /**
+     * Type of notification (GRADE_PUBLISHED, URGENT_POST, SCHEDULE_CHANGE)
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private NotificationType type;
+    
+    /**
+     * Short title for the notification
+     */
+    @Column(nullable = false, length = 200)
+    private String title;
+    
+    /**
+     * Detailed message
+     */
+    @Column(columnDefinition = "TEXT")
+    private String message;
+    
+    /**
+     * Link to the related entity (e.g., "Post", "Grade")
+     */
+    @Column(length = 50)
+    private String relatedEntityType;
+    
+    /**
+     * ID of the related entity
+     */
+    private Long relatedEntityId;
+    
+    /**
+     * URL to navigate to when clicking the notification
+     */
+    @Column(length = 500)
+    private String relatedEntityUrl;
+    
+    /**
+     * When the notification was created
+     */
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,24 @@
+package com.example.lms.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Single-row counter (reference_data_version) bumped whenever departments, classes or groups change.
+ * Every node compares it with the version of its cached reference data before using it.
+ */
+@Entity
+@Table(name = "reference_data_version")
+@Data
+@NoArgsConstructor
+public class ReferenceDataVersion {
+
+    public static final long ROW_ID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private long version;
+}
@@ -1,5 +1,6 @@
 package com.example.lms.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -8,14 +9,21 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "students")
+// Audience indexes: post notifications select the user_id of a group, class or department
+@Table(name = "students", indexes = {
+    @Index(name = "idx_students_group", columnList = "group_id, user_id"),
+    @Index(name = "idx_students_class", columnList = "class_id, user_id"),
+    @Index(name = "idx_students_department", columnList = "department_id, user_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Student {
 
+    // Pooled sequence, like User
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "students_seq")
+    @SequenceGenerator(name = "students_seq", sequenceName = "students_seq", allocationSize = 50)
     private Long id;
 
     @OneToOne
@@ -47,4 +55,10 @@ public class Student {
     private LocalDate enrollmentDate;
 
     private String status = "active";
+
+    // Bumped with SQL in every transaction that changes the student's grades (transcript and grade template caches)
+    @JsonIgnore
+    @Column(name = "grade_version", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private long gradeVersion;
 }
@@ -0,0 +1,68 @@
+package com.example.lms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Materialized semester average for one student
+ * Kept up to date incrementally by the grade write paths so that an average
+ * lookup is a single primary-key read instead of a scan over grades.
+ */
+@Entity
+@Table(name = "student_semester_average")
+@IdClass(StudentSemesterAverage.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentSemesterAverage {
+
+    @Id
+    @Column(name = "student_id")
+    private Long studentId;
+
+    @Id
+    @Column(name = "academic_year", length = 20)
+    private String academicYear;
+
+    @Id
+    private Integer semester;
+
+    /**
+     * Sum of final grade x subject coefficient over graded subjects
+     */
+    @Column(name = "weighted_sum", nullable = false)
+    private double weightedSum;
+
+    /**
+     * Sum of subject coefficients over graded subjects
+     */
+    @Column(name = "coefficient_sum", nullable = false)
+    private double coefficientSum;
+
+    /**
+     * Number of subjects that have a final grade
+     */
+    @Column(name = "graded_subjects", nullable = false)
+    private int gradedSubjects;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public double getAverage() {
+        return coefficientSum > 0 ? weightedSum / coefficientSum : 0.0;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long studentId;
+        private String academicYear;
+        private Integer semester;
+    }
+}
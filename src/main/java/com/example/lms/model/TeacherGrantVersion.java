@@ -0,0 +1,24 @@
+package com.example.lms.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Single-row counter (teacher_grant_version) bumped whenever teacher assignments change.
+ * Every node compares it with the version of its cached grade grants before using them.
+ */
+@Entity
+@Table(name = "teacher_grant_version")
+@Data
+@NoArgsConstructor
+public class TeacherGrantVersion {
+
+    public static final long ROW_ID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private long version;
+}
@@ -0,0 +1,12 @@
+package com.example.lms.repository;
+
+import com.example.lms.model.GradeEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface GradeEventRepository extends JpaRepository<GradeEvent, Long> {
+    List<GradeEvent> findByGradeIdOrderByOccurredAtAscIdAsc(long gradeId);
+}
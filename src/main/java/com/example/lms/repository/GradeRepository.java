@@ -1,10 +1,19 @@
 package com.example.lms.repository;
 
+import com.example.lms.dto.GradeRowDTO;
 import com.example.lms.model.Grade;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface GradeRepository extends JpaRepository<Grade, Long> {
@@ -15,4 +24,74 @@ public interface GradeRepository extends JpaRepository<Grade, Long> {
     List<Grade> findByStudentIdAndAcademicYearAndSemester(Long studentId, String academicYear, Integer semester);
     List<Grade> findByStudentIdAndAcademicYear(Long studentId, String academicYear);
     Optional<Grade> findByStudentIdAndSubjectIdAndSemesterAndAcademicYear(Long studentId, Long subjectId, Integer semester, String academicYear);
+
+    // Bulk grade save: load every edited row (with student/user/subject) in a single query
+    @Query("SELECT g FROM Grade g " +
+           "JOIN FETCH g.student s " +
+           "JOIN FETCH s.user " +
+           "JOIN FETCH g.subject " +
+           "WHERE g.id IN :ids")
+    List<Grade> findAllWithStudentByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT g FROM Grade g " +
+           "JOIN FETCH g.student s " +
+           "JOIN FETCH s.user " +
+           "JOIN FETCH g.subject " +
+           "WHERE g.subject.id = :subjectId AND g.semester = :semester " +
+           "AND g.academicYear = :academicYear AND s.id IN :studentIds")
+    List<Grade> findForStudents(@Param("subjectId") Long subjectId,
+                                @Param("semester") Integer semester,
+                                @Param("academicYear") String academicYear,
+                                @Param("studentIds") Collection<Long> studentIds);
+
+    // Full multi-year transcript of a student, projected straight into display rows
+    @Query("SELECT new com.example.lms.dto.GradeRowDTO(s.id, s.name, s.coefficient, g.semester, g.academicYear, " +
+           "g.examen, g.td, g.tp, g.finalGrade) " +
+           "FROM Grade g JOIN g.subject s " +
+           "WHERE g.student.id = :studentId " +
+           "ORDER BY g.academicYear DESC, g.semester, s.name")
+    List<GradeRowDTO> findTranscriptRows(@Param("studentId") Long studentId);
+
+    // Grade sheet of an assignment: every student of the class/group paired with its grade (or null)
+    @Query("SELECT s, g FROM Student s " +
+           "JOIN FETCH s.user " +
+           "LEFT JOIN Grade g ON g.student = s AND g.subject.id = :subjectId " +
+           "AND g.semester = :semester AND g.academicYear = :academicYear " +
+           "WHERE s.studentClass.id = :classId AND (:groupId IS NULL OR s.group.id = :groupId) " +
+           "ORDER BY s.studentId")
+    List<Object[]> findStudentGradeSheet(@Param("classId") Long classId,
+                                         @Param("groupId") Long groupId,
+                                         @Param("subjectId") Long subjectId,
+                                         @Param("semester") Integer semester,
+                                         @Param("academicYear") String academicYear);
+
+    // Gap-fill for the grade sheet: one INSERT ... SELECT for every student still missing a row
+    @Modifying
+    @Query(value = "INSERT INTO grades (student_id, subject_id, class_id, semester, academic_year, entered_at, updated_at) " +
+           "SELECT s.id, :subjectId, s.class_id, :semester, :academicYear, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+           "FROM students s " +
+           "WHERE s.class_id = :classId AND (CAST(:groupId AS BIGINT) IS NULL OR s.group_id = :groupId) " +
+           "AND NOT EXISTS (SELECT 1 FROM grades g WHERE g.student_id = s.id AND g.subject_id = :subjectId " +
+           "AND g.semester = :semester AND g.academic_year = :academicYear)",
+           nativeQuery = true)
+    int insertMissingGrades(@Param("classId") Long classId,
+                            @Param("groupId") Long groupId,
+                            @Param("subjectId") Long subjectId,
+                            @Param("semester") Integer semester,
+                            @Param("academicYear") String academicYear);
+
+    // Grade template rows of an assignment, as plain columns: student ID, last/first name, class, group,
+    // then the current TP, TD and exam marks (null when the student has no grade row yet)
+    @Query("SELECT s.studentId, u.lastName, u.firstName, c.name, gr.name, g.tp, g.td, g.examen " +
+           "FROM Student s JOIN s.user u JOIN s.studentClass c LEFT JOIN s.group gr " +
+           "LEFT JOIN Grade g ON g.student = s AND g.subject.id = :subjectId " +
+           "AND g.semester = :semester AND g.academicYear = :academicYear " +
+           "WHERE c.id = :classId AND (:groupId IS NULL OR gr.id = :groupId) " +
+           "ORDER BY s.studentId")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Object[]> streamGradeTemplateRows(@Param("classId") Long classId,
+                                             @Param("groupId") Long groupId,
+                                             @Param("subjectId") Long subjectId,
+                                             @Param("semester") Integer semester,
+                                             @Param("academicYear") String academicYear);
 }
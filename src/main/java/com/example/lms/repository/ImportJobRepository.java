@@ -0,0 +1,65 @@
+package com.example.lms.repository;
+
+import com.example.lms.model.ImportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ImportJobRepository extends JpaRepository<ImportJob, Long> {
+    List<ImportJob> findByStatusInOrderByIdAsc(Collection<ImportJob.Status> statuses);
+    List<ImportJob> findTop20ByOrderByIdDesc();
+    boolean existsByIdAndClaimToken(Long id, String claimToken);
+
+    // Checkpoint write, joins the transaction of the chunk it records; 0 once another claim took the job
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.processedRows = :processedRows, j.errorCount = :errorCount, " +
+           "j.errors = :errors WHERE j.id = :id AND j.claimToken = :token")
+    int checkpoint(@Param("id") Long id, @Param("token") String token, @Param("processedRows") int processedRows,
+                   @Param("errorCount") int errorCount, @Param("errors") String errors);
+
+    // Compare-and-set claim: a queued job, or a running one whose node stopped renewing its lease
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.status = :running, j.claimToken = :token, j.resumedFromRow = j.processedRows, " +
+           "j.startedAt = :now, j.heartbeatAt = :now, j.finishedAt = null, j.failureReason = null " +
+           "WHERE j.id = :id AND j.payload IS NOT NULL AND (j.status = :queued " +
+           "OR (j.status = :running AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)))")
+    int claim(@Param("id") Long id, @Param("token") String token, @Param("queued") ImportJob.Status queued,
+              @Param("running") ImportJob.Status running, @Param("now") LocalDateTime now,
+              @Param("staleBefore") LocalDateTime staleBefore);
+
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.heartbeatAt = :now " +
+           "WHERE j.id = :id AND j.claimToken = :token AND j.status = :running")
+    int heartbeat(@Param("id") Long id, @Param("token") String token, @Param("running") ImportJob.Status running,
+                  @Param("now") LocalDateTime now);
+
+    // The payload (passwords included) is dropped with the run that completed it
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.status = :completed, j.finishedAt = :now, j.payload = null " +
+           "WHERE j.id = :id AND j.claimToken = :token AND j.status = :running")
+    int complete(@Param("id") Long id, @Param("token") String token, @Param("running") ImportJob.Status running,
+                 @Param("completed") ImportJob.Status completed, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.status = :failed, j.finishedAt = :now, j.failureReason = :reason " +
+           "WHERE j.id = :id AND j.claimToken = :token AND j.status = :running")
+    int fail(@Param("id") Long id, @Param("token") String token, @Param("running") ImportJob.Status running,
+             @Param("failed") ImportJob.Status failed, @Param("now") LocalDateTime now, @Param("reason") String reason);
+
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.status = :queued WHERE j.id = :id AND j.status = :failed AND j.payload IS NOT NULL")
+    int requeue(@Param("id") Long id, @Param("failed") ImportJob.Status failed, @Param("queued") ImportJob.Status queued);
+
+    // Failed jobs keep their rows (passwords included) only for the retention period
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.payload = null " +
+           "WHERE j.status = :failed AND j.payload IS NOT NULL AND j.finishedAt < :cutoff")
+    int purgePayloads(@Param("failed") ImportJob.Status failed, @Param("cutoff") LocalDateTime cutoff);
+}
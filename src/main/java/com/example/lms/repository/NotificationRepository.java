@@ -5,6 +5,7 @@ import com.example.lms.model.NotificationType;
 import com.example.lms.model.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -16,14 +17,16 @@ import java.util.List;
 
 /**
  * Repository for Notification CRUD operations
+ * Notifications are recipient rows; type, title and message live in their NotificationPayload
  */
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
     
     /**
-     * Get all notifications for a user, ordered by most recent first
+     * Get all notifications for a user with their payload, ordered by most recent first
      */
-    Page<Notification> findByUserOrderByCreatedAtDesc(User user, Pageable pageable);
+    @EntityGraph(attributePaths = "payload")
+    Page<Notification> findByUserOrderByIdDesc(User user, Pageable pageable);
     
     /**
      * Count unread notifications for a user
@@ -34,13 +37,14 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
      * Get count of unread notifications by type for a user
      * Returns a list of [NotificationType, count] pairs
      */
-    @Query("SELECT n.type, COUNT(n) FROM Notification n WHERE n.user = :user AND n.read = false GROUP BY n.type")
+    @Query("SELECT p.type, COUNT(n) FROM Notification n JOIN n.payload p WHERE n.user = :user AND n.read = false GROUP BY p.type")
     List<Object[]> countUnreadByType(@Param("user") User user);
     
     /**
      * Get all unread notifications for a user
      */
-    List<Notification> findByUserAndReadFalseOrderByCreatedAtDesc(User user);
+    @EntityGraph(attributePaths = "payload")
+    List<Notification> findByUserAndReadFalseOrderByIdDesc(User user);
     
     /**
      * Mark specific notifications as read
@@ -51,18 +55,21 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     void markAsRead(@Param("ids") List<Long> ids);
     
     /**
-     * Mark all notifications of a specific type as read for a user
+     * Mark one notification as read unless it already is
+     * @return 1 when this call marked it, 0 otherwise
      */
     @Modifying
     @Transactional
-    @Query("UPDATE Notification n SET n.read = true, n.readAt = CURRENT_TIMESTAMP WHERE n.user = :user AND n.type = :type AND n.read = false")
-    void markTypeAsRead(@Param("user") User user, @Param("type") NotificationType type);
+    @Query("UPDATE Notification n SET n.read = true, n.readAt = CURRENT_TIMESTAMP WHERE n.id = :id AND n.read = false")
+    int markAsReadIfUnread(@Param("id") Long id);
     
     /**
-     * Mark all notifications as read for a user
+     * Mark all notifications of a specific type as read for a user
+     * @return number of notifications marked
      */
     @Modifying
     @Transactional
-    @Query("UPDATE Notification n SET n.read = true, n.readAt = CURRENT_TIMESTAMP WHERE n.user = :user AND n.read = false")
-    void markAllAsRead(@Param("user") User user);
+    @Query("UPDATE Notification n SET n.read = true, n.readAt = CURRENT_TIMESTAMP WHERE n.user = :user AND n.read = false " +
+           "AND EXISTS (SELECT 1 FROM NotificationPayload p WHERE p.id = n.payload.id AND p.type = :type)")
+    int markTypeAsRead(@Param("user") User user, @Param("type") NotificationType type);
 }
@@ -1,10 +1,17 @@
 package com.example.lms.repository;
 
 import com.example.lms.model.Student;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface StudentRepository extends JpaRepository<Student, Long> {
@@ -13,4 +20,26 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
     List<Student> findByGroupId(Long groupId);
     List<Student> findByDepartmentId(Long departmentId);
     Optional<Student> findByUserId(Long userId);
+
+    // Id only: lets cached per-student endpoints answer without loading the entity graph
+    @Query("SELECT s.id FROM Student s WHERE s.user.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
+    // Export rows as plain columns: nothing enters the persistence context, so the stream stays flat.
+    // Student ID, first/last name, email, birth date, department code, class, group, phone, username, status
+    @Query("SELECT s.studentId, u.firstName, u.lastName, u.email, s.dateOfBirth, d.code, c.name, g.name, " +
+           "u.phone, u.username, s.status FROM Student s JOIN s.user u JOIN s.department d " +
+           "JOIN s.studentClass c LEFT JOIN s.group g ORDER BY s.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Object[]> streamTemplateRows();
+
+    // "sum of grade_version/student count" of a class: moves with every committed grade change of its
+    // students and with students joining or leaving it, whichever node made the change
+    @Query(value = "SELECT CAST(COALESCE(SUM(grade_version), 0) AS VARCHAR) || '/' || CAST(COUNT(*) AS VARCHAR) " +
+                   "FROM students WHERE class_id = :classId", nativeQuery = true)
+    String findGradeVersionOfClass(@Param("classId") Long classId);
+
+    // Which of the given studentIds already exist (import stage 1, one IN list per chunk)
+    @Query("SELECT s.studentId FROM Student s WHERE s.studentId IN :ids")
+    List<String> findExistingStudentIds(@Param("ids") Collection<String> ids);
 }
@@ -0,0 +1,9 @@
+package com.example.lms.repository;
+
+import com.example.lms.model.StudentSemesterAverage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StudentSemesterAverageRepository extends JpaRepository<StudentSemesterAverage, StudentSemesterAverage.Key> {
+}
@@ -1,12 +1,31 @@
 package com.example.lms.repository;
 
 import com.example.lms.model.Teacher;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface TeacherRepository extends JpaRepository<Teacher, Long> {
     Optional<Teacher> findByTeacherId(String teacherId);
     Optional<Teacher> findByUserId(Long userId);
+
+    // Export rows as plain columns (see StudentRepository.streamTemplateRows).
+    // Teacher ID, first/last name, email, department code, specialization, office, phone, username, hire date
+    @Query("SELECT t.teacherId, u.firstName, u.lastName, u.email, d.code, t.specialization, t.officeLocation, " +
+           "u.phone, u.username, t.hireDate FROM Teacher t JOIN t.user u JOIN t.department d ORDER BY t.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Object[]> streamTemplateRows();
+
+    // Which of the given teacherIds already exist (import stage 1, one IN list per chunk)
+    @Query("SELECT t.teacherId FROM Teacher t WHERE t.teacherId IN :ids")
+    List<String> findExistingTeacherIds(@Param("ids") Collection<String> ids);
 }
@@ -10,6 +10,8 @@ public interface ClassSubjectService {
     List<ClassSubject> getClassSubjectsByClassId(Long classId);
     List<ClassSubject> getClassSubjectsByClassIdAndSemester(Long classId, Integer semester);
     ClassSubject createClassSubject(Long classId, Long subjectId, Integer semester, Double coefficient);
+    ClassSubject createClassSubject(Long classId, Long subjectId, Integer semester, Double coefficient, String gradingFormula);
+    ClassSubject updateGradingFormula(Long id, String gradingFormula);
     void deleteClassSubject(Long id);
     void deleteByClassId(Long classId);
 }
@@ -1,22 +1,37 @@
 package com.example.lms.service;
 
+import com.example.lms.dto.GradeImportPreviewDTO;
 import com.example.lms.dto.ImportResultDTO;
+import com.example.lms.dto.ImportRowDTO;
+import com.example.lms.service.excel.ImportCheckpoint;
 import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
 
 public interface ExcelService {
     
     /**
-     * Generate Excel template with current students data
+     * Stream Excel template with current students data to the given output (SXSSF, constant memory)
      */
-    Resource generateStudentTemplate() throws IOException;
+    void writeStudentTemplate(OutputStream out) throws IOException;
     
     /**
-     * Generate Excel template with current teachers data
+     * Stream Excel template with current teachers data to the given output (SXSSF, constant memory)
      */
-    Resource generateTeacherTemplate() throws IOException;
+    void writeTeacherTemplate(OutputStream out) throws IOException;
+    
+    /**
+     * Write all students as CSV (RFC 4180, UTF-8), same columns as the student template
+     */
+    void writeStudentCsv(OutputStream out) throws IOException;
+    
+    /**
+     * Write all teachers as CSV, same columns as the teacher template
+     */
+    void writeTeacherCsv(OutputStream out) throws IOException;
     
     /**
      * Validate and parse student Excel file
@@ -33,35 +48,78 @@ public interface ExcelService {
     ImportResultDTO validateTeacherExcel(MultipartFile file) throws IOException;
     
     /**
-     * Import validated students to database
-     * @param result Previously validated import result
-     * @return Number of students imported
+     * Same as validateStudentExcel for a CSV file with the student template columns
      */
-    int importStudents(ImportResultDTO result);
+    ImportResultDTO validateStudentCsv(MultipartFile file) throws IOException;
     
     /**
-     * Import validated teachers to database
-     * @param result Previously validated import result
-     * @return Number of teachers imported
+     * Same as validateTeacherExcel for a CSV file with the teacher template columns
      */
-    int importTeachers(ImportResultDTO result);
+    ImportResultDTO validateTeacherCsv(MultipartFile file) throws IOException;
+    
+    /**
+     * Import validated students to database, in chunks committed with their checkpoint
+     * @param rows Previously validated rows
+     * @param checkpoint Row to start from, and where committed chunks and row errors are recorded
+     * @return Number of students imported by this run
+     */
+    int importStudents(List<ImportRowDTO> rows, ImportCheckpoint checkpoint);
+    
+    /**
+     * Import validated teachers to database, in chunks committed with their checkpoint
+     * @param rows Previously validated rows
+     * @param checkpoint Row to start from, and where committed chunks and row errors are recorded
+     * @return Number of teachers imported by this run
+     */
+    int importTeachers(List<ImportRowDTO> rows, ImportCheckpoint checkpoint);
     
     /**
      * Generate Excel template for grade entry with student data pre-filled
      * @param assignmentId Teacher assignment ID
      * @param groupId Group ID (optional, for specific group)
-     * @param gradeType Type of grade (TP, TD, EXAM)
+     * @param gradeType Type of grade (TP, TD, EXAM), its current marks pre-fill the Note column
+     * @param username Requesting teacher, must own the assignment
      * @return Excel file as Resource
      */
-    Resource generateGradeTemplate(Long assignmentId, Long groupId, String gradeType) throws IOException;
+    Resource generateGradeTemplate(Long assignmentId, Long groupId, String gradeType, String username) throws IOException;
     
     /**
-     * Import grades from Excel file
-     * @param file Excel file containing grades
+     * Checks a grade export before its response is committed: throws AccessDeniedException when the
+     * teacher may not read this assignment or group, RuntimeException when the assignment does not exist
+     */
+    void checkGradeExport(Long assignmentId, Long groupId, String username);
+    
+    /**
+     * Write the grade sheet of an assignment as CSV: Matricule, Nom, Prénom, Note, Section, Groupe
+     * @param gradeType Type of grade (TP, TD, EXAM), its current marks fill the Note column
+     * @param username Requesting teacher, must own the assignment
+     */
+    void writeGradeCsv(Long assignmentId, Long groupId, String gradeType, String username, OutputStream out)
+            throws IOException;
+    
+    /**
+     * Dry run of a grade import: nothing is written
+     * @param file Excel file containing grades (the grade template)
      * @param assignmentId Teacher assignment ID
      * @param groupId Group ID (optional)
      * @param gradeType Type of grade (TP, TD, EXAM)
+     * @param username Uploading teacher, must own the assignment
+     * @return the marks that would change, with a token to commit them
+     */
+    GradeImportPreviewDTO previewGradeImport(MultipartFile file, Long assignmentId, Long groupId, String gradeType,
+                                             String username) throws IOException;
+    
+    /**
+     * Apply a previewed grade import in one transaction
+     * @param token Token returned by previewGradeImport (usable once)
+     * @param username Teacher who uploaded the preview
      * @return ImportResultDTO with import results
      */
-    ImportResultDTO importGradesFromExcel(MultipartFile file, Long assignmentId, Long groupId, String gradeType) throws IOException;
+    ImportResultDTO commitGradeImport(String token, String username);
+    
+    /**
+     * Same as previewGradeImport for a CSV file laid out like writeGradeCsv
+     */
+    GradeImportPreviewDTO previewGradeImportCsv(MultipartFile file, Long assignmentId, Long groupId, String gradeType,
+                                                String username) throws IOException;
 }
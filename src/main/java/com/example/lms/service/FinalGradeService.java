@@ -0,0 +1,37 @@
+package com.example.lms.service;
+
+import com.example.lms.model.Grade;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Single place where final grades are computed, with the GradingFormula
+ * configured for the grade's class subject (or its department)
+ */
+public interface FinalGradeService {
+
+    /**
+     * Set grade.finalGrade from its exam/TD/TP/continuous evaluation marks
+     */
+    void applyFinalGrade(Grade grade);
+
+    /**
+     * Same as applyFinalGrade for many grades: formulas are resolved once per class
+     * and values are computed column-wise per formula
+     */
+    void applyFinalGrades(Collection<Grade> grades);
+
+    /**
+     * Recompute and store the final grade of every grade of a class, bypassing the entity layer.
+     * Stored semester averages of the affected students are refreshed.
+     * @return number of grades whose final grade changed
+     */
+    int recomputeClass(Long classId);
+
+    /**
+     * Same as recomputeClass for the given grade rows only (rows written with plain SQL)
+     * @return gradeId -> final grade after the recompute, for every given row
+     */
+    Map<Long, Double> recomputeGrades(Collection<Long> gradeIds);
+}
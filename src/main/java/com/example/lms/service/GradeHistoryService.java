@@ -0,0 +1,31 @@
+package com.example.lms.service;
+
+import com.example.lms.dto.GradeEventDTO;
+import com.example.lms.dto.GradeRestoreResultDTO;
+import com.example.lms.dto.GradeStateDTO;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Reads and replays the grade_events audit log
+ */
+public interface GradeHistoryService {
+
+    /**
+     * Every recorded change of one grade, oldest first
+     */
+    List<GradeEventDTO> getHistory(Long gradeId);
+
+    /**
+     * Marks of every grade as they were at the given time, rebuilt from the log and the current rows
+     */
+    List<GradeStateDTO> getStateAsOf(LocalDateTime asOf);
+
+    /**
+     * Put the marks of existing grades back to their value at the given time.
+     * Each restored grade gets a RESTORE event, so the restore itself can be undone.
+     * Grades edited after the log was replayed are left as they are and reported.
+     */
+    GradeRestoreResultDTO restoreAsOf(LocalDateTime asOf);
+}
@@ -1,7 +1,9 @@
 package com.example.lms.service;
 
+import com.example.lms.dto.AutoCreateResultDTO;
 import com.example.lms.dto.GradeDTO;
 import com.example.lms.model.Grade;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,7 +18,17 @@ public interface GradeService {
     
     // New methods for Phase 1
     void autoCreateGradesForStudent(Long studentId);
+
+    // Cohort enrollment: missing (student, subject, semester) rows found with one anti-join, batch-inserted
+    AutoCreateResultDTO autoCreateGradesForClass(Long classId, String academicYear);
+    AutoCreateResultDTO autoCreateGradesForStudents(Collection<Long> studentIds);
     boolean canTeacherGradeStudent(Long teacherId, Long studentId, Long subjectId);
+    // Same check for an already loaded grade, answered from the in-memory grant index
+    boolean canTeacherGrade(Long teacherId, Grade grade);
     Double calculateStudentAverage(Long studentId, String academicYear, Integer semester);
     List<Grade> getGradesByAssignment(Long assignmentId, Long groupId);
+
+    // Bulk save ("Save All Grades"): one transaction, one load query, batched writes
+    List<Grade> upsertGrades(List<GradeDTO> gradeDTOs);
+    List<Grade> upsertGrades(List<GradeDTO> gradeDTOs, Long teacherId);
 }
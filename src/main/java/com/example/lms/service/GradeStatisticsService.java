@@ -0,0 +1,13 @@
+package com.example.lms.service;
+
+import com.example.lms.dto.ClassStatisticsDTO;
+
+public interface GradeStatisticsService {
+
+    /**
+     * Rankings, pass rate and per-subject statistics of a class for one semester.
+     * Cached until a grade of the class changes.
+     * @param academicYear null for the latest year that has grades for the class
+     */
+    ClassStatisticsDTO getClassStatistics(Long classId, Integer semester, String academicYear);
+}
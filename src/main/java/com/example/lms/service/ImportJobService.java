@@ -0,0 +1,31 @@
+package com.example.lms.service;
+
+import com.example.lms.dto.ImportJobDTO;
+import com.example.lms.dto.ImportRowDTO;
+import com.example.lms.model.ImportJob;
+
+import java.util.List;
+
+/**
+ * Runs validated student/teacher imports in the background, one job at a time
+ */
+public interface ImportJobService {
+
+    /**
+     * Store the rows as a new job and queue it; returns at once
+     * @param username user starting the import
+     */
+    ImportJobDTO submit(ImportJob.Type type, List<ImportRowDTO> rows, String username);
+
+    ImportJobDTO getJob(Long id);
+
+    /**
+     * The 20 most recent jobs, newest first
+     */
+    List<ImportJobDTO> getRecentJobs();
+
+    /**
+     * Queue a failed job again; it continues after its last committed chunk
+     */
+    ImportJobDTO resume(Long id);
+}
@@ -1,8 +1,10 @@
 package com.example.lms.service;
 
+import com.example.lms.dto.NotificationDTO;
 import com.example.lms.model.Notification;
 import com.example.lms.model.NotificationType;
 import com.example.lms.model.User;
+import com.example.lms.service.notification.NotificationWriter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -21,16 +23,28 @@ public interface NotificationService {
                            String entityType, Long entityId, String url);
     
     /**
-     * Create notifications for multiple users (batch operation)
-     * Used when notifying a whole class or group
+     * Create notifications for multiple users (batch operation, in the caller's transaction)
      */
     void createNotificationsForUsers(List<User> users, NotificationType type, String title, 
                                     String message, String entityType, Long entityId, String url);
     
     /**
-     * Get paginated notifications for a user
+     * Queue the same notification for every student of a group, class or department (post audiences)
+     * The intent commits with the caller's transaction and is delivered by the outbox worker
      */
-    Page<Notification> getUserNotifications(User user, Pageable pageable);
+    void createNotificationsForStudents(NotificationWriter.Audience audience, Long audienceId, NotificationType type,
+                                        String title, String message, String entityType, Long entityId, String url);
+    
+    /**
+     * Persist already-built notifications in one batch
+     * Used when each recipient gets a different message (e.g. bulk grade save)
+     */
+    void createNotifications(List<Notification> notifications);
+    
+    /**
+     * Get paginated notifications for a user, newest first
+     */
+    Page<NotificationDTO> getUserNotifications(User user, Pageable pageable);
     
     /**
      * Get total unread notification count for a user
@@ -39,7 +53,7 @@ public interface NotificationService {
     
     /**
      * Get unread counts grouped by type (for sidebar badges)
-     * Returns map like: {"GRADE_PUBLISHED": 3, "URGENT_POST": 1}
+     * Returns map like: {"Grades": 3, "Feed": 1}
      */
     Map<String, Integer> getUnreadCountsByType(User user);
     
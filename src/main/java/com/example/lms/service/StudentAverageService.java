@@ -0,0 +1,41 @@
+package com.example.lms.service;
+
+import com.example.lms.dto.AverageMismatchDTO;
+
+import java.util.List;
+
+/**
+ * Maintains the student_semester_average table
+ */
+public interface StudentAverageService {
+
+    /**
+     * Weighted semester average, read from the materialized table
+     * (computed and stored on first access if the row does not exist yet)
+     */
+    Double getAverage(Long studentId, String academicYear, Integer semester);
+
+    /**
+     * Apply one grade change to the stored sums.
+     * The grade row must already be flushed: a missing average row is rebuilt from grades.
+     */
+    void applyChange(Long studentId, String academicYear, Integer semester, Double coefficient,
+                     Double oldFinalGrade, Double newFinalGrade);
+
+    /**
+     * Recompute the stored rows of the given students from grades
+     */
+    void refreshStudents(List<Long> studentIds);
+
+    /**
+     * Recompute the whole table from grades in parallel chunks
+     * @return number of rows written
+     */
+    int rebuildAll();
+
+    /**
+     * Compare the stored rows with a live computation over grades
+     * @return rows that differ (empty when consistent)
+     */
+    List<AverageMismatchDTO> checkConsistency();
+}
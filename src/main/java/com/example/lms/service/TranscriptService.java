@@ -0,0 +1,16 @@
+package com.example.lms.service;
+
+import com.example.lms.dto.TranscriptDTO;
+
+public interface TranscriptService {
+
+    /**
+     * All grade rows of a student across academic years, cached until one of the student's grades changes
+     */
+    TranscriptDTO getTranscript(Long studentId);
+
+    /**
+     * Strong ETag of the current transcript version (no database access)
+     */
+    String getETag(Long studentId);
+}
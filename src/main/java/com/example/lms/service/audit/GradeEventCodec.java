@@ -0,0 +1,58 @@
+package com.example.lms.service.audit;
+
+import com.example.lms.model.Grade;
+
+/**
+ * Fixed-width encoding of grade marks for grade_events: centi-points in a short, -1 for "no mark".
+ * Grade writes only accept marks from 0 to 20, and final grades are rounded to 2 decimals, so
+ * stored marks round-trip exactly. Values a short cannot hold are rejected instead of wrapped.
+ */
+public final class GradeEventCodec {
+
+    public static final short NONE = -1;
+
+    // Positions in a snapshot
+    public static final int EXAMEN = 0;
+    public static final int TD = 1;
+    public static final int TP = 2;
+    public static final int CONTINUOUS = 3;
+    public static final int FINAL = 4;
+
+    private static final short[] EMPTY = {NONE, NONE, NONE, NONE, NONE};
+
+    private GradeEventCodec() {
+    }
+
+    public static short encode(Double value) {
+        return value != null ? encode(value.doubleValue()) : NONE;
+    }
+
+    public static short encode(double value) {
+        if (Double.isNaN(value)) {
+            return NONE;
+        }
+        long centiPoints = Math.round(value * 100.0);
+        if (centiPoints < 0 || centiPoints > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Mark cannot be recorded: " + value);
+        }
+        return (short) centiPoints;
+    }
+
+    public static Double decode(short value) {
+        return value == NONE ? null : value / 100.0;
+    }
+
+    /**
+     * Current marks of a grade (exam, TD, TP, continuous evaluation, final)
+     */
+    public static short[] snapshot(Grade grade) {
+        return new short[]{
+                encode(grade.getExamen()), encode(grade.getTd()), encode(grade.getTp()),
+                encode(grade.getContinuousEvaluation()), encode(grade.getFinalGrade())
+        };
+    }
+
+    public static short[] empty() {
+        return EMPTY.clone();
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.lms.service.audit;
+
+import com.example.lms.model.Grade;
+import com.example.lms.model.GradeEvent;
+import com.example.lms.model.User;
+import com.example.lms.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appends grade mutations to grade_events off the request thread.
+ * Events are queued after the surrounding transaction commits and written by one background
+ * thread in JDBC batches. The queue is bounded: when it is full the caller writes its event
+ * itself, so a burst slows requests down instead of losing audit rows.
+ * Rows of a batch that fails are kept and retried ahead of new ones (counted in
+ * lms.grade.events.write.failures, waiting rows in lms.grade.events.retry.pending).
+ */
+@Component
+public class GradeEventRecorder {
+
+    private static final int BATCH_SIZE = 500;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long RETRY_BACKOFF_MS = 2000;
+
+    private static final String INSERT =
+            "INSERT INTO grade_events (grade_id, event_type, actor_id, occurred_at, " +
+            "student_id, subject_id, class_id, semester, academic_year, " +
+            "old_examen, new_examen, old_td, new_td, old_tp, new_tp, " +
+            "old_continuous, new_continuous, old_final, new_final) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final BlockingQueue<Object[]> queue;
+    // Rows of failed batches, written before the queue
+    private final Queue<Object[]> retries = new ConcurrentLinkedQueue<>();
+    private final Map<String, Long> actorIds = new ConcurrentHashMap<>();
+    private final Thread writer;
+    // Held while a batch is written, so flush() returns only once queued events are in the table
+    private final Object writeLock = new Object();
+    private volatile boolean running = true;
+    private final Counter failures;
+
+    @Autowired
+    public GradeEventRecorder(JdbcTemplate jdbcTemplate, UserRepository userRepository, MeterRegistry meterRegistry,
+                              @Value("${grade.events.queue-capacity:10000}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userRepository = userRepository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.failures = meterRegistry.counter("lms.grade.events.write.failures");
+        Gauge.builder("lms.grade.events.retry.pending", retries, Queue::size).register(meterRegistry);
+        this.writer = new Thread(this::drain, "grade-event-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * User id of the authenticated caller, null outside a request (seeding, scheduled jobs)
+     */
+    public Long currentActorId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return actorIds.computeIfAbsent(authentication.getName(),
+                username -> userRepository.findByUsername(username).map(User::getId).orElse(null));
+    }
+
+    /**
+     * Record a change of a managed grade
+     * @param before snapshot taken before the change ({@link GradeEventCodec#snapshot}), null for CREATE
+     */
+    public void record(GradeEvent.Type type, Grade grade, short[] before) {
+        short[] after = type == GradeEvent.Type.DELETE ? GradeEventCodec.empty() : GradeEventCodec.snapshot(grade);
+        boolean withKey = type == GradeEvent.Type.CREATE || type == GradeEvent.Type.DELETE;
+        enqueueAfterCommit(row(type, grade.getId(), before, after,
+                withKey ? grade.getStudent().getId() : null,
+                withKey ? grade.getSubject().getId() : null,
+                withKey && grade.getStudentClass() != null ? grade.getStudentClass().getId() : null,
+                withKey ? grade.getSemester() : null,
+                withKey ? grade.getAcademicYear() : null));
+    }
+
+    /**
+     * Record an empty grade row inserted with plain SQL (bulk auto-creation)
+     */
+    public void recordCreate(long gradeId, long studentId, long subjectId, Long classId, int semester,
+                             String academicYear) {
+        enqueueAfterCommit(row(GradeEvent.Type.CREATE, gradeId, null, GradeEventCodec.empty(),
+                studentId, subjectId, classId, semester, academicYear));
+    }
+
+    /**
+     * Record an UPDATE-like change made with plain SQL (bulk recompute, restore)
+     */
+    public void record(GradeEvent.Type type, long gradeId, short[] before, short[] after) {
+        enqueueAfterCommit(row(type, gradeId, before, after, null, null, null, null, null));
+    }
+
+    private Object[] row(GradeEvent.Type type, long gradeId, short[] before, short[] after,
+                         Long studentId, Long subjectId, Long classId, Integer semester, String academicYear) {
+        if (before == null) {
+            before = GradeEventCodec.empty();
+        }
+        return new Object[]{
+                gradeId, (short) type.ordinal(), currentActorId(), System.currentTimeMillis(),
+                studentId, subjectId, classId, semester != null ? semester.shortValue() : null, academicYear,
+                before[GradeEventCodec.EXAMEN], after[GradeEventCodec.EXAMEN],
+                before[GradeEventCodec.TD], after[GradeEventCodec.TD],
+                before[GradeEventCodec.TP], after[GradeEventCodec.TP],
+                before[GradeEventCodec.CONTINUOUS], after[GradeEventCodec.CONTINUOUS],
+                before[GradeEventCodec.FINAL], after[GradeEventCodec.FINAL]
+        };
+    }
+
+    private void enqueueAfterCommit(Object[] row) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(row);
+                }
+            });
+        } else {
+            enqueue(row);
+        }
+    }
+
+    private void enqueue(Object[] row) {
+        if (running && queue.offer(row)) {
+            LockSupport.unpark(writer);
+            return;
+        }
+        write(Collections.singletonList(row));
+    }
+
+    private void drain() {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        while (running) {
+            boolean written;
+            // Rows are taken under the lock, so flush() cannot return while one is in flight
+            synchronized (writeLock) {
+                takeRetries(batch, BATCH_SIZE);
+                queue.drainTo(batch, BATCH_SIZE - batch.size());
+                written = batch.isEmpty() || write(batch);
+            }
+            if (!written) {
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else if (batch.isEmpty()) {
+                // Woken up by enqueue()
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+            }
+            batch.clear();
+        }
+    }
+
+    private void takeRetries(List<Object[]> batch, int max) {
+        Object[] row;
+        while (batch.size() < max && (row = retries.poll()) != null) {
+            batch.add(row);
+        }
+    }
+
+    /**
+     * Write everything queued so far on the calling thread (history reads and replays call this first)
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            List<Object[]> rest = new ArrayList<>();
+            takeRetries(rest, Integer.MAX_VALUE);
+            queue.drainTo(rest);
+            for (int i = 0; i < rest.size(); i += BATCH_SIZE) {
+                write(rest.subList(i, Math.min(i + BATCH_SIZE, rest.size())));
+            }
+        }
+    }
+
+    /**
+     * @return false if the batch failed; its rows are then queued for a retry
+     */
+    private boolean write(List<Object[]> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT, batch);
+            return true;
+        } catch (Exception e) {
+            failures.increment();
+            retries.addAll(batch);
+            System.err.println("❌ Failed to write " + batch.size() + " grade events, will retry: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // No interrupt: the writer may be inside a JDBC call, it notices the flag within a second
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(5000);
+        // Whatever is still queued is written on the shutdown thread
+        flush();
+        if (!retries.isEmpty()) {
+            System.err.println("❌ " + retries.size() + " grade events could not be written before shutdown");
+        }
+    }
+}
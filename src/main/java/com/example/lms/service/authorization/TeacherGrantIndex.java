@@ -0,0 +1,175 @@
+package com.example.lms.service.authorization;
+
+import com.example.lms.model.TeacherGrantVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory view of teacher_subjects used to authorize grade edits.
+ * Per teacher and subject it holds either "all groups" or a sorted array of group ids, built on
+ * first use with one query. Entries are keyed on teacher_grant_version, which TeacherAssignmentService
+ * bumps through {@link #changed()} after every assignment change: each lookup reads it (one primary key
+ * lookup) and reloads an entry built at an older version, so a change made on any node applies on all.
+ * Like the existing checks it ignores class, semester and year: a grant covers the subject.
+ */
+@Component
+public class TeacherGrantIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, TeacherGrants> grants = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public TeacherGrantIndex(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hits = meterRegistry.counter("lms.authorization.grants.hits");
+        this.misses = meterRegistry.counter("lms.authorization.grants.misses");
+        Gauge.builder("lms.authorization.grants.teachers", grants, Map::size)
+                .description("Teachers whose grants are cached")
+                .register(meterRegistry);
+        Gauge.builder("lms.authorization.grants.hit.ratio", this,
+                        index -> {
+                            double total = index.hits.count() + index.misses.count();
+                            return total > 0 ? index.hits.count() / total : 0.0;
+                        })
+                .description("Share of grade authorization checks answered without loading teacher_subjects")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether the teacher may grade the subject for a student of the given group
+     * @param groupId student's group, null when the student has none (only "all groups" grants match)
+     */
+    public boolean canGrade(Long teacherId, Long subjectId, Long groupId) {
+        if (teacherId == null || subjectId == null) {
+            return false;
+        }
+        return grantsOf(teacherId).allows(subjectId, groupId);
+    }
+
+    /**
+     * The teacher's grants as of the current teacher_grant_version, for checking many grades with one lookup
+     */
+    public TeacherGrants grantsOf(Long teacherId) {
+        long version = databaseVersion();
+        TeacherGrants cached = grants.get(teacherId);
+        if (cached != null && cached.version == version) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        // The version is read before the rows, so a change committed in between only makes
+        // these grants newer than their version and triggers one more load
+        TeacherGrants loaded = load(teacherId, version);
+        grants.merge(teacherId, loaded, (old, fresh) -> old.version > fresh.version ? old : fresh);
+        return loaded;
+    }
+
+    /**
+     * Record a teacher assignment change; call it after the write
+     */
+    public void changed() {
+        String bump = "UPDATE teacher_grant_version SET version = version + 1 WHERE id = ?";
+        if (jdbcTemplate.update(bump, TeacherGrantVersion.ROW_ID) > 0) {
+            return;
+        }
+        // The row is seeded by the prod migration; dev databases get it on the first change
+        try {
+            jdbcTemplate.update("INSERT INTO teacher_grant_version (id, version) VALUES (?, 1)",
+                    TeacherGrantVersion.ROW_ID);
+        } catch (DuplicateKeyException e) {
+            jdbcTemplate.update(bump, TeacherGrantVersion.ROW_ID);
+        }
+    }
+
+    private long databaseVersion() {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM teacher_grant_version WHERE id = ?",
+                Long.class, TeacherGrantVersion.ROW_ID);
+        return versions.isEmpty() ? 0L : versions.get(0);
+    }
+
+    private TeacherGrants load(Long teacherId, long version) {
+        Map<Long, long[]> groupsBySubject = new HashMap<>();
+        Map<Long, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT subject_id, group_id FROM teacher_subjects WHERE teacher_id = ?",
+                (RowCallbackHandler) rs -> {
+            long subjectId = rs.getLong(1);
+            long groupId = rs.getLong(2);
+            if (rs.wasNull()) {
+                // A null group grants every group of the subject
+                groupsBySubject.put(subjectId, TeacherGrants.ALL_GROUPS);
+                return;
+            }
+            long[] groups = groupsBySubject.get(subjectId);
+            if (groups == TeacherGrants.ALL_GROUPS) {
+                return;
+            }
+            int count = counts.getOrDefault(subjectId, 0);
+            if (groups == null) {
+                groups = new long[4];
+            } else if (count == groups.length) {
+                groups = Arrays.copyOf(groups, count * 2);
+            }
+            groups[count] = groupId;
+            groupsBySubject.put(subjectId, groups);
+            counts.put(subjectId, count + 1);
+        }, teacherId);
+
+        Map<Long, long[]> frozen = new HashMap<>();
+        groupsBySubject.forEach((subjectId, groups) -> {
+            if (groups == TeacherGrants.ALL_GROUPS) {
+                frozen.put(subjectId, groups);
+            } else {
+                long[] sorted = Arrays.copyOf(groups, counts.get(subjectId));
+                Arrays.sort(sorted);
+                frozen.put(subjectId, sorted);
+            }
+        });
+        return new TeacherGrants(version, frozen);
+    }
+
+    /**
+     * Immutable grants of one teacher: subject id -> sorted group ids, or ALL_GROUPS
+     */
+    public static final class TeacherGrants {
+        static final long[] ALL_GROUPS = new long[0];
+
+        // teacher_grant_version read before loading them
+        final long version;
+        final Map<Long, long[]> groupsBySubject;
+
+        TeacherGrants(long version, Map<Long, long[]> groupsBySubject) {
+            this.version = version;
+            this.groupsBySubject = groupsBySubject;
+        }
+
+        /**
+         * Whether they cover the subject for a student of the given group (null: only "all groups" grants match)
+         */
+        public boolean allows(long subjectId, Long groupId) {
+            long[] groups = groupsBySubject.get(subjectId);
+            if (groups == null) {
+                return false;
+            }
+            if (groups == ALL_GROUPS) {
+                return true;
+            }
+            return groupId != null && Arrays.binarySearch(groups, groupId) >= 0;
+        }
+    }
+}
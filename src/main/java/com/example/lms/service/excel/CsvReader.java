@@ -0,0 +1,143 @@
+package com.example.lms.service.excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming RFC 4180 reader for UTF-8 uploads: comma separated, fields optionally enclosed in double quotes
+ * ("" inside quotes is one quote, quoted fields may span lines), records ended by CRLF or LF.
+ * Input is decoded into one reused char buffer and each cell is copied once into its String;
+ * cells right of the requested columns are skipped without being materialized.
+ */
+public final class CsvReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    // A quote inside a quoted field: either the closing one or the first half of ""
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private CsvReader() {
+    }
+
+    /**
+     * Same callback as {@link ExcelSheetReader}: record index (0 = first line) and its cells, empty ones null.
+     * Blank lines are skipped. The cells array is reused for the next record, so handlers copy what they keep.
+     * @param columns number of columns to read (fields further right are ignored)
+     * @return number of records read, blank lines included
+     */
+    public static int read(InputStream in, int columns, ExcelSheetReader.RowHandler handler) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        char[] buffer = new char[BUFFER_SIZE];
+        String[] cells = new String[columns];
+        StringBuilder field = new StringBuilder(64);
+        int state = FIELD_START;
+        int column = 0;
+        int record = 0;
+        boolean skipLineFeed = false;
+        boolean first = true;
+
+        int length;
+        while ((length = reader.read(buffer)) != -1) {
+            int start = 0;
+            if (first && length > 0) {
+                first = false;
+                // UTF-8 byte order mark written by Excel's "CSV UTF-8"
+                if (buffer[0] == '\uFEFF') {
+                    start = 1;
+                }
+            }
+            for (int i = start; i < length; i++) {
+                char c = buffer[i];
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                switch (state) {
+                    case QUOTED:
+                        if (c == '"') {
+                            state = QUOTE_IN_QUOTED;
+                        } else if (column < columns) {
+                            field.append(c);
+                        }
+                        continue;
+                    case QUOTE_IN_QUOTED:
+                        if (c == '"') {
+                            if (column < columns) {
+                                field.append('"');
+                            }
+                            state = QUOTED;
+                            continue;
+                        }
+                        // Closing quote: the field ends here (stray characters are kept, as most readers do)
+                        state = UNQUOTED;
+                        break;
+                    case FIELD_START:
+                        if (c == '"') {
+                            state = QUOTED;
+                            continue;
+                        }
+                        state = UNQUOTED;
+                        break;
+                    default:
+                        break;
+                }
+
+                // UNQUOTED
+                if (c == ',') {
+                    column = endField(cells, column, field);
+                    state = FIELD_START;
+                } else if (c == '\n' || c == '\r') {
+                    endField(cells, column, field);
+                    endRecord(handler, record++, cells);
+                    column = 0;
+                    state = FIELD_START;
+                    skipLineFeed = c == '\r';
+                } else if (column < columns) {
+                    field.append(c);
+                }
+            }
+        }
+
+        // Last record without a line break
+        if (column > 0 || state != FIELD_START || field.length() > 0) {
+            if (state == QUOTED) {
+                throw new IOException("Unterminated quoted field in record " + (record + 1));
+            }
+            endField(cells, column, field);
+            endRecord(handler, record++, cells);
+        }
+        return record;
+    }
+
+    private static int endField(String[] cells, int column, StringBuilder field) {
+        if (column < cells.length) {
+            cells[column] = field.length() > 0 ? field.toString() : null;
+        }
+        field.setLength(0);
+        return column + 1;
+    }
+
+    // Cells are cleared after each record, so columns missing from a short record stay empty
+    private static void endRecord(ExcelSheetReader.RowHandler handler, int record, String[] cells) {
+        boolean blank = true;
+        for (String cell : cells) {
+            if (cell != null) {
+                blank = false;
+                break;
+            }
+        }
+        if (!blank) {
+            handler.row(record, cells);
+        }
+        Arrays.fill(cells, null);
+    }
+}
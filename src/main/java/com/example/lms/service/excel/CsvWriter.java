@@ -0,0 +1,83 @@
+package com.example.lms.service.excel;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming RFC 4180 writer (UTF-8, CRLF record ends). Fields are quoted only when they contain
+ * a comma, a quote or a line break, and are written straight into a buffered writer over the output.
+ */
+public final class CsvWriter implements Flushable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private boolean firstField = true;
+
+    public CsvWriter(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Append a field to the current record; null is written as an empty field
+     */
+    public CsvWriter field(Object value) throws IOException {
+        if (!firstField) {
+            out.write(',');
+        }
+        firstField = false;
+        if (value == null) {
+            return this;
+        }
+        String text = value.toString();
+        if (!needsQuotes(text)) {
+            out.write(text);
+            return this;
+        }
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                // Write up to and including the quote, then double it
+                out.write(text, from, i + 1 - from);
+                out.write('"');
+                from = i + 1;
+            }
+        }
+        out.write(text, from, text.length() - from);
+        out.write('"');
+        return this;
+    }
+
+    public void endRecord() throws IOException {
+        out.write("\r\n");
+        firstField = true;
+    }
+
+    public void record(Object... values) throws IOException {
+        for (Object value : values) {
+            field(value);
+        }
+        endRecord();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private static boolean needsQuotes(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
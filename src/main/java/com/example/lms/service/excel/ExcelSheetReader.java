@@ -0,0 +1,134 @@
+package com.example.lms.service.excel;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Reads one sheet of an .xlsx upload with POI's SAX event API instead of building the workbook DOM.
+ * Rows are handed over one at a time as trimmed-down string arrays, so memory does not grow with the file.
+ * The upload is copied to a temporary file first: opened from a stream, POI would inflate every zip
+ * entry (the sheet XML included) into memory, while a file package reads entries from disk.
+ */
+public final class ExcelSheetReader {
+
+    /**
+     * Receives the cells of one row; empty cells are null
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(int rowIndex, String[] cells);
+    }
+
+    private ExcelSheetReader() {
+    }
+
+    /**
+     * @param sheetName sheet to read, null for the first one
+     * @param columns number of columns to read (cells further right are ignored)
+     * @return false when the workbook has no sheet with that name
+     */
+    public static boolean read(InputStream in, String sheetName, int columns, RowHandler handler) throws IOException {
+        Path file = Files.createTempFile("lms-import-", ".xlsx");
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return read(file.toFile(), sheetName, columns, handler);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static boolean read(File file, String sheetName, int columns, RowHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    if (sheetName != null && !sheetName.equals(sheets.getSheetName())) {
+                        continue;
+                    }
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings,
+                            new RowCollector(columns, handler), new ImportDataFormatter(), false));
+                    parser.parse(new InputSource(sheet));
+                    return true;
+                }
+            }
+            return false;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Unreadable Excel file: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler handler;
+        private final String[] cells;
+        private int nextColumn;
+
+        RowCollector(int columns, RowHandler handler) {
+            this.handler = handler;
+            this.cells = new String[columns];
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(cells, null);
+            nextColumn = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // The reference is optional in the file format; without it cells are consecutive
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            nextColumn = column + 1;
+            if (column < cells.length && formattedValue != null && !formattedValue.isEmpty()) {
+                cells[column] = formattedValue;
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            handler.row(rowNum, cells.clone());
+        }
+    }
+
+    /**
+     * Same conversions as the DOM reader used to do: dates as YYYY-MM-DD, whole numbers without decimals
+     */
+    private static final class ImportDataFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getLocalDateTime(value).toLocalDate().toString();
+            }
+            if (value == (long) value) {
+                return String.valueOf((long) value);
+            }
+            return String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.lms.service.excel;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Values of a previewed grade import, waiting to be committed by the teacher who uploaded them
+ */
+@Getter
+@AllArgsConstructor
+public class GradeImportPreview {
+    private final String username;
+    private final Long assignmentId;
+    private final String gradeType;
+    // Group the rows were checked against, null for the whole class
+    private final Long groupId;
+    // studentId (matricule) -> new mark, only for rows that change something
+    private final Map<String, Double> values;
+    // studentId (matricule) -> mark shown in the preview, null when there was none
+    private final Map<String, Double> previous;
+    private final long expiresAt;
+}
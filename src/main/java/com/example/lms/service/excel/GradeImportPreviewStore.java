@@ -0,0 +1,39 @@
+package com.example.lms.service.excel;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Grade import previews between the dry run and the commit, keyed by a random token.
+ * Previews live in memory only: after a restart or once expired the file is simply uploaded again.
+ */
+@Component
+public class GradeImportPreviewStore {
+
+    public static final long TTL_MS = 30 * 60 * 1000L;
+
+    private final Map<String, GradeImportPreview> previews = new ConcurrentHashMap<>();
+
+    public String put(GradeImportPreview preview) {
+        long now = System.currentTimeMillis();
+        previews.values().removeIf(stale -> stale.getExpiresAt() < now);
+        String token = UUID.randomUUID().toString();
+        previews.put(token, preview);
+        return token;
+    }
+
+    /**
+     * Remove and return the preview, so a token is committed at most once
+     * @return null when unknown, expired or uploaded by someone else
+     */
+    public GradeImportPreview take(String token, String username) {
+        GradeImportPreview preview = previews.get(token);
+        if (preview == null || !preview.getUsername().equals(username) || !previews.remove(token, preview)) {
+            return null;
+        }
+        return preview.getExpiresAt() >= System.currentTimeMillis() ? preview : null;
+    }
+}
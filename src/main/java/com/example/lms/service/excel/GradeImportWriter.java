@@ -0,0 +1,276 @@
+package com.example.lms.service.excel;
+
+import com.example.lms.event.GradeChangedEvent;
+import com.example.lms.model.GradeEvent;
+import com.example.lms.model.TeacherAssignment;
+import com.example.lms.service.FinalGradeService;
+import com.example.lms.service.audit.GradeEventCodec;
+import com.example.lms.service.audit.GradeEventRecorder;
+import com.example.lms.service.notification.GradeNotificationAggregator;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Set-based side of the Excel grade import, inside the caller's transaction: the sheet's students
+ * and their grade rows are resolved with one IN query per thousand IDs, missing grade rows are
+ * inserted in one JDBC batch, every mark is written with one batched UPDATE and the final grades
+ * are then recomputed in bulk.
+ */
+@Component
+public class GradeImportWriter {
+
+    // Values per IN list
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FinalGradeService finalGradeService;
+    private final GradeEventRecorder gradeEventRecorder;
+    private final GradeNotificationAggregator gradeNotificationAggregator;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public GradeImportWriter(JdbcTemplate jdbcTemplate, FinalGradeService finalGradeService,
+                             GradeEventRecorder gradeEventRecorder,
+                             GradeNotificationAggregator gradeNotificationAggregator,
+                             ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.finalGradeService = finalGradeService;
+        this.gradeEventRecorder = gradeEventRecorder;
+        this.gradeNotificationAggregator = gradeNotificationAggregator;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Index of the grade type's mark in a {@link GradeEventCodec#snapshot}
+     */
+    public static int markIndex(String gradeType) {
+        if ("TP".equalsIgnoreCase(gradeType)) return GradeEventCodec.TP;
+        if ("TD".equalsIgnoreCase(gradeType)) return GradeEventCodec.TD;
+        if ("EXAM".equalsIgnoreCase(gradeType)) return GradeEventCodec.EXAMEN;
+        throw new RuntimeException("Unknown grade type: " + gradeType);
+    }
+
+    /**
+     * The listed students with their grade row for the assignment's subject, semester and year
+     * @return studentId (matricule) -> student; IDs that match nobody are left out
+     */
+    public Map<String, SheetStudent> findStudents(Collection<String> studentIds, TeacherAssignment assignment) {
+        List<String> ids = new ArrayList<>(studentIds);
+        Map<String, SheetStudent> students = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(i, Math.min(i + LOOKUP_CHUNK_SIZE, ids.size()));
+            List<Object> args = new ArrayList<>(chunk.size() + 3);
+            args.add(assignment.getSubject().getId());
+            args.add(assignment.getSemester());
+            args.add(assignment.getAcademicYear());
+            args.addAll(chunk);
+            jdbcTemplate.query("SELECT s.student_id, s.id, s.class_id, s.group_id, u.id, u.first_name, u.last_name, " +
+                    "g.id, g.examen, g.td, g.tp, g.continuous_evaluation, g.final_grade " +
+                    "FROM students s JOIN users u ON u.id = s.user_id " +
+                    "LEFT JOIN grades g ON g.student_id = s.id AND g.subject_id = ? AND g.semester = ? " +
+                    "AND g.academic_year = ? WHERE s.student_id IN (" +
+                    String.join(",", Collections.nCopies(chunk.size(), "?")) + ")", (RowCallbackHandler) rs -> {
+                SheetStudent student = new SheetStudent(rs);
+                students.put(student.studentId, student);
+            }, args.toArray());
+        }
+        return students;
+    }
+
+    /**
+     * Write one mark per student and recompute the affected final grades. A mark is only written
+     * while it still holds its previewed value and the student is still in the class (and group);
+     * other rows are reported in errors and left untouched.
+     * @param groupId group the preview was checked against, null for the whole class
+     * @param values studentId (matricule) -> new mark
+     * @param previous studentId (matricule) -> mark shown in the preview, null when there was none
+     * @return number of grades written
+     */
+    public int apply(TeacherAssignment assignment, Long groupId, String gradeType, Map<String, Double> values,
+                     Map<String, Double> previous, List<String> errors) {
+        int markIndex = markIndex(gradeType);
+        String column = markIndex == GradeEventCodec.TP ? "tp" : markIndex == GradeEventCodec.TD ? "td" : "examen";
+        Map<String, SheetStudent> students = findStudents(values.keySet(), assignment);
+
+        // 1. Rows that no longer match the preview are dropped before anything is written
+        List<SheetStudent> pending = new ArrayList<>();
+        for (String studentId : values.keySet()) {
+            SheetStudent student = students.get(studentId);
+            if (student == null) {
+                errors.add("Student '" + studentId + "' no longer exists");
+            } else if (!student.isIn(assignment.getStudentClass().getId(), groupId)) {
+                errors.add("Student '" + studentId + "' is no longer in this class or group");
+            } else if (!Objects.equals(student.mark(markIndex), previous.get(studentId))) {
+                errors.add("Student '" + studentId + "': the grade was changed since the preview");
+            } else {
+                pending.add(student);
+            }
+        }
+
+        // 2. Missing grade rows are created empty, as auto-creation does, then updated with the others
+        List<SheetStudent> missing = pending.stream().filter(student -> student.gradeId == null).toList();
+        insertEmptyGrades(missing, assignment);
+        Set<Long> created = new HashSet<>();
+        missing.forEach(student -> created.add(student.gradeId));
+
+        // 3. All marks in one batched UPDATE, each guarded by the previewed value
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Long actorId = gradeEventRecorder.currentActorId();
+        List<Object[]> updates = new ArrayList<>();
+        for (SheetStudent student : pending) {
+            updates.add(new Object[]{values.get(student.studentId), now, actorId, student.gradeId,
+                    previous.get(student.studentId)});
+        }
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate("UPDATE grades SET " + column + " = ?, updated_at = ?, " +
+                "entered_by = COALESCE(?, entered_by) WHERE id = ? AND " + column + " IS NOT DISTINCT FROM ?",
+                updates, updates.size(), (ps, args) -> {
+                    ps.setDouble(1, (Double) args[0]);
+                    ps.setTimestamp(2, (Timestamp) args[1]);
+                    ps.setObject(3, args[2], Types.BIGINT);
+                    ps.setLong(4, (Long) args[3]);
+                    ps.setObject(5, args[4], Types.DOUBLE);
+                });
+        List<SheetStudent> written = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            SheetStudent student = pending.get(i);
+            if (counts[0][i] == 0) {
+                // Edited between the check above and the UPDATE
+                errors.add("Student '" + student.studentId + "': the grade was changed since the preview");
+                continue;
+            }
+            short[] before = student.snapshot();
+            short[] after = before.clone();
+            after[markIndex] = GradeEventCodec.encode(values.get(student.studentId));
+            gradeEventRecorder.record(GradeEvent.Type.UPDATE, student.gradeId, before, after);
+            written.add(student);
+        }
+        if (written.isEmpty()) {
+            return 0;
+        }
+
+        // 4. Final grades column-wise; the stored averages follow the ones that moved
+        finalGradeService.recomputeGrades(
+                written.stream().map(student -> student.gradeId).toList());
+
+        // 5. Caches and (coalesced) student notifications
+        Set<Long> classIds = new HashSet<>();
+        Set<Long> studentIds = new HashSet<>();
+        for (SheetStudent student : written) {
+            classIds.add(student.classId);
+            studentIds.add(student.id);
+            gradeNotificationAggregator.gradeChanged(student.userId, student.gradeId,
+                    created.contains(student.gradeId));
+        }
+        eventPublisher.publishEvent(new GradeChangedEvent(classIds, studentIds));
+        return written.size();
+    }
+
+    private void insertEmptyGrades(List<SheetStudent> missing, TeacherAssignment assignment) {
+        if (missing.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(
+                "INSERT INTO grades (student_id, subject_id, class_id, semester, academic_year, entered_at, " +
+                "updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)", new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int index) throws SQLException {
+                        SheetStudent student = missing.get(index);
+                        ps.setLong(1, student.id);
+                        ps.setLong(2, assignment.getSubject().getId());
+                        ps.setLong(3, student.classId);
+                        ps.setInt(4, assignment.getSemester());
+                        ps.setString(5, assignment.getAcademicYear());
+                        ps.setTimestamp(6, now);
+                        ps.setTimestamp(7, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return missing.size();
+                    }
+                }, keys);
+
+        List<Map<String, Object>> generated = keys.getKeyList();
+        for (int i = 0; i < missing.size(); i++) {
+            SheetStudent student = missing.get(i);
+            student.gradeId = ((Number) generated.get(i).values().iterator().next()).longValue();
+            gradeEventRecorder.recordCreate(student.gradeId, student.id, assignment.getSubject().getId(),
+                    student.classId, assignment.getSemester(), assignment.getAcademicYear());
+        }
+    }
+
+    /**
+     * A student of the sheet and the current marks of their grade row (all null without one)
+     */
+    @Getter
+    public static final class SheetStudent {
+        final String studentId;
+        final long id;
+        final long classId;
+        final Long groupId;
+        final long userId;
+        final String name;
+        Long gradeId;
+        final Double examen;
+        final Double td;
+        final Double tp;
+        final Double continuousEvaluation;
+        final Double finalGrade;
+
+        SheetStudent(ResultSet rs) throws SQLException {
+            studentId = rs.getString(1);
+            id = rs.getLong(2);
+            classId = rs.getLong(3);
+            groupId = rs.getObject(4) != null ? rs.getLong(4) : null;
+            userId = rs.getLong(5);
+            name = rs.getString(7) + " " + rs.getString(6);
+            gradeId = rs.getObject(8) != null ? rs.getLong(8) : null;
+            examen = rs.getObject(9, Double.class);
+            td = rs.getObject(10, Double.class);
+            tp = rs.getObject(11, Double.class);
+            continuousEvaluation = rs.getObject(12, Double.class);
+            finalGrade = rs.getObject(13, Double.class);
+        }
+
+        /**
+         * Whether the student is in the class and, when one is given, the group
+         */
+        public boolean isIn(long classId, Long groupId) {
+            return this.classId == classId && (groupId == null || groupId.equals(this.groupId));
+        }
+
+        /**
+         * Current value of the mark at a {@link GradeEventCodec} index
+         */
+        public Double mark(int markIndex) {
+            return markIndex == GradeEventCodec.TP ? tp : markIndex == GradeEventCodec.TD ? td : examen;
+        }
+
+        short[] snapshot() {
+            return new short[]{
+                    GradeEventCodec.encode(examen), GradeEventCodec.encode(td), GradeEventCodec.encode(tp),
+                    GradeEventCodec.encode(continuousEvaluation), GradeEventCodec.encode(finalGrade)
+            };
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.lms.service.excel;
+
+import java.util.Map;
+
+/**
+ * Where a chunked user import resumes from, and where it records committed chunks and row errors.
+ * committed() throws LeaseLostException when the run lost its job, which rolls the chunk back.
+ */
+public interface ImportCheckpoint {
+
+    // Key of the live ImportProgress of this run
+    String id();
+
+    // First row not committed yet
+    int nextRow();
+
+    /**
+     * Called inside the transaction of the chunk ending before nextRow, so both commit or roll back together
+     * @param rowErrors rows of the chunk that were skipped (row -> reason)
+     */
+    void committed(int nextRow, Map<Integer, String> rowErrors);
+
+    /**
+     * Throws LeaseLostException when another node has taken the job over; called before
+     * writes that commit on their own, without a checkpoint
+     */
+    void checkLease();
+
+    /**
+     * This run no longer holds the job: it must stop writing, the node that took it over carries on
+     */
+    class LeaseLostException extends RuntimeException {
+        public LeaseLostException(String message) {
+            super(message);
+        }
+    }
+}
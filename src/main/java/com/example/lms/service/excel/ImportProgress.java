@@ -0,0 +1,75 @@
+package com.example.lms.service.excel;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live counters of one user import, updated by the hashing and persisting stages
+ */
+@Getter
+public class ImportProgress {
+
+    public enum Phase { HASHING, PERSISTING, DONE, FAILED }
+
+    private final String id;
+    private final String type;
+    private final int totalRows;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger passwordsToHash = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger passwordsHashed = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger rowsPersisted = new AtomicInteger();
+    private volatile Phase phase = Phase.HASHING;
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+
+    public ImportProgress(String id, String type, int totalRows) {
+        this.id = id;
+        this.type = type;
+        this.totalRows = totalRows;
+    }
+
+    public void hashing(int passwords) {
+        passwordsToHash.set(passwords);
+    }
+
+    public void hashed(int passwords) {
+        passwordsHashed.addAndGet(passwords);
+    }
+
+    public void persisting() {
+        phase = Phase.PERSISTING;
+    }
+
+    public void persisted(int rows) {
+        rowsPersisted.addAndGet(rows);
+    }
+
+    public void done() {
+        finishedAt = LocalDateTime.now();
+        phase = Phase.DONE;
+    }
+
+    public void failed(String message) {
+        error = message;
+        finishedAt = LocalDateTime.now();
+        phase = Phase.FAILED;
+    }
+
+    public int getPasswordsToHash() {
+        return passwordsToHash.get();
+    }
+
+    public int getPasswordsHashed() {
+        return passwordsHashed.get();
+    }
+
+    public int getRowsPersisted() {
+        return rowsPersisted.get();
+    }
+}
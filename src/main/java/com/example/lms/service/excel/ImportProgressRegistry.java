@@ -0,0 +1,34 @@
+package com.example.lms.service.excel;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Live progress of running and recently finished user imports, keyed by import job id
+ */
+@Component
+public class ImportProgressRegistry {
+
+    private static final int KEEP_RECENT = 20;
+
+    private final Map<String, ImportProgress> imports = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImportProgress> eldest) {
+            return size() > KEEP_RECENT;
+        }
+    };
+
+    // Replaces the progress of an earlier run with the same id (a resumed job)
+    public synchronized ImportProgress start(String id, String type, int totalRows) {
+        ImportProgress progress = new ImportProgress(id, type, totalRows);
+        imports.remove(id);
+        imports.put(id, progress);
+        return progress;
+    }
+
+    public synchronized ImportProgress get(String id) {
+        return imports.get(id);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.lms.service.excel;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Hashes import passwords on a pool sized to the available cores.
+ * BCrypt costs ~100 ms per password, so this runs before (and outside) any import transaction.
+ */
+@Component
+public class ParallelPasswordHasher {
+
+    // Passwords per task: small enough to balance the cores, large enough to keep task overhead negligible
+    private static final int SLICE_SIZE = 16;
+
+    private final PasswordEncoder passwordEncoder;
+    private final ExecutorService executor;
+
+    @Autowired
+    public ParallelPasswordHasher(PasswordEncoder passwordEncoder) {
+        this.passwordEncoder = passwordEncoder;
+        int threads = Runtime.getRuntime().availableProcessors();
+        // Bounded queue; when it is full the importing thread hashes the slice itself
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "import-password-hasher");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * @param rawPasswords plain passwords, null entries are skipped
+     * @param onHashed called with the number of passwords finished by each slice
+     * @return hashes at the same positions (null where the input was null)
+     */
+    public String[] hashAll(List<String> rawPasswords, IntConsumer onHashed) {
+        String[] hashes = new String[rawPasswords.size()];
+        List<Future<?>> slices = new ArrayList<>();
+        for (int start = 0; start < hashes.length; start += SLICE_SIZE) {
+            int from = start;
+            int to = Math.min(start + SLICE_SIZE, hashes.length);
+            slices.add(executor.submit(() -> {
+                int hashed = 0;
+                for (int i = from; i < to; i++) {
+                    String raw = rawPasswords.get(i);
+                    if (raw != null) {
+                        hashes[i] = passwordEncoder.encode(raw);
+                        hashed++;
+                    }
+                }
+                onHashed.accept(hashed);
+            }));
+        }
+        try {
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Password hashing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Password hashing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return hashes;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.lms.service.excel;
+
+import com.example.lms.dto.ImportRowDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One validated import row ready to persist, with the hash computed by the hashing stage
+ */
+@Getter
+@AllArgsConstructor
+public class PendingImportRow {
+    // Position in the import (0-based), used in error reports
+    private final int row;
+    private final ImportRowDTO data;
+    // Null: an existing user keeps the current password
+    private final String passwordHash;
+}
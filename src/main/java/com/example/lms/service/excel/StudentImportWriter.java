@@ -0,0 +1,208 @@
+package com.example.lms.service.excel;
+
+import com.example.lms.dto.ImportRowDTO;
+import com.example.lms.model.Role;
+import com.example.lms.model.Student;
+import com.example.lms.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Set-based upsert of one chunk of imported students, inside the caller's transaction:
+ * two IN queries find the existing students and the users holding the chunk's usernames/emails,
+ * new users and students get ids from their pooled sequences and are inserted in JDBC batches,
+ * existing ones are changed with batched UPDATEs. That is a fixed handful of statements per chunk
+ * instead of six or more per row.
+ */
+@Component
+public class StudentImportWriter {
+
+    // Rows per chunk at most: one IN list each
+    public static final int MAX_CHUNK_SIZE = 1000;
+
+    private static final String USER_INSERT =
+            "INSERT INTO users (id, username, password, email, role, first_name, last_name, phone, is_active) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String STUDENT_INSERT =
+            "INSERT INTO students (id, user_id, student_id, department_id, class_id, group_id, date_of_birth, " +
+            "enrollment_date, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Like the entity path: phone and password only change when the import provides them
+    private static final String USER_UPDATE =
+            "UPDATE users SET username = ?, email = ?, first_name = ?, last_name = ?, " +
+            "phone = COALESCE(?, phone), password = COALESCE(?, password) WHERE id = ?";
+    // ... and group and date of birth likewise
+    private static final String STUDENT_UPDATE =
+            "UPDATE students SET department_id = ?, class_id = ?, group_id = COALESCE(?, group_id), " +
+            "date_of_birth = COALESCE(?, date_of_birth), status = ?, " +
+            "enrollment_date = COALESCE(enrollment_date, ?) WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PasswordEncoder passwordEncoder;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public StudentImportWriter(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordEncoder = passwordEncoder;
+    }
+
+    /**
+     * @param rejected receives the rows that were skipped (row -> reason)
+     * @return ids (students.id) of the inserted and updated students
+     */
+    public List<Long> write(List<PendingImportRow> rows, Map<Integer, String> rejected) {
+        if (rows.size() > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_CHUNK_SIZE + " rows per chunk");
+        }
+        Map<String, long[]> existingStudents = findStudents(rows);
+        Map<String, Long> usernameOwners = new HashMap<>();
+        Map<String, Long> emailOwners = new HashMap<>();
+        findUsers(rows, usernameOwners, emailOwners);
+
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator userIds = identifierGenerator(session, User.class);
+        IdentifierGenerator studentIds = identifierGenerator(session, Student.class);
+
+        List<Object[]> userInserts = new ArrayList<>();
+        List<Object[]> studentInserts = new ArrayList<>();
+        List<Object[]> userUpdates = new ArrayList<>();
+        List<Object[]> studentUpdates = new ArrayList<>();
+        List<Long> written = new ArrayList<>(rows.size());
+        LocalDate today = LocalDate.now();
+
+        // A student listed twice: the last row wins, as when rows were saved one by one
+        Map<String, Integer> lastRows = new HashMap<>();
+        for (PendingImportRow pending : rows) {
+            lastRows.put(pending.getData().getStudentId(), pending.getRow());
+        }
+
+        for (PendingImportRow pending : rows) {
+            ImportRowDTO dto = pending.getData();
+            long[] existing = existingStudents.get(dto.getStudentId());
+            Long userId = existing != null ? existing[1] : null;
+
+            String conflict = null;
+            int lastRow = lastRows.get(dto.getStudentId());
+            if (lastRow != pending.getRow()) {
+                conflict = "Student ID " + dto.getStudentId() + " is imported from row " + (lastRow + 1) + " instead";
+            } else if (takenByOther(usernameOwners, dto.getUsername(), userId)) {
+                conflict = "Username already taken: " + dto.getUsername();
+            } else if (takenByOther(emailOwners, dto.getEmail(), userId)) {
+                conflict = "Email already in use: " + dto.getEmail();
+            }
+            if (conflict != null) {
+                rejected.put(pending.getRow(), conflict);
+                continue;
+            }
+
+            Date dateOfBirth = dto.getDateOfBirth() != null ? Date.valueOf(LocalDate.parse(dto.getDateOfBirth())) : null;
+            if (existing == null) {
+                String passwordHash = pending.getPasswordHash();
+                if (passwordHash == null) {
+                    // Created since the hashing stage looked - auto-generate now
+                    passwordHash = passwordEncoder.encode(dto.getStudentId() + "2025");
+                }
+                userId = (Long) userIds.generate(session, null);
+                long studentId = (Long) studentIds.generate(session, null);
+                userInserts.add(new Object[]{userId, dto.getUsername(), passwordHash, dto.getEmail(),
+                        Role.STUDENT.name(), dto.getFirstName(), dto.getLastName(), dto.getPhone(), true});
+                studentInserts.add(new Object[]{studentId, userId, dto.getStudentId(), dto.getDepartmentId(),
+                        dto.getClassId(), dto.getGroupId(), dateOfBirth, Date.valueOf(today), dto.getStatus()});
+                written.add(studentId);
+            } else {
+                userUpdates.add(new Object[]{dto.getUsername(), dto.getEmail(), dto.getFirstName(), dto.getLastName(),
+                        dto.getPhone(), pending.getPasswordHash(), userId});
+                studentUpdates.add(new Object[]{dto.getDepartmentId(), dto.getClassId(), dto.getGroupId(),
+                        dateOfBirth, dto.getStatus(), Date.valueOf(today), existing[0]});
+                written.add(existing[0]);
+            }
+            // Later rows of the chunk see this row's username/email as taken
+            usernameOwners.put(dto.getUsername(), userId);
+            if (dto.getEmail() != null) {
+                emailOwners.put(dto.getEmail(), userId);
+            }
+        }
+
+        // Users first: students reference them
+        batch(USER_INSERT, userInserts, new int[]{Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+                Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BOOLEAN});
+        batch(USER_UPDATE, userUpdates, new int[]{Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+                Types.VARCHAR, Types.VARCHAR, Types.BIGINT});
+        batch(STUDENT_INSERT, studentInserts, new int[]{Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.BIGINT,
+                Types.BIGINT, Types.BIGINT, Types.DATE, Types.DATE, Types.VARCHAR});
+        batch(STUDENT_UPDATE, studentUpdates, new int[]{Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.DATE,
+                Types.VARCHAR, Types.DATE, Types.BIGINT});
+        return written;
+    }
+
+    // studentId -> {students.id, users.id}
+    private Map<String, long[]> findStudents(List<PendingImportRow> rows) {
+        List<Object> studentIds = new ArrayList<>(rows.size());
+        for (PendingImportRow row : rows) {
+            studentIds.add(row.getData().getStudentId());
+        }
+        Map<String, long[]> students = new HashMap<>();
+        jdbcTemplate.query("SELECT student_id, id, user_id FROM students WHERE student_id IN ("
+                + placeholders(studentIds.size()) + ")", (RowCallbackHandler) rs -> {
+            students.put(rs.getString(1), new long[]{rs.getLong(2), rs.getLong(3)});
+        }, studentIds.toArray());
+        return students;
+    }
+
+    // Users currently holding any of the chunk's usernames or emails
+    private void findUsers(List<PendingImportRow> rows, Map<String, Long> usernameOwners, Map<String, Long> emailOwners) {
+        List<Object> usernames = new ArrayList<>(rows.size());
+        List<Object> emails = new ArrayList<>(rows.size());
+        for (PendingImportRow row : rows) {
+            usernames.add(row.getData().getUsername());
+            if (row.getData().getEmail() != null) {
+                emails.add(row.getData().getEmail());
+            }
+        }
+        List<Object> args = new ArrayList<>(usernames);
+        args.addAll(emails);
+        String sql = "SELECT id, username, email FROM users WHERE username IN (" + placeholders(usernames.size()) + ")"
+                + (emails.isEmpty() ? "" : " OR email IN (" + placeholders(emails.size()) + ")");
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            usernameOwners.put(rs.getString(2), rs.getLong(1));
+            if (rs.getString(3) != null) {
+                emailOwners.put(rs.getString(3), rs.getLong(1));
+            }
+        }, args.toArray());
+    }
+
+    private static boolean takenByOther(Map<String, Long> owners, String value, Long userId) {
+        Long owner = value != null ? owners.get(value) : null;
+        return owner != null && !owner.equals(userId);
+    }
+
+    // The entity's own generator, so ids handed out here and by Hibernate come from one pooled optimizer
+    private static IdentifierGenerator identifierGenerator(SharedSessionContractImplementor session, Class<?> entity) {
+        return (IdentifierGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(entity).getGenerator();
+    }
+
+    private void batch(String sql, List<Object[]> rows, int[] types) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows, types);
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.lms.service.grading;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Algerian system (default):
+ * ((exam * 2) + ((TD + TP) / 2)) / 3, or ((exam * 2) + TD) / 3 without TP,
+ * continuous evaluation replaces TD when there is no TD, exam alone otherwise.
+ * No exam mark means no final grade.
+ */
+@Component
+public class AlgerianGradingFormula implements GradingFormula {
+
+    public static final String CODE = "ALGERIAN";
+
+    @Override
+    public String getCode() {
+        return CODE;
+    }
+
+    @Override
+    public double compute(double examen, double td, double tp, double continuousEvaluation) {
+        double coursework = coursework(td, tp, continuousEvaluation);
+        double finalGrade = Double.isNaN(coursework) ? examen : ((examen * 2) + coursework) / 3;
+        // NaN exam propagates through the arithmetic
+        return GradingFormula.round(finalGrade);
+    }
+
+    @Override
+    public void computeAll(double[] examen, double[] td, double[] tp, double[] continuousEvaluation,
+                           double[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            double coursework = coursework(td[i], tp[i], continuousEvaluation[i]);
+            double finalGrade = coursework != coursework ? examen[i] : ((examen[i] * 2) + coursework) / 3;
+            out[i] = Math.floor(finalGrade * 100.0 + 0.5) / 100.0;
+        }
+    }
+
+    // Mark averaged with the exam: (TD + TP) / 2, TD, continuous evaluation, or NaN
+    private static double coursework(double td, double tp, double continuousEvaluation) {
+        if (td != td) {
+            return continuousEvaluation;
+        }
+        return tp != tp ? td : (td + tp) / 2;
+    }
+}
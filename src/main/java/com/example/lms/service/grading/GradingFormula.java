@@ -0,0 +1,45 @@
+package com.example.lms.service.grading;
+
+/**
+ * Computes a final grade (out of 20) from exam, TD, TP and continuous evaluation marks.
+ * Missing marks are passed as NaN; a result of NaN means no final grade yet.
+ * Implementations are Spring beans picked up by {@link GradingFormulaRegistry}.
+ */
+public interface GradingFormula {
+
+    /**
+     * Code stored in class_subjects.grading_formula / departments.grading_formula
+     */
+    String getCode();
+
+    /**
+     * Final grade rounded to 2 decimals, or NaN
+     */
+    double compute(double examen, double td, double tp, double continuousEvaluation);
+
+    /**
+     * Column-wise variant for whole classes: out[i] = compute(examen[i], td[i], tp[i], continuousEvaluation[i])
+     * for i in [0, length). Implementations keep the loop body branch-light so the JIT can vectorize it.
+     */
+    default void computeAll(double[] examen, double[] td, double[] tp, double[] continuousEvaluation,
+                            double[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            out[i] = compute(examen[i], td[i], tp[i], continuousEvaluation[i]);
+        }
+    }
+
+    /**
+     * Round half up to 2 decimals; NaN stays NaN
+     */
+    static double round(double value) {
+        return Math.floor(value * 100.0 + 0.5) / 100.0;
+    }
+
+    static double toPrimitive(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    static Double toBoxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
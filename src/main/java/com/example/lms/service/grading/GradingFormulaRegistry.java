@@ -0,0 +1,69 @@
+package com.example.lms.service.grading;
+
+import com.example.lms.model.ClassSubject;
+import com.example.lms.model.Department;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Looks up grading formulas by code and resolves the one that applies to a class subject:
+ * the class subject's own formula, else its department's, else the Algerian default.
+ */
+@Component
+public class GradingFormulaRegistry {
+
+    private final Map<String, GradingFormula> formulas = new HashMap<>();
+    private final GradingFormula defaultFormula;
+
+    @Autowired
+    public GradingFormulaRegistry(List<GradingFormula> formulas) {
+        for (GradingFormula formula : formulas) {
+            this.formulas.put(formula.getCode(), formula);
+        }
+        this.defaultFormula = this.formulas.get(AlgerianGradingFormula.CODE);
+    }
+
+    public GradingFormula getDefault() {
+        return defaultFormula;
+    }
+
+    /**
+     * @param code formula code, null or blank for the default
+     */
+    public GradingFormula get(String code) {
+        if (code == null || code.isBlank()) {
+            return defaultFormula;
+        }
+        GradingFormula formula = formulas.get(code);
+        if (formula == null) {
+            throw new RuntimeException("Unknown grading formula: " + code + " (available: " + getCodes() + ")");
+        }
+        return formula;
+    }
+
+    /**
+     * Validate a code before storing it; returns the normalized value (null for the default)
+     */
+    public String validate(String code) {
+        if (code == null || code.isBlank()) {
+            return null;
+        }
+        return get(code.trim()).getCode();
+    }
+
+    public Set<String> getCodes() {
+        return new TreeSet<>(formulas.keySet());
+    }
+
+    public GradingFormula resolve(ClassSubject classSubject, Department department) {
+        if (classSubject != null && classSubject.getGradingFormula() != null) {
+            return get(classSubject.getGradingFormula());
+        }
+        if (department != null && department.getGradingFormula() != null) {
+            return get(department.getGradingFormula());
+        }
+        return defaultFormula;
+    }
+}
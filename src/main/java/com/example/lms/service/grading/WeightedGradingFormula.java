@@ -0,0 +1,41 @@
+package com.example.lms.service.grading;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 60% exam, 20% TD, 20% TP; a missing mark counts as 0.
+ * No mark at all means no final grade.
+ */
+@Component
+public class WeightedGradingFormula implements GradingFormula {
+
+    public static final String CODE = "WEIGHTED_60_20_20";
+
+    @Override
+    public String getCode() {
+        return CODE;
+    }
+
+    @Override
+    public double compute(double examen, double td, double tp, double continuousEvaluation) {
+        if (examen != examen && td != td && tp != tp) {
+            return Double.NaN;
+        }
+        return GradingFormula.round(orZero(examen) * 0.6 + orZero(td) * 0.2 + orZero(tp) * 0.2);
+    }
+
+    @Override
+    public void computeAll(double[] examen, double[] td, double[] tp, double[] continuousEvaluation,
+                           double[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            double e = examen[i], d = td[i], p = tp[i];
+            double finalGrade = orZero(e) * 0.6 + orZero(d) * 0.2 + orZero(p) * 0.2;
+            boolean empty = e != e && d != d && p != p;
+            out[i] = empty ? Double.NaN : Math.floor(finalGrade * 100.0 + 0.5) / 100.0;
+        }
+    }
+
+    private static double orZero(double value) {
+        return value != value ? 0.0 : value;
+    }
+}
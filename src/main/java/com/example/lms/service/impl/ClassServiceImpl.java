@@ -5,6 +5,7 @@ import com.example.lms.model.StudentClass;
 import com.example.lms.repository.DepartmentRepository;
 import com.example.lms.repository.StudentClassRepository;
 import com.example.lms.service.ClassService;
+import com.example.lms.service.reference.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -24,19 +25,22 @@ public class ClassServiceImpl implements ClassService {
 
     private final StudentClassRepository classRepository;
     private final DepartmentRepository departmentRepository;
+    private final ReferenceDataCache referenceDataCache;
     
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
 
     @Autowired
-    public ClassServiceImpl(StudentClassRepository classRepository, DepartmentRepository departmentRepository) {
+    public ClassServiceImpl(StudentClassRepository classRepository, DepartmentRepository departmentRepository,
+                            ReferenceDataCache referenceDataCache) {
         this.classRepository = classRepository;
         this.departmentRepository = departmentRepository;
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
     public List<StudentClass> getAllClasses() {
-        return classRepository.findAll();
+        return referenceDataCache.snapshot().classes();
     }
 
     @Override
@@ -51,7 +55,9 @@ public class ClassServiceImpl implements ClassService {
         studentClass.setName(dto.getName());
         studentClass.setLevel(dto.getLevel());
         studentClass.setAcademicYear(dto.getAcademicYear());
-        return classRepository.save(studentClass);
+        StudentClass saved = classRepository.save(studentClass);
+        referenceDataCache.changed();
+        return saved;
     }
 
     @Override
@@ -60,13 +66,16 @@ public class ClassServiceImpl implements ClassService {
             if (dto.getName() != null) studentClass.setName(dto.getName());
             if (dto.getLevel() != null) studentClass.setLevel(dto.getLevel());
             if (dto.getAcademicYear() != null) studentClass.setAcademicYear(dto.getAcademicYear());
-            return classRepository.save(studentClass);
+            StudentClass saved = classRepository.save(studentClass);
+            referenceDataCache.changed();
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Class not found"));
     }
 
     @Override
     public void deleteClass(Long id) {
         classRepository.deleteById(id);
+        referenceDataCache.changed();
     }
     
     @Override
@@ -104,7 +113,9 @@ public class ClassServiceImpl implements ClassService {
             
             // Update class with new schedule path
             studentClass.setScheduleImagePath("schedules/" + uniqueFilename);
-            return classRepository.save(studentClass);
+            StudentClass saved = classRepository.save(studentClass);
+            referenceDataCache.changed();
+            return saved;
             
         } catch (IOException e) {
             throw new RuntimeException("Failed to upload schedule image: " + e.getMessage());
@@ -127,7 +138,9 @@ public class ClassServiceImpl implements ClassService {
             
             // Clear schedule path
             studentClass.setScheduleImagePath(null);
-            return classRepository.save(studentClass);
+            StudentClass saved = classRepository.save(studentClass);
+            referenceDataCache.changed();
+            return saved;
         }
         
         return studentClass;
@@ -1,16 +1,20 @@
 package com.example.lms.service.impl;
 
+import com.example.lms.event.CurriculumChangedEvent;
 import com.example.lms.model.ClassSubject;
 import com.example.lms.repository.ClassSubjectRepository;
 import com.example.lms.repository.StudentClassRepository;
 import com.example.lms.repository.SubjectRepository;
 import com.example.lms.service.ClassSubjectService;
+import com.example.lms.service.grading.GradingFormulaRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class ClassSubjectServiceImpl implements ClassSubjectService {
@@ -18,14 +22,20 @@ public class ClassSubjectServiceImpl implements ClassSubjectService {
     private final ClassSubjectRepository classSubjectRepository;
     private final StudentClassRepository classRepository;
     private final SubjectRepository subjectRepository;
+    private final GradingFormulaRegistry gradingFormulaRegistry;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public ClassSubjectServiceImpl(ClassSubjectRepository classSubjectRepository,
                                     StudentClassRepository classRepository,
-                                    SubjectRepository subjectRepository) {
+                                    SubjectRepository subjectRepository,
+                                    GradingFormulaRegistry gradingFormulaRegistry,
+                                    ApplicationEventPublisher eventPublisher) {
         this.classSubjectRepository = classSubjectRepository;
         this.classRepository = classRepository;
         this.subjectRepository = subjectRepository;
+        this.gradingFormulaRegistry = gradingFormulaRegistry;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -50,18 +60,40 @@ public class ClassSubjectServiceImpl implements ClassSubjectService {
 
     @Override
     public ClassSubject createClassSubject(Long classId, Long subjectId, Integer semester, Double coefficient) {
+        return createClassSubject(classId, subjectId, semester, coefficient, null);
+    }
+
+    @Override
+    public ClassSubject createClassSubject(Long classId, Long subjectId, Integer semester, Double coefficient,
+                                           String gradingFormula) {
         ClassSubject classSubject = new ClassSubject();
         classSubject.setStudentClass(classRepository.findById(classId).orElseThrow());
         classSubject.setSubject(subjectRepository.findById(subjectId).orElseThrow());
         classSubject.setSemester(semester);
         classSubject.setCoefficient(coefficient);
         classSubject.setIsActive(true);
-        return classSubjectRepository.save(classSubject);
+        classSubject.setGradingFormula(gradingFormulaRegistry.validate(gradingFormula));
+        ClassSubject saved = classSubjectRepository.save(classSubject);
+        changed(classId);
+        return saved;
+    }
+
+    @Override
+    public ClassSubject updateGradingFormula(Long id, String gradingFormula) {
+        ClassSubject classSubject = classSubjectRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Class subject not found"));
+        classSubject.setGradingFormula(gradingFormulaRegistry.validate(gradingFormula));
+        ClassSubject saved = classSubjectRepository.save(classSubject);
+        changed(saved.getStudentClass().getId());
+        return saved;
     }
 
     @Override
     public void deleteClassSubject(Long id) {
-        classSubjectRepository.deleteById(id);
+        classSubjectRepository.findById(id).ifPresent(classSubject -> {
+            classSubjectRepository.delete(classSubject);
+            changed(classSubject.getStudentClass().getId());
+        });
     }
 
     @Override
@@ -70,5 +102,10 @@ public class ClassSubjectServiceImpl implements ClassSubjectService {
         List<ClassSubject> classSubjects = classSubjectRepository.findByStudentClassId(classId);
         classSubjectRepository.deleteAll(classSubjects);
         classSubjectRepository.flush(); // Force immediate deletion
+        changed(classId);
+    }
+
+    private void changed(Long classId) {
+        eventPublisher.publishEvent(new CurriculumChangedEvent(Set.of(classId), Set.of()));
     }
 }
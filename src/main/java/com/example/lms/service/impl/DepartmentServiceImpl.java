@@ -6,6 +6,8 @@ import com.example.lms.model.Teacher;
 import com.example.lms.repository.DepartmentRepository;
 import com.example.lms.repository.TeacherRepository;
 import com.example.lms.service.DepartmentService;
+import com.example.lms.service.grading.GradingFormulaRegistry;
+import com.example.lms.service.reference.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -17,16 +19,22 @@ public class DepartmentServiceImpl implements DepartmentService {
 
     private final DepartmentRepository departmentRepository;
     private final TeacherRepository teacherRepository;
+    private final GradingFormulaRegistry gradingFormulaRegistry;
+    private final ReferenceDataCache referenceDataCache;
 
     @Autowired
-    public DepartmentServiceImpl(DepartmentRepository departmentRepository, TeacherRepository teacherRepository) {
+    public DepartmentServiceImpl(DepartmentRepository departmentRepository, TeacherRepository teacherRepository,
+                                 GradingFormulaRegistry gradingFormulaRegistry,
+                                 ReferenceDataCache referenceDataCache) {
         this.departmentRepository = departmentRepository;
         this.teacherRepository = teacherRepository;
+        this.gradingFormulaRegistry = gradingFormulaRegistry;
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
     public List<Department> getAllDepartments() {
-        return departmentRepository.findAll();
+        return referenceDataCache.snapshot().departments();
     }
 
     @Override
@@ -40,6 +48,7 @@ public class DepartmentServiceImpl implements DepartmentService {
         department.setName(departmentDTO.getName());
         department.setCode(departmentDTO.getCode());
         department.setDescription(departmentDTO.getDescription());
+        department.setGradingFormula(gradingFormulaRegistry.validate(departmentDTO.getGradingFormula()));
         
         if (departmentDTO.getHeadOfDepartmentId() != null) {
             Teacher teacher = teacherRepository.findById(departmentDTO.getHeadOfDepartmentId())
@@ -52,7 +61,9 @@ public class DepartmentServiceImpl implements DepartmentService {
             }
         }
         
-        return departmentRepository.save(department);
+        Department saved = departmentRepository.save(department);
+        referenceDataCache.changed();
+        return saved;
     }
 
     @Override
@@ -71,6 +82,9 @@ public class DepartmentServiceImpl implements DepartmentService {
             department.setName(departmentDTO.getName());
             department.setCode(departmentDTO.getCode());
             department.setDescription(departmentDTO.getDescription());
+            if (departmentDTO.getGradingFormula() != null) {
+                department.setGradingFormula(gradingFormulaRegistry.validate(departmentDTO.getGradingFormula()));
+            }
             
             if (departmentDTO.getHeadOfDepartmentId() != null) {
                 Teacher teacher = teacherRepository.findById(departmentDTO.getHeadOfDepartmentId())
@@ -85,12 +99,15 @@ public class DepartmentServiceImpl implements DepartmentService {
                 department.setHeadOfDepartment(null);
             }
             
-            return departmentRepository.save(department);
+            Department saved = departmentRepository.save(department);
+            referenceDataCache.changed();
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Department not found with id " + id));
     }
 
     @Override
     public void deleteDepartment(Long id) {
         departmentRepository.deleteById(id);
+        referenceDataCache.changed();
     }
 }
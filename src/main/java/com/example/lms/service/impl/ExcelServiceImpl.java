@@ -1,5 +1,7 @@
 package com.example.lms.service.impl;
 
+import com.example.lms.dto.GradeImportChangeDTO;
+import com.example.lms.dto.GradeImportPreviewDTO;
 import com.example.lms.dto.ImportResultDTO;
 import com.example.lms.dto.ImportRowDTO;
 import com.example.lms.dto.StudentDTO;
@@ -7,25 +9,78 @@ import com.example.lms.dto.TeacherDTO;
 import com.example.lms.model.*;
 import com.example.lms.repository.*;
 import com.example.lms.service.ExcelService;
+import com.example.lms.service.GradeService;
+import com.example.lms.service.excel.CsvReader;
+import com.example.lms.service.excel.CsvWriter;
+import com.example.lms.service.excel.ExcelSheetReader;
+import com.example.lms.service.excel.GradeImportPreview;
+import com.example.lms.service.excel.GradeImportPreviewStore;
+import com.example.lms.service.excel.GradeImportWriter;
+import com.example.lms.service.excel.ImportCheckpoint;
+import com.example.lms.service.excel.ImportProgress;
+import com.example.lms.service.excel.ImportProgressRegistry;
+import com.example.lms.service.excel.ParallelPasswordHasher;
+import com.example.lms.service.excel.PendingImportRow;
+import com.example.lms.service.excel.StudentImportWriter;
+import com.example.lms.service.reference.ReferenceDataCache;
+import com.example.lms.service.reference.ReferenceDataSnapshot;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
 public class ExcelServiceImpl implements ExcelService {
 
+    // Rows an SXSSF sheet keeps in memory before flushing them to its temp file
+    private static final int EXPORT_ROW_WINDOW = 200;
+    // Rows persisted per transaction by the user imports
+    private static final int IMPORT_CHUNK_SIZE = StudentImportWriter.MAX_CHUNK_SIZE;
+    // Values per IN list
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+    // Columns of the student and teacher files, Excel and CSV alike
+    private static final String[] STUDENT_COLUMNS = {
+        "Student ID*", "First Name*", "Last Name*", "Email*", 
+        "Date of Birth (YYYY-MM-DD)", "Department Code*", "Class Code*", 
+        "Group Name", "Phone", "Username*", "Password*", "Status*"
+    };
+    private static final String[] TEACHER_COLUMNS = {
+        "Teacher ID*", "First Name*", "Last Name*", "Email*", 
+        "Department Code*", "Specialization", "Office Location", 
+        "Phone", "Username*", "Password*", "Hire Date (YYYY-MM-DD)"
+    };
+    // Columns of the grade CSV; Matricule and Note sit where they are in the Excel grade template
+    private static final String[] GRADE_CSV_COLUMNS = {"Matricule", "Nom", "Prénom", "Note", "Section", "Groupe"};
+    // Longest a cached grade template is served without regenerating it
+    private static final long GRADE_TEMPLATE_TTL_MS = 10 * 60 * 1000L;
+    // Cached grade templates at most; the oldest go first
+    private static final int MAX_GRADE_TEMPLATES = 200;
+    
+    // "assignmentId:groupId:markColumn" -> generated template
+    private final Map<String, GradeTemplate> gradeTemplates = new ConcurrentHashMap<>();
+
     @Autowired
     private StudentRepository studentRepository;
 
@@ -39,10 +94,7 @@ public class ExcelServiceImpl implements ExcelService {
     private DepartmentRepository departmentRepository;
 
     @Autowired
-    private StudentClassRepository classRepository;
-
-    @Autowired
-    private GroupRepository groupRepository;
+    private ReferenceDataCache referenceDataCache;
 
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -52,152 +104,189 @@ public class ExcelServiceImpl implements ExcelService {
     
     @Autowired
     private TeacherAssignmentRepository teacherAssignmentRepository;
+    
+    @Autowired
+    private GradeService gradeService;
+    
+    @Autowired
+    private ParallelPasswordHasher passwordHasher;
+    
+    @Autowired
+    private StudentImportWriter studentImportWriter;
+    
+    @Autowired
+    private ImportProgressRegistry importProgressRegistry;
+    
+    @Autowired
+    private GradeImportWriter gradeImportWriter;
+    
+    @Autowired
+    private GradeImportPreviewStore gradeImportPreviews;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     @Override
-    public Resource generateStudentTemplate() throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        
-        // Create main data sheet
-        Sheet dataSheet = workbook.createSheet("Students");
-        
-        // Create header style
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setFillForegroundColor(IndexedColors.DARK_BLUE.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        
-        // Create header row
-        Row headerRow = dataSheet.createRow(0);
-        String[] headers = {
-            "Student ID*", "First Name*", "Last Name*", "Email*", 
-            "Date of Birth (YYYY-MM-DD)", "Department Code*", "Class Code*", 
-            "Group Name", "Phone", "Username*", "Password*", "Status*"
-        };
-        
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-            dataSheet.setColumnWidth(i, 4000);
-        }
-        
-        // Add existing students
-        List<Student> students = studentRepository.findAll();
-        int rowNum = 1;
-        for (Student student : students) {
-            Row row = dataSheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(student.getStudentId());
-            row.createCell(1).setCellValue(student.getUser().getFirstName());
-            row.createCell(2).setCellValue(student.getUser().getLastName());
-            row.createCell(3).setCellValue(student.getUser().getEmail());
+    @Transactional(readOnly = true)
+    public void writeStudentTemplate(OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            // Create main data sheet
+            Sheet dataSheet = workbook.createSheet("Students");
+            writeHeaderRow(workbook, dataSheet, STUDENT_COLUMNS);
             
-            if (student.getDateOfBirth() != null) {
-                row.createCell(4).setCellValue(student.getDateOfBirth().toString());
+            // Add existing students, streamed: only EXPORT_ROW_WINDOW rows are kept in memory
+            try (Stream<Object[]> students = studentRepository.streamTemplateRows()) {
+                int[] rowNum = {1};
+                students.forEach(student -> {
+                    Row row = dataSheet.createRow(rowNum[0]++);
+                    setCell(row, 0, student[0]);   // Student ID
+                    setCell(row, 1, student[1]);   // First name
+                    setCell(row, 2, student[2]);   // Last name
+                    setCell(row, 3, student[3]);   // Email
+                    setCell(row, 4, student[4]);   // Date of birth
+                    setCell(row, 5, student[5]);   // Department code
+                    setCell(row, 6, student[6]);   // Class name
+                    setCell(row, 7, student[7]);   // Group name
+                    setCell(row, 8, student[8]);   // Phone
+                    setCell(row, 9, student[9]);   // Username (existing students)
+                    // Password placeholder - admins can fill this to change passwords
+                    row.createCell(10).setCellValue(""); // Leave empty for existing students
+                    setCell(row, 11, student[10]); // Status
+                });
             }
             
-            row.createCell(5).setCellValue(student.getDepartment().getCode());
-            row.createCell(6).setCellValue(student.getStudentClass().getName());
+            // Create instructions sheet
+            writeInstructions(workbook.createSheet("Instructions"), new String[]{
+                "STUDENT IMPORT TEMPLATE - INSTRUCTIONS",
+                null,
+                "1. Fields marked with * are required",
+                "2. Department Code must match existing departments (e.g., CS, MATH)",
+                "3. Class Code must match existing classes (e.g., L1 Computer Science)",
+                "4. Date of Birth format: YYYY-MM-DD (e.g., 2005-03-15)",
+                "5. Status must be: ACTIVE, SUSPENDED, or GRADUATED",
+                "6. Username: defaults to lowercase Student ID (e.g., s001)",
+                "7. Password: provide plain text, it will be encrypted. Leave empty for existing students to keep their password.",
+                "   TIP: Use Excel formulas to bulk-generate passwords (e.g., =CONCATENATE(A2, \"2025\") or =CONCATENATE(A2, E2))",
+                null,
+                "To add new students: Add rows below existing data",
+                "To update existing students: Modify their row (Student ID must match)"
+            });
             
-            if (student.getGroup() != null) {
-                row.createCell(7).setCellValue(student.getGroup().getName());
-            }
+            // Create reference sheet with valid values
+            ReferenceDataSnapshot reference = referenceDataCache.snapshot();
+            List<String> departmentCodes = reference.departments().stream().map(Department::getCode).toList();
+            List<String> classNames = reference.classes().stream().map(StudentClass::getName).toList();
+            writeReferenceSheet(workbook.createSheet("Reference Data"),
+                    new String[]{"Valid Department Codes", "Valid Class Names", "Valid Statuses"},
+                    List.of(departmentCodes, classNames, List.of("ACTIVE", "SUSPENDED", "GRADUATED")));
+            
+            workbook.write(out);
+        } finally {
+            workbook.close();
+            workbook.dispose();
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void writeTeacherTemplate(OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            // Create main data sheet
+            Sheet dataSheet = workbook.createSheet("Teachers");
+            writeHeaderRow(workbook, dataSheet, TEACHER_COLUMNS);
             
-            if (student.getUser().getPhone() != null) {
-                row.createCell(8).setCellValue(student.getUser().getPhone());
+            // Add existing teachers, streamed like the students
+            try (Stream<Object[]> teachers = teacherRepository.streamTemplateRows()) {
+                int[] rowNum = {1};
+                teachers.forEach(teacher -> {
+                    Row row = dataSheet.createRow(rowNum[0]++);
+                    setCell(row, 0, teacher[0]);   // Teacher ID
+                    setCell(row, 1, teacher[1]);   // First name
+                    setCell(row, 2, teacher[2]);   // Last name
+                    setCell(row, 3, teacher[3]);   // Email
+                    setCell(row, 4, teacher[4]);   // Department code
+                    setCell(row, 5, teacher[5]);   // Specialization
+                    setCell(row, 6, teacher[6]);   // Office location
+                    setCell(row, 7, teacher[7]);   // Phone
+                    setCell(row, 8, teacher[8]);   // Username (existing teachers)
+                    // Password placeholder
+                    row.createCell(9).setCellValue(""); // Leave empty for existing teachers
+                    setCell(row, 10, teacher[9]);  // Hire date
+                });
             }
             
-            // Username (existing students)
-            row.createCell(9).setCellValue(student.getUser().getUsername());
+            // Create instructions sheet
+            writeInstructions(workbook.createSheet("Instructions"), new String[]{
+                "TEACHER IMPORT TEMPLATE - INSTRUCTIONS",
+                null,
+                "1. Fields marked with * are required",
+                "2. Department Code must match existing departments (e.g., CS, MATH)",
+                "3. Hire Date format: YYYY-MM-DD (e.g., 2020-09-01)",
+                "4. Password will be auto-generated as: {teacherId}2025",
+                null,
+                "To add new teachers: Add rows below existing data",
+                "To update existing teachers: Modify their row (Teacher ID must match)"
+            });
             
-            // Password placeholder - admins can fill this to change passwords
-            row.createCell(10).setCellValue(""); // Leave empty for existing students
+            // Create reference sheet
+            List<String> departmentCodes = referenceDataCache.snapshot().departments().stream()
+                    .map(Department::getCode).toList();
+            writeReferenceSheet(workbook.createSheet("Reference Data"),
+                    new String[]{"Valid Department Codes"}, List.of(departmentCodes));
             
-            row.createCell(11).setCellValue(student.getStatus().toString());
-        }
-        
-        // Create instructions sheet
-        Sheet instructionsSheet = workbook.createSheet("Instructions");
-        Row instrRow1 = instructionsSheet.createRow(0);
-        instrRow1.createCell(0).setCellValue("STUDENT IMPORT TEMPLATE - INSTRUCTIONS");
-        
-        Row instrRow2 = instructionsSheet.createRow(2);
-        instrRow2.createCell(0).setCellValue("1. Fields marked with * are required");
-        
-        Row instrRow3 = instructionsSheet.createRow(3);
-        instrRow3.createCell(0).setCellValue("2. Department Code must match existing departments (e.g., CS, MATH)");
-        
-        Row instrRow4 = instructionsSheet.createRow(4);
-        instrRow4.createCell(0).setCellValue("3. Class Code must match existing classes (e.g., L1 Computer Science)");
-        
-        Row instrRow5 = instructionsSheet.createRow(5);
-        instrRow5.createCell(0).setCellValue("4. Date of Birth format: YYYY-MM-DD (e.g., 2005-03-15)");
-        
-        Row instrRow6 = instructionsSheet.createRow(6);
-        instrRow6.createCell(0).setCellValue("5. Status must be: ACTIVE, SUSPENDED, or GRADUATED");
-        
-        Row instrRow7 = instructionsSheet.createRow(7);
-        instrRow7.createCell(0).setCellValue("6. Username: defaults to lowercase Student ID (e.g., s001)");
-        
-        Row instrRow7b = instructionsSheet.createRow(8);
-        instrRow7b.createCell(0).setCellValue("7. Password: provide plain text, it will be encrypted. Leave empty for existing students to keep their password.");
-        
-        Row instrRow7c = instructionsSheet.createRow(9);
-        instrRow7c.createCell(0).setCellValue("   TIP: Use Excel formulas to bulk-generate passwords (e.g., =CONCATENATE(A2, \"2025\") or =CONCATENATE(A2, E2))");
-        
-        Row instrRow8 = instructionsSheet.createRow(11);
-        instrRow8.createCell(0).setCellValue("To add new students: Add rows below existing data");
-        
-        Row instrRow9 = instructionsSheet.createRow(12);
-        instrRow9.createCell(0).setCellValue("To update existing students: Modify their row (Student ID must match)");
-        
-        instructionsSheet.setColumnWidth(0, 15000);
-        
-        // Create reference sheet with valid values
-        Sheet referenceSheet = workbook.createSheet("Reference Data");
-        Row refHeader = referenceSheet.createRow(0);
-        refHeader.createCell(0).setCellValue("Valid Department Codes");
-        refHeader.createCell(1).setCellValue("Valid Class Names");
-        refHeader.createCell(2).setCellValue("Valid Statuses");
-        
-        List<Department> departments = departmentRepository.findAll();
-        List<StudentClass> classes = classRepository.findAll();
-        
-        int refRow = 1;
-        for (Department dept : departments) {
-            referenceSheet.createRow(refRow++).createCell(0).setCellValue(dept.getCode());
+            workbook.write(out);
+        } finally {
+            workbook.close();
+            workbook.dispose();
         }
-        
-        refRow = 1;
-        for (StudentClass sc : classes) {
-            referenceSheet.createRow(refRow++).createCell(1).setCellValue(sc.getName());
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void writeStudentCsv(OutputStream out) throws IOException {
+        CsvWriter csv = new CsvWriter(out);
+        csv.record((Object[]) STUDENT_COLUMNS);
+        // Same rows as the Excel template, written as they are read
+        try (Stream<Object[]> students = studentRepository.streamTemplateRows()) {
+            Iterator<Object[]> rows = students.iterator();
+            while (rows.hasNext()) {
+                Object[] student = rows.next();
+                for (int i = 0; i < 10; i++) {
+                    csv.field(student[i]);
+                }
+                csv.field(null);          // Password: empty keeps the current one
+                csv.field(student[10]);   // Status
+                csv.endRecord();
+            }
         }
-        
-        referenceSheet.createRow(1).createCell(2).setCellValue("ACTIVE");
-        referenceSheet.createRow(2).createCell(2).setCellValue("SUSPENDED");
-        referenceSheet.createRow(3).createCell(2).setCellValue("GRADUATED");
-        
-        referenceSheet.setColumnWidth(0, 5000);
-        referenceSheet.setColumnWidth(1, 5000);
-        referenceSheet.setColumnWidth(2, 5000);
-        
-        // Write to byte array
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-        
-        return new ByteArrayResource(outputStream.toByteArray());
+        csv.flush();
     }
 
     @Override
-    public Resource generateTeacherTemplate() throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        
-        // Create main data sheet
-        Sheet dataSheet = workbook.createSheet("Teachers");
-        
+    @Transactional(readOnly = true)
+    public void writeTeacherCsv(OutputStream out) throws IOException {
+        CsvWriter csv = new CsvWriter(out);
+        csv.record((Object[]) TEACHER_COLUMNS);
+        try (Stream<Object[]> teachers = teacherRepository.streamTemplateRows()) {
+            Iterator<Object[]> rows = teachers.iterator();
+            while (rows.hasNext()) {
+                Object[] teacher = rows.next();
+                for (int i = 0; i < 9; i++) {
+                    csv.field(teacher[i]);
+                }
+                csv.field(null);          // Password
+                csv.field(teacher[9]);    // Hire date
+                csv.endRecord();
+            }
+        }
+        csv.flush();
+    }
+    
+    private void writeHeaderRow(Workbook workbook, Sheet sheet, String[] headers) {
         // Create header style
         CellStyle headerStyle = workbook.createCellStyle();
         Font headerFont = workbook.createFont();
@@ -207,167 +296,132 @@ public class ExcelServiceImpl implements ExcelService {
         headerStyle.setFillForegroundColor(IndexedColors.DARK_BLUE.getIndex());
         headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
         
-        // Create header row
-        Row headerRow = dataSheet.createRow(0);
-        String[] headers = {
-            "Teacher ID*", "First Name*", "Last Name*", "Email*", 
-            "Department Code*", "Specialization", "Office Location", 
-            "Phone", "Username*", "Password*", "Hire Date (YYYY-MM-DD)"
-        };
-        
+        Row headerRow = sheet.createRow(0);
         for (int i = 0; i < headers.length; i++) {
             Cell cell = headerRow.createCell(i);
             cell.setCellValue(headers[i]);
             cell.setCellStyle(headerStyle);
-            dataSheet.setColumnWidth(i, 4000);
+            sheet.setColumnWidth(i, 4000);
         }
-        
-        // Add existing teachers
-        List<Teacher> teachers = teacherRepository.findAll();
-        int rowNum = 1;
-        for (Teacher teacher : teachers) {
-            Row row = dataSheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(teacher.getTeacherId());
-            row.createCell(1).setCellValue(teacher.getUser().getFirstName());
-            row.createCell(2).setCellValue(teacher.getUser().getLastName());
-            row.createCell(3).setCellValue(teacher.getUser().getEmail());
-            row.createCell(4).setCellValue(teacher.getDepartment().getCode());
-            
-            if (teacher.getSpecialization() != null) {
-                row.createCell(5).setCellValue(teacher.getSpecialization());
-            }
-            
-            if (teacher.getOfficeLocation() != null) {
-                row.createCell(6).setCellValue(teacher.getOfficeLocation());
-            }
-            
-            if (teacher.getUser().getPhone() != null) {
-                row.createCell(7).setCellValue(teacher.getUser().getPhone());
+    }
+    
+    // One line per row, null leaves a blank row
+    private void writeInstructions(Sheet sheet, String[] lines) {
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i] != null) {
+                sheet.createRow(i).createCell(0).setCellValue(lines[i]);
             }
-            
-            // Username (existing teachers)
-            row.createCell(8).setCellValue(teacher.getUser().getUsername());
-            
-            // Password placeholder
-            row.createCell(9).setCellValue(""); // Leave empty for existing teachers
-            
-            if (teacher.getHireDate() != null) {
-                row.createCell(10).setCellValue(teacher.getHireDate().toString());
+        }
+        sheet.setColumnWidth(0, 15000);
+    }
+    
+    // Columns side by side; streamed sheets are written row by row, so each row gets all its columns at once
+    private void writeReferenceSheet(Sheet sheet, String[] headers, List<List<String>> columns) {
+        Row header = sheet.createRow(0);
+        int rows = 0;
+        for (int c = 0; c < headers.length; c++) {
+            header.createCell(c).setCellValue(headers[c]);
+            sheet.setColumnWidth(c, 5000);
+            rows = Math.max(rows, columns.get(c).size());
+        }
+        for (int r = 0; r < rows; r++) {
+            Row row = sheet.createRow(r + 1);
+            for (int c = 0; c < columns.size(); c++) {
+                if (r < columns.get(c).size()) {
+                    row.createCell(c).setCellValue(columns.get(c).get(r));
+                }
             }
         }
-        
-        // Create instructions sheet
-        Sheet instructionsSheet = workbook.createSheet("Instructions");
-        Row instrRow1 = instructionsSheet.createRow(0);
-        instrRow1.createCell(0).setCellValue("TEACHER IMPORT TEMPLATE - INSTRUCTIONS");
-        
-        Row instrRow2 = instructionsSheet.createRow(2);
-        instrRow2.createCell(0).setCellValue("1. Fields marked with * are required");
-        
-        Row instrRow3 = instructionsSheet.createRow(3);
-        instrRow3.createCell(0).setCellValue("2. Department Code must match existing departments (e.g., CS, MATH)");
-        
-        Row instrRow4 = instructionsSheet.createRow(4);
-        instrRow4.createCell(0).setCellValue("3. Hire Date format: YYYY-MM-DD (e.g., 2020-09-01)");
-        
-        Row instrRow5 = instructionsSheet.createRow(5);
-        instrRow5.createCell(0).setCellValue("4. Password will be auto-generated as: {teacherId}2025");
-        
-        Row instrRow6 = instructionsSheet.createRow(7);
-        instrRow6.createCell(0).setCellValue("To add new teachers: Add rows below existing data");
-        
-        Row instrRow7 = instructionsSheet.createRow(8);
-        instrRow7.createCell(0).setCellValue("To update existing teachers: Modify their row (Teacher ID must match)");
-        
-        instructionsSheet.setColumnWidth(0, 15000);
-        
-        // Create reference sheet
-        Sheet referenceSheet = workbook.createSheet("Reference Data");
-        Row refHeader = referenceSheet.createRow(0);
-        refHeader.createCell(0).setCellValue("Valid Department Codes");
-        
-        List<Department> departments = departmentRepository.findAll();
-        
-        int refRow = 1;
-        for (Department dept : departments) {
-            referenceSheet.createRow(refRow++).createCell(0).setCellValue(dept.getCode());
+    }
+    
+    private void setCell(Row row, int column, Object value) {
+        if (value != null) {
+            row.createCell(column).setCellValue(value.toString());
         }
-        
-        referenceSheet.setColumnWidth(0, 5000);
-        
-        // Write to byte array
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-        
-        return new ByteArrayResource(outputStream.toByteArray());
     }
 
     @Override
+    @Transactional(readOnly = true)
     public ImportResultDTO validateStudentExcel(MultipartFile file) throws IOException {
+        // SAX read: the workbook is never built in memory
+        return validateStudents(handler -> {
+            try (InputStream in = file.getInputStream()) {
+                return ExcelSheetReader.read(in, "Students", STUDENT_COLUMNS.length, handler);
+            }
+        }, "Sheet 'Students' not found in Excel file");
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImportResultDTO validateStudentCsv(MultipartFile file) throws IOException {
+        return validateStudents(handler -> {
+            try (InputStream in = file.getInputStream()) {
+                CsvReader.read(in, STUDENT_COLUMNS.length, handler);
+                return true;
+            }
+        }, null);
+    }
+
+    // Rows are validated as they are parsed; the first row holds the column headers
+    private ImportResultDTO validateStudents(RowSource source, String missingSheetError) throws IOException {
         ImportResultDTO result = new ImportResultDTO();
         List<ImportRowDTO> validStudents = new ArrayList<>();
-        
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheet("Students");
-            
-            if (sheet == null) {
-                result.addError("Sheet 'Students' not found in Excel file");
-                result.setSuccess(false);
-                return result;
-            }
-            
-            int totalRows = sheet.getLastRowNum();
-            result.setTotalRows(totalRows);
+        // Departments, classes and groups are looked up in memory for every row
+        ReferenceDataSnapshot reference = referenceDataCache.snapshot();
+        int[] lastRow = {0};
+        
+        boolean found = source.read((rowIndex, cells) -> {
+            lastRow[0] = rowIndex;
+            // Skip header row
+            if (rowIndex == 0) return;
             
-            // Skip header row, start from row 1
-            for (int i = 1; i <= totalRows; i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
-                
-                try {
-                    ImportRowDTO dto = validateAndConvertStudentRow(row, i);
-                    validStudents.add(dto);
-                } catch (Exception e) {
-                    result.addError("Row " + (i + 1) + ": " + e.getMessage());
-                    result.setInvalidRows(result.getInvalidRows() + 1);
-                }
+            try {
+                validStudents.add(validateAndConvertStudentRow(cells, reference));
+            } catch (Exception e) {
+                result.addError("Row " + (rowIndex + 1) + ": " + e.getMessage());
+                result.setInvalidRows(result.getInvalidRows() + 1);
             }
-            
-            result.setValidRows(validStudents.size());
-            result.setValidData(validStudents);
-            result.setSuccess(result.getInvalidRows() == 0);
+        });
+        
+        if (!found) {
+            result.addError(missingSheetError);
+            result.setSuccess(false);
+            return result;
         }
         
+        result.setTotalRows(lastRow[0]);
+        result.setValidRows(validStudents.size());
+        result.setValidData(validStudents);
+        result.setSuccess(result.getInvalidRows() == 0);
         return result;
     }
 
-    private ImportRowDTO validateAndConvertStudentRow(Row row, int rowIndex) {
+    private ImportRowDTO validateAndConvertStudentRow(String[] cells, ReferenceDataSnapshot reference) {
         ImportRowDTO dto = new ImportRowDTO();
         
         // Student ID (required)
-        String studentId = getCellValue(row, 0);
+        String studentId = cells[0];
         if (studentId == null || studentId.trim().isEmpty()) {
             throw new RuntimeException("Student ID is required");
         }
         dto.setStudentId(studentId.trim());
         
         // First Name (required)
-        String firstName = getCellValue(row, 1);
+        String firstName = cells[1];
         if (firstName == null || firstName.trim().isEmpty()) {
             throw new RuntimeException("First Name is required");
         }
         dto.setFirstName(firstName.trim());
         
         // Last Name (required)
-        String lastName = getCellValue(row, 2);
+        String lastName = cells[2];
         if (lastName == null || lastName.trim().isEmpty()) {
             throw new RuntimeException("Last Name is required");
         }
         dto.setLastName(lastName.trim());
         
         // Email (required)
-        String email = getCellValue(row, 3);
+        String email = cells[3];
         if (email == null || email.trim().isEmpty()) {
             throw new RuntimeException("Email is required");
         }
@@ -377,7 +431,7 @@ public class ExcelServiceImpl implements ExcelService {
         dto.setEmail(email.trim());
         
         // Date of Birth (optional)
-        String dobStr = getCellValue(row, 4);
+        String dobStr = cells[4];
         if (dobStr != null && !dobStr.trim().isEmpty()) {
             try {
                 LocalDate.parse(dobStr.trim()); // Validate format
@@ -388,43 +442,49 @@ public class ExcelServiceImpl implements ExcelService {
         }
         
         // Department Code (required)
-        String deptCode = getCellValue(row, 5);
+        String deptCode = cells[5];
         if (deptCode == null || deptCode.trim().isEmpty()) {
             throw new RuntimeException("Department Code is required");
         }
-        Department department = departmentRepository.findByCode(deptCode.trim())
-                .orElseThrow(() -> new RuntimeException("Department code '" + deptCode + "' not found"));
+        Department department = reference.department(deptCode.trim());
+        if (department == null) {
+            throw new RuntimeException("Department code '" + deptCode + "' not found");
+        }
         dto.setDepartmentId(department.getId());
         dto.setDepartmentCode(department.getCode());
         dto.setDepartmentName(department.getName());
         
         // Class Code (required)
-        String className = getCellValue(row, 6);
+        String className = cells[6];
         if (className == null || className.trim().isEmpty()) {
             throw new RuntimeException("Class Code is required");
         }
-        StudentClass studentClass = classRepository.findByName(className.trim())
-                .orElseThrow(() -> new RuntimeException("Class '" + className + "' not found"));
+        StudentClass studentClass = reference.studentClass(className.trim());
+        if (studentClass == null) {
+            throw new RuntimeException("Class '" + className + "' not found");
+        }
         dto.setClassId(studentClass.getId());
         dto.setClassName(studentClass.getName());
         
         // Group Name (optional)
-        String groupName = getCellValue(row, 7);
+        String groupName = cells[7];
         if (groupName != null && !groupName.trim().isEmpty()) {
-            Group group = groupRepository.findByNameAndStudentClassId(groupName.trim(), studentClass.getId())
-                    .orElseThrow(() -> new RuntimeException("Group '" + groupName + "' not found for class " + className));
+            Group group = reference.group(studentClass.getId(), groupName.trim());
+            if (group == null) {
+                throw new RuntimeException("Group '" + groupName + "' not found for class " + className);
+            }
             dto.setGroupId(group.getId());
             dto.setGroupName(group.getName());
         }
         
         // Phone (optional)
-        String phone = getCellValue(row, 8);
+        String phone = cells[8];
         if (phone != null && !phone.trim().isEmpty()) {
             dto.setPhone(phone.trim());
         }
         
         // Username (required for new students, optional for updates)
-        String username = getCellValue(row, 9);
+        String username = cells[9];
         if (username != null && !username.trim().isEmpty()) {
             dto.setUsername(username.trim().toLowerCase());
         } else {
@@ -433,7 +493,7 @@ public class ExcelServiceImpl implements ExcelService {
         }
         
         // Password (optional - if provided, will update password; if empty, keeps existing or auto-generates)
-        String password = getCellValue(row, 10);
+        String password = cells[10];
         if (password != null && !password.trim().isEmpty()) {
             if (password.length() < 4) {
                 throw new RuntimeException("Password must be at least 4 characters");
@@ -443,7 +503,7 @@ public class ExcelServiceImpl implements ExcelService {
         // If password is empty, import logic will handle default generation for new students
         
         // Status (required)
-        String status = getCellValue(row, 11);
+        String status = cells[11];
         if (status == null || status.trim().isEmpty()) {
             throw new RuntimeException("Status is required");
         }
@@ -458,70 +518,86 @@ public class ExcelServiceImpl implements ExcelService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public ImportResultDTO validateTeacherExcel(MultipartFile file) throws IOException {
+        // SAX read: the workbook is never built in memory
+        return validateTeachers(handler -> {
+            try (InputStream in = file.getInputStream()) {
+                return ExcelSheetReader.read(in, "Teachers", TEACHER_COLUMNS.length, handler);
+            }
+        }, "Sheet 'Teachers' not found in Excel file");
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImportResultDTO validateTeacherCsv(MultipartFile file) throws IOException {
+        return validateTeachers(handler -> {
+            try (InputStream in = file.getInputStream()) {
+                CsvReader.read(in, TEACHER_COLUMNS.length, handler);
+                return true;
+            }
+        }, null);
+    }
+
+    // Same as validateStudents
+    private ImportResultDTO validateTeachers(RowSource source, String missingSheetError) throws IOException {
         ImportResultDTO result = new ImportResultDTO();
         List<ImportRowDTO> validTeachers = new ArrayList<>();
+        ReferenceDataSnapshot reference = referenceDataCache.snapshot();
+        int[] lastRow = {0};
         
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheet("Teachers");
-            
-            if (sheet == null) {
-                result.addError("Sheet 'Teachers' not found in Excel file");
-                result.setSuccess(false);
-                return result;
-            }
-            
-            int totalRows = sheet.getLastRowNum();
-            result.setTotalRows(totalRows);
+        boolean found = source.read((rowIndex, cells) -> {
+            lastRow[0] = rowIndex;
+            // Skip header row
+            if (rowIndex == 0) return;
             
-            // Skip header row, start from row 1
-            for (int i = 1; i <= totalRows; i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
-                
-                try {
-                    ImportRowDTO teacherDto = validateAndConvertTeacherRow(row, i);
-                    validTeachers.add(teacherDto);
-                } catch (Exception e) {
-                    result.addError("Row " + (i + 1) + ": " + e.getMessage());
-                    result.setInvalidRows(result.getInvalidRows() + 1);
-                }
+            try {
+                validTeachers.add(validateAndConvertTeacherRow(cells, reference));
+            } catch (Exception e) {
+                result.addError("Row " + (rowIndex + 1) + ": " + e.getMessage());
+                result.setInvalidRows(result.getInvalidRows() + 1);
             }
-            
-            result.setValidRows(validTeachers.size());
-            result.setValidData(validTeachers);
-            result.setSuccess(result.getInvalidRows() == 0);
+        });
+        
+        if (!found) {
+            result.addError(missingSheetError);
+            result.setSuccess(false);
+            return result;
         }
         
+        result.setTotalRows(lastRow[0]);
+        result.setValidRows(validTeachers.size());
+        result.setValidData(validTeachers);
+        result.setSuccess(result.getInvalidRows() == 0);
         return result;
     }
 
-    private ImportRowDTO validateAndConvertTeacherRow(Row row, int rowIndex) {
+    private ImportRowDTO validateAndConvertTeacherRow(String[] cells, ReferenceDataSnapshot reference) {
         ImportRowDTO dto = new ImportRowDTO();
         
         // Teacher ID (required)
-        String teacherId = getCellValue(row, 0);
+        String teacherId = cells[0];
         if (teacherId == null || teacherId.trim().isEmpty()) {
             throw new RuntimeException("Teacher ID is required");
         }
         dto.setTeacherId(teacherId.trim());
         
         // First Name (required)
-        String firstName = getCellValue(row, 1);
+        String firstName = cells[1];
         if (firstName == null || firstName.trim().isEmpty()) {
             throw new RuntimeException("First Name is required");
         }
         dto.setFirstName(firstName.trim());
         
         // Last Name (required)
-        String lastName = getCellValue(row, 2);
+        String lastName = cells[2];
         if (lastName == null || lastName.trim().isEmpty()) {
             throw new RuntimeException("Last Name is required");
         }
         dto.setLastName(lastName.trim());
         
         // Email (required)
-        String email = getCellValue(row, 3);
+        String email = cells[3];
         if (email == null || email.trim().isEmpty()) {
             throw new RuntimeException("Email is required");
         }
@@ -531,36 +607,38 @@ public class ExcelServiceImpl implements ExcelService {
         dto.setEmail(email.trim());
         
         // Department Code (required)
-        String deptCode = getCellValue(row, 4);
+        String deptCode = cells[4];
         if (deptCode == null || deptCode.trim().isEmpty()) {
             throw new RuntimeException("Department Code is required");
         }
-        Department department = departmentRepository.findByCode(deptCode.trim())
-                .orElseThrow(() -> new RuntimeException("Department code '" + deptCode + "' not found"));
+        Department department = reference.department(deptCode.trim());
+        if (department == null) {
+            throw new RuntimeException("Department code '" + deptCode + "' not found");
+        }
         dto.setDepartmentId(department.getId());
         dto.setDepartmentCode(department.getCode());
         dto.setDepartmentName(department.getName());
         
         // Specialization (optional)
-        String specialization = getCellValue(row, 5);
+        String specialization = cells[5];
         if (specialization != null && !specialization.trim().isEmpty()) {
             dto.setSpecialization(specialization.trim());
         }
         
         // Office Location (optional)
-        String office = getCellValue(row, 6);
+        String office = cells[6];
         if (office != null && !office.trim().isEmpty()) {
             dto.setOfficeLocation(office.trim());
         }
         
         // Phone (optional)
-        String phone = getCellValue(row, 7);
+        String phone = cells[7];
         if (phone != null && !phone.trim().isEmpty()) {
             dto.setPhone(phone.trim());
         }
         
         // Username (required for new teachers, optional for updates)
-        String username = getCellValue(row, 8);
+        String username = cells[8];
         if (username != null && !username.trim().isEmpty()) {
             dto.setUsername(username.trim().toLowerCase());
         } else {
@@ -569,7 +647,7 @@ public class ExcelServiceImpl implements ExcelService {
         }
         
         // Password (optional)
-        String password = getCellValue(row, 9);
+        String password = cells[9];
         if (password != null && !password.trim().isEmpty()) {
             if (password.length() < 4) {
                 throw new RuntimeException("Password must be at least 4 characters");
@@ -578,7 +656,7 @@ public class ExcelServiceImpl implements ExcelService {
         }
         
         // Hire Date (optional)
-        String hireDateStr = getCellValue(row, 10);
+        String hireDateStr = cells[10];
         if (hireDateStr != null && !hireDateStr.trim().isEmpty()) {
             try {
                 LocalDate.parse(hireDateStr.trim()); // Validate format
@@ -591,465 +669,554 @@ public class ExcelServiceImpl implements ExcelService {
         return dto;
     }
 
-    private String getCellValue(Row row, int cellIndex) {
-        Cell cell = row.getCell(cellIndex);
-        if (cell == null) return null;
-        
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getLocalDateTimeCellValue().toLocalDate().toString();
-                } else {
-                    // Convert number to string, remove decimal for whole numbers
-                    double numValue = cell.getNumericCellValue();
-                    if (numValue == (long) numValue) {
-                        return String.valueOf((long) numValue);
-                    } else {
-                        return String.valueOf(numValue);
-                    }
-                }
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            default:
-                return null;
-        }
+    @Override
+    public int importStudents(List<ImportRowDTO> rows, ImportCheckpoint checkpoint) {
+        return importUsers("students", rows, checkpoint, ImportRowDTO::getStudentId,
+                studentRepository::findExistingStudentIds, (chunk, rejected) -> {
+                    List<Long> studentIds = studentImportWriter.write(chunk, rejected);
+                    // Empty grade rows for the chunk: one anti-join and batched inserts
+                    gradeService.autoCreateGradesForStudents(studentIds);
+                    return studentIds;
+                });
     }
 
     @Override
-    @Transactional
-    public int importStudents(ImportResultDTO result) {
-        int imported = 0;
+    public int importTeachers(List<ImportRowDTO> rows, ImportCheckpoint checkpoint) {
+        return importUsers("teachers", rows, checkpoint, ImportRowDTO::getTeacherId,
+                teacherRepository::findExistingTeacherIds, (chunk, rejected) -> {
+                    List<Long> teacherIds = new ArrayList<>(chunk.size());
+                    for (PendingImportRow row : chunk) {
+                        teacherIds.add(persistTeacherRow(row.getData(), row.getPasswordHash()));
+                    }
+                    return teacherIds;
+                });
+    }
+    
+    private Long persistTeacherRow(ImportRowDTO dto, String passwordHash) {
+        String teacherId = dto.getTeacherId();
         
-        for (ImportRowDTO dto : result.getValidData()) {
-            String studentId = dto.getStudentId();
-            
-            // Check if student already exists (update) or new (insert)
-            Optional<Student> existingStudent = studentRepository.findByStudentId(studentId);
-            
-            Student student;
-            User user;
-            
-            if (existingStudent.isPresent()) {
-                // Update existing student
-                student = existingStudent.get();
-                user = student.getUser();
-            } else {
-                // Create new student
-                student = new Student();
-                user = new User();
-                user.setRole(Role.STUDENT);
-                user.setIsActive(true);
-            }
-            
-            // Update user fields
-            user.setFirstName(dto.getFirstName());
-            user.setLastName(dto.getLastName());
-            user.setEmail(dto.getEmail());
-            
-            // Update username (from Excel or default)
-            user.setUsername(dto.getUsername());
-            
-            // Update password if provided in Excel
-            if (dto.getPassword() != null && !dto.getPassword().trim().isEmpty()) {
-                // Admin provided a password - hash it
-                user.setPassword(passwordEncoder.encode(dto.getPassword()));
-            } else if (!existingStudent.isPresent()) {
-                // New student with no password provided - auto-generate
-                user.setPassword(passwordEncoder.encode(studentId + "2025"));
-            }
-            // If existing student and no password provided, keep existing password
-            
-            if (dto.getPhone() != null) {
-                user.setPhone(dto.getPhone());
-            }
-            
-            // Save user
-            user = userRepository.save(user);
-            
-            // Update student fields
-            student.setUser(user);
-            student.setStudentId(studentId);
-            
-            // Load department, class, group by ID
-            Department department = departmentRepository.findById(dto.getDepartmentId())
-                    .orElseThrow(() -> new RuntimeException("Department not found"));
-            student.setDepartment(department);
-            
-            StudentClass studentClass = classRepository.findById(dto.getClassId())
-                    .orElseThrow(() -> new RuntimeException("Class not found"));
-            student.setStudentClass(studentClass);
-            
-            if (dto.getGroupId() != null) {
-                Group group = groupRepository.findById(dto.getGroupId())
-                        .orElseThrow(() -> new RuntimeException("Group not found"));
-                student.setGroup(group);
-            }
-            
-            if (dto.getDateOfBirth() != null) {
-                student.setDateOfBirth(LocalDate.parse(dto.getDateOfBirth()));
+        // Check if teacher already exists (update) or new (insert)
+        Optional<Teacher> existingTeacher = teacherRepository.findByTeacherId(teacherId);
+        
+        Teacher teacher;
+        User user;
+        
+        if (existingTeacher.isPresent()) {
+            // Update existing teacher
+            teacher = existingTeacher.get();
+            user = teacher.getUser();
+        } else {
+            // Create new teacher
+            teacher = new Teacher();
+            user = new User();
+            user.setRole(Role.TEACHER);
+            user.setIsActive(true);
+        }
+        
+        // Update user fields
+        user.setFirstName(dto.getFirstName());
+        user.setLastName(dto.getLastName());
+        user.setEmail(dto.getEmail());
+        
+        // Update username (from Excel or default)
+        user.setUsername(dto.getUsername());
+        
+        // Password hashed in stage 1 (null: existing teacher keeps the current one)
+        if (passwordHash == null && !existingTeacher.isPresent()) {
+            // Created since stage 1 looked - auto-generate now
+            passwordHash = passwordEncoder.encode(teacherId + "2025");
+        }
+        if (passwordHash != null) {
+            user.setPassword(passwordHash);
+        }
+        
+        if (dto.getPhone() != null) {
+            user.setPhone(dto.getPhone());
+        }
+        
+        // Save user
+        user = userRepository.save(user);
+        
+        // Update teacher fields
+        teacher.setUser(user);
+        teacher.setTeacherId(teacherId);
+        
+        // Load department by ID
+        Department department = departmentRepository.findById(dto.getDepartmentId())
+                .orElseThrow(() -> new RuntimeException("Department not found"));
+        teacher.setDepartment(department);
+        
+        if (dto.getSpecialization() != null) {
+            teacher.setSpecialization(dto.getSpecialization());
+        }
+        
+        if (dto.getOfficeLocation() != null) {
+            teacher.setOfficeLocation(dto.getOfficeLocation());
+        }
+        
+        if (dto.getHireDate() != null) {
+            teacher.setHireDate(LocalDate.parse(dto.getHireDate()));
+        }
+        
+        // Save teacher
+        return teacherRepository.save(teacher).getId();
+    }
+    
+    /**
+     * Import rows from the checkpoint on, in two stages:
+     * 1. hash the passwords in parallel, outside any transaction
+     * 2. persist chunks in short transactions, each committed together with its checkpoint
+     * A chunk that fails is replayed row by row so one bad row is reported instead of failing the job.
+     * @return number of rows imported by this run
+     */
+    private int importUsers(String type, List<ImportRowDTO> rows, ImportCheckpoint checkpoint,
+                            Function<ImportRowDTO, String> idOf,
+                            Function<List<String>, List<String>> findExistingIds,
+                            ChunkWriter writer) {
+        int first = checkpoint.nextRow();
+        List<ImportRowDTO> pending = rows.subList(first, rows.size());
+        ImportProgress progress = importProgressRegistry.start(checkpoint.id(), type, rows.size());
+        progress.persisted(first);
+        try {
+            // Stage 1: hash passwords in parallel, outside any transaction
+            Set<String> existingIds = new HashSet<>();
+            forEachChunk(pending.stream().map(idOf).toList(), ids -> existingIds.addAll(findExistingIds.apply(ids)));
+            List<String> rawPasswords = new ArrayList<>(pending.size());
+            for (ImportRowDTO dto : pending) {
+                rawPasswords.add(rawPassword(dto, idOf.apply(dto), existingIds.contains(idOf.apply(dto))));
             }
+            String[] hashes = hashPasswords(rawPasswords, progress);
             
-            student.setStatus(dto.getStatus());
-            
-            if (student.getEnrollmentDate() == null) {
-                student.setEnrollmentDate(LocalDate.now());
+            // Stage 2: persist in short transactions
+            progress.persisting();
+            int imported = 0;
+            for (int start = first; start < rows.size(); start += IMPORT_CHUNK_SIZE) {
+                int from = start;
+                int to = Math.min(start + IMPORT_CHUNK_SIZE, rows.size());
+                try {
+                    imported += transactionTemplate.execute(status -> {
+                        Map<Integer, String> rejected = new TreeMap<>();
+                        int written = writer.write(pendingRows(rows, hashes, first, from, to), rejected).size();
+                        checkpoint.committed(to, rejected);
+                        return written;
+                    });
+                } catch (ImportCheckpoint.LeaseLostException leaseLost) {
+                    throw leaseLost;
+                } catch (RuntimeException chunkError) {
+                    // Replay the chunk row by row; rows committed here are upserts, so a crash
+                    // before the checkpoint below only makes the next run update them again
+                    checkpoint.checkLease();
+                    Map<Integer, String> rejected = new TreeMap<>();
+                    for (int i = from; i < to; i++) {
+                        int row = i;
+                        try {
+                            imported += transactionTemplate.execute(status ->
+                                    writer.write(pendingRows(rows, hashes, first, row, row + 1), rejected).size());
+                        } catch (RuntimeException rowError) {
+                            rejected.put(row, NestedExceptionUtils.getMostSpecificCause(rowError).getMessage());
+                        }
+                    }
+                    transactionTemplate.executeWithoutResult(status -> checkpoint.committed(to, rejected));
+                }
+                progress.persisted(to - from);
             }
-            
-            // Save student
-            studentRepository.save(student);
-            imported++;
+            progress.done();
+            return imported;
+        } catch (RuntimeException e) {
+            progress.failed(e.getMessage());
+            throw e;
         }
-        
-        return imported;
     }
-
+    
+    private static List<PendingImportRow> pendingRows(List<ImportRowDTO> rows, String[] hashes, int first,
+                                                      int from, int to) {
+        List<PendingImportRow> chunk = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            chunk.add(new PendingImportRow(i, rows.get(i), hashes[i - first]));
+        }
+        return chunk;
+    }
+    
+    /**
+     * Persists one chunk of user rows inside the caller's transaction
+     */
+    @FunctionalInterface
+    private interface ChunkWriter {
+        // Returns the ids of the persisted entities; skipped rows go to rejected (row -> reason)
+        List<Long> write(List<PendingImportRow> chunk, Map<Integer, String> rejected);
+    }
+    
+    /**
+     * Password to hash for an imported user: the one from the sheet, the {id}2025 default for new
+     * users, or null when an existing user keeps the current password
+     */
+    private String rawPassword(ImportRowDTO dto, String id, boolean exists) {
+        if (dto.getPassword() != null && !dto.getPassword().trim().isEmpty()) {
+            // Admin provided a password
+            return dto.getPassword();
+        }
+        return exists ? null : id + "2025";
+    }
+    
+    private String[] hashPasswords(List<String> rawPasswords, ImportProgress progress) {
+        progress.hashing((int) rawPasswords.stream().filter(Objects::nonNull).count());
+        long start = System.currentTimeMillis();
+        String[] hashes = passwordHasher.hashAll(rawPasswords, progress::hashed);
+        System.out.println("🔐 Hashed " + progress.getPasswordsHashed() + " passwords in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return hashes;
+    }
+    
+    private <T> void forEachChunk(List<T> values, Consumer<List<T>> action) {
+        for (int i = 0; i < values.size(); i += LOOKUP_CHUNK_SIZE) {
+            action.accept(values.subList(i, Math.min(i + LOOKUP_CHUNK_SIZE, values.size())));
+        }
+    }
+    
     @Override
-    @Transactional
-    public int importTeachers(ImportResultDTO result) {
-        int imported = 0;
+    @Transactional(readOnly = true)
+    public Resource generateGradeTemplate(Long assignmentId, Long groupId, String gradeType, String username)
+            throws IOException {
+        // Mark column rather than the raw grade type: unknown types share the generic template
+        int markColumn = templateMarkColumn(gradeType);
+        
+        // Ownership is checked on every request, cached or not
+        TeacherAssignment assignment = ownedAssignment(assignmentId, username);
+        Long targetGroupId = targetGroup(assignment, groupId);
+        String key = assignmentId + ":" + targetGroupId + ":" + markColumn;
+        Long classId = assignment.getStudentClass().getId();
+        // Read the version before querying: a grade change committed meanwhile makes the entry stale
+        String version = studentRepository.findGradeVersionOfClass(classId);
+        GradeTemplate cached = gradeTemplates.get(key);
+        if (cached != null && cached.isFresh(version)) {
+            return new ByteArrayResource(cached.content);
+        }
         
-        for (ImportRowDTO dto : result.getValidData()) {
-            String teacherId = dto.getTeacherId();
-            
-            // Check if teacher already exists (update) or new (insert)
-            Optional<Teacher> existingTeacher = teacherRepository.findByTeacherId(teacherId);
-            
-            Teacher teacher;
-            User user;
-            
-            if (existingTeacher.isPresent()) {
-                // Update existing teacher
-                teacher = existingTeacher.get();
-                user = teacher.getUser();
-            } else {
-                // Create new teacher
-                teacher = new Teacher();
-                user = new User();
-                user.setRole(Role.TEACHER);
-                user.setIsActive(true);
-            }
-            
-            // Update user fields
-            user.setFirstName(dto.getFirstName());
-            user.setLastName(dto.getLastName());
-            user.setEmail(dto.getEmail());
-            
-            // Update username (from Excel or default)
-            user.setUsername(dto.getUsername());
-            
-            // Update password if provided in Excel
-            if (dto.getPassword() != null && !dto.getPassword().trim().isEmpty()) {
-                // Admin provided a password - hash it
-                user.setPassword(passwordEncoder.encode(dto.getPassword()));
-            } else if (!existingTeacher.isPresent()) {
-                // New teacher with no password provided - auto-generate
-                user.setPassword(passwordEncoder.encode(teacherId + "2025"));
-            }
-            // If existing teacher and no password provided, keep existing password
-            
-            if (dto.getPhone() != null) {
-                user.setPhone(dto.getPhone());
-            }
-            
-            // Save user
-            user = userRepository.save(user);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            Sheet sheet = workbook.createSheet("note");
             
-            // Update teacher fields
-            teacher.setUser(user);
-            teacher.setTeacherId(teacherId);
+            // Header info (Row 1) - Generic, no grade type
+            Row headerInfoRow = sheet.createRow(0);
+            Cell headerInfoCell = headerInfoRow.createCell(0);
+            String groupName = targetGroupId != null
+                ? referenceDataCache.snapshot().groupById(targetGroupId).getName()
+                : "Tous les groupes";
+            headerInfoCell.setCellValue(
+                assignment.getTeacher().getUser().getFirstName() + " " + 
+                assignment.getTeacher().getUser().getLastName() + "/" +
+                assignment.getSubject().getName() + "/" +
+                "Semestre " + assignment.getSemester() + "/" +
+                groupName
+            );
             
-            // Load department by ID
-            Department department = departmentRepository.findById(dto.getDepartmentId())
-                    .orElseThrow(() -> new RuntimeException("Department not found"));
-            teacher.setDepartment(department);
+            // Create header style
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
             
-            if (dto.getSpecialization() != null) {
-                teacher.setSpecialization(dto.getSpecialization());
-            }
+            // Create text format style for student IDs
+            CellStyle textStyle = workbook.createCellStyle();
+            DataFormat format = workbook.createDataFormat();
+            textStyle.setDataFormat(format.getFormat("@")); // @ means text format
             
-            if (dto.getOfficeLocation() != null) {
-                teacher.setOfficeLocation(dto.getOfficeLocation());
+            // Column headers (Row 2)
+            Row headerRow = sheet.createRow(1);
+            String[] headers = {"Matricule", "Nom   ", "Prénom", "Note", "Absent", 
+                               "Absence Justifiée", "Observation", "Section", "Groupe"};
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(headerStyle);
+                sheet.setColumnWidth(i, 4000);
             }
             
-            if (dto.getHireDate() != null) {
-                teacher.setHireDate(LocalDate.parse(dto.getHireDate()));
+            // Data rows: the roster with its current marks in one streamed query, nothing is written
+            try (Stream<Object[]> students = gradeRepository.streamGradeTemplateRows(classId, targetGroupId,
+                    assignment.getSubject().getId(), assignment.getSemester(), assignment.getAcademicYear())) {
+                int[] rowNum = {2};
+                students.forEach(student -> {
+                    Row row = sheet.createRow(rowNum[0]++);
+                    
+                    // Student ID - explicitly set as text to preserve format
+                    Cell idCell = row.createCell(0);
+                    idCell.setCellValue(student[0] != null ? (String) student[0] : "");
+                    idCell.setCellStyle(textStyle); // Apply text format
+                    
+                    setCell(row, 1, student[1]);   // Last name
+                    setCell(row, 2, student[2]);   // First name
+                    
+                    // Note - the current mark, if any, for the teacher to complete or correct
+                    if (markColumn >= 0 && student[markColumn] != null) {
+                        row.createCell(3).setCellValue((Double) student[markColumn]);
+                    }
+                    
+                    // Absent, Absence Justifiée, Observation stay empty
+                    setCell(row, 7, student[3]);   // Section (class name)
+                    setCell(row, 8, student[4]);   // Group
+                });
             }
             
-            // Save teacher
-            teacherRepository.save(teacher);
-            imported++;
+            workbook.write(outputStream);
+        } finally {
+            workbook.close();
+            workbook.dispose();
         }
         
-        return imported;
+        byte[] content = outputStream.toByteArray();
+        cacheGradeTemplate(key, new GradeTemplate(classId, version, content));
+        return new ByteArrayResource(content);
+    }
+    
+    private void cacheGradeTemplate(String key, GradeTemplate template) {
+        // Expired entries, and older versions of this class's templates
+        gradeTemplates.values().removeIf(stale -> stale.isExpired()
+                || (stale.classId.equals(template.classId) && !stale.version.equals(template.version)));
+        while (gradeTemplates.size() >= MAX_GRADE_TEMPLATES) {
+            gradeTemplates.entrySet().stream()
+                    .min(Comparator.comparingLong(entry -> entry.getValue().builtAt))
+                    .ifPresent(oldest -> gradeTemplates.remove(oldest.getKey(), oldest.getValue()));
+        }
+        gradeTemplates.put(key, template);
     }
     
     @Override
-    public Resource generateGradeTemplate(Long assignmentId, Long groupId, String gradeType) throws IOException {
-        // Get teacher assignment
+    @Transactional(readOnly = true)
+    public void checkGradeExport(Long assignmentId, Long groupId, String username) {
+        targetGroup(ownedAssignment(assignmentId, username), groupId);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void writeGradeCsv(Long assignmentId, Long groupId, String gradeType, String username, OutputStream out)
+            throws IOException {
+        TeacherAssignment assignment = ownedAssignment(assignmentId, username);
+        Long targetGroupId = targetGroup(assignment, groupId);
+        int markColumn = templateMarkColumn(gradeType);
+        
+        CsvWriter csv = new CsvWriter(out);
+        csv.record((Object[]) GRADE_CSV_COLUMNS);
+        try (Stream<Object[]> students = gradeRepository.streamGradeTemplateRows(assignment.getStudentClass().getId(),
+                targetGroupId, assignment.getSubject().getId(), assignment.getSemester(),
+                assignment.getAcademicYear())) {
+            Iterator<Object[]> rows = students.iterator();
+            while (rows.hasNext()) {
+                Object[] student = rows.next();
+                csv.record(student[0], student[1], student[2], markColumn >= 0 ? student[markColumn] : null,
+                        student[3], student[4]);
+            }
+        }
+        csv.flush();
+    }
+    
+    // Grade sheets are only served to, and taken from, the teacher of the assignment
+    private TeacherAssignment ownedAssignment(Long assignmentId, String username) {
         TeacherAssignment assignment = teacherAssignmentRepository.findById(assignmentId)
                 .orElseThrow(() -> new RuntimeException("Assignment not found"));
-        
-        // Get students in the class/group
-        List<Student> students;
-        if (groupId != null) {
-            students = studentRepository.findByGroupId(groupId);
-        } else {
-            students = studentRepository.findByStudentClassId(assignment.getStudentClass().getId());
+        if (!assignment.getTeacher().getUser().getUsername().equals(username)) {
+            throw new AccessDeniedException("Not your assignment");
         }
-        
-        // Get or create grades for each student
-        List<Grade> grades = new java.util.ArrayList<>();
-        for (Student student : students) {
-            Grade grade = gradeRepository.findByStudentIdAndSubjectIdAndSemester(
-                    student.getId(),
-                    assignment.getSubject().getId(),
-                    assignment.getSemester()
-            ).orElseGet(() -> {
-                // Create grade record if it doesn't exist
-                Grade newGrade = new Grade();
-                newGrade.setStudent(student);
-                newGrade.setSubject(assignment.getSubject());
-                newGrade.setStudentClass(student.getStudentClass());
-                newGrade.setSemester(assignment.getSemester());
-                newGrade.setAcademicYear(assignment.getAcademicYear());
-                return gradeRepository.save(newGrade);
-            });
-            grades.add(grade);
+        return assignment;
+    }
+    
+    // Group a grade sheet covers: the assignment's own group when it has one (any other is refused),
+    // otherwise the requested group, which must be one of the class (null: the whole class)
+    private Long targetGroup(TeacherAssignment assignment, Long groupId) {
+        if (assignment.getGroup() != null) {
+            if (groupId != null && !groupId.equals(assignment.getGroup().getId())) {
+                throw new AccessDeniedException("Group " + groupId + " is not the group of this assignment");
+            }
+            return assignment.getGroup().getId();
         }
-        
-        // Create workbook
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("note");
-        
-        // Header info (Row 1) - Generic, no grade type
-        Row headerInfoRow = sheet.createRow(0);
-        Cell headerInfoCell = headerInfoRow.createCell(0);
-        String groupName = groupId != null ? 
-            assignment.getGroup() != null ? assignment.getGroup().getName() : "Tous les groupes" : 
-            "Tous les groupes";
-        headerInfoCell.setCellValue(
-            assignment.getTeacher().getUser().getFirstName() + " " + 
-            assignment.getTeacher().getUser().getLastName() + "/" +
-            assignment.getSubject().getName() + "/" +
-            "Semestre " + assignment.getSemester() + "/" +
-            groupName
-        );
-        
-        // Create header style
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        
-        // Create text format style for student IDs
-        CellStyle textStyle = workbook.createCellStyle();
-        DataFormat format = workbook.createDataFormat();
-        textStyle.setDataFormat(format.getFormat("@")); // @ means text format
-        
-        // Column headers (Row 2)
-        Row headerRow = sheet.createRow(1);
-        String[] headers = {"Matricule", "Nom   ", "Prénom", "Note", "Absent", 
-                           "Absence Justifiée", "Observation", "Section", "Groupe"};
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-            sheet.setColumnWidth(i, 4000);
+        if (groupId == null) {
+            return null;
         }
-        
-        // Data rows
-        int rowNum = 2;
-        for (Grade grade : grades) {
-            Row row = sheet.createRow(rowNum++);
-            
-            // Student ID - explicitly set as text to preserve format
-            Cell idCell = row.createCell(0);
-            idCell.setCellValue(grade.getStudent().getStudentId() != null ? 
-                grade.getStudent().getStudentId() : "");
-            idCell.setCellStyle(textStyle); // Apply text format
-            
-            // Last Name
-            row.createCell(1).setCellValue(grade.getStudent().getUser().getLastName());
-            
-            // First Name
-            row.createCell(2).setCellValue(grade.getStudent().getUser().getFirstName());
-            
-            // Note - Leave empty for teacher to fill
-            row.createCell(3).setCellValue("");
-            
-            // Empty cells for Absent, Absence Justifiée, Observation
-            row.createCell(4).setCellValue("");
-            row.createCell(5).setCellValue("");
-            row.createCell(6).setCellValue("");
-            
-            // Section (Class name)
-            row.createCell(7).setCellValue(grade.getStudent().getStudentClass().getName());
-            
-            // Group
-            row.createCell(8).setCellValue(grade.getStudent().getGroup() != null ? 
-                grade.getStudent().getGroup().getName() : "");
+        Group group = referenceDataCache.snapshot().groupById(groupId);
+        if (group == null || !group.getStudentClass().getId().equals(assignment.getStudentClass().getId())) {
+            throw new AccessDeniedException("Group " + groupId + " is not part of this assignment's class");
         }
-        
-        // Write to byte array
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-        
-        return new ByteArrayResource(outputStream.toByteArray());
+        return groupId;
     }
     
-    @Override
-    @Transactional
-    public ImportResultDTO importGradesFromExcel(MultipartFile file, Long assignmentId, Long groupId, String gradeType) throws IOException {
-        ImportResultDTO result = new ImportResultDTO();
-        java.util.Map<Long, Double> gradeValues = new java.util.HashMap<>();
+    // Column of the grade type's mark in a streamGradeTemplateRows row, -1 for none (generic template)
+    private static int templateMarkColumn(String gradeType) {
+        return "TP".equalsIgnoreCase(gradeType) ? 5
+                : "TD".equalsIgnoreCase(gradeType) ? 6
+                : "EXAM".equalsIgnoreCase(gradeType) ? 7 : -1;
+    }
+    
+    /**
+     * A generated grade template. Its version is the class's grade version in the database, so grade
+     * changes made on any node make it stale; other roster edits (names, groups) do not move it, so
+     * entries also expire after GRADE_TEMPLATE_TTL_MS.
+     */
+    private static final class GradeTemplate {
+        final Long classId;
+        final String version;
+        final byte[] content;
+        final long builtAt = System.currentTimeMillis();
+        
+        GradeTemplate(Long classId, String version, byte[] content) {
+            this.classId = classId;
+            this.version = version;
+            this.content = content;
+        }
         
-        // Validate teacher assignment exists
-        TeacherAssignment assignment = teacherAssignmentRepository.findById(assignmentId)
-                .orElse(null);
-        if (assignment == null) {
-            result.addError("Assignment not found");
-            result.setSuccess(false);
-            return result;
+        boolean isExpired() {
+            return System.currentTimeMillis() - builtAt >= GRADE_TEMPLATE_TTL_MS;
         }
         
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            
-            // Skip header info row (0) and column header row (1)
-            int successCount = 0;
-            int errorCount = 0;
+        boolean isFresh(String currentVersion) {
+            return version.equals(currentVersion) && !isExpired();
+        }
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public GradeImportPreviewDTO previewGradeImport(MultipartFile file, Long assignmentId, Long groupId,
+                                                    String gradeType, String username) throws IOException {
+        // Header info row (0) and column header row (1) come before the students
+        return previewGrades(handler -> {
+            try (InputStream in = file.getInputStream()) {
+                return ExcelSheetReader.read(in, null, 4, handler);
+            }
+        }, 2, assignmentId, groupId, gradeType, username);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public GradeImportPreviewDTO previewGradeImportCsv(MultipartFile file, Long assignmentId, Long groupId,
+                                                       String gradeType, String username) throws IOException {
+        return previewGrades(handler -> {
+            try (InputStream in = file.getInputStream()) {
+                CsvReader.read(in, 4, handler);
+                return true;
+            }
+        }, 1, assignmentId, groupId, gradeType, username);
+    }
+    
+    // Student ID in the first column, the mark in the fourth
+    private GradeImportPreviewDTO previewGrades(RowSource source, int firstDataRow, Long assignmentId, Long groupId,
+                                                String gradeType, String username) throws IOException {
+        GradeImportPreviewDTO preview = new GradeImportPreviewDTO();
+        preview.setAssignmentId(assignmentId);
+        preview.setGradeType(gradeType != null ? gradeType.toUpperCase() : null);
+        int markIndex = GradeImportWriter.markIndex(gradeType);
+        
+        TeacherAssignment assignment = ownedAssignment(assignmentId, username);
+        Long targetGroupId = targetGroup(assignment, groupId);
+        
+        // studentId -> {Excel row, new mark}; rows without a mark leave the stored one untouched
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        Map<String, Double> values = new HashMap<>();
+        int[] totalRows = {0};
+        boolean found = source.read((rowIndex, cells) -> {
+            if (rowIndex < firstDataRow || cells[0] == null || cells[0].trim().isEmpty()) return;
+            totalRows[0]++;
+            String studentId = cells[0].trim();
             
-            for (int i = 2; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
-                
-                // Check if row is empty
-                Cell studentIdCell = row.getCell(0);
-                if (studentIdCell == null || getCellValueAsString(studentIdCell).trim().isEmpty()) {
-                    continue;
-                }
-                
-                try {
-                    // Get student ID and trim whitespace
-                    String studentId = getCellValueAsString(studentIdCell).trim();
-                    
-                    // Get note value
-                    Cell noteCell = row.getCell(3);
-                    Double noteValue = null;
-                    if (noteCell != null) {
-                        String noteStr = getCellValueAsString(noteCell).trim();
-                        if (!noteStr.isEmpty()) {
-                            try {
-                                noteValue = Double.parseDouble(noteStr);
-                                // Validate grade range
-                                if (noteValue < 0 || noteValue > 20) {
-                                    result.addError("Row " + (i + 1) + ": Grade must be between 0 and 20");
-                                    errorCount++;
-                                    continue;
-                                }
-                            } catch (NumberFormatException e) {
-                                result.addError("Row " + (i + 1) + ": Invalid grade format");
-                                errorCount++;
-                                continue;
-                            }
-                        }
-                    }
-                    
-                    // Find student
-                    Student student = studentRepository.findByStudentId(studentId).orElse(null);
-                    if (student == null) {
-                        result.addError("Row " + (i + 1) + ": Student not found with ID '" + studentId + "'. Make sure you're using the template downloaded from this system.");
-                        errorCount++;
-                        continue;
-                    }
-                    
-                    // Find grade record by student, subject, and semester
-                    Grade grade = gradeRepository.findByStudentIdAndSubjectIdAndSemester(
-                            student.getId(), 
-                            assignment.getSubject().getId(), 
-                            assignment.getSemester()
-                    ).orElse(null);
-                    
-                    if (grade == null) {
-                        result.addError("Row " + (i + 1) + ": Grade record not found for student " + studentId);
-                        errorCount++;
-                        continue;
-                    }
-                    
-                    // Update grade based on type
-                    if ("TP".equalsIgnoreCase(gradeType)) {
-                        grade.setTp(noteValue);
-                    } else if ("TD".equalsIgnoreCase(gradeType)) {
-                        grade.setTd(noteValue);
-                    } else if ("EXAM".equalsIgnoreCase(gradeType)) {
-                        grade.setExamen(noteValue);
-                    }
-                    
-                    // Don't save yet - just prepare the data for preview
-                    // Store the grade values to return
-                    successCount++;
-                    
-                } catch (Exception e) {
-                    result.addError("Row " + (i + 1) + ": " + e.getMessage());
-                    errorCount++;
-                }
+            Integer firstRow = rows.get(studentId);
+            if (firstRow != null) {
+                preview.getErrors().add("Row " + (rowIndex + 1) + ": Student '" + studentId
+                        + "' is already listed in row " + (firstRow + 1));
+                return;
             }
+            if (cells[3] == null || cells[3].trim().isEmpty()) return;
             
-            result.setSuccess(errorCount == 0);
-            result.setValidRows(successCount);
-            if (successCount > 0) {
-                result.addMessage(successCount + " grades loaded from Excel (not saved yet - click 'Save All Grades' to save)");
+            double value;
+            try {
+                value = Double.parseDouble(cells[3].trim().replace(',', '.'));
+            } catch (NumberFormatException e) {
+                preview.getErrors().add("Row " + (rowIndex + 1) + ": Invalid grade format");
+                return;
             }
-            if (errorCount > 0) {
-                result.addMessage(errorCount + " rows had errors");
+            if (value < 0 || value > 20) {
+                preview.getErrors().add("Row " + (rowIndex + 1) + ": Grade must be between 0 and 20");
+                return;
             }
-            
-            // Add grade values to result so frontend can populate the form
-            List<ImportRowDTO> importedData = new java.util.ArrayList<>();
-            for (java.util.Map.Entry<Long, Double> entry : gradeValues.entrySet()) {
-                ImportRowDTO rowData = new ImportRowDTO();
-                rowData.setGradeId(entry.getKey());
-                rowData.setGradeValue(entry.getValue());
-                rowData.setGradeType(gradeType);
-                importedData.add(rowData);
+            rows.put(studentId, rowIndex);
+            values.put(studentId, value);
+        });
+        if (!found) {
+            preview.getErrors().add("The Excel file has no sheet");
+            return preview;
+        }
+        preview.setTotalRows(totalRows[0]);
+        
+        // All students of the sheet and their current mark in one IN query
+        Map<String, GradeImportWriter.SheetStudent> students = gradeImportWriter.findStudents(values.keySet(), assignment);
+        Map<String, Double> changed = new HashMap<>();
+        Map<String, Double> previousMarks = new HashMap<>();
+        int unchanged = 0;
+        for (Map.Entry<String, Integer> row : rows.entrySet()) {
+            String studentId = row.getKey();
+            GradeImportWriter.SheetStudent student = students.get(studentId);
+            if (student == null) {
+                preview.getErrors().add("Row " + (row.getValue() + 1) + ": Student not found with ID '" + studentId
+                        + "'. Make sure you're using the template downloaded from this system.");
+                continue;
             }
-            result.setValidData(importedData);
-            
-        } catch (Exception e) {
-            result.addError("Error reading Excel file: " + e.getMessage());
-            result.setSuccess(false);
+            if (!student.isIn(assignment.getStudentClass().getId(), targetGroupId)) {
+                preview.getErrors().add("Row " + (row.getValue() + 1) + ": Student '" + studentId
+                        + "' is not in this class or group");
+                continue;
+            }
+            Double previous = student.mark(markIndex);
+            Double value = values.get(studentId);
+            if (value.equals(previous)) {
+                unchanged++;
+                continue;
+            }
+            changed.put(studentId, value);
+            previousMarks.put(studentId, previous);
+            preview.getChanges().add(new GradeImportChangeDTO(row.getValue() + 1, studentId, student.getName(),
+                    student.getGradeId(), previous, value));
         }
+        preview.setUnchangedRows(unchanged);
         
-        return result;
+        if (!changed.isEmpty()) {
+            long expiresAt = System.currentTimeMillis() + GradeImportPreviewStore.TTL_MS;
+            preview.setToken(gradeImportPreviews.put(new GradeImportPreview(username, assignmentId,
+                    preview.getGradeType(), targetGroupId, changed, previousMarks, expiresAt)));
+            preview.setExpiresAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAt), ZoneId.systemDefault()));
+        }
+        return preview;
     }
     
-    private String getCellValueAsString(Cell cell) {
-        if (cell == null) return "";
-        
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getLocalDateTimeCellValue().toString();
-                }
-                // For numeric cells, return as string without decimal if it's a whole number
-                double numValue = cell.getNumericCellValue();
-                if (numValue == Math.floor(numValue)) {
-                    return String.valueOf((long) numValue);
-                }
-                return String.valueOf(numValue);
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            default:
-                return "";
+    @Override
+    @Transactional
+    public ImportResultDTO commitGradeImport(String token, String username) {
+        ImportResultDTO result = new ImportResultDTO();
+        GradeImportPreview preview = gradeImportPreviews.take(token, username);
+        if (preview == null) {
+            result.addError("Import preview not found or expired - please upload the file again");
+            result.setSuccess(false);
+            return result;
         }
+        TeacherAssignment assignment = ownedAssignment(preview.getAssignmentId(), username);
+        // The assignment's group as it is now; rows outside it are reported by apply
+        Long groupId = assignment.getGroup() != null ? assignment.getGroup().getId() : preview.getGroupId();
+        
+        // Missing rows, marks, final grades and averages in this one transaction
+        int saved = gradeImportWriter.apply(assignment, groupId, preview.getGradeType(),
+                preview.getValues(), preview.getPrevious(), result.getErrors());
+        result.setTotalRows(preview.getValues().size());
+        result.setValidRows(saved);
+        result.setInvalidRows(result.getErrors().size());
+        result.setSuccess(true);
+        result.addMessage(saved + " grades saved");
+        return result;
+    }
+    
+    /**
+     * Rows of one upload (an Excel sheet or a CSV file), handed to the shared validation
+     */
+    @FunctionalInterface
+    private interface RowSource {
+        // false when the expected sheet is missing
+        boolean read(ExcelSheetReader.RowHandler handler) throws IOException;
     }
 }
@@ -0,0 +1,301 @@
+package com.example.lms.service.impl;
+
+import com.example.lms.event.CurriculumChangedEvent;
+import com.example.lms.event.GradeChangedEvent;
+import com.example.lms.model.ClassSubject;
+import com.example.lms.model.Grade;
+import com.example.lms.model.GradeEvent;
+import com.example.lms.model.StudentClass;
+import com.example.lms.repository.ClassSubjectRepository;
+import com.example.lms.repository.StudentClassRepository;
+import com.example.lms.service.FinalGradeService;
+import com.example.lms.service.StudentAverageService;
+import com.example.lms.service.audit.GradeEventCodec;
+import com.example.lms.service.audit.GradeEventRecorder;
+import com.example.lms.service.grading.GradingFormula;
+import com.example.lms.service.grading.GradingFormulaRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class FinalGradeServiceImpl implements FinalGradeService {
+
+    private static final int UPDATE_BATCH_SIZE = 500;
+    // Values per IN list
+    private static final int SELECT_CHUNK_SIZE = 1000;
+    // Formula used for subjects that are not (or no longer) in the class curriculum
+    private static final String CLASS_DEFAULT = "default";
+
+    private final ClassSubjectRepository classSubjectRepository;
+    private final StudentClassRepository classRepository;
+    private final GradingFormulaRegistry formulaRegistry;
+    private final StudentAverageService studentAverageService;
+    private final GradeEventRecorder gradeEventRecorder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+
+    // classId -> (subjectId-semester -> formula code) for class subjects with their own formula;
+    // the rest use the department's. Dropped on curriculum changes, guarded by itself with curriculumGeneration
+    private final Map<Long, Map<String, String>> curriculumFormulas = new ConcurrentHashMap<>();
+    private long curriculumGeneration;
+
+    @Autowired
+    public FinalGradeServiceImpl(ClassSubjectRepository classSubjectRepository, StudentClassRepository classRepository,
+                                 GradingFormulaRegistry formulaRegistry, StudentAverageService studentAverageService,
+                                 GradeEventRecorder gradeEventRecorder, ApplicationEventPublisher eventPublisher,
+                                 JdbcTemplate jdbcTemplate) {
+        this.classSubjectRepository = classSubjectRepository;
+        this.classRepository = classRepository;
+        this.formulaRegistry = formulaRegistry;
+        this.studentAverageService = studentAverageService;
+        this.gradeEventRecorder = gradeEventRecorder;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void applyFinalGrade(Grade grade) {
+        applyFinalGrades(List.of(grade));
+    }
+
+    @Override
+    public void applyFinalGrades(Collection<Grade> grades) {
+        Map<Long, Map<String, GradingFormula>> formulasByClass = new HashMap<>();
+        Map<GradingFormula, List<Grade>> gradesByFormula = new LinkedHashMap<>();
+        for (Grade grade : grades) {
+            StudentClass studentClass = grade.getStudentClass();
+            Map<String, GradingFormula> formulas = formulasByClass.computeIfAbsent(studentClass.getId(),
+                    id -> formulasFor(studentClass));
+            GradingFormula formula = formulaFor(formulas, grade.getSubject().getId(), grade.getSemester());
+            gradesByFormula.computeIfAbsent(formula, f -> new ArrayList<>()).add(grade);
+        }
+
+        gradesByFormula.forEach((formula, batch) -> {
+            int n = batch.size();
+            double[] examen = new double[n];
+            double[] td = new double[n];
+            double[] tp = new double[n];
+            double[] continuousEvaluation = new double[n];
+            double[] out = new double[n];
+            for (int i = 0; i < n; i++) {
+                Grade grade = batch.get(i);
+                examen[i] = GradingFormula.toPrimitive(grade.getExamen());
+                td[i] = GradingFormula.toPrimitive(grade.getTd());
+                tp[i] = GradingFormula.toPrimitive(grade.getTp());
+                continuousEvaluation[i] = GradingFormula.toPrimitive(grade.getContinuousEvaluation());
+            }
+            formula.computeAll(examen, td, tp, continuousEvaluation, out, n);
+            for (int i = 0; i < n; i++) {
+                batch.get(i).setFinalGrade(GradingFormula.toBoxed(out[i]));
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public int recomputeClass(Long classId) {
+        StudentClass studentClass = classRepository.findById(classId)
+                .orElseThrow(() -> new RuntimeException("Class not found"));
+        Map<Long, Map<String, GradingFormula>> formulasByClass = new HashMap<>();
+        formulasByClass.put(classId, formulasFor(studentClass));
+
+        // Stream the marks of the class into one column set per formula
+        Map<GradingFormula, GradeColumns> columnsByFormula = new LinkedHashMap<>();
+        collect(columnsByFormula, formulasByClass, "class_id = ?", classId);
+
+        int changed = recompute(columnsByFormula, null);
+        System.out.println("🧮 Recomputed final grades of class " + classId + ": " + changed + " changed");
+        return changed;
+    }
+
+    @Override
+    @Transactional
+    public Map<Long, Double> recomputeGrades(Collection<Long> gradeIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(gradeIds));
+        Map<Long, Map<String, GradingFormula>> formulasByClass = new HashMap<>();
+        Map<GradingFormula, GradeColumns> columnsByFormula = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i += SELECT_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(i, Math.min(i + SELECT_CHUNK_SIZE, ids.size()));
+            collect(columnsByFormula, formulasByClass,
+                    "id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")", chunk.toArray());
+        }
+
+        Map<Long, Double> finalGrades = new HashMap<>();
+        recompute(columnsByFormula, finalGrades);
+        return finalGrades;
+    }
+
+    // Reads the marks of the matching grades into one column set per formula
+    private void collect(Map<GradingFormula, GradeColumns> columnsByFormula,
+                         Map<Long, Map<String, GradingFormula>> formulasByClass, String condition, Object... args) {
+        jdbcTemplate.query("SELECT id, student_id, subject_id, semester, examen, td, tp, continuous_evaluation, " +
+                "final_grade, class_id FROM grades WHERE " + condition, (RowCallbackHandler) rs -> {
+            Map<String, GradingFormula> formulas = formulasByClass.computeIfAbsent(rs.getLong(10),
+                    id -> formulasFor(classRepository.findById(id)
+                            .orElseThrow(() -> new RuntimeException("Class not found"))));
+            GradingFormula formula = formulaFor(formulas, rs.getLong(3), rs.getInt(4));
+            columnsByFormula.computeIfAbsent(formula, f -> new GradeColumns())
+                    .add(rs.getLong(1), rs.getLong(2), rs.getLong(10), value(rs, 5), value(rs, 6), value(rs, 7),
+                            value(rs, 8), value(rs, 9));
+        }, args);
+    }
+
+    /**
+     * Computes the collected grades column-wise and writes the final grades that changed in JDBC batches
+     * @param finalGrades receives gradeId -> final grade of every collected row, when not null
+     * @return number of grades whose final grade changed
+     */
+    private int recompute(Map<GradingFormula, GradeColumns> columnsByFormula, Map<Long, Double> finalGrades) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> updates = new ArrayList<>();
+        Set<Long> changedStudentIds = new HashSet<>();
+        Set<Long> changedClassIds = new HashSet<>();
+        columnsByFormula.forEach((formula, columns) -> {
+            double[] out = new double[columns.size];
+            formula.computeAll(columns.examen, columns.td, columns.tp, columns.continuousEvaluation, out, columns.size);
+            for (int i = 0; i < columns.size; i++) {
+                if (finalGrades != null) {
+                    finalGrades.put(columns.ids[i], GradingFormula.toBoxed(out[i]));
+                }
+                double previous = columns.finalGrade[i];
+                boolean unchanged = out[i] == previous || (Double.isNaN(out[i]) && Double.isNaN(previous));
+                if (!unchanged) {
+                    updates.add(new Object[]{GradingFormula.toBoxed(out[i]), now, columns.ids[i]});
+                    changedStudentIds.add(columns.studentIds[i]);
+                    changedClassIds.add(columns.classIds[i]);
+                    short[] before = columns.snapshot(i);
+                    short[] after = before.clone();
+                    after[GradeEventCodec.FINAL] = GradeEventCodec.encode(out[i]);
+                    gradeEventRecorder.record(GradeEvent.Type.RECOMPUTE, columns.ids[i], before, after);
+                }
+            }
+        });
+
+        for (int i = 0; i < updates.size(); i += UPDATE_BATCH_SIZE) {
+            jdbcTemplate.batchUpdate("UPDATE grades SET final_grade = ?, updated_at = ? WHERE id = ?",
+                    updates.subList(i, Math.min(i + UPDATE_BATCH_SIZE, updates.size())));
+        }
+        if (!changedStudentIds.isEmpty()) {
+            studentAverageService.refreshStudents(new ArrayList<>(changedStudentIds));
+            eventPublisher.publishEvent(new GradeChangedEvent(changedClassIds, changedStudentIds));
+        }
+        return updates.size();
+    }
+
+    /**
+     * Runs after rollbacks too: a load inside the changing transaction may have cached its uncommitted rows
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void onCurriculumChanged(CurriculumChangedEvent event) {
+        synchronized (curriculumFormulas) {
+            curriculumGeneration++;
+            if (event.getClassIds().isEmpty()) {
+                curriculumFormulas.clear();
+            } else {
+                event.getClassIds().forEach(curriculumFormulas::remove);
+            }
+        }
+    }
+
+    // (subjectId-semester) -> formula for the class curriculum, plus the class-wide fallback
+    private Map<String, GradingFormula> formulasFor(StudentClass studentClass) {
+        Map<String, GradingFormula> formulas = new HashMap<>();
+        curriculumFormulasOf(studentClass.getId()).forEach((key, code) -> formulas.put(key, formulaRegistry.get(code)));
+        formulas.put(CLASS_DEFAULT, formulaRegistry.resolve(null, studentClass.getDepartment()));
+        return formulas;
+    }
+
+    private Map<String, String> curriculumFormulasOf(Long classId) {
+        Map<String, String> cached = curriculumFormulas.get(classId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation;
+        synchronized (curriculumFormulas) {
+            generation = curriculumGeneration;
+        }
+        Map<String, String> codes = new HashMap<>();
+        for (ClassSubject classSubject : classSubjectRepository.findByStudentClassId(classId)) {
+            if (classSubject.getGradingFormula() != null) {
+                codes.put(classSubject.getSubject().getId() + "-" + classSubject.getSemester(),
+                        classSubject.getGradingFormula());
+            }
+        }
+        synchronized (curriculumFormulas) {
+            // A change that completed while loading may not be in these rows: use them once, don't keep them
+            if (generation == curriculumGeneration) {
+                curriculumFormulas.put(classId, codes);
+            }
+        }
+        return codes;
+    }
+
+    private GradingFormula formulaFor(Map<String, GradingFormula> formulas, Long subjectId, Integer semester) {
+        GradingFormula formula = formulas.get(subjectId + "-" + semester);
+        return formula != null ? formula : formulas.get(CLASS_DEFAULT);
+    }
+
+    private static double value(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    /**
+     * Marks of one formula's grades as NaN-coded primitive columns
+     */
+    private static final class GradeColumns {
+        long[] ids = new long[64];
+        long[] studentIds = new long[64];
+        long[] classIds = new long[64];
+        double[] examen = new double[64];
+        double[] td = new double[64];
+        double[] tp = new double[64];
+        double[] continuousEvaluation = new double[64];
+        double[] finalGrade = new double[64];
+        int size;
+
+        void add(long id, long studentId, long classId, double examen, double td, double tp, double continuousEvaluation,
+                 double finalGrade) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                studentIds = Arrays.copyOf(studentIds, capacity);
+                classIds = Arrays.copyOf(classIds, capacity);
+                this.examen = Arrays.copyOf(this.examen, capacity);
+                this.td = Arrays.copyOf(this.td, capacity);
+                this.tp = Arrays.copyOf(this.tp, capacity);
+                this.continuousEvaluation = Arrays.copyOf(this.continuousEvaluation, capacity);
+                this.finalGrade = Arrays.copyOf(this.finalGrade, capacity);
+            }
+            ids[size] = id;
+            studentIds[size] = studentId;
+            classIds[size] = classId;
+            this.examen[size] = examen;
+            this.td[size] = td;
+            this.tp[size] = tp;
+            this.continuousEvaluation[size] = continuousEvaluation;
+            this.finalGrade[size] = finalGrade;
+            size++;
+        }
+
+        short[] snapshot(int i) {
+            return new short[]{
+                    GradeEventCodec.encode(examen[i]), GradeEventCodec.encode(td[i]), GradeEventCodec.encode(tp[i]),
+                    GradeEventCodec.encode(continuousEvaluation[i]), GradeEventCodec.encode(finalGrade[i])
+            };
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.lms.service.impl;
+
+import com.example.lms.dto.GradeEventDTO;
+import com.example.lms.dto.GradeRestoreResultDTO;
+import com.example.lms.dto.GradeStateDTO;
+import com.example.lms.event.GradeChangedEvent;
+import com.example.lms.model.GradeEvent;
+import com.example.lms.model.User;
+import com.example.lms.repository.GradeEventRepository;
+import com.example.lms.repository.GradeRepository;
+import com.example.lms.repository.UserRepository;
+import com.example.lms.service.GradeHistoryService;
+import com.example.lms.service.StudentAverageService;
+import com.example.lms.service.audit.GradeEventCodec;
+import com.example.lms.service.audit.GradeEventRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+@Service
+public class GradeHistoryServiceImpl implements GradeHistoryService {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int UPDATE_BATCH_SIZE = 500;
+
+    // Restored marks, updated_at and id, then the current marks the row must still hold
+    private static final int[] RESTORE_TYPES = {
+            Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.TIMESTAMP, Types.BIGINT,
+            Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.DOUBLE
+    };
+
+    private final GradeEventRepository gradeEventRepository;
+    private final GradeRepository gradeRepository;
+    private final UserRepository userRepository;
+    private final GradeEventRecorder gradeEventRecorder;
+    private final StudentAverageService studentAverageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public GradeHistoryServiceImpl(GradeEventRepository gradeEventRepository, GradeRepository gradeRepository,
+                                   UserRepository userRepository, GradeEventRecorder gradeEventRecorder,
+                                   StudentAverageService studentAverageService,
+                                   ApplicationEventPublisher eventPublisher, JdbcTemplate jdbcTemplate) {
+        this.gradeEventRepository = gradeEventRepository;
+        this.gradeRepository = gradeRepository;
+        this.userRepository = userRepository;
+        this.gradeEventRecorder = gradeEventRecorder;
+        this.studentAverageService = studentAverageService;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<GradeEventDTO> getHistory(Long gradeId) {
+        gradeEventRecorder.flush();
+        List<GradeEvent> events = gradeEventRepository.findByGradeIdOrderByOccurredAtAscIdAsc(gradeId);
+        if (events.isEmpty() && !gradeRepository.existsById(gradeId)) {
+            throw new RuntimeException("Grade not found");
+        }
+
+        Set<Long> actorIds = new HashSet<>();
+        for (GradeEvent event : events) {
+            if (event.getActorId() != null) {
+                actorIds.add(event.getActorId());
+            }
+        }
+        Map<Long, String> actorNames = new HashMap<>();
+        for (User user : userRepository.findAllById(actorIds)) {
+            actorNames.put(user.getId(), user.getFirstName() + " " + user.getLastName());
+        }
+
+        List<GradeEventDTO> history = new ArrayList<>(events.size());
+        for (GradeEvent event : events) {
+            GradeEventDTO dto = new GradeEventDTO();
+            dto.setId(event.getId());
+            dto.setGradeId(event.getGradeId());
+            dto.setType(event.getType().name());
+            dto.setActorId(event.getActorId());
+            dto.setActorName(event.getActorId() != null ? actorNames.get(event.getActorId()) : null);
+            dto.setOccurredAt(toDateTime(event.getOccurredAt()));
+            dto.setOldExamen(GradeEventCodec.decode(event.getOldExamen()));
+            dto.setNewExamen(GradeEventCodec.decode(event.getNewExamen()));
+            dto.setOldTd(GradeEventCodec.decode(event.getOldTd()));
+            dto.setNewTd(GradeEventCodec.decode(event.getNewTd()));
+            dto.setOldTp(GradeEventCodec.decode(event.getOldTp()));
+            dto.setNewTp(GradeEventCodec.decode(event.getNewTp()));
+            dto.setOldContinuousEvaluation(GradeEventCodec.decode(event.getOldContinuous()));
+            dto.setNewContinuousEvaluation(GradeEventCodec.decode(event.getNewContinuous()));
+            dto.setOldFinalGrade(GradeEventCodec.decode(event.getOldFinal()));
+            dto.setNewFinalGrade(GradeEventCodec.decode(event.getNewFinal()));
+            history.add(dto);
+        }
+        return history;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<GradeStateDTO> getStateAsOf(LocalDateTime asOf) {
+        List<GradeStateDTO> states = new ArrayList<>();
+        for (ReplayedGrade grade : replay(asOf).values()) {
+            if (grade.existedAt) {
+                short[] v = grade.valuesAt;
+                states.add(new GradeStateDTO(grade.id, grade.studentId, grade.subjectId, grade.classId,
+                        grade.semester, grade.academicYear,
+                        GradeEventCodec.decode(v[GradeEventCodec.EXAMEN]), GradeEventCodec.decode(v[GradeEventCodec.TD]),
+                        GradeEventCodec.decode(v[GradeEventCodec.TP]),
+                        GradeEventCodec.decode(v[GradeEventCodec.CONTINUOUS]),
+                        GradeEventCodec.decode(v[GradeEventCodec.FINAL])));
+            }
+        }
+        return states;
+    }
+
+    @Override
+    @Transactional
+    public GradeRestoreResultDTO restoreAsOf(LocalDateTime asOf) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<ReplayedGrade> restoring = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<Long> createdSince = new ArrayList<>();
+        List<Long> deletedSince = new ArrayList<>();
+        List<Long> changedDuringRestore = new ArrayList<>();
+        Set<Long> classIds = new HashSet<>();
+        Set<Long> studentIds = new HashSet<>();
+
+        for (ReplayedGrade grade : replay(asOf).values()) {
+            if (grade.existsNow && !grade.existedAt) {
+                createdSince.add(grade.id);
+            } else if (!grade.existsNow && grade.existedAt) {
+                deletedSince.add(grade.id);
+            } else if (grade.existsNow && !Arrays.equals(grade.valuesAt, grade.valuesNow)) {
+                short[] v = grade.valuesAt;
+                Double[] n = grade.storedNow;
+                // Guarded by the values the replay read, so an edit committed since is never overwritten
+                updates.add(new Object[]{
+                        GradeEventCodec.decode(v[GradeEventCodec.EXAMEN]), GradeEventCodec.decode(v[GradeEventCodec.TD]),
+                        GradeEventCodec.decode(v[GradeEventCodec.TP]),
+                        GradeEventCodec.decode(v[GradeEventCodec.CONTINUOUS]),
+                        GradeEventCodec.decode(v[GradeEventCodec.FINAL]), now, grade.id,
+                        n[0], n[1], n[2], n[3], n[4]});
+                restoring.add(grade);
+            }
+        }
+
+        int restored = 0;
+        for (int i = 0; i < updates.size(); i += UPDATE_BATCH_SIZE) {
+            int[] counts = jdbcTemplate.batchUpdate("UPDATE grades SET examen = ?, td = ?, tp = ?, " +
+                    "continuous_evaluation = ?, final_grade = ?, updated_at = ? WHERE id = ? " +
+                    "AND examen IS NOT DISTINCT FROM ? AND td IS NOT DISTINCT FROM ? AND tp IS NOT DISTINCT FROM ? " +
+                    "AND continuous_evaluation IS NOT DISTINCT FROM ? AND final_grade IS NOT DISTINCT FROM ?",
+                    updates.subList(i, Math.min(i + UPDATE_BATCH_SIZE, updates.size())), RESTORE_TYPES);
+            for (int j = 0; j < counts.length; j++) {
+                ReplayedGrade grade = restoring.get(i + j);
+                if (counts[j] == 0) {
+                    changedDuringRestore.add(grade.id);
+                    continue;
+                }
+                gradeEventRecorder.record(GradeEvent.Type.RESTORE, grade.id, grade.valuesNow, grade.valuesAt);
+                classIds.add(grade.classId);
+                studentIds.add(grade.studentId);
+                restored++;
+            }
+        }
+        if (!studentIds.isEmpty()) {
+            studentAverageService.refreshStudents(new ArrayList<>(studentIds));
+            eventPublisher.publishEvent(new GradeChangedEvent(classIds, studentIds));
+        }
+        if (!changedDuringRestore.isEmpty()) {
+            System.out.println("⚠️ Skipped " + changedDuringRestore.size() + " grades changed during the restore");
+        }
+        System.out.println("⏪ Restored " + restored + " grades as of " + asOf);
+        return new GradeRestoreResultDTO(asOf, restored, createdSince, deletedSince, changedDuringRestore);
+    }
+
+    /**
+     * State of every grade at asOf: the last event at or before asOf gives the marks after it,
+     * otherwise the first later event gives the marks before it, otherwise the row never changed.
+     */
+    private Map<Long, ReplayedGrade> replay(LocalDateTime asOf) {
+        gradeEventRecorder.flush();
+        long asOfMillis = asOf.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Map<Long, ReplayedGrade> grades = new TreeMap<>();
+
+        jdbcTemplate.query("SELECT grade_id, event_type, occurred_at, student_id, subject_id, class_id, semester, " +
+                "academic_year, old_examen, new_examen, old_td, new_td, old_tp, new_tp, old_continuous, " +
+                "new_continuous, old_final, new_final FROM grade_events ORDER BY occurred_at, id",
+                (RowCallbackHandler) rs -> {
+            ReplayedGrade grade = grades.computeIfAbsent(rs.getLong(1), ReplayedGrade::new);
+            GradeEvent.Type type = GradeEvent.Type.values()[rs.getShort(2)];
+            if (rs.getObject(4) != null) {
+                grade.setKey(rs.getLong(4), rs.getLong(5), nullableLong(rs, 6), rs.getInt(7), rs.getString(8));
+            }
+            if (rs.getLong(3) <= asOfMillis) {
+                grade.valuesAt = marks(rs, 10);
+                grade.existedAt = type != GradeEvent.Type.DELETE;
+                grade.resolved = true;
+            } else if (!grade.resolved) {
+                grade.valuesAt = marks(rs, 9);
+                grade.existedAt = type != GradeEvent.Type.CREATE;
+                grade.resolved = true;
+            }
+        });
+
+        jdbcTemplate.query("SELECT id, student_id, subject_id, class_id, semester, academic_year, " +
+                "examen, td, tp, continuous_evaluation, final_grade FROM grades", (RowCallbackHandler) rs -> {
+            ReplayedGrade grade = grades.computeIfAbsent(rs.getLong(1), ReplayedGrade::new);
+            grade.setKey(rs.getLong(2), rs.getLong(3), nullableLong(rs, 4), rs.getInt(5), rs.getString(6));
+            grade.existsNow = true;
+            grade.storedNow = new Double[]{nullableDouble(rs, 7), nullableDouble(rs, 8), nullableDouble(rs, 9),
+                    nullableDouble(rs, 10), nullableDouble(rs, 11)};
+            grade.valuesNow = new short[grade.storedNow.length];
+            for (int i = 0; i < grade.storedNow.length; i++) {
+                grade.valuesNow[i] = GradeEventCodec.encode(grade.storedNow[i]);
+            }
+            if (!grade.resolved) {
+                // No event at all: unchanged since the log started
+                grade.valuesAt = grade.valuesNow;
+                grade.existedAt = true;
+                grade.resolved = true;
+            }
+        });
+        return grades;
+    }
+
+    // Five columns starting at the given index, each followed by its new_/old_ counterpart
+    private static short[] marks(ResultSet rs, int first) throws SQLException {
+        return new short[]{rs.getShort(first), rs.getShort(first + 2), rs.getShort(first + 4),
+                rs.getShort(first + 6), rs.getShort(first + 8)};
+    }
+
+    private static Long nullableLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Double nullableDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static final class ReplayedGrade {
+        final long id;
+        Long studentId;
+        Long subjectId;
+        Long classId;
+        Integer semester;
+        String academicYear;
+        short[] valuesAt;
+        short[] valuesNow;
+        // Current marks as stored (not rounded to centi-points), for the guarded restore
+        Double[] storedNow;
+        boolean existedAt;
+        boolean existsNow;
+        // valuesAt/existedAt are final once set from an event or the current row
+        boolean resolved;
+
+        ReplayedGrade(long id) {
+            this.id = id;
+        }
+
+        void setKey(Long studentId, Long subjectId, Long classId, Integer semester, String academicYear) {
+            this.studentId = studentId;
+            this.subjectId = subjectId;
+            this.classId = classId;
+            this.semester = semester;
+            this.academicYear = academicYear;
+        }
+    }
+}
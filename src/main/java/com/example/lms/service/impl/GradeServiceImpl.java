@@ -1,21 +1,49 @@
 package com.example.lms.service.impl;
 
+import com.example.lms.dto.AutoCreateResultDTO;
 import com.example.lms.dto.GradeDTO;
+import com.example.lms.event.GradeChangedEvent;
 import com.example.lms.model.*;
 import com.example.lms.repository.*;
+import com.example.lms.service.FinalGradeService;
 import com.example.lms.service.GradeService;
-import com.example.lms.service.NotificationService;
+import com.example.lms.service.StudentAverageService;
+import com.example.lms.service.audit.GradeEventCodec;
+import com.example.lms.service.audit.GradeEventRecorder;
+import com.example.lms.service.authorization.TeacherGrantIndex;
+import com.example.lms.service.notification.GradeNotificationAggregator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class GradeServiceImpl implements GradeService {
 
+    private static final String CURRENT_ACADEMIC_YEAR = "2025-2026";
+    private static final int AUTO_CREATE_CHUNK_SIZE = 500;
+    private static final double MIN_MARK = 0.0;
+    private static final double MAX_MARK = 20.0;
+
+    // Anti-join: curriculum slots of each student's class that have no grade row for the year yet
+    private static final String MISSING_GRADES_SELECT =
+            "SELECT s.id, cs.subject_id, s.class_id, cs.semester FROM students s " +
+            "JOIN class_subjects cs ON cs.class_id = s.class_id " +
+            "AND NOT EXISTS (SELECT 1 FROM grades g WHERE g.student_id = s.id AND g.subject_id = cs.subject_id " +
+            "AND g.semester = cs.semester AND g.academic_year = ?) ";
+
     private final GradeRepository gradeRepository;
     private final StudentRepository studentRepository;
     private final SubjectRepository subjectRepository;
@@ -23,14 +51,26 @@ public class GradeServiceImpl implements GradeService {
     private final UserRepository userRepository;
     private final ClassSubjectRepository classSubjectRepository;
     private final TeacherAssignmentRepository teacherAssignmentRepository;
-    private final NotificationService notificationService;
+    private final GradeNotificationAggregator gradeNotificationAggregator;
+    private final StudentAverageService studentAverageService;
+    private final FinalGradeService finalGradeService;
+    private final GradeEventRecorder gradeEventRecorder;
+    private final TeacherGrantIndex teacherGrantIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
 
     @Autowired
     public GradeServiceImpl(GradeRepository gradeRepository, StudentRepository studentRepository,
                              SubjectRepository subjectRepository, StudentClassRepository classRepository,
                              UserRepository userRepository, ClassSubjectRepository classSubjectRepository,
                              TeacherAssignmentRepository teacherAssignmentRepository,
-                             NotificationService notificationService) {
+                             GradeNotificationAggregator gradeNotificationAggregator,
+                             StudentAverageService studentAverageService,
+                             FinalGradeService finalGradeService,
+                             GradeEventRecorder gradeEventRecorder,
+                             TeacherGrantIndex teacherGrantIndex,
+                             ApplicationEventPublisher eventPublisher,
+                             JdbcTemplate jdbcTemplate) {
         this.gradeRepository = gradeRepository;
         this.studentRepository = studentRepository;
         this.subjectRepository = subjectRepository;
@@ -38,7 +78,13 @@ public class GradeServiceImpl implements GradeService {
         this.userRepository = userRepository;
         this.classSubjectRepository = classSubjectRepository;
         this.teacherAssignmentRepository = teacherAssignmentRepository;
-        this.notificationService = notificationService;
+        this.gradeNotificationAggregator = gradeNotificationAggregator;
+        this.studentAverageService = studentAverageService;
+        this.finalGradeService = finalGradeService;
+        this.gradeEventRecorder = gradeEventRecorder;
+        this.teacherGrantIndex = teacherGrantIndex;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Override
@@ -62,7 +108,9 @@ public class GradeServiceImpl implements GradeService {
     }
 
     @Override
+    @Transactional
     public Grade createGrade(GradeDTO dto) {
+        validateMarks(dto);
         Grade grade = new Grade();
         grade.setStudent(studentRepository.findById(dto.getStudentId()).orElseThrow());
         grade.setSubject(subjectRepository.findById(dto.getSubjectId()).orElseThrow());
@@ -71,52 +119,32 @@ public class GradeServiceImpl implements GradeService {
         grade.setTd(dto.getTd());
         grade.setTp(dto.getTp());
         grade.setContinuousEvaluation(dto.getContinuousEvaluation());
-        
-        // Calculate final grade (Algerian system: 60% exam, 20% TD, 20% TP)
-        double finalGrade = 0.0;
-        if (dto.getExamen() != null) finalGrade += dto.getExamen() * 0.6;
-        if (dto.getTd() != null) finalGrade += dto.getTd() * 0.2;
-        if (dto.getTp() != null) finalGrade += dto.getTp() * 0.2;
-        grade.setFinalGrade(finalGrade);
-        
         grade.setSemester(dto.getSemester());
         grade.setAcademicYear(dto.getAcademicYear());
+        finalGradeService.applyFinalGrade(grade);
         grade.setRemarks(dto.getRemarks());
         grade.setEnteredAt(LocalDateTime.now());
         grade.setUpdatedAt(LocalDateTime.now());
+        stampEnteredBy(grade);
         
-        Grade savedGrade = gradeRepository.save(grade);
+        Grade savedGrade = gradeRepository.saveAndFlush(grade);
+        applyAverageChange(savedGrade, null);
+        gradeEventRecorder.record(GradeEvent.Type.CREATE, savedGrade, null);
+        publishGradeChange(List.of(savedGrade));
         
-        // 🔔 Send notification to student about new grade
-        try {
-            Student student = savedGrade.getStudent();
-            Subject subject = savedGrade.getSubject();
-            if (student != null && student.getUser() != null && subject != null) {
-                String message = String.format("New grade published for %s: %.2f/20", 
-                    subject.getName(), savedGrade.getFinalGrade());
-                String url = "/grades"; // URL to grades page
-                
-                notificationService.createNotification(
-                    student.getUser(),
-                    NotificationType.GRADE_PUBLISHED,
-                    "Grade Published",
-                    message,
-                    "Grade",
-                    savedGrade.getId(),
-                    url
-                );
-            }
-        } catch (Exception e) {
-            // Log error but don't fail the grade creation
-            System.err.println("Failed to create grade notification: " + e.getMessage());
-        }
+        // 🔔 Notify the student (coalesced with follow-up edits, written after commit)
+        gradeNotificationAggregator.gradeChanged(savedGrade, true);
         
         return savedGrade;
     }
 
     @Override
+    @Transactional
     public Grade updateGrade(Long id, GradeDTO dto) {
+        validateMarks(dto);
         return gradeRepository.findById(id).map(grade -> {
+            Double previousFinalGrade = grade.getFinalGrade();
+            short[] before = GradeEventCodec.snapshot(grade);
             if (dto.getExamen() != null) grade.setExamen(dto.getExamen());
             if (dto.getTd() != null) grade.setTd(dto.getTd());
             if (dto.getTp() != null) grade.setTp(dto.getTp());
@@ -124,89 +152,132 @@ public class GradeServiceImpl implements GradeService {
             if (dto.getRemarks() != null) grade.setRemarks(dto.getRemarks());
             
             // Recalculate final grade
-            double finalGrade = 0.0;
-            if (grade.getExamen() != null) finalGrade += grade.getExamen() * 0.6;
-            if (grade.getTd() != null) finalGrade += grade.getTd() * 0.2;
-            if (grade.getTp() != null) finalGrade += grade.getTp() * 0.2;
-            grade.setFinalGrade(finalGrade);
-            
+            finalGradeService.applyFinalGrade(grade);
             grade.setUpdatedAt(LocalDateTime.now());
+            stampEnteredBy(grade);
             
-            Grade updatedGrade = gradeRepository.save(grade);
+            Grade updatedGrade = gradeRepository.saveAndFlush(grade);
+            applyAverageChange(updatedGrade, previousFinalGrade);
+            gradeEventRecorder.record(GradeEvent.Type.UPDATE, updatedGrade, before);
+            publishGradeChange(List.of(updatedGrade));
             
-            // 🔔 Send notification to student about updated grade
-            try {
-                Student student = updatedGrade.getStudent();
-                Subject subject = updatedGrade.getSubject();
-                if (student != null && student.getUser() != null && subject != null) {
-                    String message = String.format("Grade updated for %s: %.2f/20", 
-                        subject.getName(), updatedGrade.getFinalGrade());
-                    String url = "/grades";
-                    
-                    notificationService.createNotification(
-                        student.getUser(),
-                        NotificationType.GRADE_PUBLISHED,
-                        "Grade Updated",
-                        message,
-                        "Grade",
-                        updatedGrade.getId(),
-                        url
-                    );
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to create grade update notification: " + e.getMessage());
-            }
+            // 🔔 Notify the student (coalesced with other edits, written after commit)
+            gradeNotificationAggregator.gradeChanged(updatedGrade, false);
             
             return updatedGrade;
         }).orElseThrow(() -> new RuntimeException("Grade not found"));
     }
 
     @Override
+    @Transactional
     public void deleteGrade(Long id) {
-        gradeRepository.deleteById(id);
+        gradeRepository.findById(id).ifPresent(grade -> {
+            gradeRepository.delete(grade);
+            gradeRepository.flush();
+            studentAverageService.applyChange(grade.getStudent().getId(), grade.getAcademicYear(), grade.getSemester(),
+                    grade.getSubject().getCoefficient(), grade.getFinalGrade(), null);
+            gradeEventRecorder.record(GradeEvent.Type.DELETE, grade, GradeEventCodec.snapshot(grade));
+            publishGradeChange(List.of(grade));
+        });
     }
 
     @Override
     @Transactional
     public void autoCreateGradesForStudent(Long studentId) {
-        System.out.println("🔍 Auto-creating grades for student ID: " + studentId);
-        
-        Student student = studentRepository.findById(studentId)
-                .orElseThrow(() -> new RuntimeException("Student not found"));
-        
-        StudentClass studentClass = student.getStudentClass();
-        System.out.println("📚 Student class: " + studentClass.getName() + " (ID: " + studentClass.getId() + ")");
-        
-        String currentAcademicYear = "2025-2026"; // Current academic year
-        
-        // Get all subjects for this class (both semesters)
-        List<ClassSubject> classSubjects = classSubjectRepository.findByStudentClassId(studentClass.getId());
-        System.out.println("📝 Found " + classSubjects.size() + " class subjects");
-        
-        for (ClassSubject classSubject : classSubjects) {
-            // Check if grade already exists
-            boolean gradeExists = gradeRepository.findByStudentIdAndSubjectIdAndSemester(
-                studentId, 
-                classSubject.getSubject().getId(), 
-                classSubject.getSemester()
-            ).isPresent();
-            
-            if (!gradeExists) {
-                Grade grade = new Grade();
-                grade.setStudent(student);
-                grade.setSubject(classSubject.getSubject());
-                grade.setStudentClass(studentClass);
-                grade.setSemester(classSubject.getSemester());
-                grade.setAcademicYear(currentAcademicYear);
-                // All grade values are null initially - teacher will fill them
-                gradeRepository.save(grade);
-                System.out.println("✅ Created grade record for " + classSubject.getSubject().getName() + " (Semester " + classSubject.getSemester() + ")");
-            } else {
-                System.out.println("⏭️  Grade already exists for " + classSubject.getSubject().getName() + " (Semester " + classSubject.getSemester() + ")");
+        if (!studentRepository.existsById(studentId)) {
+            throw new RuntimeException("Student not found");
+        }
+        autoCreateGradesForStudents(List.of(studentId));
+    }
+
+    @Override
+    @Transactional
+    public AutoCreateResultDTO autoCreateGradesForClass(Long classId, String academicYear) {
+        if (!classRepository.existsById(classId)) {
+            throw new RuntimeException("Class not found");
+        }
+        String year = academicYear != null && !academicYear.isBlank() ? academicYear : CURRENT_ACADEMIC_YEAR;
+        long start = System.currentTimeMillis();
+        List<Object[]> missing = jdbcTemplate.query(MISSING_GRADES_SELECT + "WHERE s.class_id = ?",
+                (rs, rowNum) -> missingGrade(rs), year, classId);
+        int students = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM students WHERE class_id = ?",
+                Integer.class, classId);
+        return insertEmptyGrades(missing, students, year, start);
+    }
+
+    @Override
+    @Transactional
+    public AutoCreateResultDTO autoCreateGradesForStudents(Collection<Long> studentIds) {
+        long start = System.currentTimeMillis();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(studentIds));
+        List<Object[]> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += AUTO_CREATE_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(i, Math.min(i + AUTO_CREATE_CHUNK_SIZE, ids.size()));
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = CURRENT_ACADEMIC_YEAR;
+            for (int j = 0; j < chunk.size(); j++) {
+                args[j + 1] = chunk.get(j);
             }
+            missing.addAll(jdbcTemplate.query(MISSING_GRADES_SELECT + "WHERE s.id IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                    (rs, rowNum) -> missingGrade(rs), args));
         }
-        
-        System.out.println("✨ Finished auto-creating grades for student ID: " + studentId);
+        return insertEmptyGrades(missing, ids.size(), CURRENT_ACADEMIC_YEAR, start);
+    }
+
+    // {studentId, subjectId, classId, semester} of one row to create
+    private static Object[] missingGrade(ResultSet rs) throws SQLException {
+        return new Object[]{rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getInt(4)};
+    }
+
+    private AutoCreateResultDTO insertEmptyGrades(List<Object[]> missing, int students, String academicYear, long start) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Set<Long> classIds = new HashSet<>();
+        Set<Long> studentIds = new HashSet<>();
+        for (int i = 0; i < missing.size(); i += AUTO_CREATE_CHUNK_SIZE) {
+            List<Object[]> chunk = missing.subList(i, Math.min(i + AUTO_CREATE_CHUNK_SIZE, missing.size()));
+            GeneratedKeyHolder keys = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(con -> con.prepareStatement(
+                    "INSERT INTO grades (student_id, subject_id, class_id, semester, academic_year, entered_at, " +
+                    "updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)", new String[]{"id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int index) throws SQLException {
+                            Object[] row = chunk.get(index);
+                            ps.setLong(1, (Long) row[0]);
+                            ps.setLong(2, (Long) row[1]);
+                            ps.setLong(3, (Long) row[2]);
+                            ps.setInt(4, (Integer) row[3]);
+                            ps.setString(5, academicYear);
+                            ps.setTimestamp(6, now);
+                            ps.setTimestamp(7, now);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return chunk.size();
+                        }
+                    }, keys);
+
+            List<Map<String, Object>> generated = keys.getKeyList();
+            for (int j = 0; j < chunk.size(); j++) {
+                Object[] row = chunk.get(j);
+                long gradeId = ((Number) generated.get(j).values().iterator().next()).longValue();
+                gradeEventRecorder.recordCreate(gradeId, (Long) row[0], (Long) row[1], (Long) row[2],
+                        (Integer) row[3], academicYear);
+                studentIds.add((Long) row[0]);
+                classIds.add((Long) row[2]);
+            }
+        }
+        if (!studentIds.isEmpty()) {
+            // Empty rows carry no final grade, so the stored averages are unaffected
+            eventPublisher.publishEvent(new GradeChangedEvent(classIds, studentIds));
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("✨ Auto-created " + missing.size() + " grade records for " + students
+                + " students (" + academicYear + ") in " + elapsed + " ms");
+        return new AutoCreateResultDTO(academicYear, students, missing.size(), elapsed);
     }
 
     @Override
@@ -214,46 +285,26 @@ public class GradeServiceImpl implements GradeService {
         Student student = studentRepository.findById(studentId)
                 .orElseThrow(() -> new RuntimeException("Student not found"));
         
-        // Check if teacher is assigned to this subject and group
-        // If group_id is NULL, teacher teaches all groups
-        List<TeacherAssignment> assignments = teacherAssignmentRepository
-                .findByTeacherIdAndSubjectId(teacherId, subjectId);
-        
-        for (TeacherAssignment assignment : assignments) {
-            // Teacher assigned to all groups (group_id is null) or specific group
-            if (assignment.getGroup() == null || 
-                (student.getGroup() != null && assignment.getGroup().getId().equals(student.getGroup().getId()))) {
-                return true;
-            }
-        }
-        
-        return false;
+        // Teacher assigned to all groups (group_id is NULL) or to the student's group
+        return teacherGrantIndex.canGrade(teacherId, subjectId,
+                student.getGroup() != null ? student.getGroup().getId() : null);
+    }
+
+    @Override
+    public boolean canTeacherGrade(Long teacherId, Grade grade) {
+        Student student = grade.getStudent();
+        return teacherGrantIndex.canGrade(teacherId, grade.getSubject().getId(),
+                student.getGroup() != null ? student.getGroup().getId() : null);
     }
 
     @Override
     public Double calculateStudentAverage(Long studentId, String academicYear, Integer semester) {
-        List<Grade> grades = gradeRepository.findByStudentIdAndAcademicYearAndSemester(
-                studentId, academicYear, semester);
-        
-        if (grades.isEmpty()) {
-            return 0.0;
-        }
-        
-        double totalWeightedGrades = 0.0;
-        double totalCoefficients = 0.0;
-        
-        for (Grade grade : grades) {
-            if (grade.getFinalGrade() != null) {
-                double coefficient = grade.getSubject().getCoefficient();
-                totalWeightedGrades += grade.getFinalGrade() * coefficient;
-                totalCoefficients += coefficient;
-            }
-        }
-        
-        return totalCoefficients > 0 ? totalWeightedGrades / totalCoefficients : 0.0;
+        // Single primary-key read on student_semester_average
+        return studentAverageService.getAverage(studentId, academicYear, semester);
     }
-    
+
     @Override
+    @Transactional
     public List<Grade> getGradesByAssignment(Long assignmentId, Long groupId) {
         TeacherAssignment assignment = teacherAssignmentRepository.findById(assignmentId)
                 .orElseThrow(() -> new RuntimeException("Assignment not found"));
@@ -261,32 +312,233 @@ public class GradeServiceImpl implements GradeService {
         // Determine which group to filter by
         Long targetGroupId = groupId != null ? groupId : 
                            (assignment.getGroup() != null ? assignment.getGroup().getId() : null);
+        Long classId = assignment.getStudentClass().getId();
+        Long subjectId = assignment.getSubject().getId();
         
-        // Get all students in the assigned group
-        List<Student> students = studentRepository.findAll().stream()
-                .filter(s -> targetGroupId == null || 
-                           (s.getGroup() != null && s.getGroup().getId().equals(targetGroupId)))
-                .filter(s -> s.getStudentClass().getId().equals(assignment.getStudentClass().getId()))
-                .toList();
+        // Students of the class/group with their grade in one query
+        List<Object[]> sheet = gradeRepository.findStudentGradeSheet(classId, targetGroupId, subjectId,
+                assignment.getSemester(), assignment.getAcademicYear());
+        
+        // Create the missing grade records in one statement, then read the sheet again
+        Set<Long> missingStudentIds = sheet.stream()
+                .filter(row -> row[1] == null)
+                .map(row -> ((Student) row[0]).getId())
+                .collect(Collectors.toSet());
+        if (!missingStudentIds.isEmpty()) {
+            gradeRepository.insertMissingGrades(classId, targetGroupId, subjectId,
+                    assignment.getSemester(), assignment.getAcademicYear());
+            sheet = gradeRepository.findStudentGradeSheet(classId, targetGroupId, subjectId,
+                    assignment.getSemester(), assignment.getAcademicYear());
+            List<Grade> created = sheet.stream()
+                    .map(row -> (Grade) row[1])
+                    .filter(grade -> grade != null && missingStudentIds.contains(grade.getStudent().getId()))
+                    .toList();
+            for (Grade grade : created) {
+                gradeEventRecorder.record(GradeEvent.Type.CREATE, grade, null);
+            }
+            // New (empty) rows show up in transcripts
+            publishGradeChange(created);
+        }
         
-        // Get or create grades for each student
-        return students.stream()
-                .map(student -> {
-                    return gradeRepository.findByStudentIdAndSubjectIdAndSemester(
-                            student.getId(),
-                            assignment.getSubject().getId(),
-                            assignment.getSemester()
-                    ).orElseGet(() -> {
-                        // Create grade record if it doesn't exist
-                        Grade newGrade = new Grade();
-                        newGrade.setStudent(student);
-                        newGrade.setSubject(assignment.getSubject());
-                        newGrade.setStudentClass(student.getStudentClass());
-                        newGrade.setSemester(assignment.getSemester());
-                        newGrade.setAcademicYear(assignment.getAcademicYear());
-                        return gradeRepository.save(newGrade);
-                    });
-                })
+        return sheet.stream()
+                .map(row -> (Grade) row[1])
+                .filter(Objects::nonNull)
                 .toList();
     }
+
+    @Override
+    @Transactional
+    public List<Grade> upsertGrades(List<GradeDTO> gradeDTOs) {
+        return upsertGrades(gradeDTOs, null);
+    }
+
+    /**
+     * Save a whole grade sheet in one transaction.
+     * DTOs with an id update that row; DTOs without one are matched (or created) by
+     * student/subject/semester/academic year. When teacherId is set, every row is checked
+     * against the teacher's grants from TeacherGrantIndex, read once for the sheet.
+     */
+    @Override
+    @Transactional
+    public List<Grade> upsertGrades(List<GradeDTO> gradeDTOs, Long teacherId) {
+        if (gradeDTOs == null || gradeDTOs.isEmpty()) {
+            return List.of();
+        }
+        // The whole sheet is rejected before anything is written
+        gradeDTOs.forEach(GradeServiceImpl::validateMarks);
+
+        // 1. Rows addressed by id - one query for all of them
+        Set<Long> ids = gradeDTOs.stream()
+                .map(GradeDTO::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, Grade> gradesById = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Grade grade : gradeRepository.findAllWithStudentByIdIn(ids)) {
+                gradesById.put(grade.getId(), grade);
+            }
+        }
+
+        // 2. Rows addressed by student/subject/semester/year - one query per subject sheet
+        Map<String, List<GradeDTO>> keyedDtos = gradeDTOs.stream()
+                .filter(dto -> dto.getId() == null)
+                .collect(Collectors.groupingBy(dto -> {
+                    if (dto.getStudentId() == null || dto.getSubjectId() == null
+                            || dto.getSemester() == null || dto.getAcademicYear() == null) {
+                        throw new RuntimeException("Grade without id needs studentId, subjectId, semester and academicYear");
+                    }
+                    return dto.getSubjectId() + "-" + dto.getSemester() + "-" + dto.getAcademicYear();
+                }));
+        Map<String, Grade> gradesByKey = new HashMap<>();
+        Set<Long> missingStudentIds = new HashSet<>();
+        for (List<GradeDTO> sheet : keyedDtos.values()) {
+            GradeDTO first = sheet.get(0);
+            Set<Long> studentIds = sheet.stream().map(GradeDTO::getStudentId).collect(Collectors.toSet());
+            for (Grade grade : gradeRepository.findForStudents(first.getSubjectId(), first.getSemester(),
+                    first.getAcademicYear(), studentIds)) {
+                gradesByKey.put(gradeKey(grade.getStudent().getId(), grade.getSubject().getId(),
+                        grade.getSemester(), grade.getAcademicYear()), grade);
+            }
+            for (GradeDTO dto : sheet) {
+                if (!gradesByKey.containsKey(gradeKey(dto))) {
+                    missingStudentIds.add(dto.getStudentId());
+                }
+            }
+        }
+        Map<Long, Student> newStudents = new HashMap<>();
+        if (!missingStudentIds.isEmpty()) {
+            for (Student student : studentRepository.findAllById(missingStudentIds)) {
+                newStudents.put(student.getId(), student);
+            }
+        }
+
+        // 3. Apply the values in memory
+        LocalDateTime now = LocalDateTime.now();
+        List<Grade> toSave = new ArrayList<>();
+        Map<Grade, Double> previousFinalGrades = new IdentityHashMap<>();
+        Map<Grade, short[]> snapshots = new IdentityHashMap<>();
+        User actor = currentActor();
+        TeacherGrantIndex.TeacherGrants grants = teacherId != null ? teacherGrantIndex.grantsOf(teacherId) : null;
+
+        for (GradeDTO dto : gradeDTOs) {
+            Grade grade;
+            if (dto.getId() != null) {
+                grade = gradesById.get(dto.getId());
+                if (grade == null) {
+                    throw new RuntimeException("Grade not found: " + dto.getId());
+                }
+            } else {
+                String key = gradeKey(dto);
+                grade = gradesByKey.get(key);
+                if (grade == null) {
+                    Student student = newStudents.get(dto.getStudentId());
+                    if (student == null) {
+                        throw new RuntimeException("Student not found: " + dto.getStudentId());
+                    }
+                    grade = new Grade();
+                    grade.setStudent(student);
+                    grade.setSubject(subjectRepository.getReferenceById(dto.getSubjectId()));
+                    grade.setStudentClass(dto.getClassId() != null
+                            ? classRepository.getReferenceById(dto.getClassId())
+                            : student.getStudentClass());
+                    grade.setSemester(dto.getSemester());
+                    grade.setAcademicYear(dto.getAcademicYear());
+                    grade.setEnteredAt(now);
+                    gradesByKey.put(key, grade);
+                }
+            }
+
+            if (teacherId != null) {
+                Long subjectId = grade.getSubject().getId();
+                Long groupId = grade.getStudent().getGroup() != null ? grade.getStudent().getGroup().getId() : null;
+                if (!grants.allows(subjectId, groupId)) {
+                    throw new AccessDeniedException("Teacher " + teacherId + " cannot grade subject " + subjectId
+                            + " for group " + groupId);
+                }
+            }
+
+            previousFinalGrades.putIfAbsent(grade, grade.getFinalGrade());
+            // New grades have no id yet and are recorded as CREATE
+            if (!snapshots.containsKey(grade)) {
+                snapshots.put(grade, grade.getId() != null ? GradeEventCodec.snapshot(grade) : null);
+            }
+            if (dto.getExamen() != null) grade.setExamen(dto.getExamen());
+            if (dto.getTd() != null) grade.setTd(dto.getTd());
+            if (dto.getTp() != null) grade.setTp(dto.getTp());
+            if (dto.getContinuousEvaluation() != null) grade.setContinuousEvaluation(dto.getContinuousEvaluation());
+            if (dto.getRemarks() != null) grade.setRemarks(dto.getRemarks());
+            grade.setUpdatedAt(now);
+            if (actor != null) grade.setEnteredBy(actor);
+            toSave.add(grade);
+        }
+        finalGradeService.applyFinalGrades(toSave);
+
+        // 4. Write everything in one flush (JDBC batching, see hibernate.jdbc.batch_size)
+        List<Grade> saved = gradeRepository.saveAllAndFlush(toSave);
+        previousFinalGrades.forEach(this::applyAverageChange);
+        snapshots.forEach((grade, before) -> gradeEventRecorder.record(
+                before == null ? GradeEvent.Type.CREATE : GradeEvent.Type.UPDATE, grade, before));
+        publishGradeChange(saved);
+
+        // 5. Notifications go through the aggregator: re-saving a sheet does not spam students
+        for (Grade grade : saved) {
+            gradeNotificationAggregator.gradeChanged(grade, false);
+        }
+
+        return saved;
+    }
+
+    private static void validateMarks(GradeDTO dto) {
+        validateMark("Examen", dto.getExamen());
+        validateMark("TD", dto.getTd());
+        validateMark("TP", dto.getTp());
+        validateMark("Continuous evaluation", dto.getContinuousEvaluation());
+    }
+
+    private static void validateMark(String name, Double value) {
+        if (value != null && !(value >= MIN_MARK && value <= MAX_MARK)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 20: " + value);
+        }
+    }
+
+    private void stampEnteredBy(Grade grade) {
+        User actor = currentActor();
+        if (actor != null) {
+            grade.setEnteredBy(actor);
+        }
+    }
+
+    // Proxy for the authenticated user, null when there is none (seeding, background jobs)
+    private User currentActor() {
+        Long actorId = gradeEventRecorder.currentActorId();
+        return actorId != null ? userRepository.getReferenceById(actorId) : null;
+    }
+
+    private void applyAverageChange(Grade grade, Double previousFinalGrade) {
+        studentAverageService.applyChange(grade.getStudent().getId(), grade.getAcademicYear(), grade.getSemester(),
+                grade.getSubject().getCoefficient(), previousFinalGrade, grade.getFinalGrade());
+    }
+
+    // Caches keyed by class (statistics) or student (transcripts) listen for this after commit
+    private void publishGradeChange(Collection<Grade> grades) {
+        Set<Long> classIds = new HashSet<>();
+        Set<Long> studentIds = new HashSet<>();
+        for (Grade grade : grades) {
+            if (grade.getStudentClass() != null) {
+                classIds.add(grade.getStudentClass().getId());
+            }
+            studentIds.add(grade.getStudent().getId());
+        }
+        if (!studentIds.isEmpty()) {
+            eventPublisher.publishEvent(new GradeChangedEvent(classIds, studentIds));
+        }
+    }
+
+    private String gradeKey(GradeDTO dto) {
+        return gradeKey(dto.getStudentId(), dto.getSubjectId(), dto.getSemester(), dto.getAcademicYear());
+    }
+
+    private String gradeKey(Long studentId, Long subjectId, Integer semester, String academicYear) {
+        return studentId + "-" + subjectId + "-" + semester + "-" + academicYear;
+    }
 }
@@ -0,0 +1,285 @@
+package com.example.lms.service.impl;
+
+import com.example.lms.dto.ClassStatisticsDTO;
+import com.example.lms.dto.StudentRankingDTO;
+import com.example.lms.dto.SubjectStatisticsDTO;
+import com.example.lms.event.CurriculumChangedEvent;
+import com.example.lms.event.GradeChangedEvent;
+import com.example.lms.service.GradeStatisticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class GradeStatisticsServiceImpl implements GradeStatisticsService {
+
+    private static final double PASS_MARK = 10.0;
+    private static final int FETCH_SIZE = 1000;
+
+    // Final grades of one class/semester/year, restricted to the subjects of the class curriculum
+    private static final String GRADES_SELECT =
+            "SELECT g.student_id, g.subject_id, g.final_grade " +
+            "FROM grades g " +
+            "JOIN class_subjects cs ON cs.class_id = g.class_id AND cs.subject_id = g.subject_id " +
+            "AND cs.semester = g.semester " +
+            "WHERE g.class_id = ? AND g.semester = ? AND g.academic_year = ? AND g.final_grade IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // classId -> (semester-year -> statistics); a grade or curriculum change drops the whole class entry
+    private final Map<Long, Map<String, ClassStatisticsDTO>> cache = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GradeStatisticsServiceImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ClassStatisticsDTO getClassStatistics(Long classId, Integer semester, String academicYear) {
+        List<Map<String, Object>> classRows = jdbcTemplate.queryForList(
+                "SELECT name, academic_year FROM classes WHERE id = ?", classId);
+        if (classRows.isEmpty()) {
+            throw new RuntimeException("Class not found");
+        }
+        if (academicYear == null || academicYear.isBlank()) {
+            academicYear = jdbcTemplate.queryForObject(
+                    "SELECT MAX(academic_year) FROM grades WHERE class_id = ? AND semester = ?",
+                    String.class, classId, semester);
+            if (academicYear == null) {
+                academicYear = (String) classRows.get(0).get("academic_year");
+            }
+        }
+
+        // Take the class map before computing: if a grade change evicts it meanwhile,
+        // the result lands in the detached map and is never served
+        Map<String, ClassStatisticsDTO> classCache = cache.computeIfAbsent(classId, id -> new ConcurrentHashMap<>());
+        String key = semester + "-" + academicYear;
+        ClassStatisticsDTO cached = classCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ClassStatisticsDTO statistics = compute(classId, (String) classRows.get(0).get("name"), semester, academicYear);
+        classCache.put(key, statistics);
+        return statistics;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGradeChanged(GradeChangedEvent event) {
+        for (Long classId : event.getClassIds()) {
+            cache.remove(classId);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCurriculumChanged(CurriculumChangedEvent event) {
+        // Subject slots and coefficients come from the curriculum; a subject change may touch every class
+        if (event.getClassIds().isEmpty()) {
+            cache.clear();
+            return;
+        }
+        for (Long classId : event.getClassIds()) {
+            cache.remove(classId);
+        }
+    }
+
+    private ClassStatisticsDTO compute(Long classId, String className, Integer semester, String academicYear) {
+        // Curriculum of the semester: fixes the subject slots and their coefficients
+        List<Map<String, Object>> subjectRows = jdbcTemplate.queryForList(
+                "SELECT s.id, s.name, s.code, s.coefficient FROM class_subjects cs " +
+                "JOIN subjects s ON s.id = cs.subject_id " +
+                "WHERE cs.class_id = ? AND cs.semester = ? ORDER BY s.name",
+                classId, semester);
+        int subjectCount = subjectRows.size();
+        long[] subjectIds = new long[subjectCount];
+        double[] coefficients = new double[subjectCount];
+        for (int i = 0; i < subjectCount; i++) {
+            subjectIds[i] = ((Number) subjectRows.get(i).get("id")).longValue();
+            Object coefficient = subjectRows.get(i).get("coefficient");
+            coefficients[i] = coefficient != null ? ((Number) coefficient).doubleValue() : 1.0;
+        }
+
+        // One streamed pass over the grades into primitive arrays
+        Accumulator acc = new Accumulator(subjectIds, coefficients);
+        jdbcTemplate.query(GRADES_SELECT, (RowCallbackHandler) rs -> {
+            acc.add(rs.getLong(1), rs.getLong(2), rs.getDouble(3));
+        }, classId, semester, academicYear);
+
+        ClassStatisticsDTO dto = new ClassStatisticsDTO();
+        dto.setClassId(classId);
+        dto.setClassName(className);
+        dto.setSemester(semester);
+        dto.setAcademicYear(academicYear);
+        dto.setStudentCount(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM students WHERE class_id = ?", Integer.class, classId));
+        dto.setRankings(rank(acc));
+        dto.setSubjects(subjectStatistics(acc, subjectRows));
+        dto.setComputedAt(LocalDateTime.now());
+
+        int passCount = 0;
+        double sum = 0.0;
+        for (StudentRankingDTO ranking : dto.getRankings()) {
+            if (ranking.getPassed()) passCount++;
+            sum += ranking.getAverage();
+        }
+        int ranked = dto.getRankings().size();
+        dto.setRankedCount(ranked);
+        dto.setPassCount(passCount);
+        dto.setPassRate(ranked > 0 ? round((double) passCount / ranked) : null);
+        dto.setClassAverage(ranked > 0 ? round(sum / ranked) : null);
+        return dto;
+    }
+
+    private List<StudentRankingDTO> rank(Accumulator acc) {
+        int n = acc.studentCount;
+        double[] averages = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            // Rank on the displayed (rounded) value so equal averages share a place
+            averages[i] = acc.coefficientSums[i] > 0 ? round(acc.weightedSums[i] / acc.coefficientSums[i]) : 0.0;
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(averages[b], averages[a]));
+
+        Map<Long, String[]> names = studentNames(acc);
+        List<StudentRankingDTO> rankings = new ArrayList<>(n);
+        int rank = 0;
+        for (int position = 0; position < n; position++) {
+            int i = order[position];
+            if (position == 0 || averages[i] != averages[order[position - 1]]) {
+                rank = position + 1;
+            }
+            String[] name = names.getOrDefault(acc.studentIds[i], new String[]{"Unknown", null});
+            rankings.add(new StudentRankingDTO(rank, acc.studentIds[i], name[0], name[1], averages[i],
+                    acc.gradedCounts[i], averages[i] >= PASS_MARK));
+        }
+        return rankings;
+    }
+
+    private Map<Long, String[]> studentNames(Accumulator acc) {
+        Map<Long, String[]> names = new HashMap<>();
+        if (acc.studentCount == 0) {
+            return names;
+        }
+        StringBuilder in = new StringBuilder();
+        Object[] args = new Object[acc.studentCount];
+        for (int i = 0; i < acc.studentCount; i++) {
+            in.append(i == 0 ? "?" : ",?");
+            args[i] = acc.studentIds[i];
+        }
+        jdbcTemplate.query("SELECT st.id, st.student_id, u.first_name, u.last_name FROM students st " +
+                "JOIN users u ON u.id = st.user_id WHERE st.id IN (" + in + ")", rs -> {
+            names.put(rs.getLong(1), new String[]{rs.getString(3) + " " + rs.getString(4), rs.getString(2)});
+        }, args);
+        return names;
+    }
+
+    private List<SubjectStatisticsDTO> subjectStatistics(Accumulator acc, List<Map<String, Object>> subjectRows) {
+        List<SubjectStatisticsDTO> subjects = new ArrayList<>(subjectRows.size());
+        for (int s = 0; s < subjectRows.size(); s++) {
+            SubjectStatisticsDTO dto = new SubjectStatisticsDTO();
+            dto.setSubjectId(acc.subjectIds[s]);
+            dto.setSubjectName((String) subjectRows.get(s).get("name"));
+            dto.setSubjectCode((String) subjectRows.get(s).get("code"));
+            dto.setCoefficient(acc.coefficients[s]);
+
+            int count = acc.valueCounts[s];
+            dto.setGradedCount(count);
+            if (count > 0) {
+                double[] values = Arrays.copyOf(acc.values[s], count);
+                Arrays.sort(values);
+                double sum = 0.0;
+                int passed = 0;
+                for (double value : values) {
+                    sum += value;
+                    if (value >= PASS_MARK) passed++;
+                }
+                double mean = sum / count;
+                double squares = 0.0;
+                for (double value : values) {
+                    squares += (value - mean) * (value - mean);
+                }
+                double median = count % 2 == 1
+                        ? values[count / 2]
+                        : (values[count / 2 - 1] + values[count / 2]) / 2;
+                dto.setMean(round(mean));
+                dto.setMedian(round(median));
+                dto.setStandardDeviation(round(Math.sqrt(squares / count)));
+                dto.setMin(values[0]);
+                dto.setMax(values[count - 1]);
+                dto.setPassRate(round((double) passed / count));
+            }
+            subjects.add(dto);
+        }
+        return subjects;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    /**
+     * Per-student weighted sums and per-subject final grades, grown as rows stream in
+     */
+    private static final class Accumulator {
+        final long[] subjectIds;
+        final double[] coefficients;
+        final Map<Long, Integer> subjectIndex = new HashMap<>();
+        final double[][] values;
+        final int[] valueCounts;
+
+        final Map<Long, Integer> studentIndex = new HashMap<>();
+        long[] studentIds = new long[64];
+        double[] weightedSums = new double[64];
+        double[] coefficientSums = new double[64];
+        int[] gradedCounts = new int[64];
+        int studentCount;
+
+        Accumulator(long[] subjectIds, double[] coefficients) {
+            this.subjectIds = subjectIds;
+            this.coefficients = coefficients;
+            this.values = new double[subjectIds.length][64];
+            this.valueCounts = new int[subjectIds.length];
+            for (int i = 0; i < subjectIds.length; i++) {
+                subjectIndex.put(subjectIds[i], i);
+            }
+        }
+
+        void add(long studentId, long subjectId, double finalGrade) {
+            Integer s = subjectIndex.get(subjectId);
+            if (s == null) {
+                return;
+            }
+            if (valueCounts[s] == values[s].length) {
+                values[s] = Arrays.copyOf(values[s], values[s].length * 2);
+            }
+            values[s][valueCounts[s]++] = finalGrade;
+
+            Integer i = studentIndex.get(studentId);
+            if (i == null) {
+                if (studentCount == studentIds.length) {
+                    int capacity = studentIds.length * 2;
+                    studentIds = Arrays.copyOf(studentIds, capacity);
+                    weightedSums = Arrays.copyOf(weightedSums, capacity);
+                    coefficientSums = Arrays.copyOf(coefficientSums, capacity);
+                    gradedCounts = Arrays.copyOf(gradedCounts, capacity);
+                }
+                i = studentCount++;
+                studentIndex.put(studentId, i);
+                studentIds[i] = studentId;
+            }
+            weightedSums[i] += finalGrade * coefficients[s];
+            coefficientSums[i] += coefficients[s];
+            gradedCounts[i]++;
+        }
+    }
+}
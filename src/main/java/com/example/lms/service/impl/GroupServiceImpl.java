@@ -6,6 +6,7 @@ import com.example.lms.model.StudentClass;
 import com.example.lms.repository.StudentClassRepository;
 import com.example.lms.repository.GroupRepository;
 import com.example.lms.service.GroupService;
+import com.example.lms.service.reference.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -17,16 +18,19 @@ public class GroupServiceImpl implements GroupService {
 
     private final GroupRepository groupRepository;
     private final StudentClassRepository classRepository;
+    private final ReferenceDataCache referenceDataCache;
 
     @Autowired
-    public GroupServiceImpl(GroupRepository groupRepository, StudentClassRepository classRepository) {
+    public GroupServiceImpl(GroupRepository groupRepository, StudentClassRepository classRepository,
+                            ReferenceDataCache referenceDataCache) {
         this.groupRepository = groupRepository;
         this.classRepository = classRepository;
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
     public List<Group> getAllGroups() {
-        return groupRepository.findAll();
+        return referenceDataCache.snapshot().groups();
     }
 
     @Override
@@ -55,7 +59,9 @@ public class GroupServiceImpl implements GroupService {
         group.setCapacity(groupDTO.getCapacity() != null ? groupDTO.getCapacity() : 30);
         group.setStudentClass(studentClass);
         
-        return groupRepository.save(group);
+        Group saved = groupRepository.save(group);
+        referenceDataCache.changed();
+        return saved;
     }
 
     @Override
@@ -80,12 +86,15 @@ public class GroupServiceImpl implements GroupService {
                         .orElseThrow(() -> new RuntimeException("Class not found with id: " + groupDTO.getClassId()));
                 group.setStudentClass(studentClass);
             }
-            return groupRepository.save(group);
+            Group saved = groupRepository.save(group);
+            referenceDataCache.changed();
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Group not found"));
     }
 
     @Override
     public void deleteGroup(Long id) {
         groupRepository.deleteById(id);
+        referenceDataCache.changed();
     }
 }
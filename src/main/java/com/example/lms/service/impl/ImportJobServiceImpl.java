@@ -0,0 +1,351 @@
+package com.example.lms.service.impl;
+
+import com.example.lms.dto.ImportJobDTO;
+import com.example.lms.dto.ImportRowDTO;
+import com.example.lms.model.ImportJob;
+import com.example.lms.model.User;
+import com.example.lms.repository.ImportJobRepository;
+import com.example.lms.repository.UserRepository;
+import com.example.lms.service.ExcelService;
+import com.example.lms.service.ImportJobService;
+import com.example.lms.service.excel.ImportCheckpoint;
+import com.example.lms.service.excel.ImportProgress;
+import com.example.lms.service.excel.ImportProgressRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Import jobs run on a single dedicated thread. The validated rows are stored with the job
+ * (passwords included, so the payload is dropped once the job completes, and a while after it fails)
+ * and each chunk commits together with the job's checkpoint. A node claims a job with a conditional
+ * UPDATE and renews its lease while running it; a job interrupted by a crash or restart is taken
+ * over, by any node, once its lease has lapsed, and continues after its last committed chunk.
+ * Each claim stores a new claim token, and heartbeats, checkpoints and the final status only apply
+ * with it: a node that lost its lease (a long pause) stops at its next checkpoint instead of
+ * racing the node that took the job over.
+ */
+@Service
+public class ImportJobServiceImpl implements ImportJobService {
+
+    public static final int MAX_STORED_ERRORS = 100;
+    private static final int MAX_REASON_LENGTH = 1000;
+
+    private final ImportJobRepository importJobRepository;
+    private final UserRepository userRepository;
+    private final ExcelService excelService;
+    private final ImportProgressRegistry importProgressRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final long leaseMs;
+    private final long failedPayloadRetentionHours;
+
+    // Jobs waiting in or running on this node's executor
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    private volatile Lease running;
+
+    @Autowired
+    public ImportJobServiceImpl(ImportJobRepository importJobRepository, UserRepository userRepository,
+                                ExcelService excelService, ImportProgressRegistry importProgressRegistry,
+                                TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                                @Value("${import.jobs.lease-ms:120000}") long leaseMs,
+                                @Value("${import.jobs.failed-payload-retention-hours:24}") long failedPayloadRetentionHours) {
+        this.importJobRepository = importJobRepository;
+        this.userRepository = userRepository;
+        this.excelService = excelService;
+        this.importProgressRegistry = importProgressRegistry;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.leaseMs = leaseMs;
+        this.failedPayloadRetentionHours = failedPayloadRetentionHours;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "import-jobs");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public ImportJobDTO submit(ImportJob.Type type, List<ImportRowDTO> rows, String username) {
+        ImportJob job = new ImportJob();
+        job.setType(type);
+        job.setStatus(ImportJob.Status.QUEUED);
+        job.setTotalRows(rows.size());
+        job.setCreatedBy(userRepository.findByUsername(username).map(User::getId).orElse(null));
+        job.setCreatedAt(LocalDateTime.now());
+        try {
+            job.setPayload(objectMapper.writeValueAsString(rows));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not store import rows: " + e.getMessage());
+        }
+        job = importJobRepository.save(job);
+
+        schedule(job.getId());
+        return toDTO(job);
+    }
+
+    @Override
+    public ImportJobDTO getJob(Long id) {
+        return toDTO(importJobRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Import job not found")));
+    }
+
+    @Override
+    public List<ImportJobDTO> getRecentJobs() {
+        return importJobRepository.findTop20ByOrderByIdDesc().stream().map(this::toDTO).toList();
+    }
+
+    @Override
+    public ImportJobDTO resume(Long id) {
+        Integer requeued = transactionTemplate.execute(tx ->
+                importJobRepository.requeue(id, ImportJob.Status.FAILED, ImportJob.Status.QUEUED));
+        ImportJob job = importJobRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Import job not found"));
+        if (requeued == null || requeued == 0) {
+            if (job.getStatus() != ImportJob.Status.FAILED) {
+                throw new RuntimeException("Only failed import jobs can be resumed");
+            }
+            throw new RuntimeException("The rows of this import job were discarded after "
+                    + failedPayloadRetentionHours + " hours, upload the file again");
+        }
+        schedule(id);
+        return toDTO(job);
+    }
+
+    /**
+     * Queued jobs, and running jobs whose node stopped renewing the lease (crash, restart),
+     * continue from their checkpoint; checked at startup and then once per lease period
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${import.jobs.lease-ms:120000}", fixedDelayString = "${import.jobs.lease-ms:120000}")
+    public void resumeInterrupted() {
+        LocalDateTime staleBefore = LocalDateTime.now().minusNanos(leaseMs * 1_000_000);
+        List<ImportJob> interrupted = importJobRepository.findByStatusInOrderByIdAsc(
+                EnumSet.of(ImportJob.Status.QUEUED, ImportJob.Status.RUNNING));
+        for (ImportJob job : interrupted) {
+            boolean leaseLapsed = job.getHeartbeatAt() == null || job.getHeartbeatAt().isBefore(staleBefore);
+            if (scheduled.contains(job.getId())
+                    || (job.getStatus() == ImportJob.Status.RUNNING && !leaseLapsed)) {
+                continue;
+            }
+            System.out.println("🔄 Resuming import job " + job.getId() + " at row " + job.getProcessedRows()
+                    + "/" + job.getTotalRows());
+            schedule(job.getId());
+        }
+    }
+
+    /**
+     * Renew the lease of the job this node is running
+     */
+    @Scheduled(fixedDelayString = "${import.jobs.heartbeat-ms:30000}")
+    public void heartbeat() {
+        Lease lease = running;
+        if (lease == null) {
+            return;
+        }
+        Integer renewed = transactionTemplate.execute(tx -> importJobRepository.heartbeat(lease.jobId(), lease.token(),
+                ImportJob.Status.RUNNING, LocalDateTime.now()));
+        if (renewed == null || renewed == 0) {
+            // The run itself stops at its next checkpoint
+            System.err.println("⚠️ Import job " + lease.jobId() + " was taken over by another node");
+        }
+    }
+
+    /**
+     * Drop the stored rows (with their plain-text passwords) of jobs that failed longer ago than the retention
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void purgeFailedPayloads() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(failedPayloadRetentionHours);
+        Integer purged = transactionTemplate.execute(tx ->
+                importJobRepository.purgePayloads(ImportJob.Status.FAILED, cutoff));
+        if (purged != null && purged > 0) {
+            System.out.println("🧹 Discarded the rows of " + purged + " failed import jobs");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // No interrupt: a job cut off mid-chunk rolls that chunk back and resumes at the next start
+        executor.shutdown();
+    }
+
+    private void schedule(Long jobId) {
+        if (scheduled.add(jobId)) {
+            executor.execute(() -> {
+                try {
+                    run(jobId);
+                } finally {
+                    scheduled.remove(jobId);
+                }
+            });
+        }
+    }
+
+    private void run(Long jobId) {
+        String token = UUID.randomUUID().toString();
+        ImportJob job = transactionTemplate.execute(status -> claim(jobId, token));
+        if (job == null) {
+            return;
+        }
+        Lease lease = new Lease(jobId, token);
+        running = lease;
+        try {
+            List<ImportRowDTO> rows = objectMapper.readValue(job.getPayload(), new TypeReference<List<ImportRowDTO>>() { });
+            JobCheckpoint checkpoint = new JobCheckpoint(job, token);
+            int imported = job.getType() == ImportJob.Type.STUDENTS
+                    ? excelService.importStudents(rows, checkpoint)
+                    : excelService.importTeachers(rows, checkpoint);
+            if (!finish(lease, ImportJob.Status.COMPLETED, null)) {
+                throw new ImportCheckpoint.LeaseLostException("Import job " + jobId + " was taken over by another node");
+            }
+            System.out.println("✅ Import job " + jobId + ": " + imported + " " + job.getType().name().toLowerCase()
+                    + " imported, " + checkpoint.errorCount + " rows failed");
+        } catch (ImportCheckpoint.LeaseLostException e) {
+            // The job is not this node's any more: leave its status to the new owner
+            System.err.println("⚠️ " + e.getMessage() + ", stopped");
+        } catch (Exception e) {
+            System.err.println("Import job " + jobId + " failed: " + e.getMessage());
+            finish(lease, ImportJob.Status.FAILED, e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            running = null;
+        }
+    }
+
+    // Null when the job is done, gone, or held by another node
+    private ImportJob claim(Long jobId, String token) {
+        LocalDateTime now = LocalDateTime.now();
+        int claimed = importJobRepository.claim(jobId, token, ImportJob.Status.QUEUED, ImportJob.Status.RUNNING,
+                now, now.minusNanos(leaseMs * 1_000_000));
+        return claimed == 1 ? importJobRepository.findById(jobId).orElse(null) : null;
+    }
+
+    // False when another node has claimed the job since
+    private boolean finish(Lease lease, ImportJob.Status status, String failureReason) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer updated = transactionTemplate.execute(tx -> status == ImportJob.Status.COMPLETED
+                ? importJobRepository.complete(lease.jobId(), lease.token(), ImportJob.Status.RUNNING, status, now)
+                : importJobRepository.fail(lease.jobId(), lease.token(), ImportJob.Status.RUNNING, status, now,
+                        failureReason.length() > MAX_REASON_LENGTH
+                                ? failureReason.substring(0, MAX_REASON_LENGTH) : failureReason));
+        return updated != null && updated == 1;
+    }
+
+    private ImportJobDTO toDTO(ImportJob job) {
+        ImportJobDTO dto = new ImportJobDTO();
+        dto.setId(job.getId());
+        dto.setType(job.getType().name());
+        dto.setStatus(job.getStatus().name());
+        dto.setTotalRows(job.getTotalRows());
+        dto.setProcessedRows(job.getProcessedRows());
+        dto.setErrorCount(job.getErrorCount());
+        dto.setErrors(splitErrors(job.getErrors()));
+        dto.setFailureReason(job.getFailureReason());
+        dto.setCreatedAt(job.getCreatedAt());
+        dto.setStartedAt(job.getStartedAt());
+        dto.setFinishedAt(job.getFinishedAt());
+
+        if (job.getStartedAt() != null) {
+            LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+            long millis = Duration.between(job.getStartedAt(), end).toMillis();
+            int rows = job.getProcessedRows() - job.getResumedFromRow();
+            dto.setRowsPerSecond(millis > 0 ? Math.round(rows * 100000.0 / millis) / 100.0 : null);
+        }
+        if (job.getStatus() == ImportJob.Status.RUNNING) {
+            ImportProgress progress = importProgressRegistry.get(String.valueOf(job.getId()));
+            if (progress != null) {
+                dto.setPhase(progress.getPhase().name());
+                dto.setPasswordsHashed(progress.getPasswordsHashed());
+                dto.setPasswordsToHash(progress.getPasswordsToHash());
+            }
+        }
+        return dto;
+    }
+
+    private static List<String> splitErrors(String errors) {
+        return errors == null || errors.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(errors.split("\n")));
+    }
+
+    /**
+     * Checkpoint of one run, written to import_jobs inside each chunk transaction.
+     * The in-memory error list only takes a chunk's errors once that chunk has committed.
+     */
+    private class JobCheckpoint implements ImportCheckpoint {
+        private final Long jobId;
+        private final String token;
+        private final int startRow;
+        private List<String> errors;
+        private int errorCount;
+
+        JobCheckpoint(ImportJob job, String token) {
+            this.jobId = job.getId();
+            this.token = token;
+            this.startRow = job.getProcessedRows();
+            this.errors = splitErrors(job.getErrors());
+            this.errorCount = job.getErrorCount();
+        }
+
+        @Override
+        public String id() {
+            return String.valueOf(jobId);
+        }
+
+        @Override
+        public int nextRow() {
+            return startRow;
+        }
+
+        @Override
+        public void committed(int nextRow, Map<Integer, String> rowErrors) {
+            List<String> newErrors = new ArrayList<>(errors);
+            for (Map.Entry<Integer, String> error : rowErrors.entrySet()) {
+                if (newErrors.size() < MAX_STORED_ERRORS) {
+                    String message = error.getValue() != null ? error.getValue().replace('\n', ' ') : "unknown error";
+                    newErrors.add("Row " + (error.getKey() + 1) + ": " + message);
+                }
+            }
+            int newErrorCount = errorCount + rowErrors.size();
+            if (importJobRepository.checkpoint(jobId, token, nextRow, newErrorCount,
+                    newErrors.isEmpty() ? null : String.join("\n", newErrors)) == 0) {
+                throw new LeaseLostException("Import job " + jobId + " was taken over by another node");
+            }
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    errors = newErrors;
+                    errorCount = newErrorCount;
+                }
+            });
+        }
+
+        @Override
+        public void checkLease() {
+            if (!importJobRepository.existsByIdAndClaimToken(jobId, token)) {
+                throw new LeaseLostException("Import job " + jobId + " was taken over by another node");
+            }
+        }
+    }
+
+    // The job this node runs and the token of its claim
+    private record Lease(Long jobId, String token) {
+    }
+}
@@ -1,14 +1,20 @@
 package com.example.lms.service.impl;
 
+import com.example.lms.dto.NotificationDTO;
+import com.example.lms.event.NotificationCountsChangedEvent;
 import com.example.lms.model.Notification;
+import com.example.lms.model.NotificationPayload;
 import com.example.lms.model.NotificationType;
 import com.example.lms.model.User;
 import com.example.lms.repository.NotificationRepository;
 import com.example.lms.service.NotificationService;
+import com.example.lms.service.notification.NotificationOutbox;
+import com.example.lms.service.notification.NotificationWriter;
+import com.example.lms.service.notification.UnreadCountCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,121 +25,174 @@ import java.util.stream.Collectors;
 /**
  * Implementation of NotificationService
  * Handles creation, retrieval, and management of notifications
+ * Bulk creation goes through the NotificationWriter (JDBC batches); audience fan-outs through the NotificationOutbox
+ * The same notification sent to many users is one shared payload and one recipient row per user
+ * Every change of unread counts is published as a NotificationCountsChangedEvent (badge push);
+ * unread counts are read from the UnreadCountCache, which follows those events
  */
 @Service
 public class NotificationServiceImpl implements NotificationService {
     
     private final NotificationRepository notificationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UnreadCountCache unreadCountCache;
+    private final NotificationWriter notificationWriter;
+    private final NotificationOutbox notificationOutbox;
     
     @Autowired
-    public NotificationServiceImpl(NotificationRepository notificationRepository) {
+    public NotificationServiceImpl(NotificationRepository notificationRepository,
+                                   ApplicationEventPublisher eventPublisher,
+                                   UnreadCountCache unreadCountCache,
+                                   NotificationWriter notificationWriter,
+                                   NotificationOutbox notificationOutbox) {
         this.notificationRepository = notificationRepository;
+        this.eventPublisher = eventPublisher;
+        this.unreadCountCache = unreadCountCache;
+        this.notificationWriter = notificationWriter;
+        this.notificationOutbox = notificationOutbox;
     }
     
     @Override
     @Transactional
     public void createNotification(User user, NotificationType type, String title, String message,
                                    String entityType, Long entityId, String url) {
-        Notification notification = new Notification();
-        notification.setUser(user);
-        notification.setType(type);
-        notification.setTitle(title);
-        notification.setMessage(message);
-        notification.setRelatedEntityType(entityType);
-        notification.setRelatedEntityId(entityId);
-        notification.setRelatedEntityUrl(url);
-        notification.setRead(false);
-        notification.setCreatedAt(LocalDateTime.now());
-        
-        notificationRepository.save(notification);
+        createNotificationsForUsers(List.of(user), type, title, message, entityType, entityId, url);
     }
     
     @Override
-    @Async
     @Transactional
     public void createNotificationsForUsers(List<User> users, NotificationType type, String title,
                                            String message, String entityType, Long entityId, String url) {
-        // Process in batches of 100 to avoid memory issues with large student groups
-        List<List<User>> batches = partition(users, 100);
+        NotificationPayload payload = new NotificationPayload();
+        payload.setType(type);
+        payload.setTitle(title);
+        payload.setMessage(message);
+        payload.setRelatedEntityType(entityType);
+        payload.setRelatedEntityId(entityId);
+        payload.setRelatedEntityUrl(url);
+        payload.setCreatedAt(LocalDateTime.now());
+        
+        List<Notification> notifications = users.stream()
+                .map(user -> {
+                    Notification notification = new Notification();
+                    notification.setUser(user);
+                    notification.setPayload(payload);
+                    notification.setRead(false);
+                    return notification;
+                })
+                .collect(Collectors.toList());
         
-        for (List<User> batch : batches) {
-            List<Notification> notifications = batch.stream()
-                    .map(user -> {
-                        Notification notification = new Notification();
-                        notification.setUser(user);
-                        notification.setType(type);
-                        notification.setTitle(title);
-                        notification.setMessage(message);
-                        notification.setRelatedEntityType(entityType);
-                        notification.setRelatedEntityId(entityId);
-                        notification.setRelatedEntityUrl(url);
-                        notification.setRead(false);
-                        notification.setCreatedAt(LocalDateTime.now());
-                        return notification;
-                    })
-                    .collect(Collectors.toList());
-            
-            notificationRepository.saveAll(notifications);
+        notificationWriter.insert(notifications);
+        publishCreated(notifications);
+    }
+    
+    @Override
+    @Transactional
+    public void createNotificationsForStudents(NotificationWriter.Audience audience, Long audienceId,
+                                               NotificationType type, String title, String message,
+                                               String entityType, Long entityId, String url) {
+        notificationOutbox.enqueueAudience(audience, audienceId, type, title, message, entityType, entityId, url);
+    }
+    
+    @Override
+    @Transactional
+    public void createNotifications(List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
         }
+        notificationWriter.insert(notifications);
+        publishCreated(notifications);
     }
     
     @Override
-    public Page<Notification> getUserNotifications(User user, Pageable pageable) {
-        return notificationRepository.findByUserOrderByCreatedAtDesc(user, pageable);
+    @Transactional(readOnly = true)
+    public Page<NotificationDTO> getUserNotifications(User user, Pageable pageable) {
+        return notificationRepository.findByUserOrderByIdDesc(user, pageable).map(this::convertToDTO);
     }
     
     @Override
     public int getUnreadCount(User user) {
-        return notificationRepository.countByUserAndReadFalse(user);
+        return unreadCountCache.total(user.getId());
     }
     
     @Override
     public Map<String, Integer> getUnreadCountsByType(User user) {
-        List<Object[]> results = notificationRepository.countUnreadByType(user);
-        
-        Map<String, Integer> counts = new HashMap<>();
-        for (Object[] result : results) {
-            NotificationType type = (NotificationType) result[0];
-            Long count = (Long) result[1];
-            // Use category name (Grades, Feed, Schedule) instead of enum name
-            counts.put(type.getCategory(), count.intValue());
-        }
-        
-        System.out.println("📊 Notification counts for user " + user.getUsername() + ": " + counts);
-        
-        return counts;
+        // Keyed by category name (Grades, Feed, Schedule) instead of enum name
+        return unreadCountCache.countsByCategory(user.getId());
     }
     
     @Override
     @Transactional
     public void markAsRead(Long notificationId) {
         notificationRepository.findById(notificationId).ifPresent(notification -> {
-            notification.setRead(true);
-            notification.setReadAt(LocalDateTime.now());
-            notificationRepository.save(notification);
+            // Only the call that flips the row moves the badge, however many race on it
+            if (notificationRepository.markAsReadIfUnread(notificationId) == 1) {
+                publish(Map.of(notification.getUser().getId(),
+                        Map.of(notification.getPayload().getType().getCategory(), -1)));
+            }
         });
     }
     
     @Override
     @Transactional
     public void markAllAsRead(User user) {
-        notificationRepository.markAllAsRead(user);
+        // The badges drop by the rows each UPDATE actually marked, type by type
+        Map<String, Integer> deltas = new HashMap<>();
+        for (NotificationType type : NotificationType.values()) {
+            int marked = notificationRepository.markTypeAsRead(user, type);
+            if (marked > 0) {
+                deltas.merge(type.getCategory(), -marked, Integer::sum);
+            }
+        }
+        if (!deltas.isEmpty()) {
+            publish(Map.of(user.getId(), deltas));
+        }
     }
     
     @Override
     @Transactional
     public void markTypeAsRead(User user, NotificationType type) {
-        notificationRepository.markTypeAsRead(user, type);
+        int marked = notificationRepository.markTypeAsRead(user, type);
+        if (marked > 0) {
+            publish(Map.of(user.getId(), Map.of(type.getCategory(), -marked)));
+        }
+    }
+    
+    private void publishCreated(List<Notification> notifications) {
+        Map<Long, Map<String, Integer>> deltas = new HashMap<>();
+        addCreated(deltas, notifications);
+        publish(deltas);
+    }
+    
+    private static void addCreated(Map<Long, Map<String, Integer>> deltas, List<Notification> notifications) {
+        for (Notification notification : notifications) {
+            if (!notification.isRead()) {
+                // getId() on the user reference does not load it
+                deltas.computeIfAbsent(notification.getUser().getId(), id -> new HashMap<>())
+                        .merge(notification.getPayload().getType().getCategory(), 1, Integer::sum);
+            }
+        }
+    }
+    
+    private NotificationDTO convertToDTO(Notification notification) {
+        NotificationPayload payload = notification.getPayload();
+        NotificationDTO dto = new NotificationDTO();
+        dto.setId(notification.getId());
+        dto.setType(payload.getType().name());
+        dto.setTitle(payload.getTitle());
+        dto.setMessage(payload.getMessage());
+        dto.setRelatedEntityType(payload.getRelatedEntityType());
+        dto.setRelatedEntityId(payload.getRelatedEntityId());
+        dto.setRelatedEntityUrl(payload.getRelatedEntityUrl());
+        dto.setRead(notification.isRead());
+        dto.setCreatedAt(payload.getCreatedAt());
+        dto.setReadAt(notification.getReadAt());
+        return dto;
     }
     
-    /**
-     * Helper method to partition a list into smaller batches
-     */
-    private <T> List<List<T>> partition(List<T> list, int batchSize) {
-        List<List<T>> batches = new ArrayList<>();
-        for (int i = 0; i < list.size(); i += batchSize) {
-            batches.add(list.subList(i, Math.min(i + batchSize, list.size())));
+    private void publish(Map<Long, Map<String, Integer>> deltas) {
+        if (!deltas.isEmpty()) {
+            eventPublisher.publishEvent(new NotificationCountsChangedEvent(deltas));
         }
-        return batches;
     }
 }
@@ -6,6 +6,7 @@ import com.example.lms.model.*;
 import com.example.lms.repository.*;
 import com.example.lms.service.NotificationService;
 import com.example.lms.service.PostService;
+import com.example.lms.service.notification.NotificationWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
@@ -170,6 +171,7 @@ public class PostServiceImpl implements PostService {
     }
 
     @Override
+    @Transactional
     public PostDTO createPost(PostDTO postDTO, Long authorId) {
         User author = userRepository.findById(authorId)
                 .orElseThrow(() -> new RuntimeException("Author not found"));
@@ -398,6 +400,7 @@ public class PostServiceImpl implements PostService {
     }
 
     @Override
+    @Transactional
     public PostDTO approvePost(Long postId, Long approvedBy) {
         Post post = postRepository.findById(postId)
                 .orElseThrow(() -> new RuntimeException("Post not found"));
@@ -426,74 +429,52 @@ public class PostServiceImpl implements PostService {
     /**
      * Send notifications to all target users for an approved post
      * Extracted to be reusable from both createPost (auto-approve) and approvePost
+     * The fan-out is queued in the caller's transaction: it is delivered exactly when the post is saved
      */
     private void sendPostNotifications(Post post) {
-        try {
-            System.out.println("🔔 Preparing to send notifications for post...");
-            System.out.println("   Post ID: " + post.getId());
-            System.out.println("   Post Title: " + post.getTitle());
-            System.out.println("   Visibility: " + post.getVisibility());
-            System.out.println("   Target Department: " + (post.getTargetDepartment() != null ? post.getTargetDepartment().getName() : "null"));
-            System.out.println("   Target Class: " + (post.getTargetClass() != null ? post.getTargetClass().getName() : "null"));
-            System.out.println("   Target Group: " + (post.getTargetGroup() != null ? post.getTargetGroup().getName() : "null"));
-            
-            List<User> targetUsers = getTargetUsersForPost(post);
-            System.out.println("   📊 Found " + targetUsers.size() + " target users");
-            
-            if (!targetUsers.isEmpty()) {
-                String message = post.getTitle();
-                String url = "/feed"; // URL to feed/posts page
-                
-                System.out.println("   ✉️ Creating notifications for " + targetUsers.size() + " users...");
-                
-                notificationService.createNotificationsForUsers(
-                    targetUsers,
-                    NotificationType.URGENT_POST, // Using URGENT_POST for all feed notifications
-                    "New Post",
-                    message,
-                    "Post",
-                    post.getId(),
-                    url
-                );
-                
-                System.out.println("   ✅ Sent notifications to " + targetUsers.size() + " users for post: " + post.getTitle());
-            } else {
-                System.out.println("   ⚠️ No target users found for this post!");
-            }
-        } catch (Exception e) {
-            System.err.println("   ❌ Failed to create post notification: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-    
-    /**
-     * Helper method to get all users who should receive notifications for a post
-     */
-    private List<User> getTargetUsersForPost(Post post) {
-        List<User> users = new ArrayList<>();
+        System.out.println("🔔 Preparing to send notifications for post...");
+        System.out.println("   Post ID: " + post.getId());
+        System.out.println("   Post Title: " + post.getTitle());
+        System.out.println("   Visibility: " + post.getVisibility());
+        System.out.println("   Target Department: " + (post.getTargetDepartment() != null ? post.getTargetDepartment().getName() : "null"));
+        System.out.println("   Target Class: " + (post.getTargetClass() != null ? post.getTargetClass().getName() : "null"));
+        System.out.println("   Target Group: " + (post.getTargetGroup() != null ? post.getTargetGroup().getName() : "null"));
         
-        // Based on visibility and targeting
+        // Narrowest target wins; the students are selected by the database, not loaded here
+        NotificationWriter.Audience audience = null;
+        Long audienceId = null;
         if (post.getTargetGroup() != null) {
-            // Get all students in the group
-            List<Student> students = studentRepository.findByGroupId(post.getTargetGroup().getId());
-            students.forEach(student -> {
-                if (student.getUser() != null) users.add(student.getUser());
-            });
+            audience = NotificationWriter.Audience.GROUP;
+            audienceId = post.getTargetGroup().getId();
         } else if (post.getTargetClass() != null) {
-            // Get all students in the class
-            List<Student> students = studentRepository.findByStudentClassId(post.getTargetClass().getId());
-            students.forEach(student -> {
-                if (student.getUser() != null) users.add(student.getUser());
-            });
+            audience = NotificationWriter.Audience.CLASS;
+            audienceId = post.getTargetClass().getId();
         } else if (post.getTargetDepartment() != null) {
-            // Get all students in the department
-            List<Student> students = studentRepository.findByDepartmentId(post.getTargetDepartment().getId());
-            students.forEach(student -> {
-                if (student.getUser() != null) users.add(student.getUser());
-            });
+            audience = NotificationWriter.Audience.DEPARTMENT;
+            audienceId = post.getTargetDepartment().getId();
         }
         
-        return users;
+        if (audience != null) {
+            String message = post.getTitle();
+            String url = "/feed"; // URL to feed/posts page
+            
+            System.out.println("   ✉️ Queuing notifications for " + audience + " " + audienceId + "...");
+            
+            notificationService.createNotificationsForStudents(
+                audience,
+                audienceId,
+                NotificationType.URGENT_POST, // Using URGENT_POST for all feed notifications
+                "New Post",
+                message,
+                "Post",
+                post.getId(),
+                url
+            );
+            
+            System.out.println("   ✅ Queued notifications for post: " + post.getTitle());
+        } else {
+            System.out.println("   ⚠️ No target users found for this post!");
+        }
     }
 
     @Override
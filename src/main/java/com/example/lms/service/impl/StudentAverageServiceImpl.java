@@ -0,0 +1,225 @@
+package com.example.lms.service.impl;
+
+import com.example.lms.dto.AverageMismatchDTO;
+import com.example.lms.event.CurriculumChangedEvent;
+import com.example.lms.model.StudentSemesterAverage;
+import com.example.lms.repository.StudentSemesterAverageRepository;
+import com.example.lms.service.StudentAverageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Service
+public class StudentAverageServiceImpl implements StudentAverageService {
+
+    private static final int REBUILD_CHUNK_SIZE = 500;
+    private static final double EPSILON = 1e-6;
+
+    // (student, year, semester) -> weighted sum, coefficient sum, graded subject count
+    private static final String AGGREGATE_SELECT =
+            "SELECT g.student_id, g.academic_year, g.semester, " +
+            "COALESCE(SUM(g.final_grade * s.coefficient), 0), " +
+            "COALESCE(SUM(CASE WHEN g.final_grade IS NOT NULL THEN s.coefficient ELSE 0 END), 0), " +
+            "COUNT(g.final_grade) " +
+            "FROM grades g JOIN subjects s ON s.id = g.subject_id ";
+
+    private static final String AGGREGATE_INSERT =
+            "INSERT INTO student_semester_average " +
+            "(student_id, academic_year, semester, weighted_sum, coefficient_sum, graded_subjects, updated_at) " +
+            "SELECT g.student_id, g.academic_year, g.semester, " +
+            "COALESCE(SUM(g.final_grade * s.coefficient), 0), " +
+            "COALESCE(SUM(CASE WHEN g.final_grade IS NOT NULL THEN s.coefficient ELSE 0 END), 0), " +
+            "COUNT(g.final_grade), CURRENT_TIMESTAMP " +
+            "FROM grades g JOIN subjects s ON s.id = g.subject_id ";
+
+    private final StudentSemesterAverageRepository averageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public StudentAverageServiceImpl(StudentSemesterAverageRepository averageRepository, JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager) {
+        this.averageRepository = averageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    @Transactional
+    public Double getAverage(Long studentId, String academicYear, Integer semester) {
+        StudentSemesterAverage.Key key = new StudentSemesterAverage.Key(studentId, academicYear, semester);
+        Optional<StudentSemesterAverage> stored = averageRepository.findById(key);
+        if (stored.isPresent()) {
+            return stored.get().getAverage();
+        }
+        // Cold row: build it once from grades, later writes keep it current. Locked like the first
+        // writer in applyChange, so a concurrent reader or writer cannot insert it twice
+        lockStudent(studentId);
+        if (!rowExists(studentId, academicYear, semester)) {
+            insertRow(studentId, academicYear, semester);
+        }
+        return averageRepository.findById(key).map(StudentSemesterAverage::getAverage).orElse(0.0);
+    }
+
+    @Override
+    @Transactional
+    public void applyChange(Long studentId, String academicYear, Integer semester, Double coefficient,
+                            Double oldFinalGrade, Double newFinalGrade) {
+        if (Objects.equals(oldFinalGrade, newFinalGrade)) {
+            return;
+        }
+        double coef = coefficient != null ? coefficient : 0.0;
+        double weightedDelta = (newFinalGrade != null ? newFinalGrade * coef : 0.0)
+                - (oldFinalGrade != null ? oldFinalGrade * coef : 0.0);
+        double coefficientDelta = (newFinalGrade != null ? coef : 0.0) - (oldFinalGrade != null ? coef : 0.0);
+        int countDelta = (newFinalGrade != null ? 1 : 0) - (oldFinalGrade != null ? 1 : 0);
+
+        if (updateRow(studentId, academicYear, semester, weightedDelta, coefficientDelta, countDelta) > 0) {
+            return;
+        }
+        // No row yet: serialize first writers of this student on the student row, then re-check
+        lockStudent(studentId);
+        if (updateRow(studentId, academicYear, semester, weightedDelta, coefficientDelta, countDelta) == 0) {
+            // The grade itself is already flushed, so the aggregate includes this change
+            insertRow(studentId, academicYear, semester);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void refreshStudents(List<Long> studentIds) {
+        for (int i = 0; i < studentIds.size(); i += REBUILD_CHUNK_SIZE) {
+            rebuildChunk(studentIds.subList(i, Math.min(i + REBUILD_CHUNK_SIZE, studentIds.size())));
+        }
+    }
+
+    /**
+     * A subject's coefficient weighs every stored average it appears in; runs in the
+     * transaction of the change, so the refreshed rows commit with the new coefficient
+     */
+    @EventListener
+    public void onCurriculumChanged(CurriculumChangedEvent event) {
+        if (event.getSubjectIds().isEmpty()) {
+            return;
+        }
+        String in = String.join(",", Collections.nCopies(event.getSubjectIds().size(), "?"));
+        List<Long> studentIds = jdbcTemplate.queryForList("SELECT DISTINCT student_id FROM grades " +
+                "WHERE subject_id IN (" + in + ")", Long.class, event.getSubjectIds().toArray());
+        refreshStudents(studentIds);
+    }
+
+    @Override
+    public int rebuildAll() {
+        List<Long> studentIds = jdbcTemplate.queryForList(
+                "SELECT DISTINCT student_id FROM grades ORDER BY student_id", Long.class);
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> chunks = new ArrayList<>();
+            for (int i = 0; i < studentIds.size(); i += REBUILD_CHUNK_SIZE) {
+                List<Long> chunk = studentIds.subList(i, Math.min(i + REBUILD_CHUNK_SIZE, studentIds.size()));
+                chunks.add(executor.submit(() -> transactionTemplate.execute(status -> rebuildChunk(chunk))));
+            }
+            int rows = 0;
+            for (Future<Integer> chunk : chunks) {
+                rows += chunk.get();
+            }
+            // Students that no longer have any grade
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                    "DELETE FROM student_semester_average a WHERE NOT EXISTS " +
+                    "(SELECT 1 FROM grades g WHERE g.student_id = a.student_id)"));
+            return rows;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to rebuild student averages: " + e.getMessage(), e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public List<AverageMismatchDTO> checkConsistency() {
+        Map<StudentSemesterAverage.Key, double[]> live = new HashMap<>();
+        jdbcTemplate.query(AGGREGATE_SELECT + "GROUP BY g.student_id, g.academic_year, g.semester", rs -> {
+            live.put(new StudentSemesterAverage.Key(rs.getLong(1), rs.getString(2), rs.getInt(3)),
+                    new double[]{rs.getDouble(4), rs.getDouble(5), rs.getInt(6)});
+        });
+
+        List<AverageMismatchDTO> mismatches = new ArrayList<>();
+        jdbcTemplate.query("SELECT student_id, academic_year, semester, weighted_sum, coefficient_sum, graded_subjects " +
+                "FROM student_semester_average", rs -> {
+            StudentSemesterAverage.Key key = new StudentSemesterAverage.Key(rs.getLong(1), rs.getString(2), rs.getInt(3));
+            double storedAverage = average(rs.getDouble(4), rs.getDouble(5));
+            double[] expected = live.remove(key);
+            if (expected == null) {
+                // Stored row without grades is only fine if it is empty
+                if (rs.getInt(6) != 0) {
+                    mismatches.add(new AverageMismatchDTO(key.getStudentId(), key.getAcademicYear(),
+                            key.getSemester(), storedAverage, null));
+                }
+                return;
+            }
+            double liveAverage = average(expected[0], expected[1]);
+            if (Math.abs(storedAverage - liveAverage) > EPSILON || rs.getInt(6) != (int) expected[2]) {
+                mismatches.add(new AverageMismatchDTO(key.getStudentId(), key.getAcademicYear(),
+                        key.getSemester(), storedAverage, liveAverage));
+            }
+        });
+        // Groups that have graded subjects but no stored row (rows are created lazily otherwise)
+        live.forEach((key, expected) -> {
+            if (expected[2] > 0) {
+                mismatches.add(new AverageMismatchDTO(key.getStudentId(), key.getAcademicYear(),
+                        key.getSemester(), null, average(expected[0], expected[1])));
+            }
+        });
+        return mismatches;
+    }
+
+    private int updateRow(Long studentId, String academicYear, Integer semester,
+                          double weightedDelta, double coefficientDelta, int countDelta) {
+        return jdbcTemplate.update(
+                "UPDATE student_semester_average SET weighted_sum = weighted_sum + ?, " +
+                "coefficient_sum = coefficient_sum + ?, graded_subjects = graded_subjects + ?, " +
+                "updated_at = CURRENT_TIMESTAMP " +
+                "WHERE student_id = ? AND academic_year = ? AND semester = ?",
+                weightedDelta, coefficientDelta, countDelta, studentId, academicYear, semester);
+    }
+
+    private void lockStudent(Long studentId) {
+        jdbcTemplate.queryForList("SELECT id FROM students WHERE id = ? FOR UPDATE", Long.class, studentId);
+    }
+
+    private boolean rowExists(Long studentId, String academicYear, Integer semester) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM student_semester_average " +
+                "WHERE student_id = ? AND academic_year = ? AND semester = ?",
+                Integer.class, studentId, academicYear, semester).isEmpty();
+    }
+
+    private void insertRow(Long studentId, String academicYear, Integer semester) {
+        jdbcTemplate.update(AGGREGATE_INSERT +
+                "WHERE g.student_id = ? AND g.academic_year = ? AND g.semester = ? " +
+                "GROUP BY g.student_id, g.academic_year, g.semester",
+                studentId, academicYear, semester);
+    }
+
+    private int rebuildChunk(List<Long> studentIds) {
+        String in = String.join(",", Collections.nCopies(studentIds.size(), "?"));
+        Object[] args = studentIds.toArray();
+        jdbcTemplate.update("DELETE FROM student_semester_average WHERE student_id IN (" + in + ")", args);
+        return jdbcTemplate.update(AGGREGATE_INSERT + "WHERE g.student_id IN (" + in + ") " +
+                "GROUP BY g.student_id, g.academic_year, g.semester", args);
+    }
+
+    private static double average(double weightedSum, double coefficientSum) {
+        return coefficientSum > 0 ? weightedSum / coefficientSum : 0.0;
+    }
+}
@@ -1,23 +1,30 @@
 package com.example.lms.service.impl;
 
 import com.example.lms.dto.SubjectDTO;
+import com.example.lms.event.CurriculumChangedEvent;
 import com.example.lms.model.Subject;
 import com.example.lms.repository.SubjectRepository;
 import com.example.lms.service.SubjectService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class SubjectServiceImpl implements SubjectService {
 
     private final SubjectRepository subjectRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public SubjectServiceImpl(SubjectRepository subjectRepository) {
+    public SubjectServiceImpl(SubjectRepository subjectRepository, ApplicationEventPublisher eventPublisher) {
         this.subjectRepository = subjectRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -42,19 +49,28 @@ public class SubjectServiceImpl implements SubjectService {
     }
 
     @Override
+    @Transactional
     public Subject updateSubject(Long id, SubjectDTO dto) {
-        return subjectRepository.findById(id).map(subject -> {
-            if (dto.getName() != null) subject.setName(dto.getName());
-            if (dto.getCode() != null) subject.setCode(dto.getCode());
-            if (dto.getCoefficient() != null) subject.setCoefficient(dto.getCoefficient());
-            if (dto.getCreditHours() != null) subject.setCreditHours(dto.getCreditHours());
-            if (dto.getDescription() != null) subject.setDescription(dto.getDescription());
+        Subject subject = subjectRepository.findById(id).orElseThrow(() -> new RuntimeException("Subject not found"));
+        Double previousCoefficient = subject.getCoefficient();
+        if (dto.getName() != null) subject.setName(dto.getName());
+        if (dto.getCode() != null) subject.setCode(dto.getCode());
+        if (dto.getCoefficient() != null) subject.setCoefficient(dto.getCoefficient());
+        if (dto.getCreditHours() != null) subject.setCreditHours(dto.getCreditHours());
+        if (dto.getDescription() != null) subject.setDescription(dto.getDescription());
+        if (Objects.equals(previousCoefficient, subject.getCoefficient())) {
             return subjectRepository.save(subject);
-        }).orElseThrow(() -> new RuntimeException("Subject not found"));
+        }
+        // Flushed first: listeners recompute stored averages from the subjects table
+        Subject saved = subjectRepository.saveAndFlush(subject);
+        eventPublisher.publishEvent(new CurriculumChangedEvent(Set.of(), Set.of(id)));
+        return saved;
     }
 
     @Override
+    @Transactional
     public void deleteSubject(Long id) {
         subjectRepository.deleteById(id);
+        eventPublisher.publishEvent(new CurriculumChangedEvent(Set.of(), Set.of()));
     }
 }
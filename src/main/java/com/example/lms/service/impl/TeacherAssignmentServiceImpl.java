@@ -4,6 +4,7 @@ import com.example.lms.dto.TeacherAssignmentDTO;
 import com.example.lms.model.TeacherAssignment;
 import com.example.lms.repository.*;
 import com.example.lms.service.TeacherAssignmentService;
+import com.example.lms.service.authorization.TeacherGrantIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -18,18 +19,21 @@ public class TeacherAssignmentServiceImpl implements TeacherAssignmentService {
     private final StudentClassRepository classRepository;
     private final SubjectRepository subjectRepository;
     private final GroupRepository groupRepository;
+    private final TeacherGrantIndex teacherGrantIndex;
 
     @Autowired
     public TeacherAssignmentServiceImpl(TeacherAssignmentRepository assignmentRepository,
                                          TeacherRepository teacherRepository,
                                          StudentClassRepository classRepository,
                                          SubjectRepository subjectRepository,
-                                         GroupRepository groupRepository) {
+                                         GroupRepository groupRepository,
+                                         TeacherGrantIndex teacherGrantIndex) {
         this.assignmentRepository = assignmentRepository;
         this.teacherRepository = teacherRepository;
         this.classRepository = classRepository;
         this.subjectRepository = subjectRepository;
         this.groupRepository = groupRepository;
+        this.teacherGrantIndex = teacherGrantIndex;
     }
 
     @Override
@@ -64,17 +68,23 @@ public class TeacherAssignmentServiceImpl implements TeacherAssignmentService {
         assignment.setSemester(dto.getSemester());
         assignment.setAcademicYear(dto.getAcademicYear());
         
-        return assignmentRepository.save(assignment);
+        TeacherAssignment saved = assignmentRepository.save(assignment);
+        teacherGrantIndex.changed();
+        return saved;
     }
 
     @Override
     public void deleteAssignment(Long id) {
-        assignmentRepository.deleteById(id);
+        assignmentRepository.findById(id).ifPresent(assignment -> {
+            assignmentRepository.delete(assignment);
+            teacherGrantIndex.changed();
+        });
     }
 
     @Override
     public void deleteAssignmentsByTeacherId(Long teacherId) {
         List<TeacherAssignment> assignments = assignmentRepository.findByTeacherId(teacherId);
         assignmentRepository.deleteAll(assignments);
+        teacherGrantIndex.changed();
     }
 }
@@ -4,6 +4,7 @@ import com.example.lms.dto.TeacherDTO;
 import com.example.lms.model.*;
 import com.example.lms.repository.*;
 import com.example.lms.service.TeacherService;
+import com.example.lms.service.reference.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -19,14 +20,17 @@ public class TeacherServiceImpl implements TeacherService {
     private final UserRepository userRepository;
     private final DepartmentRepository departmentRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ReferenceDataCache referenceDataCache;
 
     @Autowired
     public TeacherServiceImpl(TeacherRepository teacherRepository, UserRepository userRepository,
-                               DepartmentRepository departmentRepository, PasswordEncoder passwordEncoder) {
+                               DepartmentRepository departmentRepository, PasswordEncoder passwordEncoder,
+                               ReferenceDataCache referenceDataCache) {
         this.teacherRepository = teacherRepository;
         this.userRepository = userRepository;
         this.departmentRepository = departmentRepository;
         this.passwordEncoder = passwordEncoder;
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
@@ -81,7 +85,10 @@ public class TeacherServiceImpl implements TeacherService {
             if (dto.getSpecialization() != null) teacher.setSpecialization(dto.getSpecialization());
             if (dto.getOfficeLocation() != null) teacher.setOfficeLocation(dto.getOfficeLocation());
 
-            return teacherRepository.save(teacher);
+            Teacher saved = teacherRepository.save(teacher);
+            // Cached departments carry their head's name
+            referenceDataCache.changed();
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Teacher not found"));
     }
 
@@ -0,0 +1,84 @@
+package com.example.lms.service.impl;
+
+import com.example.lms.dto.GradeRowDTO;
+import com.example.lms.dto.TranscriptDTO;
+import com.example.lms.event.GradeChangedEvent;
+import com.example.lms.repository.GradeRepository;
+import com.example.lms.service.TranscriptService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transcripts cached per node and keyed on students.grade_version, which every grade change bumps
+ * in its own transaction: each read checks the version (one primary key lookup), so a change made
+ * on any node invalidates every node's copy and the ETag, and tags agree across nodes and restarts.
+ */
+@Service
+public class TranscriptServiceImpl implements TranscriptService {
+
+    // Values per IN list of the version bump
+    private static final int BUMP_CHUNK_SIZE = 1000;
+
+    private final GradeRepository gradeRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, TranscriptDTO> cache = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TranscriptServiceImpl(GradeRepository gradeRepository, JdbcTemplate jdbcTemplate) {
+        this.gradeRepository = gradeRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public TranscriptDTO getTranscript(Long studentId) {
+        // Read the version before querying: a change committed meanwhile bumps it and the entry is rebuilt next time
+        long version = version(studentId);
+        TranscriptDTO cached = cache.get(studentId);
+        if (cached != null && cached.getVersion() == version) {
+            return cached;
+        }
+
+        List<GradeRowDTO> rows = gradeRepository.findTranscriptRows(studentId);
+        List<String> years = rows.stream()
+                .map(GradeRowDTO::getAcademicYear)
+                .distinct()
+                .toList();
+        TranscriptDTO transcript = new TranscriptDTO(studentId, version, years, List.copyOf(rows));
+        cache.put(studentId, transcript);
+        return transcript;
+    }
+
+    @Override
+    public String getETag(Long studentId) {
+        return "\"" + studentId + "-" + version(studentId) + "\"";
+    }
+
+    /**
+     * Runs inside the changing transaction, so the new version commits (or rolls back) with the grades
+     */
+    @EventListener
+    public void onGradeChanged(GradeChangedEvent event) {
+        // Sorted, so concurrent bumps lock the student rows in the same order
+        List<Long> studentIds = new ArrayList<>(event.getStudentIds());
+        Collections.sort(studentIds);
+        for (int i = 0; i < studentIds.size(); i += BUMP_CHUNK_SIZE) {
+            List<Long> chunk = studentIds.subList(i, Math.min(i + BUMP_CHUNK_SIZE, studentIds.size()));
+            jdbcTemplate.update("UPDATE students SET grade_version = grade_version + 1 WHERE id IN (" +
+                    String.join(",", Collections.nCopies(chunk.size(), "?")) + ")", chunk.toArray());
+        }
+    }
+
+    private long version(Long studentId) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT grade_version FROM students WHERE id = ?",
+                Long.class, studentId);
+        return versions.isEmpty() ? 0L : versions.get(0);
+    }
+}
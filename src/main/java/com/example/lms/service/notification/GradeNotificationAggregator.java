@@ -0,0 +1,48 @@
+package com.example.lms.service.notification;
+
+import com.example.lms.model.Grade;
+import com.example.lms.model.Student;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns grade changes into GRADE_PUBLISHED notification intents instead of inserting one row per edit.
+ * Intents are written to the outbox with the grade; repeated edits of a grade inside the window
+ * collapse into a single notification carrying the grade as it is at delivery (NotificationOutboxWorker).
+ */
+@Component
+public class GradeNotificationAggregator {
+
+    private final NotificationOutbox notificationOutbox;
+    private final Counter enqueued;
+
+    @Autowired
+    public GradeNotificationAggregator(NotificationOutbox notificationOutbox, MeterRegistry meterRegistry) {
+        this.notificationOutbox = notificationOutbox;
+        this.enqueued = meterRegistry.counter("lms.notifications.grade.enqueued");
+    }
+
+    /**
+     * Queue a notification for the grade's student. Inside a transaction the intent commits
+     * with the grade, so rolled-back edits never notify anyone.
+     * @param created true for a new grade ("Grade Published"), false for an edit ("Grade Updated")
+     */
+    public void gradeChanged(Grade grade, boolean created) {
+        Student student = grade.getStudent();
+        if (student == null || student.getUser() == null || grade.getSubject() == null) {
+            return;
+        }
+        gradeChanged(student.getUser().getId(), grade.getId(), created);
+    }
+
+    /**
+     * Same as gradeChanged(Grade, boolean) for a grade written with plain SQL
+     * @param userId user id of the grade's student
+     */
+    public void gradeChanged(Long userId, Long gradeId, boolean created) {
+        enqueued.increment();
+        notificationOutbox.enqueueGrade(userId, gradeId, created);
+    }
+}
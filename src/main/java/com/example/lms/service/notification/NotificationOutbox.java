@@ -0,0 +1,94 @@
+package com.example.lms.service.notification;
+
+import com.example.lms.model.NotificationIntent;
+import com.example.lms.model.NotificationType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes notification intents (notification_outbox) in the caller's transaction, so a fan-out
+ * exists exactly when the change that triggers it commits and survives a restart.
+ * Grade intents are collected per transaction and inserted in one JDBC batch just before it commits;
+ * outside a transaction every intent is inserted at once. NotificationOutboxWorker delivers them.
+ */
+@Component
+public class NotificationOutbox {
+
+    private static final String INSERT_SQL = "INSERT INTO notification_outbox (kind, status, audience, audience_id, " +
+            "user_id, type, title, message, related_entity_type, related_entity_id, related_entity_url, " +
+            "grade_created, attempts, created_at, available_at) " +
+            "VALUES (?, 'PENDING', ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+
+    private static final int[] INSERT_TYPES = {Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.BIGINT,
+            Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.VARCHAR,
+            Types.BOOLEAN, Types.TIMESTAMP, Types.TIMESTAMP};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long gradeWindowMs;
+
+    @Autowired
+    public NotificationOutbox(JdbcTemplate jdbcTemplate,
+                              @Value("${notification.grade.window-ms:30000}") long gradeWindowMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.gradeWindowMs = gradeWindowMs;
+    }
+
+    /**
+     * Queue a notification for every student of a group, class or department
+     */
+    public void enqueueAudience(NotificationWriter.Audience audience, Long audienceId, NotificationType type,
+                                String title, String message, String entityType, Long entityId, String url) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(INSERT_SQL, new Object[]{NotificationIntent.Kind.AUDIENCE.name(), audience.name(),
+                audienceId, null, type.name(), title, message, entityType, entityId, url, false, now, now},
+                INSERT_TYPES);
+    }
+
+    /**
+     * Queue a grade notification for a student; it becomes due after the coalescing window,
+     * and further changes of the same grade until then are delivered with it as one notification
+     * @param created true for a new grade ("Grade Published"), false for an edit ("Grade Updated")
+     */
+    public void enqueueGrade(Long userId, Long gradeId, boolean created) {
+        LocalDateTime now = LocalDateTime.now();
+        Object[] row = {NotificationIntent.Kind.GRADE.name(), null, null, userId,
+                NotificationType.GRADE_PUBLISHED.name(), null, null, "Grade", gradeId, "/grades", created,
+                Timestamp.valueOf(now), Timestamp.valueOf(now.plusNanos(gradeWindowMs * 1_000_000))};
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            jdbcTemplate.update(INSERT_SQL, row, INSERT_TYPES);
+            return;
+        }
+        // Synchronizations (unlike custom resources) are suspended with their transaction
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingGrades pending && pending.outbox() == this) {
+                pending.rows().add(row);
+                return;
+            }
+        }
+        PendingGrades pending = new PendingGrades(this, new ArrayList<>());
+        pending.rows().add(row);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+    }
+
+    /**
+     * Grade intents of one transaction, inserted just before it commits (still inside it,
+     * so they commit or roll back with the grades)
+     */
+    private record PendingGrades(NotificationOutbox outbox, List<Object[]> rows) implements TransactionSynchronization {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            outbox.jdbcTemplate.batchUpdate(INSERT_SQL, rows, INSERT_TYPES);
+        }
+    }
+}
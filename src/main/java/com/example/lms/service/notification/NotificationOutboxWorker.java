@@ -0,0 +1,359 @@
+package com.example.lms.service.notification;
+
+import com.example.lms.event.NotificationCountsChangedEvent;
+import com.example.lms.model.Notification;
+import com.example.lms.model.NotificationIntent;
+import com.example.lms.model.NotificationPayload;
+import com.example.lms.model.NotificationType;
+import com.example.lms.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains notification_outbox with a fixed pool of workers. Each poll claims only as many units of
+ * work as there are idle workers (backpressure: the backlog waits in the table, not in memory):
+ * one AUDIENCE intent, or up to one chunk of due GRADE intents together with the pending intents
+ * of the same grades (coalescing). A claim is a lease (claim_token, available_at): if the node dies,
+ * the lease runs out and another poll takes the intent over.
+ * An audience is notified chunk by chunk in user id order; each chunk commits with the intent's
+ * last_user_id, so a resumed intent never notifies a student twice. Grade intents are deleted in the
+ * transaction that writes their notifications. A failed unit is retried with exponential backoff
+ * and kept as FAILED after the last attempt.
+ */
+@Component
+public class NotificationOutboxWorker {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final long MAX_BACKOFF_MS = 300000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationWriter notificationWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+    private final long leaseMs;
+    private final int maxAttempts;
+
+    private final ExecutorService executor;
+    // One permit per idle worker
+    private final Semaphore idleWorkers;
+
+    private final Counter delivered;
+    private final Counter coalesced;
+    private final Counter retried;
+    private final Counter failed;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile double lagSeconds;
+
+    @Autowired
+    public NotificationOutboxWorker(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                    NotificationWriter notificationWriter, ApplicationEventPublisher eventPublisher,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${notification.outbox.workers:2}") int workers,
+                                    @Value("${notification.outbox.chunk-size:1000}") int chunkSize,
+                                    @Value("${notification.outbox.lease-ms:60000}") long leaseMs,
+                                    @Value("${notification.outbox.max-attempts:10}") int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.notificationWriter = notificationWriter;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+        this.leaseMs = leaseMs;
+        this.maxAttempts = maxAttempts;
+        this.idleWorkers = new Semaphore(workers);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "notification-outbox-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.delivered = meterRegistry.counter("lms.notifications.outbox.delivered");
+        this.coalesced = meterRegistry.counter("lms.notifications.grade.coalesced");
+        this.retried = meterRegistry.counter("lms.notifications.outbox.retries");
+        this.failed = meterRegistry.counter("lms.notifications.outbox.failed");
+        Gauge.builder("lms.notifications.outbox.pending", pending, AtomicInteger::get)
+                .description("Notification intents not delivered yet")
+                .register(meterRegistry);
+        Gauge.builder("lms.notifications.outbox.lag.seconds", this, worker -> worker.lagSeconds)
+                .description("Age of the oldest undelivered notification intent (grade intents include their coalescing window)")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${notification.outbox.poll-interval-ms:1000}")
+    public void poll() {
+        LocalDateTime now = LocalDateTime.now();
+        updateQueueMetrics(now);
+        while (idleWorkers.tryAcquire()) {
+            Runnable work = claim(now);
+            if (work == null) {
+                idleWorkers.release();
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    work.run();
+                } finally {
+                    idleWorkers.release();
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // No interrupt: a chunk cut off mid-way rolls back and its lease expires for the next node/start
+        executor.shutdown();
+    }
+
+    private void updateQueueMetrics(LocalDateTime now) {
+        jdbcTemplate.query("SELECT COUNT(*), MIN(created_at) FROM notification_outbox WHERE status = 'PENDING'",
+                (RowCallbackHandler) rs -> {
+                    pending.set(rs.getInt(1));
+                    Timestamp oldest = rs.getTimestamp(2);
+                    lagSeconds = oldest != null ? Duration.between(oldest.toLocalDateTime(), now).toMillis() / 1000.0 : 0;
+                });
+    }
+
+    // Next unit of work, or null when nothing is due; audiences first (one row each), then a grade chunk
+    private Runnable claim(LocalDateTime now) {
+        String token = UUID.randomUUID().toString();
+        Timestamp nowTs = Timestamp.valueOf(now);
+        Timestamp leaseEnd = Timestamp.valueOf(now.plusNanos(leaseMs * 1_000_000));
+
+        // The outer available_at condition is re-checked on rows another node claimed meanwhile
+        int audiences = jdbcTemplate.update("UPDATE notification_outbox SET claim_token = ?, available_at = ? " +
+                "WHERE status = 'PENDING' AND available_at <= ? AND id IN (SELECT id FROM notification_outbox " +
+                "WHERE kind = 'AUDIENCE' AND status = 'PENDING' AND available_at <= ? ORDER BY id LIMIT 1)",
+                token, leaseEnd, nowTs, nowTs);
+        if (audiences > 0) {
+            return () -> runClaimed(token, () -> deliverAudience(token));
+        }
+
+        int grades = jdbcTemplate.update("UPDATE notification_outbox SET claim_token = ?, available_at = ? " +
+                "WHERE status = 'PENDING' AND available_at <= ? AND id IN (SELECT id FROM notification_outbox " +
+                "WHERE kind = 'GRADE' AND status = 'PENDING' AND available_at <= ? ORDER BY id LIMIT ?)",
+                token, leaseEnd, nowTs, nowTs, chunkSize);
+        if (grades == 0) {
+            return null;
+        }
+        // Later changes of the same grades, still inside their window, go out with this notification
+        jdbcTemplate.update("UPDATE notification_outbox SET claim_token = ?, available_at = ? " +
+                "WHERE kind = 'GRADE' AND status = 'PENDING' AND claim_token IS NULL AND related_entity_id IN " +
+                "(SELECT related_entity_id FROM notification_outbox WHERE claim_token = ?)", token, leaseEnd, token);
+        return () -> runClaimed(token, () -> deliverGrades(token));
+    }
+
+    private void runClaimed(String token, Runnable delivery) {
+        try {
+            delivery.run();
+        } catch (Exception e) {
+            release(token, e);
+        }
+    }
+
+    private void deliverAudience(String token) {
+        NotificationIntent intent = jdbcTemplate.query("SELECT id, audience, audience_id, type, title, message, " +
+                "related_entity_type, related_entity_id, related_entity_url, last_user_id, payload_id FROM notification_outbox " +
+                "WHERE claim_token = ?", rs -> {
+            if (!rs.next()) {
+                return null;
+            }
+            NotificationIntent row = new NotificationIntent();
+            row.setId(rs.getLong(1));
+            row.setAudience(rs.getString(2));
+            row.setAudienceId(rs.getLong(3));
+            row.setType(NotificationType.valueOf(rs.getString(4)));
+            row.setTitle(rs.getString(5));
+            row.setMessage(rs.getString(6));
+            row.setRelatedEntityType(rs.getString(7));
+            row.setRelatedEntityId(rs.getObject(8) != null ? rs.getLong(8) : null);
+            row.setRelatedEntityUrl(rs.getString(9));
+            row.setLastUserId(rs.getObject(10) != null ? rs.getLong(10) : null);
+            row.setPayloadId(rs.getObject(11) != null ? rs.getLong(11) : null);
+            return row;
+        }, token);
+        if (intent == null) {
+            return;
+        }
+        NotificationWriter.Audience audience = NotificationWriter.Audience.valueOf(intent.getAudience());
+        long afterUserId = intent.getLastUserId() != null ? intent.getLastUserId() : 0;
+        int total = 0;
+        while (true) {
+            long from = afterUserId;
+            List<Long> chunk = transactionTemplate.execute(status -> {
+                if (intent.getPayloadId() == null) {
+                    // First chunk: the shared payload commits with it and is reused after a retry
+                    NotificationPayload payload = new NotificationPayload();
+                    payload.setType(intent.getType());
+                    payload.setTitle(intent.getTitle());
+                    payload.setMessage(intent.getMessage());
+                    payload.setRelatedEntityType(intent.getRelatedEntityType());
+                    payload.setRelatedEntityId(intent.getRelatedEntityId());
+                    payload.setRelatedEntityUrl(intent.getRelatedEntityUrl());
+                    payload.setCreatedAt(LocalDateTime.now());
+                    notificationWriter.insertPayloads(List.of(payload));
+                    checkLease(jdbcTemplate.update("UPDATE notification_outbox SET payload_id = ? WHERE claim_token = ?",
+                            payload.getId(), token), 1);
+                    intent.setPayloadId(payload.getId());
+                }
+                List<Long> userIds = notificationWriter.insertChunkForStudents(audience, intent.getAudienceId(), from,
+                        chunkSize, intent.getPayloadId());
+                if (userIds.isEmpty()) {
+                    checkLease(jdbcTemplate.update("DELETE FROM notification_outbox WHERE claim_token = ?", token), 1);
+                    return userIds;
+                }
+                long lastUserId = userIds.get(userIds.size() - 1);
+                // Checkpoint with the chunk, and a fresh lease for the next one
+                checkLease(jdbcTemplate.update("UPDATE notification_outbox SET last_user_id = ?, available_at = ? " +
+                        "WHERE claim_token = ?", lastUserId,
+                        Timestamp.valueOf(LocalDateTime.now().plusNanos(leaseMs * 1_000_000)), token), 1);
+                publishCreated(userIds, intent.getType());
+                return userIds;
+            });
+            if (chunk.isEmpty()) {
+                break;
+            }
+            total += chunk.size();
+            afterUserId = chunk.get(chunk.size() - 1);
+        }
+        System.out.println("✅ Delivered " + total + " notifications for " + intent.getRelatedEntityType() + " "
+                + intent.getRelatedEntityId() + " to " + audience + " " + intent.getAudienceId());
+    }
+
+    private void deliverGrades(String token) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Intents in id order: the first one of a grade decides between "Published" and "Updated"
+            Map<Long, GradeIntent> byGrade = new LinkedHashMap<>();
+            int[] claimed = {0};
+            jdbcTemplate.query("SELECT user_id, related_entity_id, grade_created FROM notification_outbox " +
+                    "WHERE claim_token = ? ORDER BY id", (RowCallbackHandler) rs -> {
+                claimed[0]++;
+                long gradeId = rs.getLong(2);
+                if (byGrade.putIfAbsent(gradeId, new GradeIntent(rs.getLong(1), gradeId, rs.getBoolean(3))) != null) {
+                    coalesced.increment();
+                }
+            }, token);
+            if (byGrade.isEmpty()) {
+                return;
+            }
+
+            // Message from the grade as it is now; intents of deleted grades are dropped
+            Map<Long, Object[]> grades = new HashMap<>();
+            List<Long> gradeIds = new ArrayList<>(byGrade.keySet());
+            jdbcTemplate.query("SELECT g.id, s.name, g.final_grade FROM grades g JOIN subjects s ON s.id = g.subject_id " +
+                    "WHERE g.id IN (" + String.join(",", Collections.nCopies(gradeIds.size(), "?")) + ")",
+                    (RowCallbackHandler) rs -> grades.put(rs.getLong(1),
+                            new Object[]{rs.getString(2), rs.getObject(3, Double.class)}), gradeIds.toArray());
+
+            List<Notification> notifications = new ArrayList<>();
+            for (GradeIntent intent : byGrade.values()) {
+                Object[] grade = grades.get(intent.gradeId());
+                if (grade != null) {
+                    notifications.add(intent.toNotification((String) grade[0], (Double) grade[1]));
+                }
+            }
+            notificationWriter.insert(notifications);
+            checkLease(jdbcTemplate.update("DELETE FROM notification_outbox WHERE claim_token = ?", token), claimed[0]);
+            Map<Long, Map<String, Integer>> deltas = new HashMap<>();
+            for (Notification notification : notifications) {
+                deltas.computeIfAbsent(notification.getUser().getId(), id -> new HashMap<>())
+                        .merge(NotificationType.GRADE_PUBLISHED.getCategory(), 1, Integer::sum);
+            }
+            publish(deltas, notifications.size());
+        });
+    }
+
+    private void publishCreated(List<Long> userIds, NotificationType type) {
+        Map<Long, Map<String, Integer>> deltas = new HashMap<>();
+        for (Long userId : userIds) {
+            deltas.put(userId, Map.of(type.getCategory(), 1));
+        }
+        publish(deltas, userIds.size());
+    }
+
+    // Inside the delivery transaction: unread counts follow once it commits
+    private void publish(Map<Long, Map<String, Integer>> deltas, int notifications) {
+        if (!deltas.isEmpty()) {
+            eventPublisher.publishEvent(new NotificationCountsChangedEvent(deltas));
+        }
+        delivered.increment(notifications);
+    }
+
+    // Rows of the claim missing: its lease ran out and another worker holds the intent now
+    private static void checkLease(int updated, int expected) {
+        if (updated != expected) {
+            throw new IllegalStateException("Notification outbox lease lost");
+        }
+    }
+
+    // Back off (1 s, 2 s, 4 s ... 5 min) or give up after the last attempt
+    private void release(String token, Exception e) {
+        String error = e.getMessage() != null ? e.getMessage() : e.toString();
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        System.err.println("Notification outbox delivery failed: " + error);
+        try {
+            Integer attempts = jdbcTemplate.queryForObject(
+                    "SELECT MAX(attempts) FROM notification_outbox WHERE claim_token = ?", Integer.class, token);
+            if (attempts == null) {
+                return;
+            }
+            long backoff = Math.min(MAX_BACKOFF_MS, 1000L << Math.min(attempts, 20));
+            jdbcTemplate.update("UPDATE notification_outbox SET attempts = attempts + 1, last_error = ?, " +
+                    "status = CASE WHEN attempts + 1 >= ? THEN 'FAILED' ELSE 'PENDING' END, claim_token = NULL, " +
+                    "available_at = ? WHERE claim_token = ?", error, maxAttempts,
+                    Timestamp.valueOf(LocalDateTime.now().plusNanos(backoff * 1_000_000)), token);
+            (attempts + 1 >= maxAttempts ? failed : retried).increment();
+        } catch (Exception releaseError) {
+            // The lease runs out on its own
+            System.err.println("Could not release notification outbox claim: " + releaseError.getMessage());
+        }
+    }
+
+    private record GradeIntent(long userId, long gradeId, boolean created) {
+        Notification toNotification(String subjectName, Double finalGrade) {
+            NotificationPayload payload = new NotificationPayload();
+            payload.setType(NotificationType.GRADE_PUBLISHED);
+            if (created) {
+                payload.setTitle("Grade Published");
+                payload.setMessage(String.format("New grade published for %s: %.2f/20", subjectName, finalGrade));
+            } else {
+                payload.setTitle("Grade Updated");
+                payload.setMessage(String.format("Grade updated for %s: %.2f/20", subjectName, finalGrade));
+            }
+            payload.setRelatedEntityType("Grade");
+            payload.setRelatedEntityId(gradeId);
+            payload.setRelatedEntityUrl("/grades");
+            payload.setCreatedAt(LocalDateTime.now());
+
+            Notification notification = new Notification();
+            User user = new User();
+            user.setId(userId);
+            notification.setUser(user);
+            notification.setPayload(payload);
+            notification.setRead(false);
+            return notification;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.lms.service.notification;
+
+import com.example.lms.event.NotificationCountsAppliedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Open badge streams (Server-Sent Events), per user.
+ * A stream starts with a "counts" event holding the unread counts by category, then receives a "delta"
+ * event whenever a committed change moves them. Both carry the unread count cache's sequence number as
+ * their event id: a delta whose id is not above the "counts" id is already included in them and is
+ * skipped by the client. The connection is held by async servlet
+ * processing (no request thread); events are written from virtual threads, so a stalled client only
+ * blocks its own write. A heartbeat comment keeps proxies from closing idle streams, and streams
+ * are closed after a timeout so the browser reconnects and resynchronizes with a fresh "counts" event.
+ * Streams are local to the node: changes made on another node arrive with that resynchronization.
+ */
+@Component
+public class NotificationStreams {
+
+    // Browser reconnect delay after a dropped stream
+    private static final long RECONNECT_MS = 5000;
+
+    private final UnreadCountCache unreadCountCache;
+    private final long timeoutMs;
+    private final Map<Long, Set<SseEmitter>> streams = new ConcurrentHashMap<>();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Counter deltasSent;
+
+    @Autowired
+    public NotificationStreams(UnreadCountCache unreadCountCache, MeterRegistry meterRegistry,
+                               @Value("${notification.stream.timeout-ms:1800000}") long timeoutMs) {
+        this.unreadCountCache = unreadCountCache;
+        this.timeoutMs = timeoutMs;
+        this.deltasSent = meterRegistry.counter("lms.notifications.stream.deltas");
+        Gauge.builder("lms.notifications.stream.connections", this, NotificationStreams::connections)
+                .description("Open notification badge streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open a stream for the user; the counts are read after the stream is registered, so no change
+     * applied in between is lost, and their sequence number lets the client skip the deltas they include
+     */
+    public SseEmitter open(Long userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        // Added inside compute, so it cannot land in a set that remove() is dropping
+        streams.compute(userId, (id, emitters) -> {
+            Set<SseEmitter> set = emitters != null ? emitters : ConcurrentHashMap.newKeySet();
+            set.add(emitter);
+            return set;
+        });
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+        try {
+            UnreadCountCache.Snapshot counts = unreadCountCache.snapshot(userId);
+            emitter.send(SseEmitter.event().name("counts").id(Long.toString(counts.sequence()))
+                    .reconnectTime(RECONNECT_MS).data(counts.counts()));
+        } catch (IOException | RuntimeException e) {
+            remove(userId, emitter);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    // Runs once the cache has applied a committed change, so the sequence number orders it against "counts"
+    @EventListener
+    public void onCountsApplied(NotificationCountsAppliedEvent event) {
+        Long userId = event.getUserId();
+        Set<SseEmitter> emitters = streams.get(userId);
+        if (emitters == null) {
+            return;
+        }
+        String id = Long.toString(event.getSequence());
+        for (SseEmitter emitter : emitters) {
+            sender.execute(() -> {
+                if (send(userId, emitter, SseEmitter.event().name("delta").id(id).data(event.getDeltas()))) {
+                    deltasSent.increment();
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notification.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        streams.forEach((userId, emitters) -> {
+            for (SseEmitter emitter : emitters) {
+                sender.execute(() -> send(userId, emitter, SseEmitter.event().comment("heartbeat")));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        streams.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        streams.clear();
+        sender.shutdown();
+    }
+
+    private int connections() {
+        return streams.values().stream().mapToInt(Set::size).sum();
+    }
+
+    // A failed write means the client is gone; the container completes the request itself
+    private boolean send(Long userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            remove(userId, emitter);
+            return false;
+        }
+    }
+
+    private void remove(Long userId, SseEmitter emitter) {
+        streams.computeIfPresent(userId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.lms.service.notification;
+
+import com.example.lms.model.Notification;
+import com.example.lms.model.NotificationPayload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Set-based notification inserts, inside the caller's transaction. Notification ids are IDENTITY,
+ * which keeps Hibernate from batching saveAll(); these go through JDBC instead: new payloads
+ * and their recipient rows are two batched INSERTs, and a chunk of the students of a group,
+ * class or department receives a payload with a single INSERT ... SELECT over students.
+ */
+@Component
+public class NotificationWriter {
+
+    // Rows per JDBC batch
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_RECIPIENT_SQL =
+            "INSERT INTO notification_recipient (user_id, payload_id, is_read) VALUES (?, ?, ?)";
+
+    private static final int[] INSERT_RECIPIENT_TYPES = {Types.BIGINT, Types.BIGINT, Types.BOOLEAN};
+
+    /**
+     * Students addressed by a fan-out, by the column holding the audience id
+     */
+    public enum Audience {
+        GROUP("group_id"),
+        CLASS("class_id"),
+        DEPARTMENT("department_id");
+
+        private final String column;
+
+        Audience(String column) {
+            this.column = column;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public NotificationWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Insert the notifications with batched statements: each new payload once, however many
+     * notifications share it, then one recipient row per notification (ids are not read back)
+     */
+    public void insert(List<Notification> notifications) {
+        Set<NotificationPayload> payloads = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Notification notification : notifications) {
+            if (notification.getPayload().getId() == null) {
+                payloads.add(notification.getPayload());
+            }
+        }
+        insertPayloads(new ArrayList<>(payloads));
+
+        List<Object[]> rows = new ArrayList<>(notifications.size());
+        for (Notification notification : notifications) {
+            rows.add(new Object[]{notification.getUser().getId(), notification.getPayload().getId(), notification.isRead()});
+        }
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(INSERT_RECIPIENT_SQL, rows.subList(i, Math.min(i + BATCH_SIZE, rows.size())),
+                    INSERT_RECIPIENT_TYPES);
+        }
+    }
+
+    /**
+     * Insert payloads in one batch and set their generated ids
+     */
+    public void insertPayloads(List<NotificationPayload> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement("INSERT INTO notification_payload (type, title, message, " +
+                "related_entity_type, related_entity_id, related_entity_url, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int index) throws SQLException {
+                        NotificationPayload payload = payloads.get(index);
+                        ps.setString(1, payload.getType().name());
+                        ps.setString(2, payload.getTitle());
+                        ps.setString(3, payload.getMessage());
+                        ps.setString(4, payload.getRelatedEntityType());
+                        ps.setObject(5, payload.getRelatedEntityId(), Types.BIGINT);
+                        ps.setString(6, payload.getRelatedEntityUrl());
+                        ps.setTimestamp(7, Timestamp.valueOf(payload.getCreatedAt()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return payloads.size();
+                    }
+                }, keys);
+
+        List<Map<String, Object>> generated = keys.getKeyList();
+        for (int i = 0; i < payloads.size(); i++) {
+            payloads.get(i).setId(((Number) generated.get(i).values().iterator().next()).longValue());
+        }
+    }
+
+    /**
+     * Give the payload, unread, to the next students of the audience, in user id order
+     * @param afterUserId only students with a greater user id (0 to start)
+     * @return user ids of the students notified, empty once the audience is done
+     */
+    public List<Long> insertChunkForStudents(Audience audience, Long audienceId, long afterUserId, int limit,
+                                             Long payloadId) {
+        // Recipients first, for the badge deltas; a student joining the audience in between is
+        // corrected by the next reconciliation of the unread count cache
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT user_id FROM students WHERE " + audience.column +
+                " = ? AND user_id > ? ORDER BY user_id LIMIT ?", Long.class, audienceId, afterUserId, limit);
+        if (userIds.isEmpty()) {
+            return userIds;
+        }
+        jdbcTemplate.update("INSERT INTO notification_recipient (user_id, payload_id, is_read) " +
+                "SELECT user_id, ?, false FROM students WHERE " + audience.column + " = ? " +
+                "AND user_id > ? AND user_id <= ?",
+                // Typed binds: PostgreSQL cannot infer the type of an untyped parameter in a select list
+                new Object[]{payloadId, audienceId, afterUserId, userIds.get(userIds.size() - 1)},
+                new int[]{Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT});
+        return userIds;
+    }
+}
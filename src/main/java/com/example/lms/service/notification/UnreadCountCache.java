@@ -0,0 +1,319 @@
+package com.example.lms.service.notification;
+
+import com.example.lms.event.NotificationCountsAppliedEvent;
+import com.example.lms.event.NotificationCountsChangedEvent;
+import com.example.lms.model.NotificationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unread notification counts per user, one int slot per notification category, so badge reads
+ * do not touch the database. The database is read on a cold miss only; committed changes
+ * (NotificationCountsChangedEvent) are then applied in memory.
+ * Users are spread over lock stripes. A change marks its users in flight from the moment it is
+ * published until its transaction completes, and bumps their version; a count read from the database
+ * is only installed if the version did not move and nothing is in flight, so a change racing with a
+ * load or a reconciliation is never counted twice or lost.
+ * Every applied change gets a sequence number (NotificationCountsAppliedEvent), assigned under the same
+ * lock as the counts, so a snapshot tells exactly which changes it already includes.
+ * The reconciliation pass re-reads the cached users' counts (idx_user_read) to correct drift
+ * (changes made on another node, rows deleted with their user) and drops users idle since the previous pass.
+ */
+@Component
+public class UnreadCountCache {
+
+    private static final int STRIPES = 64;
+
+    // Values per IN list of the reconciliation query
+    private static final int RECONCILE_CHUNK_SIZE = 1000;
+
+    // Loads tried by snapshot() before it settles for counts that changes raced with
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+
+    private static final String COUNT_SQL = "SELECT r.user_id, p.type, COUNT(*) FROM notification_recipient r " +
+            "JOIN notification_payload p ON p.id = r.payload_id " +
+            "WHERE r.is_read = false AND r.user_id IN (%s) GROUP BY r.user_id, p.type";
+
+    // Categories in slot order (Grades, Feed, Schedule)
+    private static final List<String> CATEGORIES = Arrays.stream(NotificationType.values())
+            .map(NotificationType::getCategory).distinct().toList();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // Last sequence number given to an applied change, shared by all users
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter corrections;
+
+    @Autowired
+    public UnreadCountCache(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher,
+                            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.hits = meterRegistry.counter("lms.notifications.unread.cache", "result", "hit");
+        this.misses = meterRegistry.counter("lms.notifications.unread.cache", "result", "miss");
+        this.corrections = meterRegistry.counter("lms.notifications.unread.corrections");
+        Gauge.builder("lms.notifications.unread.cache.size", this, UnreadCountCache::size)
+                .description("Users with cached unread counts")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Unread counts of the user by category (Grades, Feed, Schedule); categories without unread notifications are left out
+     */
+    public Map<String, Integer> countsByCategory(Long userId) {
+        return byCategory(counts(userId));
+    }
+
+    /**
+     * Unread counts by category with the sequence number they are current at: they include every
+     * applied change numbered up to it and none numbered above
+     */
+    public Snapshot snapshot(Long userId) {
+        for (int attempt = 1; ; attempt++) {
+            int[] counts = counts(userId);
+            Stripe stripe = stripe(userId);
+            synchronized (stripe) {
+                Entry entry = stripe.entries.get(userId);
+                if (entry != null && entry.loaded) {
+                    return new Snapshot(byCategory(entry.counts), sequence.get());
+                }
+                if (attempt == SNAPSHOT_ATTEMPTS) {
+                    // Changes kept racing with the load; may be off by one of them until the next snapshot
+                    return new Snapshot(byCategory(counts), sequence.get());
+                }
+            }
+        }
+    }
+
+    /**
+     * Total unread count of the user
+     */
+    public int total(Long userId) {
+        int total = 0;
+        for (int count : counts(userId)) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Runs inside the publishing transaction; the deltas are applied once it has committed
+     */
+    @EventListener
+    public void onCountsChanged(NotificationCountsChangedEvent event) {
+        Map<Long, Map<String, Integer>> deltas = event.getDeltas();
+        deltas.keySet().forEach(this::begin);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            completeAll(deltas, true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                completeAll(deltas, status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    private void completeAll(Map<Long, Map<String, Integer>> deltas, boolean committed) {
+        deltas.forEach((userId, userDeltas) -> {
+            long applied = complete(userId, userDeltas, committed);
+            if (applied > 0) {
+                eventPublisher.publishEvent(new NotificationCountsAppliedEvent(userId, userDeltas, applied));
+            }
+        });
+    }
+
+    // A change is in flight: loads finishing before it completes are not installed
+    private void begin(Long userId) {
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            Entry entry = stripe.entries.computeIfAbsent(userId, id -> new Entry());
+            entry.inFlight++;
+            entry.version++;
+        }
+    }
+
+    // Sequence number of the applied change, 0 when rolled back
+    private long complete(Long userId, Map<String, Integer> deltas, boolean committed) {
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            Entry entry = stripe.entries.get(userId);
+            if (entry == null) {
+                return 0;
+            }
+            entry.inFlight--;
+            entry.version++;
+            long applied = committed ? sequence.incrementAndGet() : 0;
+            if (committed && entry.loaded) {
+                deltas.forEach((category, delta) -> {
+                    int slot = CATEGORIES.indexOf(category);
+                    entry.counts[slot] = Math.max(0, entry.counts[slot] + delta);
+                });
+            } else if (!entry.loaded && !entry.touched && entry.inFlight == 0) {
+                // Not cached: the next read loads the committed count
+                stripe.entries.remove(userId);
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * Re-read the counts of every cached user and correct those that drifted; users not read
+     * since the previous pass are dropped
+     */
+    @Scheduled(fixedDelayString = "${notification.unread.reconcile-interval-ms:300000}",
+               initialDelayString = "${notification.unread.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        // 1. Versions before reading, so only entries untouched during the query are overwritten
+        Map<Long, Long> versions = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.entries.values().removeIf(entry -> !entry.touched && entry.inFlight == 0);
+                stripe.entries.forEach((userId, entry) -> {
+                    entry.touched = false;
+                    if (entry.loaded && entry.inFlight == 0) {
+                        versions.put(userId, entry.version);
+                    }
+                });
+            }
+        }
+        if (versions.isEmpty()) {
+            return;
+        }
+
+        // 2. Fresh counts, chunked; users without unread notifications have all zeros
+        List<Long> userIds = new ArrayList<>(versions.keySet());
+        Map<Long, int[]> fresh = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i += RECONCILE_CHUNK_SIZE) {
+            load(userIds.subList(i, Math.min(i + RECONCILE_CHUNK_SIZE, userIds.size())), fresh);
+        }
+
+        // 3. Overwrite what drifted
+        int corrected = 0;
+        for (Long userId : userIds) {
+            int[] counts = fresh.get(userId);
+            Stripe stripe = stripe(userId);
+            synchronized (stripe) {
+                Entry entry = stripe.entries.get(userId);
+                if (entry == null || entry.version != versions.get(userId) || entry.inFlight > 0
+                        || Arrays.equals(entry.counts, counts)) {
+                    continue;
+                }
+                System.arraycopy(counts, 0, entry.counts, 0, counts.length);
+                entry.version++;
+                corrected++;
+            }
+        }
+        if (corrected > 0) {
+            corrections.increment(corrected);
+            System.out.println("🔄 Corrected unread counts of " + corrected + " of " + userIds.size() + " cached users");
+        }
+    }
+
+    // Copy of the user's counts, loaded on a miss
+    private int[] counts(Long userId) {
+        Stripe stripe = stripe(userId);
+        long version;
+        synchronized (stripe) {
+            Entry entry = stripe.entries.computeIfAbsent(userId, id -> new Entry());
+            entry.touched = true;
+            if (entry.loaded) {
+                hits.increment();
+                return entry.counts.clone();
+            }
+            version = entry.version;
+        }
+
+        // Cold miss: read outside the lock, install only if no change arrived meanwhile
+        misses.increment();
+        Map<Long, int[]> loaded = new HashMap<>();
+        load(List.of(userId), loaded);
+        int[] counts = loaded.get(userId);
+        synchronized (stripe) {
+            Entry entry = stripe.entries.get(userId);
+            if (entry != null && !entry.loaded && entry.version == version && entry.inFlight == 0) {
+                System.arraycopy(counts, 0, entry.counts, 0, counts.length);
+                entry.loaded = true;
+            }
+        }
+        return counts;
+    }
+
+    // Categories without unread notifications are left out
+    private static Map<String, Integer> byCategory(int[] counts) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                result.put(CATEGORIES.get(i), counts[i]);
+            }
+        }
+        return result;
+    }
+
+    private void load(List<Long> userIds, Map<Long, int[]> into) {
+        for (Long userId : userIds) {
+            into.put(userId, new int[CATEGORIES.size()]);
+        }
+        jdbcTemplate.query(String.format(COUNT_SQL, String.join(",", Collections.nCopies(userIds.size(), "?"))),
+                (RowCallbackHandler) rs -> {
+                    int slot = CATEGORIES.indexOf(NotificationType.valueOf(rs.getString(2)).getCategory());
+                    into.get(rs.getLong(1))[slot] += rs.getInt(3);
+                }, userIds.toArray());
+    }
+
+    private Stripe stripe(Long userId) {
+        return stripes[(Long.hashCode(userId) & 0x7fffffff) % STRIPES];
+    }
+
+    private int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Unread counts by category and the sequence number of the last change they include
+     */
+    public record Snapshot(Map<String, Integer> counts, long sequence) {
+    }
+
+    private static final class Stripe {
+        final Map<Long, Entry> entries = new HashMap<>();
+    }
+
+    private static final class Entry {
+        final int[] counts = new int[CATEGORIES.size()];
+        // Bumped by every change, checked before installing counts read from the database
+        long version;
+        // Changes published but not completed yet
+        int inFlight;
+        boolean loaded;
+        // Read since the last reconciliation
+        boolean touched;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.lms.service.reference;
+
+import com.example.lms.model.ReferenceDataVersion;
+import com.example.lms.repository.DepartmentRepository;
+import com.example.lms.repository.GroupRepository;
+import com.example.lms.repository.StudentClassRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Node-local copy of the departments, classes and groups, shared by imports, templates and pages.
+ * Each {@link #snapshot()} reads reference_data_version (one primary key lookup) and returns the
+ * cached snapshot while it matches; otherwise a new snapshot is built and swapped in whole, so readers
+ * never see a half-built one. DepartmentService, ClassService and GroupService call {@link #changed()}
+ * after every write, which makes all nodes rebuild on their next read.
+ */
+@Component
+public class ReferenceDataCache {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DepartmentRepository departmentRepository;
+    private final StudentClassRepository classRepository;
+    private final GroupRepository groupRepository;
+
+    private final AtomicReference<ReferenceDataSnapshot> current = new AtomicReference<>();
+    private final Object rebuildLock = new Object();
+
+    private final Counter rebuilds;
+
+    @Autowired
+    public ReferenceDataCache(JdbcTemplate jdbcTemplate, DepartmentRepository departmentRepository,
+                              StudentClassRepository classRepository, GroupRepository groupRepository,
+                              MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.departmentRepository = departmentRepository;
+        this.classRepository = classRepository;
+        this.groupRepository = groupRepository;
+        this.rebuilds = meterRegistry.counter("lms.reference.rebuilds");
+    }
+
+    /**
+     * The reference data as of the current reference_data_version
+     */
+    public ReferenceDataSnapshot snapshot() {
+        long version = databaseVersion();
+        ReferenceDataSnapshot snapshot = current.get();
+        if (snapshot != null && snapshot.version() == version) {
+            return snapshot;
+        }
+        synchronized (rebuildLock) {
+            // Another thread may have rebuilt it while this one waited
+            snapshot = current.get();
+            if (snapshot != null && snapshot.version() == version) {
+                return snapshot;
+            }
+            // The version is read before the rows, so a change committed in between only
+            // makes this snapshot newer than its version and triggers one more rebuild
+            version = databaseVersion();
+            snapshot = new ReferenceDataSnapshot(version, departmentRepository.findAll(), classRepository.findAll(),
+                    groupRepository.findAll());
+            current.set(snapshot);
+            rebuilds.increment();
+            return snapshot;
+        }
+    }
+
+    /**
+     * Record a department, class or group change; call it after the write
+     */
+    public void changed() {
+        String bump = "UPDATE reference_data_version SET version = version + 1 WHERE id = ?";
+        if (jdbcTemplate.update(bump, ReferenceDataVersion.ROW_ID) > 0) {
+            return;
+        }
+        // The row is seeded by the prod migration; dev databases get it on the first change
+        try {
+            jdbcTemplate.update("INSERT INTO reference_data_version (id, version) VALUES (?, 1)",
+                    ReferenceDataVersion.ROW_ID);
+        } catch (DuplicateKeyException e) {
+            jdbcTemplate.update(bump, ReferenceDataVersion.ROW_ID);
+        }
+    }
+
+    private long databaseVersion() {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM reference_data_version WHERE id = ?",
+                Long.class, ReferenceDataVersion.ROW_ID);
+        return versions.isEmpty() ? 0L : versions.get(0);
+    }
+}
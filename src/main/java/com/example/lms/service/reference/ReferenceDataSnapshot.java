@@ -0,0 +1,169 @@
+package com.example.lms.service.reference;
+
+import com.example.lms.model.Department;
+import com.example.lms.model.Group;
+import com.example.lms.model.StudentClass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of all departments, classes and groups at one reference_data_version,
+ * indexed by id, by department code / class name and by parent. Instances are shared by every
+ * request until {@link ReferenceDataCache} replaces them, so the entities must be treated as read-only.
+ */
+public final class ReferenceDataSnapshot {
+
+    private final long version;
+
+    private final List<Department> departments;
+    private final List<StudentClass> classes;
+    private final List<Group> groups;
+
+    private final Map<Long, Department> departmentsById;
+    private final Map<Long, StudentClass> classesById;
+    private final Map<Long, Group> groupsById;
+
+    private final Map<String, Department> departmentsByCode;
+    private final Map<String, StudentClass> classesByName;
+    // "classId:groupName" -> group
+    private final Map<String, Group> groupsByClassAndName;
+
+    private final Map<Long, List<StudentClass>> classesByDepartment;
+    private final Map<Long, List<Group>> groupsByClass;
+    private final Map<Long, Department> departmentsByHead;
+
+    public ReferenceDataSnapshot(long version, List<Department> departments, List<StudentClass> classes,
+                                 List<Group> groups) {
+        this.version = version;
+        this.departments = List.copyOf(departments);
+        this.classes = List.copyOf(classes);
+        this.groups = List.copyOf(groups);
+
+        Map<Long, Department> departmentById = new HashMap<>();
+        Map<String, Department> departmentByCode = new HashMap<>();
+        Map<Long, Department> departmentByHead = new HashMap<>();
+        for (Department department : departments) {
+            departmentById.put(department.getId(), department);
+            if (department.getCode() != null) {
+                departmentByCode.putIfAbsent(department.getCode(), department);
+            }
+            if (department.getHeadOfDepartment() != null) {
+                departmentByHead.putIfAbsent(department.getHeadOfDepartment().getId(), department);
+            }
+        }
+
+        Map<Long, StudentClass> classById = new HashMap<>();
+        Map<String, StudentClass> classByName = new HashMap<>();
+        Map<Long, List<StudentClass>> classesOfDepartment = new HashMap<>();
+        for (StudentClass studentClass : classes) {
+            classById.put(studentClass.getId(), studentClass);
+            if (studentClass.getName() != null) {
+                classByName.putIfAbsent(studentClass.getName(), studentClass);
+            }
+            if (studentClass.getDepartment() != null) {
+                classesOfDepartment.computeIfAbsent(studentClass.getDepartment().getId(), id -> new ArrayList<>())
+                        .add(studentClass);
+            }
+        }
+
+        Map<Long, Group> groupById = new HashMap<>();
+        Map<String, Group> groupByClassAndName = new HashMap<>();
+        Map<Long, List<Group>> groupsOfClass = new HashMap<>();
+        for (Group group : groups) {
+            groupById.put(group.getId(), group);
+            if (group.getStudentClass() != null) {
+                Long classId = group.getStudentClass().getId();
+                if (group.getName() != null) {
+                    groupByClassAndName.putIfAbsent(groupKey(classId, group.getName()), group);
+                }
+                groupsOfClass.computeIfAbsent(classId, id -> new ArrayList<>()).add(group);
+            }
+        }
+
+        this.departmentsById = Map.copyOf(departmentById);
+        this.departmentsByCode = Map.copyOf(departmentByCode);
+        this.departmentsByHead = Map.copyOf(departmentByHead);
+        this.classesById = Map.copyOf(classById);
+        this.classesByName = Map.copyOf(classByName);
+        this.groupsById = Map.copyOf(groupById);
+        this.groupsByClassAndName = Map.copyOf(groupByClassAndName);
+        this.classesByDepartment = freeze(classesOfDepartment);
+        this.groupsByClass = freeze(groupsOfClass);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public List<Department> departments() {
+        return departments;
+    }
+
+    public List<StudentClass> classes() {
+        return classes;
+    }
+
+    public List<Group> groups() {
+        return groups;
+    }
+
+    public Department departmentById(Long id) {
+        return id != null ? departmentsById.get(id) : null;
+    }
+
+    public StudentClass classById(Long id) {
+        return id != null ? classesById.get(id) : null;
+    }
+
+    public Group groupById(Long id) {
+        return id != null ? groupsById.get(id) : null;
+    }
+
+    public Department department(String code) {
+        return departmentsByCode.get(code);
+    }
+
+    public StudentClass studentClass(String name) {
+        return classesByName.get(name);
+    }
+
+    public Group group(Long classId, String name) {
+        return groupsByClassAndName.get(groupKey(classId, name));
+    }
+
+    /**
+     * Department whose head is the given teacher, null when they head none
+     */
+    public Department departmentHeadedBy(Long teacherId) {
+        return teacherId != null ? departmentsByHead.get(teacherId) : null;
+    }
+
+    public List<StudentClass> classesOfDepartment(Long departmentId) {
+        return classesByDepartment.getOrDefault(departmentId, List.of());
+    }
+
+    public List<Group> groupsOfClass(Long classId) {
+        return groupsByClass.getOrDefault(classId, List.of());
+    }
+
+    public List<Group> groupsOfDepartment(Long departmentId) {
+        List<Group> result = new ArrayList<>();
+        for (StudentClass studentClass : classesOfDepartment(departmentId)) {
+            result.addAll(groupsOfClass(studentClass.getId()));
+        }
+        return result;
+    }
+
+    private static <T> Map<Long, List<T>> freeze(Map<Long, List<T>> lists) {
+        Map<Long, List<T>> frozen = new HashMap<>();
+        lists.forEach((id, list) -> frozen.put(id, List.copyOf(list)));
+        return Map.copyOf(frozen);
+    }
+
+    private static String groupKey(Long classId, String name) {
+        return classId + ":" + name;
+    }
+}
@@ -0,0 +1,12 @@
+-- Materialized per-student semester averages (see StudentSemesterAverage)
+-- After creating the table, fill it with POST /api/grades/averages/rebuild
+CREATE TABLE IF NOT EXISTS student_semester_average (
+    student_id      BIGINT           NOT NULL,
+    academic_year   VARCHAR(20)      NOT NULL,
+    semester        INTEGER          NOT NULL,
+    weighted_sum    DOUBLE PRECISION NOT NULL,
+    coefficient_sum DOUBLE PRECISION NOT NULL,
+    graded_subjects INTEGER          NOT NULL,
+    updated_at      TIMESTAMP(6),
+    PRIMARY KEY (student_id, academic_year, semester)
+);
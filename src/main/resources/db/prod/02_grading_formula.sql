@@ -0,0 +1,4 @@
+-- Pluggable final-grade formula per class subject, with a department-wide default.
+-- NULL keeps the Algerian formula.
+ALTER TABLE class_subjects ADD COLUMN grading_formula VARCHAR(50);
+ALTER TABLE departments ADD COLUMN grading_formula VARCHAR(50);
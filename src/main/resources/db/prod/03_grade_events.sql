@@ -0,0 +1,27 @@
+-- Append-only grade audit log. Marks are SMALLINT centi-points (-1 = no mark),
+-- occurred_at is epoch milliseconds. Key columns are only set on CREATE/DELETE rows.
+CREATE TABLE grade_events (
+    id BIGSERIAL PRIMARY KEY,
+    grade_id BIGINT NOT NULL,
+    event_type SMALLINT NOT NULL,
+    actor_id BIGINT,
+    occurred_at BIGINT NOT NULL,
+    student_id BIGINT,
+    subject_id BIGINT,
+    class_id BIGINT,
+    semester SMALLINT,
+    academic_year VARCHAR(20),
+    old_examen SMALLINT NOT NULL,
+    new_examen SMALLINT NOT NULL,
+    old_td SMALLINT NOT NULL,
+    new_td SMALLINT NOT NULL,
+    old_tp SMALLINT NOT NULL,
+    new_tp SMALLINT NOT NULL,
+    old_continuous SMALLINT NOT NULL,
+    new_continuous SMALLINT NOT NULL,
+    old_final SMALLINT NOT NULL,
+    new_final SMALLINT NOT NULL
+);
+
+CREATE INDEX idx_grade_events_grade ON grade_events (grade_id, occurred_at);
+CREATE INDEX idx_grade_events_time ON grade_events (occurred_at);
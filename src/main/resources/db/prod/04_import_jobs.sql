@@ -0,0 +1,20 @@
+-- Background student/teacher imports. processed_rows is the resume checkpoint;
+-- payload keeps the validated rows (JSON) until the job completes.
+CREATE TABLE import_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    type VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    total_rows INTEGER NOT NULL,
+    processed_rows INTEGER NOT NULL,
+    resumed_from_row INTEGER NOT NULL,
+    error_count INTEGER NOT NULL,
+    errors TEXT,
+    failure_reason VARCHAR(1000),
+    payload TEXT,
+    created_by BIGINT,
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+CREATE INDEX idx_import_jobs_status ON import_jobs (status);
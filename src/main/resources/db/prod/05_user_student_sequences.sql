@@ -0,0 +1,15 @@
+-- users and students take their ids from pooled sequences (allocationSize = 50) instead of
+-- BIGSERIAL, so imports can pre-allocate ids and batch their inserts. INCREMENT BY must match
+-- the allocation size; each nextval hands Hibernate the block (value - 49 .. value).
+-- id may be BIGSERIAL (a default) or an identity column (as created by Hibernate 6): both are removed.
+CREATE SEQUENCE users_seq INCREMENT BY 50;
+SELECT setval('users_seq', (SELECT COALESCE(MAX(id), 1) FROM users));
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE users ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS users_id_seq;
+
+CREATE SEQUENCE students_seq INCREMENT BY 50;
+SELECT setval('students_seq', (SELECT COALESCE(MAX(id), 1) FROM students));
+ALTER TABLE students ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE students ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS students_id_seq;
@@ -0,0 +1,8 @@
+-- Single-row counter bumped by every department/class/group change; nodes compare it with
+-- the version of their in-memory reference data snapshot and rebuild it when it moved.
+CREATE TABLE reference_data_version (
+    id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO reference_data_version (id, version) VALUES (1, 0);
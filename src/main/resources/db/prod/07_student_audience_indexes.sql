@@ -0,0 +1,5 @@
+-- Post notifications are fanned out with one INSERT ... SELECT user_id FROM students per audience
+-- (group, class or department); these indexes cover that select.
+CREATE INDEX IF NOT EXISTS idx_students_group ON students (group_id, user_id);
+CREATE INDEX IF NOT EXISTS idx_students_class ON students (class_id, user_id);
+CREATE INDEX IF NOT EXISTS idx_students_department ON students (department_id, user_id);
@@ -0,0 +1,27 @@
+-- Notification fan-outs waiting for delivery, written in the transaction that triggers them.
+-- AUDIENCE rows notify a group/class/department (last_user_id is the resume point), GRADE rows
+-- one student; a worker holds a row through claim_token until available_at (its lease).
+CREATE TABLE notification_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    kind VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    audience VARCHAR(20),
+    audience_id BIGINT,
+    user_id BIGINT,
+    type VARCHAR(30) NOT NULL,
+    title VARCHAR(200),
+    message TEXT,
+    related_entity_type VARCHAR(50),
+    related_entity_id BIGINT,
+    related_entity_url VARCHAR(500),
+    grade_created BOOLEAN NOT NULL,
+    last_user_id BIGINT,
+    attempts INTEGER NOT NULL,
+    last_error VARCHAR(1000),
+    claim_token VARCHAR(36),
+    created_at TIMESTAMP NOT NULL,
+    available_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_notification_outbox_due ON notification_outbox (status, available_at);
+CREATE INDEX idx_notification_outbox_claim ON notification_outbox (claim_token);
@@ -0,0 +1,56 @@
+-- Notification content is stored once per payload; each recipient gets a thin row with its
+-- read state. Existing rows sent to many users at once (same type, text, link and created_at)
+-- collapse into one payload whose id is the smallest of theirs; recipient rows keep their ids.
+BEGIN;
+
+CREATE TABLE notification_payload (
+    id BIGSERIAL PRIMARY KEY,
+    type VARCHAR(30) NOT NULL,
+    title VARCHAR(200) NOT NULL,
+    message TEXT,
+    related_entity_type VARCHAR(50),
+    related_entity_id BIGINT,
+    related_entity_url VARCHAR(500),
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE TABLE notification_recipient (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users (id),
+    payload_id BIGINT NOT NULL REFERENCES notification_payload (id),
+    is_read BOOLEAN NOT NULL,
+    read_at TIMESTAMP
+);
+
+-- PARTITION BY groups NULLs together, unlike a join on the same columns
+CREATE TEMPORARY TABLE notification_payload_map ON COMMIT DROP AS
+SELECT id, MIN(id) OVER (PARTITION BY type, title, message, related_entity_type, related_entity_id,
+                                      related_entity_url, created_at) AS payload_id
+FROM notifications;
+
+INSERT INTO notification_payload (id, type, title, message, related_entity_type, related_entity_id,
+                                  related_entity_url, created_at)
+SELECT n.id, n.type, n.title, n.message, n.related_entity_type, n.related_entity_id, n.related_entity_url, n.created_at
+FROM notifications n JOIN notification_payload_map m ON m.id = n.id
+WHERE m.payload_id = n.id;
+
+INSERT INTO notification_recipient (id, user_id, payload_id, is_read, read_at)
+SELECT n.id, n.user_id, m.payload_id, n.is_read, n.read_at
+FROM notifications n JOIN notification_payload_map m ON m.id = n.id;
+
+SELECT setval(pg_get_serial_sequence('notification_payload', 'id'),
+              (SELECT COALESCE(MAX(id), 1) FROM notification_payload));
+SELECT setval(pg_get_serial_sequence('notification_recipient', 'id'),
+              (SELECT COALESCE(MAX(id), 1) FROM notification_recipient));
+
+-- Drops idx_user_read and idx_user_created with the table
+DROP TABLE notifications;
+
+-- Unread counts and marking read by user; the user's page, newest first
+CREATE INDEX idx_user_read ON notification_recipient (user_id, is_read);
+CREATE INDEX idx_user_id ON notification_recipient (user_id, id);
+
+-- Audience intents remember the payload created with their first chunk
+ALTER TABLE notification_outbox ADD COLUMN payload_id BIGINT;
+
+COMMIT;
@@ -0,0 +1,3 @@
+-- A node claims an import job with a conditional UPDATE and renews heartbeat_at while it runs it;
+-- RUNNING jobs with a lapsed heartbeat (NULL for rows written before this column) are taken over.
+ALTER TABLE import_jobs ADD COLUMN heartbeat_at TIMESTAMP;
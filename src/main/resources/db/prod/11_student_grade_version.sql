@@ -0,0 +1,3 @@
+-- Per-student grade version, bumped in the transaction of every grade change; every node
+-- compares it with the version of its cached transcript, and it is the transcript ETag.
+ALTER TABLE students ADD COLUMN grade_version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,8 @@
+-- Single-row counter bumped by every teacher assignment change; nodes compare it with the
+-- version of their cached grade grants (TeacherGrantIndex) and reload them when it moved.
+CREATE TABLE teacher_grant_version (
+    id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO teacher_grant_version (id, version) VALUES (1, 0);
@@ -0,0 +1,3 @@
+-- Every claim of an import job stores a new token; heartbeats, checkpoints and the final status
+-- are conditional on it, so a node that lost its lease cannot touch the job any more.
+ALTER TABLE import_jobs ADD COLUMN claim_token VARCHAR(36);
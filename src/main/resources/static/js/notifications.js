@@ -1,10 +1,17 @@
 /**
  * Notification Badge System
- * Fetches and displays notification counts in sidebar badges
- * Auto-refreshes every 30 seconds
+ * Displays notification counts in sidebar badges
+ * Counts are pushed by the server (/api/notifications/stream, Server-Sent Events);
+ * without EventSource support, or while the stream is down, they are polled every 30 seconds
  */
 
 let notificationInterval = null;
+let notificationStream = null;
+let badgeCounts = {};
+// Sequence number (event id) of the last "counts" event; deltas up to it are already in the counts
+let badgeSequence = 0;
+
+const POLL_INTERVAL_MS = 30000;
 
 /**
  * Fetches notification counts from the API and updates badges
@@ -23,21 +30,7 @@ async function updateNotificationBadges() {
         if (response.ok) {
             const counts = await response.json();
             console.log('✅ Notifications received:', counts);
-            
-            // Update badge for Grades
-            updateBadge('grades-badge', counts.Grades || 0);
-            
-            // Update badge for Feed
-            updateBadge('feed-badge', counts.Feed || 0);
-            
-            // Update badge for Schedule
-            updateBadge('schedule-badge', counts.Schedule || 0);
-            
-            // Update total count in navbar (if exists)
-            const total = (counts.Grades || 0) + (counts.Feed || 0) + (counts.Schedule || 0);
-            updateBadge('total-notifications-badge', total);
-            
-            console.log('📊 Badge counts - Grades:', counts.Grades || 0, 'Feed:', counts.Feed || 0, 'Schedule:', counts.Schedule || 0);
+            renderBadges(counts);
         } else {
             console.warn('⚠️ Failed to fetch notifications:', response.status, response.statusText);
         }
@@ -46,6 +39,78 @@ async function updateNotificationBadges() {
     }
 }
 
+/**
+ * Shows the given counts ({Grades, Feed, Schedule}) in the sidebar and navbar badges
+ */
+function renderBadges(counts) {
+    badgeCounts = counts;
+    
+    // Update badge for Grades
+    updateBadge('grades-badge', counts.Grades || 0);
+    
+    // Update badge for Feed
+    updateBadge('feed-badge', counts.Feed || 0);
+    
+    // Update badge for Schedule
+    updateBadge('schedule-badge', counts.Schedule || 0);
+    
+    // Update total count in navbar (if exists)
+    const total = (counts.Grades || 0) + (counts.Feed || 0) + (counts.Schedule || 0);
+    updateBadge('total-notifications-badge', total);
+    
+    console.log('📊 Badge counts - Grades:', counts.Grades || 0, 'Feed:', counts.Feed || 0, 'Schedule:', counts.Schedule || 0);
+}
+
+/**
+ * Opens the badge stream: a "counts" event on every (re)connect, then "delta" events
+ * Falls back to polling while the stream is down; the browser reconnects on its own
+ */
+function connectNotificationStream() {
+    notificationStream = new EventSource('/api/notifications/stream', { withCredentials: true });
+    
+    notificationStream.addEventListener('counts', (event) => {
+        stopPolling();
+        badgeSequence = Number(event.lastEventId) || 0;
+        renderBadges(JSON.parse(event.data));
+    });
+    
+    notificationStream.addEventListener('delta', (event) => {
+        if ((Number(event.lastEventId) || 0) <= badgeSequence) {
+            // Applied before the counts were read
+            return;
+        }
+        const deltas = JSON.parse(event.data);
+        const counts = { ...badgeCounts };
+        for (const [category, delta] of Object.entries(deltas)) {
+            counts[category] = Math.max(0, (counts[category] || 0) + delta);
+        }
+        renderBadges(counts);
+    });
+    
+    notificationStream.onerror = () => {
+        console.warn('⚠️ Notification stream interrupted, polling until it reconnects');
+        if (notificationStream.readyState === EventSource.CLOSED) {
+            // The browser gave up (e.g. session expired): stay on polling
+            notificationStream = null;
+        }
+        startPolling();
+    };
+}
+
+function startPolling() {
+    if (!notificationInterval) {
+        updateNotificationBadges();
+        notificationInterval = setInterval(updateNotificationBadges, POLL_INTERVAL_MS);
+    }
+}
+
+function stopPolling() {
+    if (notificationInterval) {
+        clearInterval(notificationInterval);
+        notificationInterval = null;
+    }
+}
+
 /**
  * Updates a specific badge element
  * @param {string} badgeId - The ID of the badge element
@@ -81,8 +146,8 @@ async function markTypeAsRead(type) {
             credentials: 'include'
         });
         
-        if (response.ok) {
-            // Immediately update badges after marking as read
+        if (response.ok && !notificationStream) {
+            // Immediately update badges after marking as read (the stream pushes the change itself)
             updateNotificationBadges();
         }
     } catch (error) {
@@ -95,14 +160,12 @@ async function markTypeAsRead(type) {
  * Called when the page loads
  */
 function initNotifications() {
-    // Initial fetch
-    updateNotificationBadges();
-    
-    // Set up auto-refresh every 30 seconds
-    if (notificationInterval) {
-        clearInterval(notificationInterval);
+    // Live counts when the browser supports Server-Sent Events, polling otherwise
+    if (window.EventSource) {
+        connectNotificationStream();
+    } else {
+        startPolling();
     }
-    notificationInterval = setInterval(updateNotificationBadges, 30000);
     
     // Add click handlers to sidebar links to mark notifications as read when leaving
     setupNotificationClickHandlers();
@@ -170,8 +233,9 @@ function setupNotificationClickHandlers() {
  * Cleanup when page is unloaded
  */
 window.addEventListener('beforeunload', () => {
-    if (notificationInterval) {
-        clearInterval(notificationInterval);
+    stopPolling();
+    if (notificationStream) {
+        notificationStream.close();
     }
 });
 